@@ -0,0 +1,54 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.calc;
+
+import mondrian.olap.Evaluator;
+
+/**
+ * Compiled expression that can evaluate itself, as a <code>double</code>, for
+ * every tuple of a list in one call.
+ *
+ * <p>Functions that apply a numeric expression to each member of a set, such
+ * as <code>Sum</code> and <code>Avg</code>, call this method instead of
+ * evaluating the expression once per tuple. An expression that combines other
+ * expressions, such as <code>[Measures].[Unit Sales] * 1.1</code>, evaluates
+ * each operand for the whole list (a column at a time), then combines the
+ * columns in a loop over primitive values.
+ *
+ * @see mondrian.calc.impl.AbstractCalc#evaluateValues
+ */
+public interface VectorCalc extends Calc {
+    /**
+     * Evaluates this expression for each tuple in a list, and writes the
+     * results into an array.
+     *
+     * <p>For each tuple, the evaluator's context is set to the tuple and
+     * the expression is evaluated. If the result is null, the array element
+     * is set to the special {@link mondrian.olap.fun.FunUtil#DoubleNull}
+     * value. If the result is an error, it is counted and the array element
+     * is undefined.
+     *
+     * <p>If the result for some tuple cannot be represented as a
+     * <code>double</code>, returns -1, and the caller must evaluate the
+     * expression one tuple at a time.
+     *
+     * <p>The evaluator's context is the same on return as on entry.
+     *
+     * @param evaluator Evaluation context
+     * @param list List of tuples
+     * @param values Array into which to write values; must have at least as
+     *   many elements as the list
+     * @return Number of tuples whose value is an error, or -1 if the values
+     *   cannot be represented as doubles
+     */
+    int evaluateDoubles(Evaluator evaluator, TupleList list, double[] values);
+}
+
+// End VectorCalc.java
@@ -12,9 +12,11 @@ package mondrian.calc.impl;
 import mondrian.calc.*;
 import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.*;
+import mondrian.olap.fun.FunUtil;
 import mondrian.olap.type.Type;
 import mondrian.rolap.RolapEvaluator;
 import mondrian.rolap.RolapHierarchy;
+import mondrian.rolap.SegmentCrossJoin;
 
 import java.util.*;
 
@@ -222,6 +224,121 @@ public abstract class AbstractCalc implements Calc {
         arguments.put("resultStyle", getResultStyle());
     }
 
+    /**
+     * Evaluates a calculation for each tuple in a list, and writes the
+     * results into an array, one tuple at a time.
+     *
+     * <p>Implements {@link VectorCalc#evaluateDoubles} for calculations that
+     * cannot do anything cleverer, and is the fallback for calculations
+     * whose operands cannot be evaluated a column at a time.
+     *
+     * @param calc Calculation
+     * @param evaluator Evaluation context
+     * @param list List of tuples
+     * @param values Array into which to write values
+     * @return Number of tuples whose value is an error, or -1 if a value is
+     *   neither null, numeric nor an error
+     */
+    public static int evaluateValues(
+        Calc calc,
+        Evaluator evaluator,
+        TupleList list,
+        double[] values)
+    {
+        final int savepoint = evaluator.savepoint();
+        try {
+            int errorCount = 0;
+            int i = 0;
+            final TupleCursor cursor = list.tupleCursor();
+            while (cursor.forward()) {
+                cursor.setContext(evaluator);
+                final Object o = calc.evaluate(evaluator);
+                if (o == null || o == Util.nullValue) {
+                    values[i] = FunUtil.DoubleNull;
+                } else if (o instanceof Number) {
+                    values[i] = ((Number) o).doubleValue();
+                } else if (o instanceof Throwable) {
+                    values[i] = Double.NaN;
+                    ++errorCount;
+                } else {
+                    return -1;
+                }
+                ++i;
+            }
+            return errorCount;
+        } finally {
+            evaluator.restore(savepoint);
+        }
+    }
+
+    /**
+     * Evaluates the cell of each tuple in a list, with some members
+     * overriding the context of every tuple, and writes the values into an
+     * array.
+     *
+     * <p>If all of the cells are in one segment in the cache, reads them in
+     * one pass over the list (see {@link SegmentCrossJoin#cellValues}),
+     * without setting the evaluator's context for each tuple. Otherwise
+     * evaluates {@code calc} one tuple at a time, using
+     * {@link #evaluateValues}.
+     *
+     * @param calc Calculation, which must evaluate the current cell after
+     *   setting the context to {@code overrides}
+     * @param evaluator Evaluation context
+     * @param list List of tuples
+     * @param values Array into which to write values
+     * @param overrides Members that override the context of every tuple
+     * @return Number of tuples whose value is an error, or -1 if a value is
+     *   neither null, numeric nor an error
+     */
+    protected static int evaluateCellValues(
+        Calc calc,
+        Evaluator evaluator,
+        TupleList list,
+        double[] values,
+        Member... overrides)
+    {
+        if (evaluator instanceof RolapEvaluator) {
+            final Object[] cellValues =
+                SegmentCrossJoin.cellValues(
+                    (RolapEvaluator) evaluator, list, overrides);
+            if (cellValues != null) {
+                for (int i = 0; i < cellValues.length; i++) {
+                    final Object o = cellValues[i];
+                    if (o == null || o == Util.nullValue) {
+                        values[i] = FunUtil.DoubleNull;
+                    } else if (o instanceof Number) {
+                        values[i] = ((Number) o).doubleValue();
+                    } else {
+                        return -1;
+                    }
+                }
+                return 0;
+            }
+        }
+        return evaluateValues(calc, evaluator, list, values);
+    }
+
+    /**
+     * Returns whether a calculation depends on any of the hierarchies of the
+     * tuples of a list; if not, it has the same value for every tuple.
+     *
+     * @param calc Calculation
+     * @param list List of tuples
+     * @return Whether calculation depends on the tuples of the list
+     */
+    protected static boolean dependsOnList(Calc calc, TupleList list) {
+        if (list.isEmpty()) {
+            return false;
+        }
+        for (Member member : list.get(0)) {
+            if (calc.dependsOn(member.getHierarchy())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Returns a simplified evalator whose context is the same for every
      * dimension which an expression depends on, and the default member for
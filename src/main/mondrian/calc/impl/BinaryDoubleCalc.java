@@ -0,0 +1,89 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.calc.impl;
+
+import mondrian.calc.*;
+import mondrian.olap.Evaluator;
+import mondrian.olap.Exp;
+
+/**
+ * Abstract implementation of a {@link mondrian.calc.DoubleCalc} that combines
+ * the values of two <code>double</code> expressions, such as an arithmetic
+ * operator.
+ *
+ * <p>The derived class must implement the {@link #combine(double, double)}
+ * method. If both operands implement {@link VectorCalc}, so does this
+ * expression: it evaluates each operand for a whole list of tuples, then
+ * combines the two arrays.
+ */
+public abstract class BinaryDoubleCalc
+    extends AbstractDoubleCalc
+    implements VectorCalc
+{
+    protected final DoubleCalc calc0;
+    protected final DoubleCalc calc1;
+
+    /**
+     * Creates a BinaryDoubleCalc.
+     *
+     * @param exp Source expression
+     * @param calc0 Compiled expression for the first operand
+     * @param calc1 Compiled expression for the second operand
+     */
+    protected BinaryDoubleCalc(Exp exp, DoubleCalc calc0, DoubleCalc calc1) {
+        super(exp, new Calc[] {calc0, calc1});
+        this.calc0 = calc0;
+        this.calc1 = calc1;
+    }
+
+    public double evaluateDouble(Evaluator evaluator) {
+        return combine(
+            calc0.evaluateDouble(evaluator),
+            calc1.evaluateDouble(evaluator));
+    }
+
+    /**
+     * Combines the values of the two operands.
+     *
+     * @param v0 Value of first operand, or
+     *   {@link mondrian.olap.fun.FunUtil#DoubleNull} if it is null
+     * @param v1 Value of second operand, or
+     *   {@link mondrian.olap.fun.FunUtil#DoubleNull} if it is null
+     * @return Result, or {@link mondrian.olap.fun.FunUtil#DoubleNull}
+     */
+    protected abstract double combine(double v0, double v1);
+
+    public int evaluateDoubles(
+        Evaluator evaluator,
+        TupleList list,
+        double[] values)
+    {
+        if (calc0 instanceof VectorCalc && calc1 instanceof VectorCalc) {
+            final int n = list.size();
+            final double[] values1 = new double[n];
+            // An operand whose value is an error throws when evaluated as a
+            // double, so if either operand has errors, evaluate one tuple at
+            // a time, and let it throw.
+            if (((VectorCalc) calc0).evaluateDoubles(
+                    evaluator, list, values) == 0
+                && ((VectorCalc) calc1).evaluateDoubles(
+                    evaluator, list, values1) == 0)
+            {
+                for (int i = 0; i < n; i++) {
+                    values[i] = combine(values[i], values1[i]);
+                }
+                return 0;
+            }
+        }
+        return evaluateValues(this, evaluator, list, values);
+    }
+}
+
+// End BinaryDoubleCalc.java
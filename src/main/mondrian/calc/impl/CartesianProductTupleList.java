@@ -0,0 +1,276 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.calc.impl;
+
+import mondrian.calc.*;
+import mondrian.olap.Evaluator;
+import mondrian.olap.Member;
+import mondrian.olap.Util;
+import mondrian.resource.MondrianResource;
+
+import java.util.*;
+
+/**
+ * Immutable {@link TupleList} that is the cartesian product of several
+ * lists, computed on demand.
+ *
+ * <p>The product is never materialized. {@link #size()} is the product of
+ * the sizes of the lists, and the member at a given row and column is found
+ * by index arithmetic, so {@link #get(int, int)} takes constant time and
+ * allocates nothing. {@link #subList(int, int)} returns a view, so functions
+ * such as <code>Head</code>, <code>Tail</code>, <code>Subset</code> and
+ * <code>Item</code> only read the tuples that they return, and
+ * <code>Count</code> does not read any.
+ *
+ * <p>If one of the lists is itself a CartesianProductTupleList, its lists are
+ * used directly, so a nested crossjoin such as
+ * <code>CrossJoin(CrossJoin(A, B), C)</code> has three factors, not two.
+ *
+ * <p>Tuples are in the order of the lists: the tuples of the first list
+ * vary slowest.
+ */
+public class CartesianProductTupleList extends AbstractTupleList {
+    private final TupleList[] lists;
+    /** For each column, the ordinal of the list that it comes from. */
+    private final int[] listOrdinals;
+    /** For each column, its column in the list that it comes from. */
+    private final int[] listColumns;
+    /** For each list, the number of consecutive tuples of the product that
+     * contain the same tuple of that list. */
+    private final int[] strides;
+    /** Offset of this view in the whole product. */
+    private final int start;
+    private final int size;
+
+    /**
+     * Creates a CartesianProductTupleList.
+     *
+     * @param lists Lists
+     * @throws mondrian.olap.ResourceLimitExceededException if the product
+     *   has more than {@link Integer#MAX_VALUE} tuples
+     */
+    public CartesianProductTupleList(List<TupleList> lists) {
+        this(factors(lists));
+    }
+
+    private CartesianProductTupleList(TupleList[] lists) {
+        super(arity(lists));
+        this.lists = lists;
+        this.listOrdinals = new int[arity];
+        this.listColumns = new int[arity];
+        this.strides = new int[lists.length];
+        int column = 0;
+        for (int i = 0; i < lists.length; i++) {
+            for (int j = 0; j < lists[i].getArity(); j++) {
+                listOrdinals[column] = i;
+                listColumns[column] = j;
+                ++column;
+            }
+        }
+        long product = 1;
+        for (int i = lists.length - 1; i >= 0; i--) {
+            strides[i] = (int) product;
+            product *= lists[i].size();
+            if (product > Integer.MAX_VALUE) {
+                throw MondrianResource.instance().LimitExceededDuringCrossjoin
+                    .ex(product, Integer.MAX_VALUE);
+            }
+        }
+        this.start = 0;
+        this.size = (int) product;
+        this.mutable = false;
+    }
+
+    private CartesianProductTupleList(
+        CartesianProductTupleList product,
+        int start,
+        int size)
+    {
+        super(product.arity);
+        this.lists = product.lists;
+        this.listOrdinals = product.listOrdinals;
+        this.listColumns = product.listColumns;
+        this.strides = product.strides;
+        this.start = start;
+        this.size = size;
+        this.mutable = false;
+    }
+
+    private static TupleList[] factors(List<TupleList> lists) {
+        final List<TupleList> factors = new ArrayList<TupleList>();
+        for (TupleList list : lists) {
+            if (list instanceof CartesianProductTupleList
+                && ((CartesianProductTupleList) list).isWhole())
+            {
+                factors.addAll(
+                    Arrays.asList(((CartesianProductTupleList) list).lists));
+            } else {
+                factors.add(list);
+            }
+        }
+        return factors.toArray(new TupleList[factors.size()]);
+    }
+
+    private static int arity(TupleList[] lists) {
+        int arity = 0;
+        for (TupleList list : lists) {
+            arity += list.getArity();
+        }
+        return arity;
+    }
+
+    /**
+     * Returns whether this list is the whole product of its lists, rather
+     * than a sub-list of it.
+     */
+    private boolean isWhole() {
+        return start == 0
+            && (lists.length == 0
+                || size == strides[0] * lists[0].size());
+    }
+
+    @Override
+    public Member get(int column, int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(
+                "index " + index + ", size " + size);
+        }
+        final int i = listOrdinals[column];
+        final TupleList list = lists[i];
+        return list.get(
+            listColumns[column],
+            (start + index) / strides[i] % list.size());
+    }
+
+    @Override
+    public List<Member> get(int index) {
+        final Member[] members = new Member[arity];
+        toArray(index, members, 0);
+        return Util.flatList(members);
+    }
+
+    private void toArray(int index, Member[] members, int offset) {
+        for (int column = 0; column < arity; column++) {
+            members[offset + column] = get(column, index);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public TupleList subList(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException(
+                "fromIndex " + fromIndex + ", toIndex " + toIndex
+                + ", size " + size);
+        }
+        return new CartesianProductTupleList(
+            this, start + fromIndex, toIndex - fromIndex);
+    }
+
+    @Override
+    protected TupleIterator tupleIteratorInternal() {
+        return new AbstractTupleListIterator() {
+            @Override
+            public void currentToArray(Member[] members, int offset) {
+                toArray(lastRet, members, offset);
+            }
+
+            @Override
+            public void setContext(Evaluator evaluator) {
+                for (int column = 0; column < arity; column++) {
+                    evaluator.setContext(get(column, lastRet));
+                }
+            }
+
+            @Override
+            public Member member(int column) {
+                return get(column, lastRet);
+            }
+        };
+    }
+
+    public List<Member> slice(final int column) {
+        if (column < 0 || column >= arity) {
+            throw new IndexOutOfBoundsException();
+        }
+        return new AbstractList<Member>() {
+            @Override
+            public Member get(int index) {
+                return CartesianProductTupleList.this.get(column, index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    public TupleList cloneList(int capacity) {
+        final TupleList list =
+            TupleCollections.createList(
+                arity, capacity < 0 ? size : capacity);
+        if (capacity < 0) {
+            final Member[] members = new Member[arity];
+            for (int i = 0; i < size; i++) {
+                toArray(i, members, 0);
+                list.addTuple(members);
+            }
+        }
+        return list;
+    }
+
+    public void addTuple(Member... members) {
+        throw new UnsupportedOperationException();
+    }
+
+    public TupleList project(final int[] destIndices) {
+        return new DelegatingTupleList(
+            destIndices.length,
+            new AbstractList<List<Member>>() {
+                public List<Member> get(int index) {
+                    final Member[] members = new Member[destIndices.length];
+                    for (int i = 0; i < destIndices.length; i++) {
+                        members[i] =
+                            CartesianProductTupleList.this.get(
+                                destIndices[i], index);
+                    }
+                    return Util.flatList(members);
+                }
+
+                public int size() {
+                    return size;
+                }
+            });
+    }
+
+    public TupleList withPositionCallback(
+        final PositionCallback positionCallback)
+    {
+        return new DelegatingTupleList(
+            arity,
+            new AbstractList<List<Member>>() {
+                public List<Member> get(int index) {
+                    positionCallback.onPosition(index);
+                    return CartesianProductTupleList.this.get(index);
+                }
+
+                public int size() {
+                    return size;
+                }
+            });
+    }
+}
+
+// End CartesianProductTupleList.java
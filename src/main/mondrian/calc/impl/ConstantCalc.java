@@ -16,6 +16,7 @@ import mondrian.olap.type.*;
 import mondrian.olap.type.DimensionType;
 import mondrian.olap.type.LevelType;
 
+import java.util.Arrays;
 import java.util.Map;
 
 /**
@@ -24,7 +25,7 @@ import java.util.Map;
  * @author jhyde
  * @since Sep 27, 2005
  */
-public class ConstantCalc extends GenericCalc {
+public class ConstantCalc extends GenericCalc implements VectorCalc {
     private final Object o;
     private final int i;
     private final double d;
@@ -93,6 +94,18 @@ public class ConstantCalc extends GenericCalc {
         return d;
     }
 
+    public int evaluateDoubles(
+        Evaluator evaluator,
+        TupleList list,
+        double[] values)
+    {
+        if (o != null && !(o instanceof Number)) {
+            return -1;
+        }
+        Arrays.fill(values, 0, list.size(), d);
+        return 0;
+    }
+
     public boolean dependsOn(Hierarchy hierarchy) {
         // A constant -- including a catalog element -- will evaluate to the
         // same result regardless of the evaluation context. For example, the
@@ -0,0 +1,505 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.calc.impl;
+
+import mondrian.calc.*;
+import mondrian.olap.*;
+import mondrian.olap.fun.FunUtil;
+import mondrian.olap.type.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Expression compiler that fuses trees of scalar operators into a single
+ * compiled expression.
+ *
+ * <p>{@link BetterExpCompiler} compiles each operator of an expression such
+ * as <code>([Measures].[Store Sales] - [Measures].[Store Cost]) /
+ * [Measures].[Store Sales] * 100</code> into its own {@link Calc}, so
+ * evaluating a deep arithmetic expression makes a virtual call through the
+ * {@link DoubleCalc} interface at every node. This compiler instead flattens
+ * the arithmetic operators (<code>+</code>, <code>-</code>, <code>*</code>,
+ * <code>/</code>, unary <code>-</code>), the numeric comparison operators,
+ * <code>IIf</code> and <code>CoalesceEmpty</code> into a program of
+ * primitive-typed nodes that is evaluated by a single interpreter method.
+ * Any other expression, for example a member value lookup or an aggregate
+ * function, is a leaf of the program and is compiled as usual; the program
+ * makes a virtual call only when it evaluates a leaf.
+ *
+ * <p>The results are the same as those of {@link BetterExpCompiler},
+ * including the treatment of null values and of null denominators.
+ *
+ * <p>To use this compiler, set the
+ * {@link MondrianProperties#ExpCompilerClass mondrian.calc.ExpCompiler.class}
+ * property to <code>mondrian.calc.impl.FusingExpCompiler</code>.
+ */
+public class FusingExpCompiler extends BetterExpCompiler {
+    private static final int CONSTANT = 0;
+    private static final int DOUBLE_LEAF = 1;
+    private static final int BOOLEAN_LEAF = 2;
+    private static final int ADD = 3;
+    private static final int SUBTRACT = 4;
+    private static final int MULTIPLY = 5;
+    private static final int DIVIDE = 6;
+    private static final int DIVIDE_NULL = 7;
+    private static final int NEGATE = 8;
+    private static final int IIF = 9;
+    private static final int COALESCE = 10;
+    private static final int EQ = 11;
+    private static final int NE = 12;
+    private static final int LT = 13;
+    private static final int LE = 14;
+    private static final int GT = 15;
+    private static final int GE = 16;
+
+    /**
+     * Minimum number of operators that an expression must have to be fused.
+     * A single operator is compiled as usual, so that it retains
+     * optimizations such as {@link VectorCalc}.
+     */
+    private static final int MIN_OPERATOR_COUNT = 2;
+
+    public FusingExpCompiler(Evaluator evaluator, Validator validator) {
+        super(evaluator, validator);
+    }
+
+    public FusingExpCompiler(
+        Evaluator evaluator,
+        Validator validator,
+        List<ResultStyle> resultStyles)
+    {
+        super(evaluator, validator, resultStyles);
+    }
+
+    public Calc compile(Exp exp) {
+        final int op = operator(exp);
+        if (op >= 0
+            && op != IIF
+            && op != COALESCE
+            && countOperators(exp, isComparison(op)) >= MIN_OPERATOR_COUNT)
+        {
+            final ProgramBuilder builder = new ProgramBuilder();
+            if (isComparison(op)) {
+                final int root = builder.addBoolean(exp);
+                return new FusedBooleanCalc(exp, builder.build(), root);
+            } else {
+                final int root = builder.addDouble(exp);
+                return new FusedDoubleCalc(exp, builder.build(), root);
+            }
+        }
+        return super.compile(exp);
+    }
+
+    /**
+     * Returns the operator that an expression applies, or -1 if the
+     * expression cannot be fused.
+     */
+    private static int operator(Exp exp) {
+        if (!(exp instanceof ResolvedFunCall)) {
+            return -1;
+        }
+        final ResolvedFunCall call = (ResolvedFunCall) exp;
+        final FunDef funDef = call.getFunDef();
+        final String name = funDef.getName();
+        final int[] categories = funDef.getParameterCategories();
+        final int returnCategory = funDef.getReturnCategory() & Category.Mask;
+        switch (funDef.getSyntax()) {
+        case Infix:
+            if (categories.length != 2
+                || !isNumeric(categories[0])
+                || !isNumeric(categories[1]))
+            {
+                return -1;
+            }
+            if (returnCategory == Category.Numeric) {
+                if (name.equals("+")) {
+                    return ADD;
+                } else if (name.equals("-")) {
+                    return SUBTRACT;
+                } else if (name.equals("*")) {
+                    return MULTIPLY;
+                } else if (name.equals("/")) {
+                    return MondrianProperties.instance()
+                        .NullDenominatorProducesNull.get()
+                        ? DIVIDE_NULL
+                        : DIVIDE;
+                }
+            } else if (returnCategory == Category.Logical) {
+                if (name.equals("=")) {
+                    return EQ;
+                } else if (name.equals("<>")) {
+                    return NE;
+                } else if (name.equals("<")) {
+                    return LT;
+                } else if (name.equals("<=")) {
+                    return LE;
+                } else if (name.equals(">")) {
+                    return GT;
+                } else if (name.equals(">=")) {
+                    return GE;
+                }
+            }
+            return -1;
+        case Prefix:
+            if (name.equals("-")
+                && returnCategory == Category.Numeric
+                && categories.length == 1
+                && isNumeric(categories[0]))
+            {
+                return NEGATE;
+            }
+            return -1;
+        case Function:
+            if (returnCategory != Category.Numeric) {
+                return -1;
+            }
+            final Exp[] args = call.getArgs();
+            if (name.equalsIgnoreCase("IIf")
+                && args.length == 3
+                && (categories[0] & Category.Mask) == Category.Logical
+                && isNumericValue(args[1])
+                && isNumericValue(args[2]))
+            {
+                return IIF;
+            }
+            if (name.equalsIgnoreCase("CoalesceEmpty")) {
+                for (Exp arg : args) {
+                    if (!isNumericValue(arg)) {
+                        return -1;
+                    }
+                }
+                return COALESCE;
+            }
+            return -1;
+        default:
+            return -1;
+        }
+    }
+
+    private static boolean isNumeric(int category) {
+        return (category & Category.Mask) == Category.Numeric;
+    }
+
+    /**
+     * Returns whether an argument of <code>IIf</code> or
+     * <code>CoalesceEmpty</code> has a value that can be evaluated as a
+     * <code>double</code> with the same result as the function gives.
+     */
+    private static boolean isNumericValue(Exp exp) {
+        final Type type = exp.getType();
+        return type instanceof NumericType
+            || type instanceof NullType
+            || type instanceof MemberType
+            || type instanceof TupleType;
+    }
+
+    private static boolean isComparison(int op) {
+        return op >= EQ;
+    }
+
+    /**
+     * Returns the number of operators in an expression that would be fused.
+     *
+     * @param exp Expression
+     * @param bool Whether the expression is in a boolean context
+     * @return Number of operators
+     */
+    private static int countOperators(Exp exp, boolean bool) {
+        final int op = operator(exp);
+        if (op < 0 || isComparison(op) != bool) {
+            return 0;
+        }
+        final Exp[] args = ((ResolvedFunCall) exp).getArgs();
+        int n = 1;
+        for (int i = 0; i < args.length; i++) {
+            n += countOperators(args[i], op == IIF && i == 0);
+        }
+        return n;
+    }
+
+    /**
+     * Builds a {@link Program}. Compiles the leaves of the program using
+     * this compiler.
+     */
+    private class ProgramBuilder {
+        private final List<Integer> ops = new ArrayList<Integer>();
+        private final List<int[]> args = new ArrayList<int[]>();
+        private final List<Double> constants = new ArrayList<Double>();
+        private final List<Calc> leafCalcs = new ArrayList<Calc>();
+
+        private int node(int op, int arg0, int arg1, int arg2) {
+            return node(op, new int[] {arg0, arg1, arg2}, 0d, null);
+        }
+
+        private int node(int op, int[] args, double constant, Calc calc) {
+            ops.add(op);
+            this.args.add(args);
+            constants.add(constant);
+            leafCalcs.add(calc);
+            return ops.size() - 1;
+        }
+
+        int addDouble(Exp exp) {
+            final int op = operator(exp);
+            switch (op) {
+            case ADD:
+            case SUBTRACT:
+            case MULTIPLY:
+            case DIVIDE:
+            case DIVIDE_NULL: {
+                final Exp[] args = ((ResolvedFunCall) exp).getArgs();
+                final int arg0 = addDouble(args[0]);
+                final int arg1 = addDouble(args[1]);
+                return node(op, arg0, arg1, -1);
+            }
+            case NEGATE: {
+                final Exp[] args = ((ResolvedFunCall) exp).getArgs();
+                return node(op, addDouble(args[0]), -1, -1);
+            }
+            case IIF: {
+                final Exp[] args = ((ResolvedFunCall) exp).getArgs();
+                final int arg0 = addBoolean(args[0]);
+                final int arg1 = addDouble(args[1]);
+                final int arg2 = addDouble(args[2]);
+                return node(op, arg0, arg1, arg2);
+            }
+            case COALESCE: {
+                // CoalesceEmpty(a, b, c) becomes
+                // CoalesceEmpty(a, CoalesceEmpty(b, c)).
+                final Exp[] args = ((ResolvedFunCall) exp).getArgs();
+                final int[] nodes = new int[args.length];
+                for (int i = 0; i < args.length; i++) {
+                    nodes[i] = addDouble(args[i]);
+                }
+                int node = nodes[args.length - 1];
+                for (int i = args.length - 2; i >= 0; i--) {
+                    node = node(op, nodes[i], node, -1);
+                }
+                return node;
+            }
+            default:
+                final DoubleCalc calc = compileDouble(exp);
+                if (calc instanceof ConstantCalc) {
+                    return node(
+                        CONSTANT, null, calc.evaluateDouble(null), null);
+                }
+                return node(DOUBLE_LEAF, null, 0d, calc);
+            }
+        }
+
+        int addBoolean(Exp exp) {
+            final int op = operator(exp);
+            if (op >= 0 && isComparison(op)) {
+                final Exp[] args = ((ResolvedFunCall) exp).getArgs();
+                final int arg0 = addDouble(args[0]);
+                final int arg1 = addDouble(args[1]);
+                return node(op, arg0, arg1, -1);
+            }
+            return node(BOOLEAN_LEAF, null, 0d, compileBoolean(exp));
+        }
+
+        Program build() {
+            final int n = ops.size();
+            final Program program = new Program(n);
+            final List<Calc> calcList = new ArrayList<Calc>();
+            for (int i = 0; i < n; i++) {
+                final int op = ops.get(i);
+                program.ops[i] = op;
+                final int[] args = this.args.get(i);
+                if (args != null) {
+                    program.args0[i] = args[0];
+                    program.args1[i] = args[1];
+                    program.args2[i] = args[2];
+                }
+                program.constants[i] = constants.get(i);
+                final Calc calc = leafCalcs.get(i);
+                if (op == DOUBLE_LEAF) {
+                    program.doubleCalcs[i] = (DoubleCalc) calc;
+                    calcList.add(calc);
+                } else if (op == BOOLEAN_LEAF) {
+                    program.booleanCalcs[i] = (BooleanCalc) calc;
+                    calcList.add(calc);
+                }
+            }
+            program.leafCalcs = calcList.toArray(new Calc[calcList.size()]);
+            return program;
+        }
+    }
+
+    /**
+     * Fused expression. Each node has an operator and up to three arguments,
+     * which are the ordinals of other nodes; a leaf node has a constant or a
+     * compiled expression.
+     */
+    private static class Program {
+        final int[] ops;
+        final int[] args0;
+        final int[] args1;
+        final int[] args2;
+        final double[] constants;
+        final DoubleCalc[] doubleCalcs;
+        final BooleanCalc[] booleanCalcs;
+        Calc[] leafCalcs;
+
+        Program(int n) {
+            ops = new int[n];
+            args0 = new int[n];
+            args1 = new int[n];
+            args2 = new int[n];
+            constants = new double[n];
+            doubleCalcs = new DoubleCalc[n];
+            booleanCalcs = new BooleanCalc[n];
+        }
+
+        double evaluateDouble(int node, Evaluator evaluator) {
+            final double v0;
+            final double v1;
+            switch (ops[node]) {
+            case CONSTANT:
+                return constants[node];
+            case DOUBLE_LEAF:
+                return doubleCalcs[node].evaluateDouble(evaluator);
+            case ADD:
+                v0 = evaluateDouble(args0[node], evaluator);
+                v1 = evaluateDouble(args1[node], evaluator);
+                if (v0 == FunUtil.DoubleNull) {
+                    return v1;
+                } else if (v1 == FunUtil.DoubleNull) {
+                    return v0;
+                } else {
+                    return v0 + v1;
+                }
+            case SUBTRACT:
+                v0 = evaluateDouble(args0[node], evaluator);
+                v1 = evaluateDouble(args1[node], evaluator);
+                if (v0 == FunUtil.DoubleNull) {
+                    return v1 == FunUtil.DoubleNull ? FunUtil.DoubleNull : -v1;
+                } else if (v1 == FunUtil.DoubleNull) {
+                    return v0;
+                } else {
+                    return v0 - v1;
+                }
+            case MULTIPLY:
+                v0 = evaluateDouble(args0[node], evaluator);
+                v1 = evaluateDouble(args1[node], evaluator);
+                if (v0 == FunUtil.DoubleNull || v1 == FunUtil.DoubleNull) {
+                    return FunUtil.DoubleNull;
+                }
+                return v0 * v1;
+            case DIVIDE:
+                v0 = evaluateDouble(args0[node], evaluator);
+                v1 = evaluateDouble(args1[node], evaluator);
+                if (v0 == FunUtil.DoubleNull) {
+                    return FunUtil.DoubleNull;
+                } else if (v1 == FunUtil.DoubleNull) {
+                    return Double.POSITIVE_INFINITY;
+                }
+                return v0 / v1;
+            case DIVIDE_NULL:
+                v0 = evaluateDouble(args0[node], evaluator);
+                v1 = evaluateDouble(args1[node], evaluator);
+                if (v0 == FunUtil.DoubleNull || v1 == FunUtil.DoubleNull) {
+                    return FunUtil.DoubleNull;
+                }
+                return v0 / v1;
+            case NEGATE:
+                v0 = evaluateDouble(args0[node], evaluator);
+                return v0 == FunUtil.DoubleNull ? FunUtil.DoubleNull : -v0;
+            case IIF:
+                return evaluateDouble(
+                    evaluateBoolean(args0[node], evaluator)
+                        ? args1[node]
+                        : args2[node],
+                    evaluator);
+            case COALESCE:
+                v0 = evaluateDouble(args0[node], evaluator);
+                if (v0 != FunUtil.DoubleNull) {
+                    return v0;
+                }
+                return evaluateDouble(args1[node], evaluator);
+            default:
+                throw Util.newInternal("not a numeric operator: " + ops[node]);
+            }
+        }
+
+        boolean evaluateBoolean(int node, Evaluator evaluator) {
+            final int op = ops[node];
+            if (op == BOOLEAN_LEAF) {
+                return booleanCalcs[node].evaluateBoolean(evaluator);
+            }
+            final double v0 = evaluateDouble(args0[node], evaluator);
+            final double v1 = evaluateDouble(args1[node], evaluator);
+            if (Double.isNaN(v0)
+                || Double.isNaN(v1)
+                || v0 == FunUtil.DoubleNull
+                || v1 == FunUtil.DoubleNull)
+            {
+                return FunUtil.BooleanNull;
+            }
+            switch (op) {
+            case EQ:
+                return v0 == v1;
+            case NE:
+                return v0 != v1;
+            case LT:
+                return v0 < v1;
+            case LE:
+                return v0 <= v1;
+            case GT:
+                return v0 > v1;
+            case GE:
+                return v0 >= v1;
+            default:
+                throw Util.newInternal("not a boolean operator: " + op);
+            }
+        }
+    }
+
+    /**
+     * Compiled expression that evaluates a fused program as a
+     * <code>double</code>.
+     */
+    private static class FusedDoubleCalc extends AbstractDoubleCalc {
+        private final Program program;
+        private final int root;
+
+        FusedDoubleCalc(Exp exp, Program program, int root) {
+            super(exp, program.leafCalcs);
+            this.program = program;
+            this.root = root;
+        }
+
+        public double evaluateDouble(Evaluator evaluator) {
+            return program.evaluateDouble(root, evaluator);
+        }
+    }
+
+    /**
+     * Compiled expression that evaluates a fused program as a
+     * <code>boolean</code>.
+     */
+    private static class FusedBooleanCalc extends AbstractBooleanCalc {
+        private final Program program;
+        private final int root;
+
+        FusedBooleanCalc(Exp exp, Program program, int root) {
+            super(exp, program.leafCalcs);
+            this.program = program;
+            this.root = root;
+        }
+
+        public boolean evaluateBoolean(Evaluator evaluator) {
+            return program.evaluateBoolean(root, evaluator);
+        }
+    }
+}
+
+// End FusingExpCompiler.java
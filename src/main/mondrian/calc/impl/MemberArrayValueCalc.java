@@ -9,8 +9,7 @@
 */
 package mondrian.calc.impl;
 
-import mondrian.calc.Calc;
-import mondrian.calc.MemberCalc;
+import mondrian.calc.*;
 import mondrian.olap.*;
 import mondrian.olap.type.ScalarType;
 import mondrian.olap.type.Type;
@@ -28,9 +27,11 @@ import mondrian.olap.type.Type;
  *
  * @author jhyde
  */
-public class MemberArrayValueCalc extends GenericCalc {
+public class MemberArrayValueCalc
+    extends GenericCalc
+    implements VectorCalc
+{
     private final MemberCalc[] memberCalcs;
-    private final Member[] members;
     private final boolean nullCheck;
 
     /**
@@ -52,10 +53,12 @@ public class MemberArrayValueCalc extends GenericCalc {
         final Type type = exp.getType();
         assert type instanceof ScalarType : exp;
         this.memberCalcs = memberCalcs;
-        this.members = new Member[memberCalcs.length];
     }
 
     public Object evaluate(Evaluator evaluator) {
+        // Calcs are shared between the threads that evaluate the chunks of a
+        // parallel query, so the members must not be held in a field.
+        final Member[] members = new Member[memberCalcs.length];
         final int savepoint = evaluator.savepoint();
         for (int i = 0; i < memberCalcs.length; i++) {
             MemberCalc memberCalc = memberCalcs[i];
@@ -83,6 +86,41 @@ public class MemberArrayValueCalc extends GenericCalc {
         return result;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>If the members do not depend on the tuples of the list, evaluates
+     * them once, and if the cells of all of the tuples are in one segment,
+     * reads them from the segment in one pass.
+     */
+    public int evaluateDoubles(
+        Evaluator evaluator,
+        TupleList list,
+        double[] values)
+    {
+        if (nullCheck) {
+            return evaluateValues(this, evaluator, list, values);
+        }
+        final Member[] overrides = new Member[memberCalcs.length];
+        final int savepoint = evaluator.savepoint();
+        for (int i = 0; i < memberCalcs.length; i++) {
+            final Member member =
+                dependsOnList(memberCalcs[i], list)
+                    ? null
+                    : memberCalcs[i].evaluateMember(evaluator);
+            if (member == null || member.isNull()) {
+                evaluator.restore(savepoint);
+                return evaluateValues(this, evaluator, list, values);
+            }
+            // Later members are evaluated in the context of earlier ones, as
+            // in evaluate.
+            evaluator.setContext(member);
+            overrides[i] = member;
+        }
+        evaluator.restore(savepoint);
+        return evaluateCellValues(this, evaluator, list, values, overrides);
+    }
+
     public Calc[] getCalcs() {
         return memberCalcs;
     }
@@ -9,8 +9,7 @@
 */
 package mondrian.calc.impl;
 
-import mondrian.calc.Calc;
-import mondrian.calc.MemberCalc;
+import mondrian.calc.*;
 import mondrian.olap.*;
 import mondrian.olap.type.ScalarType;
 import mondrian.olap.type.Type;
@@ -29,7 +28,7 @@ import mondrian.olap.type.Type;
  * @author jhyde
  * @since Sep 27, 2005
  */
-public class MemberValueCalc extends GenericCalc {
+public class MemberValueCalc extends GenericCalc implements VectorCalc {
     private final MemberCalc memberCalc;
     private final boolean nullCheck;
 
@@ -102,6 +101,28 @@ public class MemberValueCalc extends GenericCalc {
         return result;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>If the member does not depend on the tuples of the list, evaluates
+     * it once, and if the cells of all of the tuples are in one segment,
+     * reads them from the segment in one pass.
+     */
+    public int evaluateDoubles(
+        Evaluator evaluator,
+        TupleList list,
+        double[] values)
+    {
+        if (nullCheck || dependsOnList(memberCalc, list)) {
+            return evaluateValues(this, evaluator, list, values);
+        }
+        final Member member = memberCalc.evaluateMember(evaluator);
+        if (member == null || member.isNull()) {
+            return evaluateValues(this, evaluator, list, values);
+        }
+        return evaluateCellValues(this, evaluator, list, values, member);
+    }
+
     public Calc[] getCalcs() {
         return new MemberCalc[] {memberCalc};
     }
@@ -0,0 +1,302 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.calc.impl;
+
+import mondrian.calc.TupleList;
+import mondrian.olap.Member;
+
+import java.util.*;
+
+/**
+ * Set of tuples of a given arity, used by set functions such as
+ * <code>Distinct</code> and <code>Union</code> to find duplicate tuples.
+ *
+ * <p>A {@code HashSet<List<Member>>} needs a list object for each tuple,
+ * and computes its hash code by iterating over it. This set instead reads
+ * the members of a tuple directly from a {@link TupleList}, by row and
+ * column, and copies them end-to-end into an array, as
+ * {@link ArrayTupleList} does. Lookups therefore allocate nothing.
+ *
+ * <p>Tuples are equal if their members are equal according to
+ * {@link Member#equals(Object)}, as for lists of members.
+ *
+ * <p>The table uses open addressing with linear probing. Tuples cannot be
+ * removed.
+ *
+ * <p>The arrays start small and double as tuples are added. If they cannot
+ * grow any further, because the array of members would exceed the maximum
+ * array length, further tuples are held in a {@link HashMap} of member lists.
+ *
+ * <p>This class is not thread-safe.
+ */
+public class TupleHashSet {
+    /** Largest array that the JVM can reliably allocate. */
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    /**
+     * Largest number of tuples for which arrays are allocated up front,
+     * however many tuples are expected. The expected size of a lazy list
+     * may be far larger than the number of distinct tuples.
+     */
+    private static final int MAX_INITIAL_CAPACITY = 1 << 12;
+
+    private final int arity;
+    /** Largest number of tuples that the arrays can hold. */
+    private final int maxCapacity;
+    /** Members of the tuples in the set, end-to-end, in order of addition. */
+    private Member[] members;
+    /** Hash code of each tuple in the set, in order of addition. */
+    private int[] hashes;
+    /** Open-addressed table; each slot is 0 or 1 + the ordinal of a tuple. */
+    private int[] table;
+    /** Number of tuples in the arrays. */
+    private int size;
+    /**
+     * Ordinals of tuples that did not fit into the arrays, keyed by their
+     * members; null until the arrays are full.
+     */
+    private Map<List<Member>, Integer> overflowMap;
+    /** Tuples that did not fit into the arrays, in order of addition. */
+    private List<List<Member>> overflowList;
+
+    /**
+     * Creates an empty TupleHashSet.
+     *
+     * @param arity Arity of tuples
+     * @param expectedSize Expected number of tuples; a hint
+     */
+    public TupleHashSet(int arity, int expectedSize) {
+        this(arity, expectedSize, MAX_ARRAY_LENGTH);
+    }
+
+    /**
+     * Creates an empty TupleHashSet whose array of members has a given
+     * maximum length. For testing.
+     *
+     * @param arity Arity of tuples
+     * @param expectedSize Expected number of tuples; a hint
+     * @param maxArrayLength Maximum length of the array of members
+     */
+    TupleHashSet(int arity, int expectedSize, int maxArrayLength) {
+        assert arity > 0;
+        this.arity = arity;
+        // The table has at least twice as many slots as there are tuples,
+        // and its size is a power of 2 that fits into an int.
+        this.maxCapacity = Math.min(maxArrayLength / arity, 1 << 29);
+        assert maxCapacity > 0;
+        final int capacity =
+            Math.min(
+                Math.max(expectedSize, 4),
+                Math.min(MAX_INITIAL_CAPACITY, maxCapacity));
+        members = new Member[capacity * arity];
+        hashes = new int[capacity];
+        int tableSize = 8;
+        while (tableSize < capacity * 2) {
+            tableSize *= 2;
+        }
+        table = new int[tableSize];
+    }
+
+    /**
+     * Returns the number of tuples in this set.
+     */
+    public int size() {
+        return overflowList == null ? size : size + overflowList.size();
+    }
+
+    /**
+     * Adds a tuple of a list to this set, if it is not already present.
+     *
+     * @param list List of tuples; its arity must be the same as this set's
+     * @param index Position of the tuple in the list
+     * @return Whether the tuple was added
+     */
+    public boolean add(TupleList list, int index) {
+        assert list.getArity() == arity;
+        final int hash = hash(list, index);
+        final int mask = table.length - 1;
+        int i = hash & mask;
+        for (int slot; (slot = table[i]) != 0; i = (i + 1) & mask) {
+            if (hashes[slot - 1] == hash && matches(slot - 1, list, index)) {
+                return false;
+            }
+        }
+        if (overflowMap != null) {
+            final List<Member> tuple = copyTuple(list, index);
+            if (overflowMap.containsKey(tuple)) {
+                return false;
+            }
+            overflowMap.put(tuple, size());
+            overflowList.add(tuple);
+            return true;
+        }
+        if (size == hashes.length && !grow()) {
+            overflowMap = new HashMap<List<Member>, Integer>();
+            overflowList = new ArrayList<List<Member>>();
+            final List<Member> tuple = copyTuple(list, index);
+            overflowMap.put(tuple, size);
+            overflowList.add(tuple);
+            return true;
+        }
+        for (int column = 0; column < arity; column++) {
+            members[size * arity + column] = list.get(column, index);
+        }
+        hashes[size] = hash;
+        table[i] = ++size;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Adds every tuple of a list to this set.
+     *
+     * @param list List of tuples
+     */
+    public void addAll(TupleList list) {
+        for (int i = 0, n = list.size(); i < n; i++) {
+            add(list, i);
+        }
+    }
+
+    /**
+     * Returns whether this set contains a tuple of a list.
+     *
+     * @param list List of tuples; its arity must be the same as this set's
+     * @param index Position of the tuple in the list
+     * @return Whether this set contains the tuple
+     */
+    public boolean contains(TupleList list, int index) {
+        return indexOf(list, index) >= 0;
+    }
+
+    /**
+     * Returns the ordinal of the tuple in this set that is equal to a tuple
+     * of a list, or -1 if there is none. Tuples are numbered in the order
+     * they were added.
+     *
+     * <p>Useful when tuples can be equal but still distinguishable, for
+     * example a tuple that contains a visual total member, and its member
+     * is required.
+     *
+     * @param list List of tuples; its arity must be the same as this set's
+     * @param index Position of the tuple in the list
+     * @return Ordinal of equal tuple in this set, or -1
+     */
+    public int indexOf(TupleList list, int index) {
+        assert list.getArity() == arity;
+        if (size == 0) {
+            return -1;
+        }
+        final int hash = hash(list, index);
+        final int mask = table.length - 1;
+        for (int i = hash & mask, slot;
+             (slot = table[i]) != 0;
+             i = (i + 1) & mask)
+        {
+            if (hashes[slot - 1] == hash && matches(slot - 1, list, index)) {
+                return slot - 1;
+            }
+        }
+        if (overflowMap != null) {
+            final Integer ordinal = overflowMap.get(copyTuple(list, index));
+            if (ordinal != null) {
+                return ordinal;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a member of a tuple in this set.
+     *
+     * @param ordinal Ordinal of the tuple, as returned by
+     *   {@link #indexOf(mondrian.calc.TupleList, int)}
+     * @param column Column
+     * @return Member
+     */
+    public Member get(int ordinal, int column) {
+        assert ordinal < size();
+        if (ordinal >= size) {
+            return overflowList.get(ordinal - size).get(column);
+        }
+        return members[ordinal * arity + column];
+    }
+
+    /**
+     * Doubles the capacity of the arrays, if they are not at their maximum
+     * capacity.
+     *
+     * @return Whether the arrays grew
+     */
+    private boolean grow() {
+        final int capacity =
+            (int) Math.min((long) hashes.length * 2, (long) maxCapacity);
+        if (capacity <= hashes.length) {
+            return false;
+        }
+        final Member[] newMembers = new Member[capacity * arity];
+        System.arraycopy(members, 0, newMembers, 0, size * arity);
+        members = newMembers;
+        final int[] newHashes = new int[capacity];
+        System.arraycopy(hashes, 0, newHashes, 0, size);
+        hashes = newHashes;
+        return true;
+    }
+
+    private List<Member> copyTuple(TupleList list, int index) {
+        final Member[] tuple = new Member[arity];
+        for (int column = 0; column < arity; column++) {
+            tuple[column] = list.get(column, index);
+        }
+        return Arrays.asList(tuple);
+    }
+
+    private int hash(TupleList list, int index) {
+        int h = 1;
+        for (int column = 0; column < arity; column++) {
+            final Member member = list.get(column, index);
+            h = 31 * h + (member == null ? 0 : member.hashCode());
+        }
+        // Spread the high bits, because the table uses the low bits.
+        return h ^ (h >>> 16);
+    }
+
+    private boolean matches(int ordinal, TupleList list, int index) {
+        final int offset = ordinal * arity;
+        for (int column = 0; column < arity; column++) {
+            final Member member = list.get(column, index);
+            final Member member1 = members[offset + column];
+            // Call equals on the probe, as HashSet does, because
+            // VisualTotalMember.equals is not symmetric.
+            if (member != member1
+                && (member == null || !member.equals(member1)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash(int tableSize) {
+        table = new int[tableSize];
+        final int mask = tableSize - 1;
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            int i = hashes[ordinal] & mask;
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = ordinal + 1;
+        }
+    }
+}
+
+// End TupleHashSet.java
@@ -9,7 +9,7 @@
 */
 package mondrian.calc.impl;
 
-import mondrian.calc.Calc;
+import mondrian.calc.*;
 import mondrian.olap.*;
 
 /**
@@ -21,7 +21,7 @@ import mondrian.olap.*;
  * @author jhyde
  * @since Sep 27, 2005
  */
-public class ValueCalc extends GenericCalc {
+public class ValueCalc extends GenericCalc implements VectorCalc {
     /**
      * Creates a ValueCalc.
      *
@@ -35,6 +35,20 @@ public class ValueCalc extends GenericCalc {
         return evaluator.evaluateCurrent();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>If the cells of all of the tuples are in one segment, reads them
+     * from the segment in one pass.
+     */
+    public int evaluateDoubles(
+        Evaluator evaluator,
+        TupleList list,
+        double[] values)
+    {
+        return evaluateCellValues(this, evaluator, list, values);
+    }
+
     public boolean dependsOn(Hierarchy hierarchy) {
         return true;
     }
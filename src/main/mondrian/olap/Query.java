@@ -91,7 +91,7 @@ public class Query extends QueryPart {
      */
     private final Cube cube;
 
-    private final Statement statement;
+    private Statement statement;
     public Calc[] axisCalcs;
     public Calc slicerCalc;
 
@@ -135,7 +135,12 @@ public class Query extends QueryPart {
     private ResultStyle resultStyle =
         Util.Retrowoven ? ResultStyle.LIST : ResultStyle.ITERABLE;
 
-    private Map<String, Object> evalCache = new HashMap<String, Object>();
+    /**
+     * Values that calcs store between iterations. Synchronized because the
+     * chunks of a parallel query are evaluated by several threads.
+     */
+    private final Map<String, Object> evalCache =
+        Collections.synchronizedMap(new HashMap<String, Object>());
 
     /**
      * List of aliased expressions defined in this query, and where they are
@@ -146,6 +151,17 @@ public class Query extends QueryPart {
         new ArrayList<ScopedNamedSet>();
     private boolean ownStatement;
 
+    /**
+     * Compiled expressions, keyed by expression, whether scalar, and result
+     * style. Evaluators cache compiled expressions only for one execution;
+     * this cache allows a query that is executed several times to compile
+     * each expression once. Used only if the query plan cache is enabled
+     * and the statement is not being profiled. Access must be synchronized,
+     * because cells may be evaluated in several threads.
+     */
+    private final Map<List<Object>, Calc> compiledExps =
+        new HashMap<List<Object>, Calc>();
+
     /**
      * Creates a Query.
      */
@@ -1251,6 +1267,12 @@ public class Query extends QueryPart {
     /**
      * Compiles an expression, using a cached compiled expression if available.
      *
+     * <p>Compiled expressions are cached only if
+     * {@link MondrianProperties#QueryPlanCacheMaxEntries} is positive, and
+     * never while the statement is being profiled, because a profiling
+     * compiler wraps each calc with a timer that reports to the profile of
+     * the statement that compiled it.
+     *
      * @param exp Expression
      * @param scalar Whether expression is scalar
      * @param resultStyle Preferred result style; if null, use query's default
@@ -1261,6 +1283,34 @@ public class Query extends QueryPart {
         Exp exp,
         boolean scalar,
         ResultStyle resultStyle)
+    {
+        if (MondrianProperties.instance().QueryPlanCacheMaxEntries.get() <= 0
+            || statement.getProfileHandler() != null)
+        {
+            return compileExpressionInternal(exp, scalar, resultStyle);
+        }
+        final List<Object> key =
+            Arrays.<Object>asList(
+                exp,
+                scalar,
+                resultStyle != null ? resultStyle : this.resultStyle);
+        Calc calc;
+        synchronized (compiledExps) {
+            calc = compiledExps.get(key);
+        }
+        if (calc == null) {
+            calc = compileExpressionInternal(exp, scalar, resultStyle);
+            synchronized (compiledExps) {
+                compiledExps.put(key, calc);
+            }
+        }
+        return calc;
+    }
+
+    private Calc compileExpressionInternal(
+        Exp exp,
+        boolean scalar,
+        ResultStyle resultStyle)
     {
         // REVIEW: Set query on a connection's shared internal statement is
         // not re-entrant.
@@ -1444,6 +1494,30 @@ public class Query extends QueryPart {
         return statement;
     }
 
+    /**
+     * Binds this query to a different statement.
+     *
+     * <p>Allows a query that has been parsed, validated and compiled to be
+     * executed by another statement, without doing that work again. The
+     * query must not be in use by its previous statement. Parameters that
+     * were assigned a value revert to their default values.
+     *
+     * @param statement Statement
+     *
+     * @see mondrian.rolap.QueryPlanCache
+     */
+    public void setStatement(Statement statement) {
+        this.statement = statement;
+        this.ownStatement = false;
+        this.alertedNonNativeFunDefs = new HashSet<FunDef>();
+        statement.setQuery(this);
+        for (Parameter parameter : getParameters()) {
+            if (parameter.isModifiable() && parameter.isSet()) {
+                parameter.unsetValue();
+            }
+        }
+    }
+
     /**
      * Sets that the query owns its statement; therefore it will need to
      * close it when the query is closed.
@@ -1394,10 +1394,8 @@ public class BuiltinFunTable extends FunTableImpl {
             {
                 final DoubleCalc calc0 = compiler.compileDouble(call.getArg(0));
                 final DoubleCalc calc1 = compiler.compileDouble(call.getArg(1));
-                return new AbstractDoubleCalc(call, new Calc[] {calc0, calc1}) {
-                    public double evaluateDouble(Evaluator evaluator) {
-                        final double v0 = calc0.evaluateDouble(evaluator);
-                        final double v1 = calc1.evaluateDouble(evaluator);
+                return new BinaryDoubleCalc(call, calc0, calc1) {
+                    protected double combine(double v0, double v1) {
                         if (v0 == DoubleNull) {
                             if (v1 == DoubleNull) {
                                 return DoubleNull;
@@ -1427,10 +1425,8 @@ public class BuiltinFunTable extends FunTableImpl {
             {
                 final DoubleCalc calc0 = compiler.compileDouble(call.getArg(0));
                 final DoubleCalc calc1 = compiler.compileDouble(call.getArg(1));
-                return new AbstractDoubleCalc(call, new Calc[] {calc0, calc1}) {
-                    public double evaluateDouble(Evaluator evaluator) {
-                        final double v0 = calc0.evaluateDouble(evaluator);
-                        final double v1 = calc1.evaluateDouble(evaluator);
+                return new BinaryDoubleCalc(call, calc0, calc1) {
+                    protected double combine(double v0, double v1) {
                         if (v0 == DoubleNull) {
                             if (v1 == DoubleNull) {
                                 return DoubleNull;
@@ -1460,10 +1456,8 @@ public class BuiltinFunTable extends FunTableImpl {
             {
                 final DoubleCalc calc0 = compiler.compileDouble(call.getArg(0));
                 final DoubleCalc calc1 = compiler.compileDouble(call.getArg(1));
-                return new AbstractDoubleCalc(call, new Calc[] {calc0, calc1}) {
-                    public double evaluateDouble(Evaluator evaluator) {
-                        final double v0 = calc0.evaluateDouble(evaluator);
-                        final double v1 = calc1.evaluateDouble(evaluator);
+                return new BinaryDoubleCalc(call, calc0, calc1) {
+                    protected double combine(double v0, double v1) {
                         // Multiply and divide return null if EITHER arg is
                         // null.
                         if (v0 == DoubleNull || v1 == DoubleNull) {
@@ -1500,12 +1494,8 @@ public class BuiltinFunTable extends FunTableImpl {
                 // Null. This is only used by certain applications and does not
                 // conform to MSAS behavior.
                 if (!isNullDenominatorProducesNull) {
-                    return new AbstractDoubleCalc(
-                        call, new Calc[] {calc0, calc1})
-                    {
-                        public double evaluateDouble(Evaluator evaluator) {
-                            final double v0 = calc0.evaluateDouble(evaluator);
-                            final double v1 = calc1.evaluateDouble(evaluator);
+                    return new BinaryDoubleCalc(call, calc0, calc1) {
+                        protected double combine(double v0, double v1) {
                             // Null in numerator always returns DoubleNull.
                             //
                             if (v0 == DoubleNull) {
@@ -1519,12 +1509,8 @@ public class BuiltinFunTable extends FunTableImpl {
                         }
                     };
                 } else {
-                    return new AbstractDoubleCalc(
-                        call, new Calc[] {calc0, calc1})
-                    {
-                        public double evaluateDouble(Evaluator evaluator) {
-                            final double v0 = calc0.evaluateDouble(evaluator);
-                            final double v1 = calc1.evaluateDouble(evaluator);
+                    return new BinaryDoubleCalc(call, calc0, calc1) {
+                        protected double combine(double v0, double v1) {
                             // Null in numerator or denominator returns
                             // DoubleNull.
                             if (v0 == DoubleNull || v1 == DoubleNull) {
@@ -37,7 +37,7 @@ class CountFunDef extends AbstractAggregateFunDef {
         super(dummyFunDef);
     }
 
-    public Calc compileCall(ResolvedFunCall call, ExpCompiler compiler) {
+    public Calc compileCall(final ResolvedFunCall call, ExpCompiler compiler) {
         final Calc calc =
             compiler.compileAs(
                 call.getArg(0), null, ResultStyle.ITERABLE_ANY);
@@ -50,6 +50,15 @@ class CountFunDef extends AbstractAggregateFunDef {
             new Calc[] {calc})
         {
             public int evaluateInteger(Evaluator evaluator) {
+                // Use a native evaluator, if more efficient.
+                final NativeEvaluator nativeEvaluator =
+                    evaluator.getSchemaReader().getNativeSetEvaluator(
+                        call.getFunDef(), call.getArgs(), evaluator, this);
+                if (nativeEvaluator != null) {
+                    return ((Number) nativeEvaluator.execute(
+                        ResultStyle.VALUE)).intValue();
+                }
+
                 final int savepoint = evaluator.savepoint();
                 evaluator.setNonEmpty(false);
                 final int count;
@@ -16,7 +16,8 @@ import mondrian.mdx.*;
 import mondrian.olap.*;
 import mondrian.olap.type.*;
 import mondrian.rolap.RolapEvaluator;
-import mondrian.util.CartesianProductList;
+import mondrian.rolap.SegmentCrossJoin;
+import mondrian.util.Pair;
 
 import java.util.*;
 
@@ -201,6 +202,12 @@ public class CrossJoinFunDef extends FunDefBase {
                 o2 = l2;
             }
 
+            if (o1 instanceof TupleList && o2 instanceof TupleList) {
+                // Both are lists, so the product can be a list too, whose
+                // size and tuples are computed without iterating.
+                return new CartesianProductTupleList(
+                    Arrays.asList((TupleList) o1, (TupleList) o2));
+            }
             return makeIterable(o1, o2);
         }
 
@@ -363,6 +370,13 @@ public class CrossJoinFunDef extends FunDefBase {
                     l1.getArity() + l2.getArity());
             }
 
+            if (evaluator.isNonEmpty()) {
+                final TupleList list =
+                    nonEmptyCrossJoin(evaluator, l1, l2, call);
+                if (list != null) {
+                    return list;
+                }
+            }
             return makeList(l1, l2);
         }
 
@@ -379,30 +393,7 @@ public class CrossJoinFunDef extends FunDefBase {
         }
 
         protected TupleList makeList(final TupleList l1, final TupleList l2) {
-            final int arity = l1.getArity() + l2.getArity();
-            return new DelegatingTupleList(
-                arity,
-                new AbstractList<List<Member>>() {
-                    final List<List<List<Member>>> lists =
-                        Arrays.<List<List<Member>>>asList(
-                            l1, l2);
-                    final Member[] members = new Member[arity];
-
-                    final CartesianProductList cartesianProductList =
-                        new CartesianProductList<List<Member>>(
-                            lists);
-
-                    @Override
-                    public List<Member> get(int index) {
-                        cartesianProductList.getIntoArray(index, members);
-                        return Util.flatList(members);
-                    }
-
-                    @Override
-                    public int size() {
-                        return cartesianProductList.size();
-                    }
-                });
+            return new CartesianProductTupleList(Arrays.asList(l1, l2));
         }
     }
 
@@ -670,94 +661,15 @@ public class CrossJoinFunDef extends FunDefBase {
     }
 
     /**
-     * This is the entry point to the crossjoin non-empty optimizer code.
-     *
-     * <p>What one wants to determine is for each individual Member of the input
-     * parameter list, a 'List-Member', whether across a slice there is any
-     * data.
-     *
-     * <p>But what data?
-     *
-     * <p>For Members other than those in the list, the 'non-List-Members',
-     * one wants to consider
-     * all data across the scope of these other Members. For instance, if
-     * Time is not a List-Member, then one wants to consider data
-     * across All Time. Or, if Customer is not a List-Member, then
-     * look at data across All Customers. The theory here, is if there
-     * is no data for a particular Member of the list where all other
-     * Members not part of the list are span their complete hierarchy, then
-     * there is certainly no data for Members of that Hierarchy at a
-     * more specific Level (more on this below).
-     *
-     * <p>When a Member that is a non-List-Member is part of a Hierarchy
-     * that has an
-     * All Member (hasAll="true"), then its very easy to make sure that
-     * the All Member is used during the optimization.
-     * If a non-List-Member is part of a Hierarchy that does not have
-     * an All Member, then one must, in fact, iterate over all top-level
-     * Members of the Hierarchy!!! - otherwise a List-Member might
-     * be excluded because the optimization code was not looking everywhere.
-     *
-     * <p>Concerning default Members for those Hierarchies for the
-     * non-List-Members, ignore them. What is wanted is either the
-     * All Member or one must iterate across all top-level Members, what
-     * happens to be the default Member of the Hierarchy is of no relevant.
-     *
-     * <p>The Measures Hierarchy has special considerations. First, there is
-     * no All Measure. But, certainly one need only involve Measures
-     * that are actually in the query... yes and no. For Calculated Measures
-     * one must also get all of the non-Calculated Measures that make up
-     * each Calculated Measure. Thus, one ends up iterating across all
-     * Calculated and non-Calculated Measures that are explicitly
-     * mentioned in the query as well as all Calculated and non-Calculated
-     * Measures that are used to define the Calculated Measures in
-     * the query. Why all of these? because this represents the total
-     * scope of possible Measures that might yield a non-null value
-     * for the List-Members and that is what we what to find. It might
-     * be a super set, but thats ok; we just do not want to miss anything.
-     *
-     * <p>For other Members, the default Member is used, but for Measures one
-     * should look for that data for all Measures associated with the query, not
-     * just one Measure. For a dense dataset this may not be a problem or even
-     * apparent, but for a sparse dataset, the first Measure may, in fact, have
-     * not data but other Measures associated with the query might.
-     * Hence, the solution here is to identify all Measures associated with the
-     * query and then for each Member of the list, determine if there is any
-     * data iterating across all Measures until non-null data is found or the
-     * end of the Measures is reached.
-     *
-     * <p>This is a non-optimistic implementation. This means that an
-     * element of the input parameter List is only not included in the
-     * returned result List if for no combination of Measures, non-All
-     * Members (for Hierarchies that have no All Members) and evaluator
-     * default Members did the element evaluate to non-null.
-     *
-     * @param evaluator Evaluator
-     *
-     * @param list      List of members or tuples
-     *
-     * @param call      Calling ResolvedFunCall used to determine what Measures
-     *                  to use
-     *
-     * @return List of elements from the input parameter list that have
-     * evaluated to non-null.
+     * Returns the stored measures that determine whether a tuple is empty:
+     * the measures of the query, and the stored measures that its calculated
+     * measures use. If empty, the current measure is used.
      */
-    protected TupleList nonEmptyList(
+    private Set<Member> getMeasureSet(
         Evaluator evaluator,
-        TupleList list,
         ResolvedFunCall call)
     {
-        if (list.isEmpty()) {
-            return list;
-        }
-
-        TupleList result =
-            TupleCollections.createList(
-                list.getArity(), (list.size() + 2) >> 1);
-
-        // Get all of the Measures
         final Query query = evaluator.getQuery();
-
         final String measureSetKey = "MEASURE_SET-" + ctag;
         Set<Member> measureSet =
             Util.cast((Set) query.getEvalCache(measureSetKey));
@@ -787,13 +699,38 @@ public class CrossJoinFunDef extends FunDefBase {
             query.putEvalCache(measureSetKey, measureSet);
         }
 
-        final String allMemberListKey = "ALL_MEMBER_LIST-" + ctag;
-        List<Member> allMemberList =
-            Util.cast((List) query.getEvalCache(allMemberListKey));
+        return measureSet;
+    }
+
+    /**
+     * Returns the members of the hierarchies that are not in a tuple that the
+     * crossjoin non-empty optimizer puts into the context: a list of 'all'
+     * members, and an array of the lists of members to iterate over for
+     * hierarchies that have no 'all' member or that have several members
+     * in the slicer.
+     *
+     * @param evaluator Evaluator
+     * @param listMembers Members of a tuple
+     * @param suffix Suffix of the keys under which the members are cached
+     *   in the query
+     * @return All members and non-all members
+     */
+    private Pair<List<Member>, Member[][]> getContextMembers(
+        Evaluator evaluator,
+        List<Member> listMembers,
+        String suffix)
+    {
+        final Query query = evaluator.getQuery();
+        final String allMemberListKey = "ALL_MEMBER_LIST-" + ctag + suffix;
+        final String nonAllMembersKey = "NON_ALL_MEMBERS-" + ctag + suffix;
 
-        final String nonAllMembersKey = "NON_ALL_MEMBERS-" + ctag;
+        // Read the entries in the reverse of the order in which they are
+        // written. Another thread evaluating a chunk of the same query may be
+        // writing them, and if the second is there then so is the first.
         Member[][] nonAllMembers =
             (Member[][]) query.getEvalCache(nonAllMembersKey);
+        List<Member> allMemberList =
+            Util.cast((List) query.getEvalCache(allMemberListKey));
         if (nonAllMembers == null) {
             //
             // Get all of the All Members and those Hierarchies that
@@ -801,8 +738,6 @@ public class CrossJoinFunDef extends FunDefBase {
             //
             Member[] evalMembers = evaluator.getMembers().clone();
 
-            List<Member> listMembers = list.get(0);
-
             // Remove listMembers from evalMembers and independentSlicerMembers
             for (Member lm : listMembers) {
                 Hierarchy h = lm.getHierarchy();
@@ -931,6 +866,159 @@ public class CrossJoinFunDef extends FunDefBase {
             query.putEvalCache(nonAllMembersKey, nonAllMembers);
         }
 
+        return Pair.of(allMemberList, nonAllMembers);
+    }
+
+    /**
+     * Returns the tuples of the cartesian product of two lists that are not
+     * empty, by the same rules as {@link #nonEmptyList}, reading them from
+     * cell segments rather than evaluating each tuple of the product. See
+     * {@link SegmentCrossJoin}.
+     *
+     * <p>Returns null if the product is smaller than
+     * {@link MondrianProperties#CrossJoinSegmentMinSize}, or cannot be
+     * computed this way; the caller must then evaluate each tuple.
+     *
+     * @param evaluator Evaluator
+     * @param list1 First list
+     * @param list2 Second list
+     * @param call Calling ResolvedFunCall used to determine what Measures
+     *   to use
+     * @return Non-empty tuples of the product, or null
+     */
+    protected TupleList nonEmptyCrossJoin(
+        Evaluator evaluator,
+        TupleList list1,
+        TupleList list2,
+        ResolvedFunCall call)
+    {
+        final int minSize =
+            MondrianProperties.instance().CrossJoinSegmentMinSize.get();
+        if (minSize <= 0
+            || (long) list1.size() * list2.size() < minSize
+            || !(evaluator instanceof RolapEvaluator))
+        {
+            return null;
+        }
+        final Set<Member> measureSet = getMeasureSet(evaluator, call);
+        final List<Member> listMembers = new ArrayList<Member>();
+        listMembers.addAll(list1.get(0));
+        listMembers.addAll(list2.get(0));
+        final Pair<List<Member>, Member[][]> contextMembers =
+            getContextMembers(evaluator, listMembers, "-PRODUCT");
+        if (contextMembers.right.length > 0) {
+            // Would have to iterate over the members of hierarchies with no
+            // 'all' member.
+            return null;
+        }
+        final int savepoint = evaluator.savepoint();
+        try {
+            evaluator.setContext(contextMembers.left);
+            final Collection<Member> measures =
+                measureSet.isEmpty()
+                    ? Collections.singletonList(evaluator.getMembers()[0])
+                    : measureSet;
+            return SegmentCrossJoin.nonEmptyCrossJoin(
+                (RolapEvaluator) evaluator, list1, list2, measures);
+        } finally {
+            evaluator.restore(savepoint);
+        }
+    }
+
+    /**
+     * This is the entry point to the crossjoin non-empty optimizer code.
+     *
+     * <p>What one wants to determine is for each individual Member of the input
+     * parameter list, a 'List-Member', whether across a slice there is any
+     * data.
+     *
+     * <p>But what data?
+     *
+     * <p>For Members other than those in the list, the 'non-List-Members',
+     * one wants to consider
+     * all data across the scope of these other Members. For instance, if
+     * Time is not a List-Member, then one wants to consider data
+     * across All Time. Or, if Customer is not a List-Member, then
+     * look at data across All Customers. The theory here, is if there
+     * is no data for a particular Member of the list where all other
+     * Members not part of the list are span their complete hierarchy, then
+     * there is certainly no data for Members of that Hierarchy at a
+     * more specific Level (more on this below).
+     *
+     * <p>When a Member that is a non-List-Member is part of a Hierarchy
+     * that has an
+     * All Member (hasAll="true"), then its very easy to make sure that
+     * the All Member is used during the optimization.
+     * If a non-List-Member is part of a Hierarchy that does not have
+     * an All Member, then one must, in fact, iterate over all top-level
+     * Members of the Hierarchy!!! - otherwise a List-Member might
+     * be excluded because the optimization code was not looking everywhere.
+     *
+     * <p>Concerning default Members for those Hierarchies for the
+     * non-List-Members, ignore them. What is wanted is either the
+     * All Member or one must iterate across all top-level Members, what
+     * happens to be the default Member of the Hierarchy is of no relevant.
+     *
+     * <p>The Measures Hierarchy has special considerations. First, there is
+     * no All Measure. But, certainly one need only involve Measures
+     * that are actually in the query... yes and no. For Calculated Measures
+     * one must also get all of the non-Calculated Measures that make up
+     * each Calculated Measure. Thus, one ends up iterating across all
+     * Calculated and non-Calculated Measures that are explicitly
+     * mentioned in the query as well as all Calculated and non-Calculated
+     * Measures that are used to define the Calculated Measures in
+     * the query. Why all of these? because this represents the total
+     * scope of possible Measures that might yield a non-null value
+     * for the List-Members and that is what we what to find. It might
+     * be a super set, but thats ok; we just do not want to miss anything.
+     *
+     * <p>For other Members, the default Member is used, but for Measures one
+     * should look for that data for all Measures associated with the query, not
+     * just one Measure. For a dense dataset this may not be a problem or even
+     * apparent, but for a sparse dataset, the first Measure may, in fact, have
+     * not data but other Measures associated with the query might.
+     * Hence, the solution here is to identify all Measures associated with the
+     * query and then for each Member of the list, determine if there is any
+     * data iterating across all Measures until non-null data is found or the
+     * end of the Measures is reached.
+     *
+     * <p>This is a non-optimistic implementation. This means that an
+     * element of the input parameter List is only not included in the
+     * returned result List if for no combination of Measures, non-All
+     * Members (for Hierarchies that have no All Members) and evaluator
+     * default Members did the element evaluate to non-null.
+     *
+     * @param evaluator Evaluator
+     *
+     * @param list      List of members or tuples
+     *
+     * @param call      Calling ResolvedFunCall used to determine what Measures
+     *                  to use
+     *
+     * @return List of elements from the input parameter list that have
+     * evaluated to non-null.
+     */
+    protected TupleList nonEmptyList(
+        Evaluator evaluator,
+        TupleList list,
+        ResolvedFunCall call)
+    {
+        if (list.isEmpty()) {
+            return list;
+        }
+
+        TupleList result =
+            TupleCollections.createList(
+                list.getArity(), (list.size() + 2) >> 1);
+
+        // Get all of the Measures
+        final Set<Member> measureSet = getMeasureSet(evaluator, call);
+
+        final Pair<List<Member>, Member[][]> contextMembers =
+            getContextMembers(evaluator, list.get(0), "");
+        final List<Member> allMemberList = contextMembers.left;
+        final Member[][] nonAllMembers = contextMembers.right;
+
         //
         // Determine if there is any data.
         //
@@ -938,6 +1026,20 @@ public class CrossJoinFunDef extends FunDefBase {
         final int savepoint = evaluator.savepoint();
         evaluator.setContext(allMemberList);
 
+        // If the cells of the tuples are in a segment, test them all at once.
+        final BitSet nonEmpty =
+            nonEmptyTuples(evaluator, list, measureSet, nonAllMembers);
+        if (nonEmpty != null) {
+            evaluator.restore(savepoint);
+            final TupleCursor cursor = list.tupleCursor();
+            for (int i = 0; cursor.forward(); i++) {
+                if (nonEmpty.get(i)) {
+                    result.addCurrent(cursor);
+                }
+            }
+            return result;
+        }
+
         // Iterate over elements of the input list. If for any combination of
         // Measure and non-All Members evaluation is non-null, then
         // add it to the result List.
@@ -958,6 +1060,48 @@ public class CrossJoinFunDef extends FunDefBase {
         return result;
     }
 
+    /**
+     * Returns which tuples of a list are not empty, by the same rules as
+     * {@link #nonEmptyList}, by looking up their cells in a cell segment. See
+     * {@link SegmentCrossJoin#nonEmptyTuples}.
+     *
+     * <p>Returns null if the list is smaller than
+     * {@link MondrianProperties#NonEmptySegmentMinSize}, or if its cells
+     * cannot be read from a segment; the caller must then evaluate each
+     * tuple.
+     *
+     * @param evaluator Evaluator, whose context contains the 'all' members
+     *   of the hierarchies not in the list
+     * @param list List of tuples
+     * @param measureSet Measures used in the query, or an empty set to use
+     *   the current measure
+     * @param nonAllMembers Top-level members of hierarchies that have no
+     *   'all' member
+     * @return Bitmap of non-empty tuples, or null
+     */
+    private static BitSet nonEmptyTuples(
+        Evaluator evaluator,
+        TupleList list,
+        Set<Member> measureSet,
+        Member[][] nonAllMembers)
+    {
+        final int minSize =
+            MondrianProperties.instance().NonEmptySegmentMinSize.get();
+        if (minSize <= 0
+            || list.size() < minSize
+            || nonAllMembers.length > 0
+            || !(evaluator instanceof RolapEvaluator))
+        {
+            return null;
+        }
+        final Collection<Member> measures =
+            measureSet.isEmpty()
+                ? Collections.singletonList(evaluator.getMembers()[0])
+                : measureSet;
+        return SegmentCrossJoin.nonEmptyTuples(
+            (RolapEvaluator) evaluator, list, measures);
+    }
+
     /**
      * Return <code>true</code> if for some combination of Members
      * from the nonAllMembers array of Member arrays and Measures from
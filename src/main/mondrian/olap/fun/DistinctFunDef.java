@@ -11,11 +11,9 @@ package mondrian.olap.fun;
 
 import mondrian.calc.*;
 import mondrian.calc.impl.AbstractListCalc;
+import mondrian.calc.impl.TupleHashSet;
 import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.Evaluator;
-import mondrian.olap.Member;
-
-import java.util.*;
 
 /**
  * Definition of the <code>Distinct</code> MDX function.
@@ -52,11 +50,12 @@ class DistinctFunDef extends FunDefBase {
 
         public TupleList evaluateList(Evaluator evaluator) {
             TupleList list = listCalc.evaluateList(evaluator);
-            Set<List<Member>> set = new HashSet<List<Member>>(list.size());
+            final TupleHashSet set =
+                new TupleHashSet(list.getArity(), list.size());
             TupleList result = list.cloneList(list.size());
-            for (List<Member> element : list) {
-                if (set.add(element)) {
-                    result.add(element);
+            for (int i = 0, n = list.size(); i < n; i++) {
+                if (set.add(list, i)) {
+                    result.add(list.get(i));
                 }
             }
             return result;
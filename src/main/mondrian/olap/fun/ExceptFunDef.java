@@ -12,11 +12,10 @@ package mondrian.olap.fun;
 import mondrian.calc.*;
 import mondrian.calc.impl.AbstractListCalc;
 import mondrian.calc.impl.ArrayTupleList;
+import mondrian.calc.impl.TupleHashSet;
 import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.*;
 
-import java.util.*;
-
 /**
  * Definition of the <code>Except</code> MDX function.
  *
@@ -51,12 +50,14 @@ class ExceptFunDef extends FunDefBase {
                 if (list1.isEmpty()) {
                     return list0;
                 }
-                final Set<List<Member>> set1 = new HashSet<List<Member>>(list1);
+                final TupleHashSet set1 =
+                    new TupleHashSet(list1.getArity(), list1.size());
+                set1.addAll(list1);
                 final TupleList result =
                     new ArrayTupleList(list0.getArity(), list0.size());
-                for (List<Member> tuple1 : list0) {
-                    if (!set1.contains(tuple1)) {
-                        result.add(tuple1);
+                for (int i = 0, n = list0.size(); i < n; i++) {
+                    if (!set1.contains(list0, i)) {
+                        result.add(list0.get(i));
                     }
                 }
                 return result;
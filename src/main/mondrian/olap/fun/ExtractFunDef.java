@@ -163,7 +163,7 @@ class ExtractFunDef extends FunDefBase {
         return ints;
     }
 
-    public Calc compileCall(ResolvedFunCall call, ExpCompiler compiler) {
+    public Calc compileCall(final ResolvedFunCall call, ExpCompiler compiler) {
         List<Hierarchy> extractedHierarchyList = new ArrayList<Hierarchy>();
         List<Integer> extractedOrdinalList = new ArrayList<Integer>();
         findExtractedHierarchies(
@@ -185,6 +185,15 @@ class ExtractFunDef extends FunDefBase {
         final int[] extractedOrdinals = toIntArray(extractedOrdinalList);
         return new AbstractListCalc(call, new Calc[]{listCalc}) {
             public TupleList evaluateList(Evaluator evaluator) {
+                // Use a native evaluator, if more efficient.
+                final NativeEvaluator nativeEvaluator =
+                    evaluator.getSchemaReader().getNativeSetEvaluator(
+                        call.getFunDef(), call.getArgs(), evaluator, this);
+                if (nativeEvaluator != null) {
+                    return
+                        (TupleList) nativeEvaluator.execute(ResultStyle.LIST);
+                }
+
                 TupleList result = TupleCollections.createList(outArity);
                 TupleList list = listCalc.evaluateList(evaluator);
                 Set<List<Member>> emittedTuples = new HashSet<List<Member>>();
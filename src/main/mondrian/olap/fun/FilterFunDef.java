@@ -4,18 +4,21 @@
 // http://www.eclipse.org/legal/epl-v10.html.
 // You must accept the terms of that agreement to use this software.
 //
-// Copyright (C) 2006-2011 Pentaho
+// Copyright (C) 2006-2012 Pentaho and others
 // All Rights Reserved.
 */
 package mondrian.olap.fun;
 
 import mondrian.calc.*;
 import mondrian.calc.impl.*;
+import mondrian.mdx.MemberExpr;
 import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.*;
+import mondrian.rolap.RolapEvaluator;
+import mondrian.rolap.SegmentCrossJoin;
 import mondrian.server.Locus;
 
-import java.util.List;
+import java.util.*;
 
 /**
  * Definition of the <code>Filter</code> MDX function.
@@ -99,6 +102,94 @@ class FilterFunDef extends FunDefBase {
         }
     }
 
+    /**
+     * Evaluates a filter whose condition is
+     * <code>NOT IsEmpty(&lt;measure&gt;)</code> by looking up the cells of
+     * all the tuples of a list in a cell segment, rather than evaluating the
+     * condition for each tuple. See {@link SegmentCrossJoin#nonEmptyTuples}.
+     *
+     * <p>Returns null if the condition does not have that form, if the list
+     * is smaller than {@link MondrianProperties#NonEmptySegmentMinSize}, or if
+     * the cells cannot be read from a segment; the caller must then evaluate
+     * the condition for each tuple.
+     *
+     * @param call Call to Filter
+     * @param evaluator Evaluator
+     * @param list List to filter
+     * @return Non-empty tuples of the list, or null
+     */
+    private static TupleList filterNonEmpty(
+        ResolvedFunCall call,
+        Evaluator evaluator,
+        TupleList list)
+    {
+        final int minSize =
+            MondrianProperties.instance().NonEmptySegmentMinSize.get();
+        if (minSize <= 0
+            || list.size() < minSize
+            || !(evaluator instanceof RolapEvaluator))
+        {
+            return null;
+        }
+        final Member measure = getNotIsEmptyMeasure(call.getArg(1));
+        if (measure == null) {
+            return null;
+        }
+        final BitSet nonEmpty =
+            SegmentCrossJoin.nonEmptyTuples(
+                (RolapEvaluator) evaluator,
+                list,
+                Collections.singletonList(measure));
+        if (nonEmpty == null) {
+            return null;
+        }
+        final TupleList result =
+            TupleCollections.createList(
+                list.getArity(), nonEmpty.cardinality());
+        final TupleCursor cursor = list.tupleCursor();
+        for (int i = 0; cursor.forward(); i++) {
+            if (nonEmpty.get(i)) {
+                result.addCurrent(cursor);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the measure that a search condition tests, if the condition
+     * has the form <code>NOT IsEmpty(&lt;measure&gt;)</code> or
+     * <code>NOT (&lt;measure&gt; IS EMPTY)</code>; otherwise returns null.
+     */
+    private static Member getNotIsEmptyMeasure(Exp condition) {
+        final ResolvedFunCall not = unwrapParentheses(condition);
+        if (not == null
+            || !not.getFunName().equalsIgnoreCase("NOT")
+            || not.getArgCount() != 1)
+        {
+            return null;
+        }
+        final ResolvedFunCall isEmpty = unwrapParentheses(not.getArg(0));
+        if (isEmpty == null
+            || !(isEmpty.getFunName().equalsIgnoreCase("IsEmpty")
+                 || isEmpty.getFunName().equalsIgnoreCase("IS EMPTY"))
+            || !(isEmpty.getArg(0) instanceof MemberExpr))
+        {
+            return null;
+        }
+        final Member member = ((MemberExpr) isEmpty.getArg(0)).getMember();
+        return member.isMeasure() ? member : null;
+    }
+
+    private static ResolvedFunCall unwrapParentheses(Exp exp) {
+        while (exp instanceof ResolvedFunCall
+            && ((ResolvedFunCall) exp).getFunName().equals("()")
+            && ((ResolvedFunCall) exp).getArgCount() == 1)
+        {
+            exp = ((ResolvedFunCall) exp).getArg(0);
+        }
+        return exp instanceof ResolvedFunCall ? (ResolvedFunCall) exp : null;
+    }
+
     private static abstract class BaseIterCalc extends AbstractIterCalc {
         protected BaseIterCalc(ResolvedFunCall call, Calc[] calcs) {
             super(call, calcs);
@@ -147,6 +238,11 @@ class FilterFunDef extends FunDefBase {
                 BooleanCalc bcalc = (BooleanCalc) calcs[1];
 
                 TupleList list = lcalc.evaluateList(evaluator);
+                final TupleList filtered =
+                    filterNonEmpty((ResolvedFunCall) exp, evaluator, list);
+                if (filtered != null) {
+                    return filtered;
+                }
 
                 // make list mutable; guess selectivity .5
                 TupleList result =
@@ -181,6 +277,11 @@ class FilterFunDef extends FunDefBase {
             ListCalc lcalc = (ListCalc) calcs[0];
             BooleanCalc bcalc = (BooleanCalc) calcs[1];
             TupleList members = lcalc.evaluateList(evaluator);
+            final TupleList filtered =
+                filterNonEmpty((ResolvedFunCall) exp, evaluator, members);
+            if (filtered != null) {
+                return filtered;
+            }
 
             // Not mutable, must create new list
             TupleList result = members.cloneList(members.size() / 2);
@@ -310,6 +411,11 @@ class FilterFunDef extends FunDefBase {
             ListCalc lcalc = (ListCalc) calcs[0];
             BooleanCalc bcalc = (BooleanCalc) calcs[1];
             TupleList members0 = lcalc.evaluateList(evaluator);
+            final TupleList filtered =
+                filterNonEmpty((ResolvedFunCall) exp, evaluator, members0);
+            if (filtered != null) {
+                return filtered;
+            }
 
             // make list mutable;
             // for capacity planning, guess selectivity = .5
@@ -342,6 +448,12 @@ class FilterFunDef extends FunDefBase {
                 ListCalc lcalc = (ListCalc) calcs[0];
                 BooleanCalc bcalc = (BooleanCalc) calcs[1];
                 TupleList members0 = lcalc.evaluateList(evaluator);
+                final TupleList filtered =
+                    filterNonEmpty(
+                        (ResolvedFunCall) exp, evaluator, members0);
+                if (filtered != null) {
+                    return filtered;
+                }
 
                 // Not mutable, must create new list;
                 // for capacity planning, guess selectivity = .5
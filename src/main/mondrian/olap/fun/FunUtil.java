@@ -12,6 +12,7 @@ package mondrian.olap.fun;
 
 import mondrian.calc.*;
 import mondrian.calc.impl.DelegatingTupleList;
+import mondrian.calc.impl.TupleHashSet;
 import mondrian.calc.impl.UnaryTupleList;
 import mondrian.mdx.*;
 import mondrian.olap.*;
@@ -247,7 +248,7 @@ public class FunUtil extends Util {
     static void addUnique(
         TupleList left,
         TupleList right,
-        Set<List<Member>> set)
+        TupleHashSet set)
     {
         assert left != null;
         assert right != null;
@@ -255,9 +256,8 @@ public class FunUtil extends Util {
             return;
         }
         for (int i = 0, n = right.size(); i < n; i++) {
-            List<Member> o = right.get(i);
-            if (set.add(o)) {
-                left.add(o);
+            if (set.add(right, i)) {
+                left.add(right.get(i));
             }
         }
     }
@@ -508,6 +508,29 @@ public class FunUtil extends Util {
         boolean timingEval = true;
         boolean timingSort = false;
         try {
+            if (brk) {
+                if (memberList == null) {
+                    memberList = new ArrayList<Member>();
+                    for (Member member : memberIter) {
+                        memberList.add(member);
+                    }
+                }
+                final Object[] values =
+                    evaluateValues(
+                        evaluator, exp, new UnaryTupleList(memberList));
+                evaluator.getTiming().markEnd(SORT_EVAL_TIMING_NAME);
+                timingEval = false;
+                evaluator.getTiming().markStart(SORT_TIMING_NAME);
+                timingSort = true;
+                permute(
+                    memberList,
+                    sortByValues(
+                        values.length,
+                        new Object[][] {values},
+                        new boolean[] {desc}));
+                return memberList;
+            }
+
             // REVIEW mberkowitz 1/09: test whether precomputing
             // values saves time.
             Map<Member, Object> mapMemberToValue;
@@ -569,6 +592,17 @@ public class FunUtil extends Util {
             }
         }
 
+        if (isBreak(keySpecList)) {
+            final TupleList tupleList = new UnaryTupleList(memberList);
+            permute(
+                memberList,
+                sortByValues(
+                    memberList.size(),
+                    evaluateValues(evaluator, keySpecList, tupleList),
+                    isDescending(keySpecList)));
+            return memberList;
+        }
+
         ComparatorChain chain = new ComparatorChain();
         for (SortKeySpec key : keySpecList) {
             boolean brk = key.direction.brk;
@@ -649,21 +683,20 @@ public class FunUtil extends Util {
                 tupleIterable.getArity(),
                 Arrays.asList(tuples));
 
-        Comparator<List<Member>> comparator;
         if (brk) {
-            BreakTupleComparator c =
-                new BreakTupleComparator(evaluator, exp, arity);
-            c.preloadValues(result);
-            comparator = c.wrap();
-            if (desc) {
-                comparator = Collections.reverseOrder(comparator);
-            }
-        } else {
-            comparator =
-                new HierarchicalTupleComparator(evaluator, exp, arity, desc)
-                .wrap();
-        }
-
+            // The copy is sorted, not the list that was passed in.
+            permute(
+                result,
+                sortByValues(
+                    tuples.length,
+                    new Object[][] {evaluateValues(evaluator, exp, result)},
+                    new boolean[] {desc}));
+            return result;
+        }
+
+        final Comparator<List<Member>> comparator =
+            new HierarchicalTupleComparator(evaluator, exp, arity, desc)
+            .wrap();
         Arrays.sort(tuples, comparator);
         return result;
     }
@@ -738,6 +771,16 @@ public class FunUtil extends Util {
             return tupleList;
         }
 
+        if (isBreak(keySpecList)) {
+            permute(
+                tupleList,
+                sortByValues(
+                    tupleList.size(),
+                    evaluateValues(evaluator, keySpecList, tupleList),
+                    isDescending(keySpecList)));
+            return tupleList;
+        }
+
         ComparatorChain chain = new ComparatorChain();
         for (SortKeySpec key : keySpecList) {
             boolean brk = key.direction.brk;
@@ -818,8 +861,18 @@ public class FunUtil extends Util {
         if (memberList.get(0).getDimension().isHighCardinality()) {
             return;
         }
-        Comparator<Member> comparator = new HierarchizeComparator(post);
-        Collections.sort(memberList, comparator);
+        final int[] ranks = rankHierarchically(memberList, post);
+        permute(
+            memberList,
+            IndexSorter.sort(
+                memberList.size(),
+                new IndexSorter.IndexComparator() {
+                    public int compare(int i, int j) {
+                        return ranks[i] < ranks[j]
+                            ? -1
+                            : ranks[i] == ranks[j] ? 0 : 1;
+                    }
+                }));
     }
 
     /**
@@ -842,12 +895,194 @@ public class FunUtil extends Util {
             hierarchizeMemberList(fixedList.slice(0), post);
             return fixedList;
         }
-        Comparator<List<Member>> comparator =
-            new HierarchizeTupleComparator(fixedList.getArity(), post).wrap();
-        Collections.sort(fixedList, comparator);
+        // Rank the members of each column once, then sort the tuples by
+        // their ranks, rather than walking up the hierarchy for every
+        // comparison.
+        final int[][] ranks = new int[fixedList.getArity()][];
+        for (int i = 0; i < ranks.length; i++) {
+            ranks[i] = rankHierarchically(fixedList.slice(i), post);
+        }
+        permute(
+            fixedList,
+            IndexSorter.sort(
+                fixedList.size(),
+                new IndexSorter.IndexComparator() {
+                    public int compare(int i, int j) {
+                        for (int[] columnRanks : ranks) {
+                            if (columnRanks[i] != columnRanks[j]) {
+                                return columnRanks[i] < columnRanks[j]
+                                    ? -1
+                                    : 1;
+                            }
+                        }
+                        return 0;
+                    }
+                }));
         return fixedList;
     }
 
+    /**
+     * Returns the rank of each member of a list in hierarchical order.
+     * Members that are equal have the same rank.
+     *
+     * <p>Each distinct member is compared hierarchically only
+     * O(log <i>d</i>) times, where <i>d</i> is the number of distinct
+     * members, so the tuples of a large crossjoin can then be sorted by
+     * comparing integers.
+     *
+     * @param memberList List of members
+     * @param post Whether to rank in post order; if false, ranks in pre order
+     * @return Rank of each member
+     */
+    private static int[] rankHierarchically(
+        List<Member> memberList,
+        boolean post)
+    {
+        final Map<Member, Integer> rankMap = new HashMap<Member, Integer>();
+        for (Member member : memberList) {
+            rankMap.put(member, null);
+        }
+        final Member[] members =
+            rankMap.keySet().toArray(new Member[rankMap.size()]);
+        Arrays.sort(members, new HierarchizeComparator(post));
+        int rank = 0;
+        for (int i = 0; i < members.length; i++) {
+            if (i > 0
+                && compareHierarchically(members[i - 1], members[i], post)
+                != 0)
+            {
+                rank = i;
+            }
+            rankMap.put(members[i], rank);
+        }
+        final int[] ranks = new int[memberList.size()];
+        int i = 0;
+        for (Member member : memberList) {
+            ranks[i++] = rankMap.get(member);
+        }
+        return ranks;
+    }
+
+    /**
+     * Returns whether every key of a sort is a break key, that is, it
+     * compares values without regard to the hierarchy.
+     */
+    private static boolean isBreak(List<SortKeySpec> keySpecList) {
+        for (SortKeySpec keySpec : keySpecList) {
+            if (!keySpec.direction.brk) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean[] isDescending(List<SortKeySpec> keySpecList) {
+        final boolean[] descending = new boolean[keySpecList.size()];
+        for (int i = 0; i < descending.length; i++) {
+            descending[i] = keySpecList.get(i).direction.descending;
+        }
+        return descending;
+    }
+
+    /**
+     * Evaluates each of a list of sort keys for each tuple of a list.
+     *
+     * @param evaluator Evaluator
+     * @param keySpecList Sort keys
+     * @param tupleList Tuples
+     * @return Values, indexed by key then by position of tuple
+     */
+    private static Object[][] evaluateValues(
+        Evaluator evaluator,
+        List<SortKeySpec> keySpecList,
+        TupleList tupleList)
+    {
+        final Object[][] values = new Object[keySpecList.size()][];
+        for (int i = 0; i < values.length; i++) {
+            values[i] =
+                evaluateValues(evaluator, keySpecList.get(i).key, tupleList);
+        }
+        return values;
+    }
+
+    /**
+     * Evaluates an expression for each tuple of a list. A null value is
+     * represented by {@link Util#nullValue}.
+     *
+     * @param evaluator Evaluator
+     * @param calc Compiled expression
+     * @param tupleList Tuples
+     * @return Value for each position of the list
+     */
+    private static Object[] evaluateValues(
+        Evaluator evaluator,
+        Calc calc,
+        TupleList tupleList)
+    {
+        final Object[] values = new Object[tupleList.size()];
+        final int savepoint = evaluator.savepoint();
+        try {
+            final TupleCursor cursor = tupleList.tupleCursor();
+            for (int i = 0; cursor.forward(); i++) {
+                cursor.setContext(evaluator);
+                final Object value = calc.evaluate(evaluator);
+                values[i] = value == null ? Util.nullValue : value;
+            }
+        } finally {
+            evaluator.restore(savepoint);
+        }
+        return values;
+    }
+
+    /**
+     * Sorts positions by values that have been evaluated in advance: by the
+     * value of the first key, then of the second key, and so forth, and
+     * finally by position.
+     *
+     * @param n Number of positions
+     * @param values Values, indexed by key then by position
+     * @param descending Whether each key sorts in descending order
+     * @return Positions in sorted order
+     */
+    private static int[] sortByValues(
+        int n,
+        final Object[][] values,
+        final boolean[] descending)
+    {
+        return IndexSorter.sort(
+            n,
+            new IndexSorter.IndexComparator() {
+                public int compare(int i, int j) {
+                    for (int k = 0; k < values.length; k++) {
+                        final int c =
+                            FunUtil.compareValues(values[k][i], values[k][j]);
+                        if (c != 0) {
+                            return descending[k] ? -c : c;
+                        }
+                    }
+                    return 0;
+                }
+            });
+    }
+
+    /**
+     * Rearranges a list in place so that its element at position {@code i}
+     * is the element that was at position {@code indexes[i]}.
+     *
+     * @param list List
+     * @param indexes Permutation of the positions of the list
+     */
+    private static <T> void permute(List<T> list, int[] indexes) {
+        final Object[] elements = list.toArray();
+        final ListIterator<T> iterator = list.listIterator();
+        for (int index : indexes) {
+            iterator.next();
+            @SuppressWarnings({"unchecked"})
+            final T element = (T) elements[index];
+            iterator.set(element);
+        }
+    }
+
     /**
      * Compares double-precision values according to MDX semantics.
      *
@@ -1255,24 +1490,15 @@ public class FunUtil extends Util {
         TupleList members,
         Calc calc)
     {
-        SetWrapper sw = evaluateSet(evaluator, members, calc);
-        if (sw.errorCount > 0) {
+        final Accumulator accumulator =
+            accumulate(evaluator, members, calc, false);
+        if (accumulator.errorCount > 0) {
             return Double.NaN;
-        } else {
-            final int size = sw.v.size();
-            if (size == 0) {
-                return Util.nullValue;
-            } else {
-                Double min = (Double) sw.v.get(0);
-                for (int i = 1; i < size; i++) {
-                    Double iValue = (Double) sw.v.get(i);
-                    if (iValue < min) {
-                        min = iValue;
-                    }
-                }
-                return min;
-            }
         }
+        accumulator.checkNumeric();
+        return accumulator.count == 0
+            ? Util.nullValue
+            : accumulator.min;
     }
 
     public static Object max(
@@ -1280,24 +1506,15 @@ public class FunUtil extends Util {
         TupleList members,
         Calc exp)
     {
-        SetWrapper sw = evaluateSet(evaluator, members, exp);
-        if (sw.errorCount > 0) {
+        final Accumulator accumulator =
+            accumulate(evaluator, members, exp, false);
+        if (accumulator.errorCount > 0) {
             return Double.NaN;
-        } else {
-            final int size = sw.v.size();
-            if (size == 0) {
-                return Util.nullValue;
-            } else {
-                Double max = (Double) sw.v.get(0);
-                for (int i = 1; i < size; i++) {
-                    Double iValue = (Double) sw.v.get(i);
-                    if (iValue > max) {
-                        max = iValue;
-                    }
-                }
-                return max;
-            }
         }
+        accumulator.checkNumeric();
+        return accumulator.count == 0
+            ? Util.nullValue
+            : accumulator.max;
     }
 
     static Object var(
@@ -1306,8 +1523,20 @@ public class FunUtil extends Util {
         Calc exp,
         boolean biased)
     {
-        SetWrapper sw = evaluateSet(evaluator, members, exp);
-        return _var(sw, biased);
+        final Accumulator accumulator =
+            accumulate(evaluator, members, exp, true);
+        if (accumulator.errorCount > 0) {
+            return new Double(Double.NaN);
+        }
+        accumulator.checkNumeric();
+        if (accumulator.count == 0) {
+            return Util.nullValue;
+        }
+        int n = accumulator.count;
+        if (!biased) {
+            n--;
+        }
+        return new Double(accumulator.m2 / (double) n);
     }
 
     private static Object _var(SetWrapper sw, boolean biased) {
@@ -1414,12 +1643,15 @@ public class FunUtil extends Util {
         TupleList members,
         Calc calc)
     {
-        SetWrapper sw = evaluateSet(evaluator, members, calc);
-        return (sw.errorCount > 0)
-            ? new Double(Double.NaN)
-            : (sw.v.size() == 0)
+        final Accumulator accumulator =
+            accumulate(evaluator, members, calc, false);
+        if (accumulator.errorCount > 0) {
+            return new Double(Double.NaN);
+        }
+        accumulator.checkNumeric();
+        return accumulator.count == 0
             ? Util.nullValue
-            : new Double(_avg(sw));
+            : new Double(accumulator.sum / (double) accumulator.count);
     }
 
     // TODO: parameterize inclusion of nulls; also, maybe make _avg a method of
@@ -1447,18 +1679,7 @@ public class FunUtil extends Util {
         TupleList members,
         Calc exp)
     {
-        SetWrapper sw = evaluateSet(evaluator, members, exp);
-        if (sw.errorCount > 0) {
-            return Double.NaN;
-        } else if (sw.v.size() == 0) {
-            return DoubleNull;
-        } else {
-            double sum = 0.0;
-            for (int i = 0; i < sw.v.size(); i++) {
-                sum += ((Double) sw.v.get(i)).doubleValue();
-            }
-            return sum;
-        }
+        return sumDouble(evaluator, (TupleIterable) members, exp);
     }
 
     public static double sumDouble(
@@ -1466,18 +1687,15 @@ public class FunUtil extends Util {
         TupleIterable iterable,
         Calc exp)
     {
-        SetWrapper sw = evaluateSet(evaluator, iterable, exp);
-        if (sw.errorCount > 0) {
+        final Accumulator accumulator =
+            accumulate(evaluator, iterable, exp, false);
+        if (accumulator.errorCount > 0) {
             return Double.NaN;
-        } else if (sw.v.size() == 0) {
-            return DoubleNull;
-        } else {
-            double sum = 0.0;
-            for (int i = 0; i < sw.v.size(); i++) {
-                sum += ((Double) sw.v.get(i)).doubleValue();
-            }
-            return sum;
         }
+        accumulator.checkNumeric();
+        return accumulator.count == 0
+            ? DoubleNull
+            : accumulator.sum;
     }
 
     public static int count(
@@ -1531,6 +1749,24 @@ public class FunUtil extends Util {
 
         // todo: treat constant exps as evaluateMembers() does
         SetWrapper retval = new SetWrapper();
+        if (members instanceof TupleList && calc instanceof VectorCalc) {
+            final TupleList list = (TupleList) members;
+            final double[] values = new double[list.size()];
+            final int errorCount =
+                ((VectorCalc) calc).evaluateDoubles(evaluator, list, values);
+            if (errorCount == 0) {
+                for (double value : values) {
+                    if (value == DoubleNull) {
+                        retval.nullCount++;
+                    } else {
+                        retval.v.add(value);
+                    }
+                }
+                return retval;
+            }
+            // Some value is an error or is not numeric; evaluate one tuple at
+            // a time, so that the wrapper contains the same values as before.
+        }
         final TupleCursor cursor = members.tupleCursor();
         while (cursor.forward()) {
             cursor.setContext(evaluator);
@@ -1553,6 +1789,73 @@ public class FunUtil extends Util {
         return retval;
     }
 
+    /**
+     * Evaluates {@code calc} over {@code members}, and accumulates the count,
+     * sum, minimum and maximum of the values, and optionally their variance.
+     *
+     * <p>Unlike {@link #evaluateSet(Evaluator, TupleIterable, Calc)}, does
+     * not build a list of values, so it uses constant memory however many
+     * tuples there are. Null values and errors are counted the same way.
+     *
+     * @param evaluator Evaluator
+     * @param members Tuples
+     * @param calc Expression
+     * @param variance Whether to accumulate the variance
+     * @return Accumulator
+     */
+    static Accumulator accumulate(
+        Evaluator evaluator,
+        TupleIterable members,
+        Calc calc,
+        boolean variance)
+    {
+        assert members != null;
+        assert calc != null;
+        assert calc.getType() instanceof ScalarType;
+
+        final Accumulator accumulator = new Accumulator(variance);
+        if (members instanceof TupleList && calc instanceof VectorCalc) {
+            final TupleList list = (TupleList) members;
+            final double[] values = new double[list.size()];
+            final int errorCount =
+                ((VectorCalc) calc).evaluateDoubles(evaluator, list, values);
+            if (errorCount == 0) {
+                for (double value : values) {
+                    if (value == DoubleNull) {
+                        accumulator.nullCount++;
+                    } else {
+                        accumulator.add(value);
+                    }
+                }
+                return accumulator;
+            } else if (errorCount > 0) {
+                // The result will be NaN; every tuple has been evaluated, so
+                // any cells that the values depend upon have been requested.
+                accumulator.errorCount = errorCount;
+                return accumulator;
+            }
+            // Some value is not numeric; evaluate one tuple at a time.
+        }
+        final TupleCursor cursor = members.tupleCursor();
+        while (cursor.forward()) {
+            cursor.setContext(evaluator);
+            Object o = calc.evaluate(evaluator);
+            if (o == null || o == Util.nullValue) {
+                accumulator.nullCount++;
+            } else if (o instanceof Throwable) {
+                // Carry on summing, so that if we are running in a
+                // BatchingCellReader, we find out all the dependent cells we
+                // need
+                accumulator.errorCount++;
+            } else if (o instanceof Number) {
+                accumulator.add(((Number) o).doubleValue());
+            } else if (accumulator.nonNumeric == null) {
+                accumulator.nonNumeric = o;
+            }
+        }
+        return accumulator;
+    }
+
     /**
      * Evaluates one or more expressions against the member list returning
      * a SetWrapper array. Where this differs very significantly from the
@@ -3047,30 +3350,6 @@ public class FunUtil extends Util {
         }
     }
 
-    /**
-     * Compares lists of {@link Member}s so as to convert them into hierarchical
-     * order. Applies lexicographic order to the array.
-     */
-    private static class HierarchizeTupleComparator extends TupleComparator {
-        private final boolean post;
-
-        HierarchizeTupleComparator(int arity, boolean post) {
-            super(arity);
-            this.post = post;
-        }
-
-        public int compare(List<Member> a1, List<Member> a2) {
-            for (int i = 0; i < arity; i++) {
-                Member m1 = a1.get(i), m2 = a2.get(i);
-                int c = FunUtil.compareHierarchically(m1, m2, post);
-                if (c != 0) {
-                    return c;
-                }
-            }
-            return 0;
-        }
-    }
-
     /**
      * Compares {@link Member}s so as to arrage them in prefix or postfix
      * hierarchical order.
@@ -3086,6 +3365,65 @@ public class FunUtil extends Util {
         }
     }
 
+    /**
+     * Streaming statistics over a sequence of <code>double</code> values.
+     * Populated by {@link FunUtil#accumulate}.
+     *
+     * <p>The variance is computed using Welford's algorithm, in one pass and
+     * without storing the values.
+     */
+    static class Accumulator {
+        private final boolean variance;
+        int errorCount;
+        int nullCount;
+        /** First value that was neither numeric, null nor an error. */
+        Object nonNumeric;
+        int count;
+        double sum;
+        double min;
+        double max;
+        double mean;
+        /** Sum of squares of differences from the mean. */
+        double m2;
+
+        Accumulator(boolean variance) {
+            this.variance = variance;
+        }
+
+        void add(double value) {
+            if (count == 0) {
+                min = value;
+                max = value;
+            } else {
+                if (value < min) {
+                    min = value;
+                }
+                if (value > max) {
+                    max = value;
+                }
+            }
+            ++count;
+            sum += value;
+            if (variance) {
+                final double delta = value - mean;
+                mean += delta / count;
+                m2 += delta * (value - mean);
+            }
+        }
+
+        /**
+         * Throws if a value was not numeric, as the aggregate functions did
+         * when they cast each value to {@link Double}.
+         */
+        void checkNumeric() {
+            if (nonNumeric != null) {
+                throw new ClassCastException(
+                    nonNumeric.getClass().getName()
+                    + " cannot be cast to java.lang.Double");
+            }
+        }
+    }
+
     static class SetWrapper {
         List v = new ArrayList();
         public int errorCount = 0, nullCount = 0;
@@ -83,6 +83,7 @@ class GenerateFunDef extends FunDefBase {
     }
 
     private static class GenerateListCalcImpl extends AbstractListCalc {
+        private final ResolvedFunCall call;
         private final IterCalc iterCalc1;
         private final ListCalc listCalc2;
         private final int arityOut;
@@ -96,6 +97,7 @@ class GenerateFunDef extends FunDefBase {
             boolean all)
         {
             super(call, new Calc[]{iterCalc, listCalc2});
+            this.call = call;
             this.iterCalc1 = iterCalc;
             this.listCalc2 = listCalc2;
             this.arityOut = arityOut;
@@ -103,6 +105,14 @@ class GenerateFunDef extends FunDefBase {
         }
 
         public TupleList evaluateList(Evaluator evaluator) {
+            // Use a native evaluator, if more efficient.
+            final NativeEvaluator nativeEvaluator =
+                evaluator.getSchemaReader().getNativeSetEvaluator(
+                    call.getFunDef(), call.getArgs(), evaluator, this);
+            if (nativeEvaluator != null) {
+                return (TupleList) nativeEvaluator.execute(ResultStyle.LIST);
+            }
+
             final int savepoint = evaluator.savepoint();
             evaluator.setNonEmpty(false);
             final TupleIterable iterable1 =
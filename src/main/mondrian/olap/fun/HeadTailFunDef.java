@@ -13,8 +13,7 @@ import mondrian.calc.*;
 import mondrian.calc.impl.AbstractListCalc;
 import mondrian.calc.impl.ConstantCalc;
 import mondrian.mdx.ResolvedFunCall;
-import mondrian.olap.Evaluator;
-import mondrian.olap.FunDef;
+import mondrian.olap.*;
 
 /**
  * Definition of the <code>Head</code> and <code>Tail</code>
@@ -47,7 +46,7 @@ class HeadTailFunDef extends FunDefBase {
         head = dummyFunDef.getName().equals("Head");
     }
 
-    public Calc compileCall(ResolvedFunCall call, ExpCompiler compiler) {
+    public Calc compileCall(final ResolvedFunCall call, ExpCompiler compiler) {
         final ListCalc listCalc =
             compiler.compileList(call.getArg(0));
         final IntegerCalc integerCalc =
@@ -59,6 +58,15 @@ class HeadTailFunDef extends FunDefBase {
                 call, new Calc[] {listCalc, integerCalc})
             {
                 public TupleList evaluateList(Evaluator evaluator) {
+                    // Use a native evaluator, if more efficient.
+                    final NativeEvaluator nativeEvaluator =
+                        evaluator.getSchemaReader().getNativeSetEvaluator(
+                            call.getFunDef(), call.getArgs(), evaluator, this);
+                    if (nativeEvaluator != null) {
+                        return (TupleList) nativeEvaluator.execute(
+                            ResultStyle.LIST);
+                    }
+
                     final int savepoint = evaluator.savepoint();
                     evaluator.setNonEmpty(false);
                     TupleList list = listCalc.evaluateList(evaluator);
@@ -12,8 +12,7 @@ package mondrian.olap.fun;
 import mondrian.calc.*;
 import mondrian.calc.impl.AbstractListCalc;
 import mondrian.mdx.ResolvedFunCall;
-import mondrian.olap.Evaluator;
-import mondrian.olap.FunDef;
+import mondrian.olap.*;
 
 /**
  * Definition of the <code>Hierarchize</code> MDX function.
@@ -36,13 +35,22 @@ class HierarchizeFunDef extends FunDefBase {
         super(dummyFunDef);
     }
 
-    public Calc compileCall(ResolvedFunCall call, ExpCompiler compiler) {
+    public Calc compileCall(final ResolvedFunCall call, ExpCompiler compiler) {
         final ListCalc listCalc =
             compiler.compileList(call.getArg(0), true);
         String order = getLiteralArg(call, 1, "PRE", prePost);
         final boolean post = order.equals("POST");
         return new AbstractListCalc(call, new Calc[] {listCalc}) {
             public TupleList evaluateList(Evaluator evaluator) {
+                // Use a native evaluator, if more efficient.
+                final NativeEvaluator nativeEvaluator =
+                    evaluator.getSchemaReader().getNativeSetEvaluator(
+                        call.getFunDef(), call.getArgs(), evaluator, this);
+                if (nativeEvaluator != null) {
+                    return (TupleList) nativeEvaluator.execute(
+                        ResultStyle.LIST);
+                }
+
                 TupleList list = listCalc.evaluateList(evaluator);
                 return hierarchizeTupleList(list, post);
             }
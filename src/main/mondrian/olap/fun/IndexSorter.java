@@ -0,0 +1,269 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.olap.fun;
+
+import mondrian.olap.MondrianProperties;
+import mondrian.olap.Util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Stable merge sort of the positions of a list, whose elements are compared
+ * by sort keys that have been computed in advance.
+ *
+ * <p>If the list has at least
+ * {@link MondrianProperties#ParallelSortThreshold} elements, it is divided
+ * into chunks that are sorted in parallel and then merged, pairs of chunks at
+ * a time. The comparator is therefore called from several threads, and must
+ * not use an {@link mondrian.olap.Evaluator} or any other object that is not
+ * thread-safe. Typically it compares values in arrays that were filled, in
+ * the caller's thread, before the sort started.
+ *
+ * <p>Positions that compare equal stay in their original order.
+ */
+class IndexSorter {
+    /**
+     * Executor that sorts and merges chunks. It has one thread per
+     * processor, shared by all queries.
+     */
+    private static final ExecutorService executor =
+        Util.getExecutorService(
+            Runtime.getRuntime().availableProcessors(),
+            Runtime.getRuntime().availableProcessors(),
+            1,
+            -1,
+            "mondrian.olap.fun.IndexSorter$executor");
+
+    /** Ranges shorter than this are sorted by insertion sort. */
+    private static final int INSERTION_SORT_THRESHOLD = 7;
+
+    private IndexSorter() {
+    }
+
+    /**
+     * Compares two positions of a list.
+     */
+    interface IndexComparator {
+        /**
+         * Compares the elements at two positions.
+         *
+         * @param i First position
+         * @param j Second position
+         * @return negative, zero or positive, as the element at position
+         *   {@code i} sorts before, with or after the element at position
+         *   {@code j}
+         */
+        int compare(int i, int j);
+    }
+
+    /**
+     * Sorts the positions 0 .. {@code n} - 1.
+     *
+     * @param n Number of elements
+     * @param comparator Comparator
+     * @return Positions, in sorted order
+     */
+    static int[] sort(int n, IndexComparator comparator) {
+        final int[] indexes = new int[n];
+        for (int i = 0; i < n; i++) {
+            indexes[i] = i;
+        }
+        final int[] work = new int[n];
+        final int threshold =
+            MondrianProperties.instance().ParallelSortThreshold.get();
+        if (threshold <= 0 || n < threshold || n < 2) {
+            mergeSort(indexes, work, 0, n, comparator);
+            return indexes;
+        }
+        final int chunkCount =
+            Math.min(
+                n,
+                Math.max(2, Runtime.getRuntime().availableProcessors()));
+        final int[] bounds = new int[chunkCount + 1];
+        for (int i = 0; i <= chunkCount; i++) {
+            bounds[i] = (int) ((long) n * i / chunkCount);
+        }
+        final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < chunkCount; i++) {
+            tasks.add(
+                new SortTask(
+                    indexes, work, bounds[i], bounds[i + 1], -1, comparator));
+        }
+        run(tasks);
+        for (int width = 1; width < chunkCount; width *= 2) {
+            tasks.clear();
+            for (int i = 0; i + width < chunkCount; i += 2 * width) {
+                tasks.add(
+                    new SortTask(
+                        indexes,
+                        work,
+                        bounds[i],
+                        bounds[Math.min(i + 2 * width, chunkCount)],
+                        bounds[i + width],
+                        comparator));
+            }
+            run(tasks);
+        }
+        return indexes;
+    }
+
+    /**
+     * Runs tasks in the executor, and waits for all of them to finish, even
+     * if one fails, so that no task is still writing to the arrays when this
+     * method returns.
+     *
+     * <p>If the calling thread is interrupted, cancels the tasks that have
+     * not started, restores the thread's interrupt status and throws. The
+     * sort is abandoned, so it does not matter that running tasks may still
+     * write to its arrays.
+     */
+    private static void run(List<Callable<Void>> tasks) {
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (Callable<Void> task : tasks) {
+            futures.add(executor.submit(task));
+        }
+        Throwable throwable = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                for (Future<Void> future2 : futures) {
+                    future2.cancel(false);
+                }
+                Thread.currentThread().interrupt();
+                throw Util.newError(e, "Interrupted while sorting");
+            } catch (ExecutionException e) {
+                if (throwable == null) {
+                    throwable = e.getCause();
+                }
+            }
+        }
+        if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        } else if (throwable instanceof Error) {
+            throw (Error) throwable;
+        } else if (throwable != null) {
+            throw Util.newError(throwable, "Error while sorting");
+        }
+    }
+
+    /**
+     * Sorts the range [{@code lo}, {@code hi}) of an array.
+     */
+    private static void mergeSort(
+        int[] indexes,
+        int[] work,
+        int lo,
+        int hi,
+        IndexComparator comparator)
+    {
+        if (hi - lo < INSERTION_SORT_THRESHOLD) {
+            for (int i = lo + 1; i < hi; i++) {
+                final int index = indexes[i];
+                int j = i;
+                for (; j > lo && comparator.compare(indexes[j - 1], index) > 0;
+                     j--)
+                {
+                    indexes[j] = indexes[j - 1];
+                }
+                indexes[j] = index;
+            }
+            return;
+        }
+        final int mid = (lo + hi) >>> 1;
+        mergeSort(indexes, work, lo, mid, comparator);
+        mergeSort(indexes, work, mid, hi, comparator);
+        merge(indexes, work, lo, mid, hi, comparator);
+    }
+
+    /**
+     * Merges the sorted ranges [{@code lo}, {@code mid}) and
+     * [{@code mid}, {@code hi}) of an array. On a tie, takes the element of
+     * the first range, so that the sort is stable.
+     */
+    private static void merge(
+        int[] indexes,
+        int[] work,
+        int lo,
+        int mid,
+        int hi,
+        IndexComparator comparator)
+    {
+        if (comparator.compare(indexes[mid - 1], indexes[mid]) <= 0) {
+            // Already in order.
+            return;
+        }
+        System.arraycopy(indexes, lo, work, lo, hi - lo);
+        int i = lo;
+        int j = mid;
+        for (int k = lo; k < hi; k++) {
+            if (j >= hi
+                || i < mid && comparator.compare(work[i], work[j]) <= 0)
+            {
+                indexes[k] = work[i++];
+            } else {
+                indexes[k] = work[j++];
+            }
+        }
+    }
+
+    /**
+     * Task that sorts a range of an array, or merges two adjacent sorted
+     * ranges. Tasks that run at the same time work on disjoint ranges.
+     */
+    private static class SortTask implements Callable<Void> {
+        private final int[] indexes;
+        private final int[] work;
+        private final int lo;
+        private final int hi;
+        private final int mid;
+        private final IndexComparator comparator;
+
+        /**
+         * Creates a SortTask.
+         *
+         * @param indexes Array to sort
+         * @param work Work array, the same length as the array to sort
+         * @param lo Start of range, inclusive
+         * @param hi End of range, exclusive
+         * @param mid Start of second sorted range, if the task merges; -1 if
+         *   the task sorts
+         * @param comparator Comparator
+         */
+        SortTask(
+            int[] indexes,
+            int[] work,
+            int lo,
+            int hi,
+            int mid,
+            IndexComparator comparator)
+        {
+            this.indexes = indexes;
+            this.work = work;
+            this.lo = lo;
+            this.hi = hi;
+            this.mid = mid;
+            this.comparator = comparator;
+        }
+
+        public Void call() {
+            if (mid < 0) {
+                mergeSort(indexes, work, lo, hi, comparator);
+            } else {
+                merge(indexes, work, lo, mid, hi, comparator);
+            }
+            return null;
+        }
+    }
+}
+
+// End IndexSorter.java
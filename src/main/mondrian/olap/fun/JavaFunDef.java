@@ -327,7 +327,6 @@ public class JavaFunDef extends FunDefBase {
      */
     private static class JavaMethodCalc extends GenericCalc {
         private final Method method;
-        private final Object[] args;
 
         /**
          * Creates a JavaMethodCalc.
@@ -341,11 +340,11 @@ public class JavaFunDef extends FunDefBase {
         {
             super(call, calcs);
             this.method = method;
-            this.args = new Object[calcs.length];
         }
 
         public Object evaluate(Evaluator evaluator) {
             final Calc[] calcs = getCalcs();
+            final Object[] args = new Object[calcs.length];
             for (int i = 0; i < args.length; i++) {
                 args[i] = calcs[i].evaluate(evaluator);
                 if (args[i] == null) {
@@ -16,6 +16,7 @@ import mondrian.mdx.*;
 import mondrian.olap.*;
 import mondrian.olap.type.Type;
 import mondrian.resource.MondrianResource;
+import mondrian.rolap.RolapEvaluator;
 
 import org.apache.log4j.Logger;
 
@@ -347,11 +348,41 @@ public class NativizeSetFunDef extends FunDefBase {
             evaluator.setNativeEnabled(true);
 
             TupleList members = analyzer.mergeCalcMembers(
-                evaluateJoinExpression(evaluator, crossJoin));
+                evaluateJoinExpressionCached(evaluator, crossJoin));
             evaluator.restore(savepoint);
             return members;
         }
 
+        /**
+         * Evaluates a crossjoin expression, looking for its tuples in the
+         * cache shared between queries, and adding them to the cache if they
+         * were not there.
+         *
+         * <p>The tuples depend only on the text of the expression and the
+         * evaluation context, so later queries that expand the same set in
+         * the same context (for example, to drill down or to fetch another
+         * page of the set) do not need to parse the expression or execute
+         * SQL again. The tuples are removed from the cache when cells or
+         * members are flushed using {@link CacheControl}.
+         */
+        private TupleList evaluateJoinExpressionCached(
+            Evaluator evaluator, String crossJoinExpression)
+        {
+            if (!(evaluator instanceof RolapEvaluator)) {
+                return evaluateJoinExpression(evaluator, crossJoinExpression);
+            }
+            final RolapEvaluator rolapEvaluator = (RolapEvaluator) evaluator;
+            TupleList list =
+                rolapEvaluator.getSharedNativeSet(crossJoinExpression);
+            if (list != null) {
+                LOGGER.debug("found nativized set in cache");
+                return list;
+            }
+            list = evaluateJoinExpression(evaluator, crossJoinExpression);
+            rolapEvaluator.putSharedNativeSet(crossJoinExpression, list);
+            return list;
+        }
+
         private Exp getOriginalExp(final Query query) {
             originalExp.accept(
                 new TransformFromFormulasVisitor(query, compiler));
@@ -86,10 +86,14 @@ public class NonEmptyCrossJoinFunDef extends CrossJoinFunDef {
                     return list1;
                 }
                 final TupleList list2 = listCalc2.evaluateList(evaluator);
-                TupleList result = mutableCrossJoin(list1, list2);
+                TupleList result =
+                    nonEmptyCrossJoin(evaluator, list1, list2, call);
+                if (result == null) {
+                    result = mutableCrossJoin(list1, list2);
 
-                // remove any remaining empty crossings from the result
-                result = nonEmptyList(evaluator, result, call);
+                    // remove any remaining empty crossings from the result
+                    result = nonEmptyList(evaluator, result, call);
+                }
                 evaluator.restore(savepoint);
                 return result;
             }
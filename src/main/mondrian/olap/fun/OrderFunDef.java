@@ -131,6 +131,7 @@ class OrderFunDef extends FunDefBase {
         extends AbstractListCalc
         implements CalcWithDual
     {
+        private final ResolvedFunCall call;
         private final IterCalc iterCalc;
         private final Calc sortKeyCalc;
         private final List<SortKeySpec> keySpecList;
@@ -144,6 +145,7 @@ class OrderFunDef extends FunDefBase {
         {
             super(call, calcList);
 //            assert iterCalc.getResultStyle() == ResultStyle.MUTABLE_LIST;
+            this.call = call;
             this.iterCalc = (IterCalc) calcList[0];
             this.sortKeyCalc = calcList[1];
             this.keySpecList = keySpecList;
@@ -155,6 +157,12 @@ class OrderFunDef extends FunDefBase {
             Evaluator rootEvaluator, Evaluator subEvaluator)
         {
             assert originalKeySpecCount == 1;
+            // Use a native evaluator, if more efficient.
+            final NativeEvaluator nativeEvaluator =
+                getNativeEvaluator(rootEvaluator);
+            if (nativeEvaluator != null) {
+                return (TupleList) nativeEvaluator.execute(ResultStyle.LIST);
+            }
             final TupleIterable iterable =
                 iterCalc.evaluateIterable(rootEvaluator);
             // REVIEW: If iterable happens to be a list, we'd like to pass it,
@@ -195,6 +203,12 @@ class OrderFunDef extends FunDefBase {
         }
 
         public TupleList evaluateList(Evaluator evaluator) {
+            // Use a native evaluator, if more efficient.
+            final NativeEvaluator nativeEvaluator =
+                getNativeEvaluator(evaluator);
+            if (nativeEvaluator != null) {
+                return (TupleList) nativeEvaluator.execute(ResultStyle.LIST);
+            }
             final TupleIterable iterable =
                 iterCalc.evaluateIterable(evaluator);
             // REVIEW: If iterable happens to be a list, we'd like to pass it,
@@ -262,6 +276,11 @@ class OrderFunDef extends FunDefBase {
             }
         }
 
+        private NativeEvaluator getNativeEvaluator(Evaluator evaluator) {
+            return evaluator.getSchemaReader().getNativeSetEvaluator(
+                call.getFunDef(), call.getArgs(), evaluator, this);
+        }
+
         public void collectArguments(Map<String, Object> arguments) {
             super.collectArguments(arguments);
 
@@ -323,13 +342,11 @@ class OrderFunDef extends FunDefBase {
     private static class ContextCalc extends GenericIterCalc {
         private final MemberCalc[] memberCalcs;
         private final CalcWithDual calc;
-        private final Member[] members; // workspace
 
         protected ContextCalc(MemberCalc[] memberCalcs, CalcWithDual calc) {
             super(new DummyExp(calc.getType()), xx(memberCalcs, calc));
             this.memberCalcs = memberCalcs;
             this.calc = calc;
-            this.members = new Member[memberCalcs.length];
         }
 
         private static Calc[] xx(
@@ -344,6 +361,7 @@ class OrderFunDef extends FunDefBase {
         public Object evaluate(Evaluator evaluator) {
             // Evaluate each of the members, and set as context in the
             // sub-evaluator.
+            final Member[] members = new Member[memberCalcs.length];
             for (int i = 0; i < memberCalcs.length; i++) {
                 members[i] = memberCalcs[i].evaluateMember(evaluator);
             }
@@ -14,6 +14,7 @@ import mondrian.calc.*;
 import mondrian.calc.impl.*;
 import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.*;
+import mondrian.olap.type.*;
 
 import java.util.AbstractList;
 import java.util.List;
@@ -58,20 +59,30 @@ class TopBottomCountFunDef extends FunDefBase {
     }
 
     public Calc compileCall(final ResolvedFunCall call, ExpCompiler compiler) {
-        // Compile the member list expression. Ask for a mutable list, because
-        // we're going to sort it later.
-        final ListCalc listCalc =
-                compiler.compileList(call.getArg(0), true);
-        final IntegerCalc integerCalc =
-                compiler.compileInteger(call.getArg(1));
         final Calc orderCalc =
             call.getArgCount() > 2
             ? compiler.compileScalar(call.getArg(2), true)
             : null;
+        // If the sort key is numeric (or is a member or tuple, whose value is
+        // usually numeric), read the set as an iterable, and keep only the
+        // top N tuples on a heap as we go. Otherwise, compile the set as a
+        // mutable list, because we're going to sort it later.
+        final Type orderType =
+            orderCalc == null ? null : call.getArg(2).getType();
+        final boolean heap =
+            orderType instanceof NumericType
+            || orderType instanceof MemberType
+            || orderType instanceof TupleType;
+        final IterCalc iterCalc =
+            heap
+            ? compiler.compileIter(call.getArg(0))
+            : compiler.compileList(call.getArg(0), true);
+        final IntegerCalc integerCalc =
+                compiler.compileInteger(call.getArg(1));
         final int arity = call.getType().getArity();
         return new AbstractListCalc(
             call,
-            new Calc[]{listCalc, integerCalc, orderCalc})
+            new Calc[]{iterCalc, integerCalc, orderCalc})
         {
             public TupleList evaluateList(Evaluator evaluator) {
                 // Use a native evaluator, if more efficient.
@@ -90,7 +101,22 @@ class TopBottomCountFunDef extends FunDefBase {
                     return TupleCollections.emptyList(arity);
                 }
 
-                TupleList list = listCalc.evaluateList(evaluator);
+                final TupleList list;
+                if (heap) {
+                    final TupleIterable iterable =
+                        iterCalc.evaluateIterable(evaluator);
+                    if (n > 0) {
+                        final TupleList result =
+                            heapSort(evaluator.push(), iterable, n);
+                        if (result != null) {
+                            return result;
+                        }
+                        // Some value was not numeric. Sort the whole list.
+                    }
+                    list = TupleCollections.materialize(iterable, true);
+                } else {
+                    list = ((ListCalc) iterCalc).evaluateList(evaluator);
+                }
                 assert list.getArity() == arity;
                 if (list.isEmpty()) {
                     return list;
@@ -156,6 +182,48 @@ class TopBottomCountFunDef extends FunDefBase {
                 }
             }
 
+            /**
+             * Returns the first {@code n} tuples of an iterable, sorted by
+             * the value of the sort key, without building a list of all
+             * tuples and their values. Takes O(n) memory and O(size log n)
+             * time.
+             *
+             * @param evaluator Evaluator whose context may be modified
+             * @param iterable Tuples
+             * @param n Number of tuples to return
+             * @return Sorted tuples, or null if some value of the sort key
+             *   is neither numeric nor null
+             */
+            private TupleList heapSort(
+                Evaluator evaluator,
+                TupleIterable iterable,
+                int n)
+            {
+                final TupleHeap tupleHeap = new TupleHeap(n, top);
+                final TupleCursor cursor = iterable.tupleCursor();
+                int ordinal = 0;
+                while (cursor.forward()) {
+                    cursor.setContext(evaluator);
+                    final Object o = orderCalc.evaluate(evaluator);
+                    final boolean isNull = o == null || o == Util.nullValue;
+                    final double value;
+                    if (isNull) {
+                        value = 0d;
+                    } else if (o instanceof Number) {
+                        value = ((Number) o).doubleValue();
+                    } else {
+                        return null;
+                    }
+                    if (tupleHeap.accepts(isNull, value, ordinal)) {
+                        final Member[] tuple = new Member[arity];
+                        cursor.currentToArray(tuple, 0);
+                        tupleHeap.add(isNull, value, ordinal, tuple);
+                    }
+                    ++ordinal;
+                }
+                return tupleHeap.toList(arity);
+            }
+
             public boolean dependsOn(Hierarchy hierarchy) {
                 return anyDependsButFirst(getCalcs(), hierarchy);
             }
@@ -171,6 +239,177 @@ class TopBottomCountFunDef extends FunDefBase {
             }
         };
     }
+
+    /**
+     * Bounded heap of tuples that retains the first {@code limit} tuples of
+     * a sequence in the order that {@link FunUtil#stablePartialSort} would
+     * give them: by value, descending if {@code top} is true, with null less
+     * than any other value, and with ties broken by position in the
+     * sequence.
+     *
+     * <p>The root of the heap is the tuple that will be evicted next.
+     */
+    private static class TupleHeap {
+        private final int limit;
+        private final boolean top;
+        private int size;
+        private boolean[] nulls;
+        private double[] values;
+        private int[] ordinals;
+        private Member[][] tuples;
+
+        TupleHeap(int limit, boolean top) {
+            assert limit > 0;
+            this.limit = limit;
+            this.top = top;
+            allocate(Math.min(limit, 16));
+        }
+
+        private void allocate(int capacity) {
+            final boolean[] newNulls = new boolean[capacity];
+            final double[] newValues = new double[capacity];
+            final int[] newOrdinals = new int[capacity];
+            final Member[][] newTuples = new Member[capacity][];
+            if (size > 0) {
+                System.arraycopy(nulls, 0, newNulls, 0, size);
+                System.arraycopy(values, 0, newValues, 0, size);
+                System.arraycopy(ordinals, 0, newOrdinals, 0, size);
+                System.arraycopy(tuples, 0, newTuples, 0, size);
+            }
+            nulls = newNulls;
+            values = newValues;
+            ordinals = newOrdinals;
+            tuples = newTuples;
+        }
+
+        /**
+         * Returns whether a tuple would be added to the heap. Allows the
+         * caller to avoid copying a tuple that would not be added.
+         */
+        boolean accepts(boolean isNull, double value, int ordinal) {
+            return size < limit
+                || precedes(
+                    isNull, value, ordinal, nulls[0], values[0], ordinals[0]);
+        }
+
+        /**
+         * Adds a tuple. If the heap is full, evicts the last tuple. The tuple
+         * must be accepted; see {@link #accepts}.
+         */
+        void add(boolean isNull, double value, int ordinal, Member[] tuple) {
+            if (size < limit) {
+                if (size == values.length) {
+                    allocate(Math.min(limit, size * 2));
+                }
+                set(size, isNull, value, ordinal, tuple);
+                siftUp(size++);
+            } else {
+                set(0, isNull, value, ordinal, tuple);
+                siftDown(0);
+            }
+        }
+
+        /**
+         * Removes all tuples from the heap and returns them as a list, first
+         * tuple first.
+         */
+        TupleList toList(int arity) {
+            final Member[][] sorted = new Member[size][];
+            while (size > 0) {
+                sorted[size - 1] = tuples[0];
+                --size;
+                set(0, nulls[size], values[size], ordinals[size], tuples[size]);
+                tuples[size] = null;
+                siftDown(0);
+            }
+            final TupleList list = TupleCollections.createList(arity);
+            for (Member[] tuple : sorted) {
+                list.addTuple(tuple);
+            }
+            return list;
+        }
+
+        private void set(
+            int i,
+            boolean isNull,
+            double value,
+            int ordinal,
+            Member[] tuple)
+        {
+            nulls[i] = isNull;
+            values[i] = value;
+            ordinals[i] = ordinal;
+            tuples[i] = tuple;
+        }
+
+        private void swap(int i, int j) {
+            final boolean isNull = nulls[i];
+            final double value = values[i];
+            final int ordinal = ordinals[i];
+            final Member[] tuple = tuples[i];
+            set(i, nulls[j], values[j], ordinals[j], tuples[j]);
+            set(j, isNull, value, ordinal, tuple);
+        }
+
+        /** Returns whether the tuple at i comes before the tuple at j. */
+        private boolean precedes(int i, int j) {
+            return precedes(
+                nulls[i], values[i], ordinals[i],
+                nulls[j], values[j], ordinals[j]);
+        }
+
+        private boolean precedes(
+            boolean null0, double value0, int ordinal0,
+            boolean null1, double value1, int ordinal1)
+        {
+            int c;
+            if (null0) {
+                c = null1 ? 0 : -1;
+            } else if (null1) {
+                c = 1;
+            } else {
+                c = FunUtil.compareValues(value0, value1);
+            }
+            if (top) {
+                c = -c;
+            }
+            if (c != 0) {
+                return c < 0;
+            }
+            return ordinal0 < ordinal1;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                final int parent = (i - 1) >> 1;
+                if (!precedes(parent, i)) {
+                    break;
+                }
+                swap(parent, i);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                final int left = 2 * i + 1;
+                if (left >= size) {
+                    break;
+                }
+                // Of the two children, find the one that comes last.
+                int child = left;
+                final int right = left + 1;
+                if (right < size && precedes(left, right)) {
+                    child = right;
+                }
+                if (!precedes(i, child)) {
+                    break;
+                }
+                swap(i, child);
+                i = child;
+            }
+        }
+    }
 }
 
 // End TopBottomCountFunDef.java
@@ -11,11 +11,10 @@ package mondrian.olap.fun;
 
 import mondrian.calc.*;
 import mondrian.calc.impl.AbstractListCalc;
+import mondrian.calc.impl.TupleHashSet;
 import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.*;
 
-import java.util.*;
-
 /**
  * Definition of the <code>Union</code> MDX function.
  *
@@ -71,7 +70,9 @@ class UnionFunDef extends FunDefBase {
             result.addAll(list1);
             return result;
         } else {
-            Set<List<Member>> added = new HashSet<List<Member>>();
+            final TupleHashSet added =
+                new TupleHashSet(
+                    list0.getArity(), list0.size() + list1.size());
             TupleList result = TupleCollections.createList(list0.getArity());
             FunUtil.addUnique(result, list0, added);
             FunUtil.addUnique(result, list1, added);
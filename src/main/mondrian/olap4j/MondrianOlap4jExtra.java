@@ -13,10 +13,12 @@ import mondrian.olap.*;
 import mondrian.olap.Property;
 import mondrian.olap.fun.FunInfo;
 import mondrian.rolap.*;
+import mondrian.server.monitor.MemoryUsageInfo;
 import mondrian.xmla.RowsetDefinition;
 import mondrian.xmla.XmlaHandler;
 
 import org.olap4j.*;
+import org.olap4j.impl.Olap4jUtil;
 import org.olap4j.metadata.*;
 import org.olap4j.metadata.Cube;
 import org.olap4j.metadata.Hierarchy;
@@ -283,6 +285,28 @@ class MondrianOlap4jExtra implements XmlaHandler.XmlaExtra {
         return server.getDatabases(olap4jConnection.getMondrianConnection());
     }
 
+    public List<Map<String, Object>> getMemoryUsage(OlapConnection connection)
+        throws OlapException
+    {
+        MondrianOlap4jConnection olap4jConnection =
+            (MondrianOlap4jConnection) connection;
+        MondrianServer server =
+            MondrianServer.forConnection(
+                olap4jConnection.getMondrianConnection());
+        final List<Map<String, Object>> list =
+            new ArrayList<Map<String, Object>>();
+        for (MemoryUsageInfo info : server.getMonitor().getMemoryUsage()) {
+            list.add(
+                Olap4jUtil.mapOf(
+                    "SchemaName", (Object) info.schemaName,
+                    "ObjectType", info.type.name(),
+                    "ObjectName", info.name,
+                    "ObjectCount", info.objectCount,
+                    "Bytes", info.bytes));
+        }
+        return list;
+    }
+
     public Map<String, Object> getAnnotationMap(MetadataElement element)
         throws SQLException
     {
@@ -11,7 +11,9 @@ package mondrian.olap4j;
 
 import mondrian.calc.ResultStyle;
 import mondrian.olap.*;
+import mondrian.rolap.QueryPlanCache;
 import mondrian.rolap.RolapConnection;
+import mondrian.rolap.RolapSchema;
 import mondrian.server.*;
 import mondrian.util.Pair;
 
@@ -143,9 +145,24 @@ abstract class MondrianOlap4jStatement
                 openCellSet = null;
                 c.close();
             }
+            if (query != null) {
+                releaseQuery(query);
+            }
         }
     }
 
+    /**
+     * Returns a query that this statement no longer needs to the plan cache
+     * of its schema, so that another statement can execute it without
+     * parsing it again.
+     *
+     * @param query Query
+     */
+    private static void releaseQuery(Query query) {
+        ((RolapSchema) query.getCube().getSchema()).getQueryPlanCache()
+            .release(query);
+    }
+
     public int getMaxFieldSize() throws SQLException {
         throw new UnsupportedOperationException();
     }
@@ -353,18 +370,34 @@ abstract class MondrianOlap4jStatement
     {
         try {
             final RolapConnection mondrianConnection = getMondrianConnection();
+            final QueryPlanCache planCache =
+                mondrianConnection.getSchema().getQueryPlanCache();
+            final List<Object> planKey =
+                QueryPlanCache.makeKey(mondrianConnection, mdx);
             return Locus.execute(
                 mondrianConnection,
                 "Parsing query",
                 new Locus.Action<Pair<Query, MondrianOlap4jCellSetMetaData>>() {
                     public Pair<Query, MondrianOlap4jCellSetMetaData> execute()
                     {
-                        final Query query =
-                            (Query) mondrianConnection.parseStatement(
-                                MondrianOlap4jStatement.this,
-                                mdx,
-                                null,
-                                false);
+                        // Re-use a query that another statement has already
+                        // parsed and compiled, if possible.
+                        Query query =
+                            planKey == null
+                                ? null
+                                : planCache.checkout(
+                                    planKey, MondrianOlap4jStatement.this);
+                        if (query == null) {
+                            query =
+                                (Query) mondrianConnection.parseStatement(
+                                    MondrianOlap4jStatement.this,
+                                    mdx,
+                                    null,
+                                    false);
+                            if (planKey != null) {
+                                planCache.register(planKey, query);
+                            }
+                        }
                         final MondrianOlap4jCellSetMetaData cellSetMetaData =
                             new MondrianOlap4jCellSetMetaData(
                                 MondrianOlap4jStatement.this, query);
@@ -403,8 +436,17 @@ abstract class MondrianOlap4jStatement
                 }
             }
 
-            if (olap4jConnection.preferList) {
-                query.setResultStyle(ResultStyle.LIST);
+            // Set the result style on every execution; a query from the
+            // plan cache may have been executed by a connection with a
+            // different preference. (ITERABLE means the query's default.)
+            query.setResultStyle(
+                olap4jConnection.preferList
+                    ? ResultStyle.LIST
+                    : ResultStyle.ITERABLE);
+            if (this.query != null && this.query != query) {
+                // The previous query's cell set has been closed, so the
+                // query can be re-used.
+                releaseQuery(this.query);
             }
             this.query = query;
             openCellSet = olap4jConnection.factory.newCellSet(this);
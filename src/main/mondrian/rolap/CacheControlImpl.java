@@ -205,6 +205,11 @@ public class CacheControlImpl implements CacheControl {
             // Figure out the bits.
             flushNonUnion(cellRegion);
         }
+
+        // Expression results shared between queries may have been computed
+        // from the flushed cells.
+        MondrianServer.forConnection(connection).getAggregationManager()
+            .sharedExpCache.flush(getStarList(region));
     }
 
     /**
@@ -254,40 +259,72 @@ public class CacheControlImpl implements CacheControl {
 
     public void flushSchemaCache() {
         RolapSchema.Pool.instance().clear();
+        MondrianServer.forConnection(connection).getAggregationManager()
+            .sharedExpCache.clear();
     }
 
-    // todo: document
+    /**
+     * Flushes a schema from the pool, given its catalog URL and connection
+     * properties.
+     *
+     * <p>If {@link MondrianProperties#SchemaRefreshInBackground} is true,
+     * the schema is reloaded in the background and remains in use until the
+     * new copy has loaded; otherwise it is removed immediately.
+     */
     public void flushSchema(
         String catalogUrl,
         String connectionKey,
         String jdbcUser,
         String dataSourceStr)
     {
-        RolapSchema.Pool.instance().remove(
-            catalogUrl,
-            connectionKey,
-            jdbcUser,
-            dataSourceStr);
+        if (MondrianProperties.instance().SchemaRefreshInBackground.get()) {
+            RolapSchema.Pool.instance().refresh(
+                catalogUrl,
+                connectionKey,
+                jdbcUser,
+                dataSourceStr);
+        } else {
+            RolapSchema.Pool.instance().remove(
+                catalogUrl,
+                connectionKey,
+                jdbcUser,
+                dataSourceStr);
+        }
     }
 
-    // todo: document
+    /**
+     * Flushes a schema from the pool, given its catalog URL and data source.
+     * Behaves as {@link #flushSchema(String, String, String, String)}.
+     */
     public void flushSchema(
         String catalogUrl,
         DataSource dataSource)
     {
-        RolapSchema.Pool.instance().remove(
-            catalogUrl,
-            dataSource);
+        if (MondrianProperties.instance().SchemaRefreshInBackground.get()) {
+            RolapSchema.Pool.instance().refresh(
+                catalogUrl,
+                dataSource);
+        } else {
+            RolapSchema.Pool.instance().remove(
+                catalogUrl,
+                dataSource);
+        }
     }
 
     /**
-     * Flushes the given RolapSchema instance from the pool
+     * Flushes the given RolapSchema instance from the pool. Behaves as
+     * {@link #flushSchema(String, String, String, String)}.
      *
      * @param schema RolapSchema
      */
     public void flushSchema(Schema schema) {
         if (RolapSchema.class.isInstance(schema)) {
-            RolapSchema.Pool.instance().remove((RolapSchema)schema);
+            if (MondrianProperties.instance().SchemaRefreshInBackground.get())
+            {
+                RolapSchema.Pool.instance().refresh((RolapSchema) schema);
+            } else {
+                RolapSchema.Pool.instance().remove((RolapSchema)schema);
+            }
         } else {
             throw new UnsupportedOperationException(
                 schema.getClass().getName() + " cannot be flushed");
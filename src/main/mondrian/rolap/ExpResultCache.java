@@ -0,0 +1,241 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.olap.Exp;
+import mondrian.olap.Member;
+
+import java.util.Arrays;
+
+/**
+ * Cache of the results of expressions, used by
+ * {@link RolapEvaluator#getCachedResult(mondrian.olap.ExpCacheDescriptor)}.
+ *
+ * <p>The key of an entry is an expression and the current members of the
+ * hierarchies that it depends upon. Rather than building a key object for
+ * each lookup, the caller passes the expression, the ordinals of the
+ * hierarchies, and the evaluator's array of current members; the table
+ * compares its entries against that array in place. A lookup therefore
+ * allocates nothing. The members are copied only when an entry is added.
+ *
+ * <p>The table uses open addressing with linear probing. Entries are never
+ * removed individually, only all at once by {@link #clear()}.
+ *
+ * <p>This class is not thread-safe.
+ */
+class ExpResultCache {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] hashes;
+    private Exp[] exps;
+    private Member[][] keyMembers;
+    private Object[] values;
+    private int size;
+
+    /**
+     * Creates an empty ExpResultCache.
+     */
+    ExpResultCache() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        hashes = new int[capacity];
+        exps = new Exp[capacity];
+        keyMembers = new Member[capacity][];
+        values = new Object[capacity];
+    }
+
+    /**
+     * Returns the number of entries.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value of an expression in a given context, or null if it is
+     * not in the cache.
+     *
+     * @param exp Expression
+     * @param ordinals Ordinals of the hierarchies that the expression depends
+     *   upon
+     * @param members Current member of each hierarchy
+     * @return Value, or null
+     */
+    Object get(Exp exp, int[] ordinals, Member[] members) {
+        if (size == 0) {
+            return null;
+        }
+        final int hash = hash(exp, ordinals, members);
+        final int mask = exps.length - 1;
+        for (int i = hash & mask;; i = (i + 1) & mask) {
+            final Exp exp1 = exps[i];
+            if (exp1 == null) {
+                return null;
+            }
+            if (hashes[i] == hash
+                && (exp1 == exp || exp1.equals(exp))
+                && matches(keyMembers[i], ordinals, members))
+            {
+                return values[i];
+            }
+        }
+    }
+
+    /**
+     * Adds or replaces the value of an expression in a given context.
+     *
+     * @param exp Expression
+     * @param ordinals Ordinals of the hierarchies that the expression depends
+     *   upon
+     * @param members Current member of each hierarchy
+     * @param value Value; must not be null
+     */
+    void put(Exp exp, int[] ordinals, Member[] members, Object value) {
+        assert value != null;
+        final int hash = hash(exp, ordinals, members);
+        final int mask = exps.length - 1;
+        int i = hash & mask;
+        for (;; i = (i + 1) & mask) {
+            final Exp exp1 = exps[i];
+            if (exp1 == null) {
+                break;
+            }
+            if (hashes[i] == hash
+                && (exp1 == exp || exp1.equals(exp))
+                && matches(keyMembers[i], ordinals, members))
+            {
+                values[i] = value;
+                return;
+            }
+        }
+        final Member[] keyMembers1 = new Member[ordinals.length];
+        for (int j = 0; j < ordinals.length; j++) {
+            keyMembers1[j] = members[ordinals[j]];
+        }
+        set(i, hash, exp, keyMembers1, value);
+    }
+
+    /**
+     * Adds all entries of another cache to this cache. An entry replaces any
+     * entry of this cache with the same key.
+     *
+     * @param cache Cache whose entries to add
+     */
+    void putAll(ExpResultCache cache) {
+        for (int k = 0; k < cache.exps.length; k++) {
+            final Exp exp = cache.exps[k];
+            if (exp == null) {
+                continue;
+            }
+            final int hash = cache.hashes[k];
+            final Member[] keyMembers1 = cache.keyMembers[k];
+            final int mask = exps.length - 1;
+            int i = hash & mask;
+            for (;; i = (i + 1) & mask) {
+                final Exp exp1 = exps[i];
+                if (exp1 == null
+                    || hashes[i] == hash
+                    && (exp1 == exp || exp1.equals(exp))
+                    && Arrays.equals(keyMembers[i], keyMembers1))
+                {
+                    break;
+                }
+            }
+            if (exps[i] == null) {
+                // Key arrays are immutable, so the caches can share them.
+                set(i, hash, exp, keyMembers1, cache.values[k]);
+            } else {
+                values[i] = cache.values[k];
+            }
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    void clear() {
+        if (size > 0) {
+            allocate(INITIAL_CAPACITY);
+            size = 0;
+        }
+    }
+
+    /**
+     * Fills an empty slot, then grows the table if it is more than half
+     * full.
+     */
+    private void set(
+        int i,
+        int hash,
+        Exp exp,
+        Member[] keyMembers1,
+        Object value)
+    {
+        hashes[i] = hash;
+        exps[i] = exp;
+        keyMembers[i] = keyMembers1;
+        values[i] = value;
+        if (++size * 2 > exps.length) {
+            rehash(exps.length * 2);
+        }
+    }
+
+    private void rehash(int capacity) {
+        final int[] oldHashes = hashes;
+        final Exp[] oldExps = exps;
+        final Member[][] oldKeyMembers = keyMembers;
+        final Object[] oldValues = values;
+        allocate(capacity);
+        final int mask = capacity - 1;
+        for (int k = 0; k < oldExps.length; k++) {
+            if (oldExps[k] == null) {
+                continue;
+            }
+            int i = oldHashes[k] & mask;
+            while (exps[i] != null) {
+                i = (i + 1) & mask;
+            }
+            hashes[i] = oldHashes[k];
+            exps[i] = oldExps[k];
+            keyMembers[i] = oldKeyMembers[k];
+            values[i] = oldValues[k];
+        }
+    }
+
+    private static int hash(Exp exp, int[] ordinals, Member[] members) {
+        int h = exp.hashCode();
+        for (int ordinal : ordinals) {
+            h = h * 31 + members[ordinal].hashCode();
+        }
+        // Spread the high bits, because the table uses the low bits.
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(
+        Member[] keyMembers,
+        int[] ordinals,
+        Member[] members)
+    {
+        if (keyMembers.length != ordinals.length) {
+            return false;
+        }
+        for (int j = 0; j < ordinals.length; j++) {
+            final Member member = members[ordinals[j]];
+            if (keyMembers[j] != member && !keyMembers[j].equals(member)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
+
+// End ExpResultCache.java
@@ -164,6 +164,27 @@ public class FastBatchingCellReader implements CellReader {
         }
     }
 
+    /**
+     * Adds the cell requests, counts and pinned segments of another reader
+     * to this reader, so that the requests are loaded by the next call to
+     * {@link #loadAggregations()}.
+     *
+     * <p>Used when cells have been evaluated by several threads, each with
+     * its own reader.</p>
+     *
+     * @param reader Reader whose requests to add
+     */
+    void merge(FastBatchingCellReader reader) {
+        assert reader.cube == cube;
+        cellRequests.addAll(reader.cellRequests);
+        missCount += reader.missCount;
+        hitCount += reader.hitCount;
+        pendingCount += reader.pendingCount;
+        dirty |= reader.dirty;
+        ((AggregationManager.PinSetImpl) pinnedSegments).addAll(
+            (AggregationManager.PinSetImpl) reader.pinnedSegments);
+    }
+
     /**
      * Returns whether this reader has told a lie. This is the case if there
      * are pending batches to load or if {@link #setDirty(boolean)} has been
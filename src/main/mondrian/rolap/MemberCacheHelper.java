@@ -45,6 +45,12 @@ public class MemberCacheHelper implements MemberCache {
     final SmartMemberListCache<RolapLevel, List<RolapMember>>
         mapLevelToMembers;
 
+    /**
+     * Number of times that this cache has been flushed or had members
+     * removed. Allows a {@link MemberSnapshot} to detect that it is stale.
+     */
+    private int modCount;
+
     /**
      * Creates a MemberCacheHelper.
      *
@@ -161,6 +167,7 @@ public class MemberCacheHelper implements MemberCache {
     }
 
     public synchronized void flushCache() {
+        ++modCount;
         mapMemberToChildren.clear();
         mapKeyToMember.clear();
         mapLevelToMembers.clear();
@@ -170,6 +177,16 @@ public class MemberCacheHelper implements MemberCache {
         }
     }
 
+    /**
+     * Returns the number of times that this cache has been flushed or had
+     * members removed.
+     *
+     * @return Modification count
+     */
+    public synchronized int getModCount() {
+        return modCount;
+    }
+
     public DataSourceChangeListener getChangeListener() {
         return changeListener;
     }
@@ -185,6 +202,8 @@ public class MemberCacheHelper implements MemberCache {
 
     public synchronized RolapMember removeMember(Object key)
     {
+        ++modCount;
+
         // Flush entries from the level-to-members map
         // for member's level and all child levels.
         // Important: Do this even if the member is apparently not in the cache.
@@ -0,0 +1,332 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.olap.*;
+import mondrian.server.Locus;
+import mondrian.util.Pair;
+
+import org.apache.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Immutable image of every member of a hierarchy, read using a single SQL
+ * statement.
+ *
+ * <p>A snapshot holds, for each member, the ordinal of its parent and the
+ * ordinals of its children, and the members of each level. It can find a
+ * member by unique name or by key without walking the hierarchy.
+ *
+ * <p>Snapshots are built by {@link SmartMemberReader#loadSnapshot} for
+ * hierarchies whose cardinality is below
+ * {@link MondrianProperties#HierarchySnapshotMaxMembers}, and are used to
+ * populate the reader's member cache, so that queries never need to read
+ * members of that hierarchy from SQL.
+ */
+class MemberSnapshot {
+    private static final Logger LOGGER = Logger.getLogger(MemberSnapshot.class);
+
+    /**
+     * Executor that loads snapshots in the background. It has one thread, so
+     * that loading snapshots does not swamp the database.
+     */
+    private static final ExecutorService executor =
+        Util.getExecutorService(
+            1, "mondrian.rolap.MemberSnapshot$executor");
+
+    private final RolapHierarchy hierarchy;
+
+    /**
+     * Members of the hierarchy in hierarchical order. A member's position in
+     * this array is its ordinal within the snapshot.
+     */
+    private final RolapMember[] members;
+
+    /**
+     * Ordinal of each member's parent, or -1 if the member is a root member.
+     */
+    private final int[] parentOrdinals;
+
+    /**
+     * Ordinals of the children of each member, in order.
+     */
+    private final int[][] childOrdinals;
+
+    /**
+     * Ordinals of the members of each level, indexed by level depth.
+     */
+    private final int[][] levelOrdinals;
+
+    private final Map<String, Integer> uniqueNameToOrdinal;
+
+    private final Map<Pair<RolapLevel, List<Object>>, Integer> keyToOrdinal;
+
+    /**
+     * Value of {@link MemberCacheHelper#getModCount()} when the snapshot was
+     * read. If the cache has been modified since, the snapshot is stale.
+     */
+    final int modCount;
+
+    /**
+     * Creates a MemberSnapshot.
+     *
+     * @param hierarchy Hierarchy
+     * @param memberList Members of the hierarchy, in hierarchical order,
+     *   each member preceded by its parent
+     * @param modCount Modification count of the member cache at the time the
+     *   members were read
+     */
+    MemberSnapshot(
+        RolapHierarchy hierarchy,
+        List<RolapMember> memberList,
+        int modCount)
+    {
+        this.hierarchy = hierarchy;
+        this.modCount = modCount;
+        final int n = memberList.size();
+        this.members = memberList.toArray(new RolapMember[n]);
+        this.parentOrdinals = new int[n];
+        this.uniqueNameToOrdinal = new HashMap<String, Integer>(n * 2);
+        this.keyToOrdinal =
+            new HashMap<Pair<RolapLevel, List<Object>>, Integer>(n * 2);
+
+        final Map<RolapMember, Integer> memberToOrdinal =
+            new IdentityHashMap<RolapMember, Integer>(n * 2);
+        final int[] childCounts = new int[n];
+        final int[] levelCounts = new int[hierarchy.getLevels().length];
+        for (int i = 0; i < n; i++) {
+            final RolapMember member = members[i];
+            memberToOrdinal.put(member, i);
+            final Integer parentOrdinal =
+                member.getParentMember() == null
+                    ? null
+                    : memberToOrdinal.get(member.getParentMember());
+            if (parentOrdinal == null) {
+                parentOrdinals[i] = -1;
+            } else {
+                parentOrdinals[i] = parentOrdinal;
+                ++childCounts[parentOrdinal];
+            }
+            ++levelCounts[member.getLevel().getDepth()];
+            uniqueNameToOrdinal.put(member.getUniqueName(), i);
+            keyToOrdinal.put(
+                new Pair<RolapLevel, List<Object>>(
+                    member.getLevel(), keyValues(member)),
+                i);
+        }
+
+        this.childOrdinals = new int[n][];
+        for (int i = 0; i < n; i++) {
+            childOrdinals[i] = new int[childCounts[i]];
+            childCounts[i] = 0;
+        }
+        this.levelOrdinals = new int[levelCounts.length][];
+        for (int depth = 0; depth < levelCounts.length; depth++) {
+            levelOrdinals[depth] = new int[levelCounts[depth]];
+            levelCounts[depth] = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            final int parentOrdinal = parentOrdinals[i];
+            if (parentOrdinal >= 0) {
+                childOrdinals[parentOrdinal][childCounts[parentOrdinal]++] = i;
+            }
+            final int depth = members[i].getLevel().getDepth();
+            levelOrdinals[depth][levelCounts[depth]++] = i;
+        }
+    }
+
+    /**
+     * Returns the list of key values which identify a member within its
+     * level: the member's key, then the keys of its ancestors up to the
+     * first level which has unique members. Matches the list expected by
+     * {@link MemberReader#getMemberByKey(RolapLevel, java.util.List)}.
+     */
+    private static List<Object> keyValues(RolapMember member) {
+        final List<Object> list = new ArrayList<Object>(1);
+        for (RolapMember m = member; m != null; m = m.getParentMember()) {
+            list.add(m.getKey());
+            if (m.getLevel().isUnique()) {
+                break;
+            }
+        }
+        return list;
+    }
+
+    RolapHierarchy getHierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * Returns the number of members in this snapshot.
+     */
+    int size() {
+        return members.length;
+    }
+
+    /**
+     * Returns the members of the hierarchy, in hierarchical order.
+     */
+    List<RolapMember> getMembers() {
+        return Collections.unmodifiableList(Arrays.asList(members));
+    }
+
+    /**
+     * Returns the members of a given level, in order. The list is a new,
+     * mutable list, suitable for storing in a {@link MemberCache}.
+     *
+     * @param level Level
+     * @return Members of level
+     */
+    List<RolapMember> getLevelMembers(RolapLevel level) {
+        return toList(levelOrdinals[level.getDepth()]);
+    }
+
+    /**
+     * Returns the children of the member with a given ordinal. The list is a
+     * new, mutable list, suitable for storing in a {@link MemberCache}.
+     *
+     * @param ordinal Ordinal of member within this snapshot
+     * @return Children of member
+     */
+    List<RolapMember> getChildren(int ordinal) {
+        return toList(childOrdinals[ordinal]);
+    }
+
+    /**
+     * Returns the member with a given ordinal.
+     */
+    RolapMember getMember(int ordinal) {
+        return members[ordinal];
+    }
+
+    /**
+     * Returns the ordinal of a member's parent, or -1 if the member is a root
+     * member.
+     */
+    int getParentOrdinal(int ordinal) {
+        return parentOrdinals[ordinal];
+    }
+
+    /**
+     * Looks up a member by its unique name.
+     *
+     * @param uniqueName Unique name
+     * @return Member, or null if not found
+     */
+    RolapMember lookupMember(String uniqueName) {
+        final Integer ordinal = uniqueNameToOrdinal.get(uniqueName);
+        return ordinal == null ? null : members[ordinal];
+    }
+
+    /**
+     * Looks up a member by its key values.
+     *
+     * @param level Level
+     * @param keyValues Key of member, followed by the keys of its ancestors
+     *   up to the first unique level
+     * @return Member, or null if not found
+     */
+    RolapMember getMemberByKey(RolapLevel level, List<Comparable> keyValues) {
+        final Integer ordinal =
+            keyToOrdinal.get(
+                new Pair<RolapLevel, List<Object>>(
+                    level, new ArrayList<Object>(keyValues)));
+        return ordinal == null ? null : members[ordinal];
+    }
+
+    private List<RolapMember> toList(int[] ordinals) {
+        final List<RolapMember> list =
+            new ArrayList<RolapMember>(ordinals.length);
+        for (int ordinal : ordinals) {
+            list.add(members[ordinal]);
+        }
+        return list;
+    }
+
+    /**
+     * Returns whether a hierarchy is eligible to be held in a snapshot.
+     * Parent-child and ragged hierarchies, and hierarchies of
+     * high-cardinality dimensions, are not, because
+     * {@link SqlMemberSource#getMembers()} does not build their members
+     * correctly.
+     *
+     * @param hierarchy Hierarchy
+     * @return Whether hierarchy can be held in a snapshot
+     */
+    static boolean canSnapshot(RolapHierarchy hierarchy) {
+        if (hierarchy.getLevels().length == 0) {
+            return false;
+        }
+        if (hierarchy.getDimension().isHighCardinality()
+            || hierarchy.isRagged())
+        {
+            return false;
+        }
+        for (Level level : hierarchy.getLevels()) {
+            if (((RolapLevel) level).isParentChild()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Schedules a snapshot of a hierarchy to be loaded in the background.
+     * Does nothing if snapshots are disabled, that is, if
+     * {@link MondrianProperties#HierarchySnapshotMaxMembers} is not
+     * positive.
+     *
+     * <p>Until the snapshot is loaded, the reader continues to read members
+     * on demand. If the snapshot cannot be loaded, the error is logged and
+     * the reader is unaffected.
+     *
+     * @param reader Member reader
+     */
+    static void loadAsync(final SmartMemberReader reader) {
+        final int maxMembers =
+            MondrianProperties.instance().HierarchySnapshotMaxMembers.get();
+        if (maxMembers <= 0) {
+            return;
+        }
+        final RolapConnection connection =
+            reader.getHierarchy().getRolapSchema().getInternalConnection();
+        executor.submit(
+            new Runnable() {
+                public void run() {
+                    try {
+                        final boolean loaded =
+                            Locus.execute(
+                                connection,
+                                "MemberSnapshot.loadAsync",
+                                new Locus.Action<Boolean>() {
+                                    public Boolean execute() {
+                                        return reader.loadSnapshot(
+                                            maxMembers);
+                                    }
+                                });
+                        if (loaded && LOGGER.isDebugEnabled()) {
+                            LOGGER.debug(
+                                "Loaded snapshot of hierarchy "
+                                + reader.getHierarchy().getUniqueName());
+                        }
+                    } catch (Throwable e) {
+                        LOGGER.warn(
+                            "Failed to load snapshot of hierarchy "
+                            + reader.getHierarchy().getUniqueName(),
+                            e);
+                    }
+                }
+            });
+    }
+}
+
+// End MemberSnapshot.java
@@ -0,0 +1,173 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.olap.MondrianServer;
+import mondrian.olap.Util;
+import mondrian.rolap.cache.SmartCache;
+import mondrian.server.monitor.MemoryUsageInfo;
+
+import java.util.*;
+
+/**
+ * Estimates the amount of heap retained by schemas, by the member caches of
+ * their hierarchies, and by the segments of their stars.
+ *
+ * <p>The estimates are returned by
+ * {@link mondrian.server.monitor.Monitor#getMemoryUsage()}, and are available
+ * via XMLA (the DISCOVER_MEMORY_USAGE rowset) and JMX.</p>
+ *
+ * @see mondrian.rolap.agg.SegmentBuilder#estimateBytes
+ */
+public class MemoryUsageCollector {
+    /**
+     * Estimated size of a member object, excluding its unique name.
+     */
+    private static final int MEMBER_BYTES = 64;
+
+    /**
+     * Estimated size of each element of a cached list of members.
+     */
+    private static final int LIST_ELEMENT_BYTES = 8;
+
+    private MemoryUsageCollector() {
+    }
+
+    /**
+     * Computes the memory usage of the schemas in the schema pool, and of
+     * the segments in a server's cell cache.
+     *
+     * <p>Returns one entry for each star, one for each member cache, and one
+     * for each schema, whose size is the total of its member caches and
+     * stars. A star belongs to the schema that owns it, not to any schema
+     * with the same name.</p>
+     *
+     * @param server Server whose cell cache to examine
+     * @return List of memory usage entries
+     */
+    public static List<MemoryUsageInfo> collect(MondrianServer server) {
+        final Map<RolapStar, MemoryUsageInfo> starMap =
+            server.getAggregationManager().cacheMgr.getMemoryUsage();
+        final List<MemoryUsageInfo> list = new ArrayList<MemoryUsageInfo>();
+        for (RolapSchema schema : RolapSchema.getRolapSchemas()) {
+            final List<MemoryUsageInfo> schemaList =
+                new ArrayList<MemoryUsageInfo>();
+            final Map<MemberCacheHelper, Boolean> seen =
+                new IdentityHashMap<MemberCacheHelper, Boolean>();
+            for (RolapCube cube : schema.getCubeList()) {
+                for (RolapHierarchy hierarchy : cube.getHierarchies()) {
+                    if (hierarchy instanceof RolapCubeHierarchy) {
+                        addHierarchy(
+                            schemaList,
+                            seen,
+                            schema,
+                            Util.quoteMdxIdentifier(cube.getName()) + "."
+                            + hierarchy.getUniqueName(),
+                            hierarchy.getMemberReader());
+                        hierarchy =
+                            ((RolapCubeHierarchy) hierarchy)
+                                .getRolapHierarchy();
+                    }
+                    addHierarchy(
+                        schemaList,
+                        seen,
+                        schema,
+                        hierarchy.getUniqueName(),
+                        hierarchy.getMemberReader());
+                }
+            }
+            for (RolapStar star : schema.getStars()) {
+                final MemoryUsageInfo info = starMap.get(star);
+                if (info != null) {
+                    schemaList.add(info);
+                }
+            }
+            int objectCount = 0;
+            long bytes = 0;
+            for (MemoryUsageInfo info : schemaList) {
+                objectCount += info.objectCount;
+                bytes += info.bytes;
+            }
+            list.add(
+                new MemoryUsageInfo(
+                    MemoryUsageInfo.Type.SCHEMA,
+                    schema.getName(),
+                    schema.getName(),
+                    objectCount,
+                    bytes));
+            list.addAll(schemaList);
+        }
+        return list;
+    }
+
+    /**
+     * Adds an entry for the member cache (or caches) of a member reader, if
+     * it has a cache and the cache has not been seen before.
+     */
+    private static void addHierarchy(
+        List<MemoryUsageInfo> list,
+        Map<MemberCacheHelper, Boolean> seen,
+        RolapSchema schema,
+        String name,
+        MemberReader reader)
+    {
+        if (!(reader instanceof SmartMemberReader)) {
+            return;
+        }
+        final List<MemberCacheHelper> helpers =
+            new ArrayList<MemberCacheHelper>();
+        helpers.add(((SmartMemberReader) reader).cacheHelper);
+        if (reader instanceof RolapCubeHierarchy.RolapCubeHierarchyMemberReader)
+        {
+            helpers.add(
+                ((RolapCubeHierarchy.RolapCubeHierarchyMemberReader) reader)
+                    .getRolapCubeMemberCacheHelper());
+        }
+        int memberCount = 0;
+        long bytes = 0;
+        boolean found = false;
+        for (MemberCacheHelper helper : helpers) {
+            if (helper == null || seen.put(helper, Boolean.TRUE) != null) {
+                continue;
+            }
+            found = true;
+            synchronized (helper) {
+                for (Map.Entry<Object, RolapMember> entry
+                    : helper.mapKeyToMember)
+                {
+                    ++memberCount;
+                    bytes += MEMBER_BYTES
+                        + 2 * entry.getValue().getUniqueName().length();
+                }
+                bytes += listBytes(helper.mapMemberToChildren.getCache());
+                bytes += listBytes(helper.mapLevelToMembers.getCache());
+            }
+        }
+        if (found) {
+            list.add(
+                new MemoryUsageInfo(
+                    MemoryUsageInfo.Type.HIERARCHY,
+                    schema.getName(),
+                    name,
+                    memberCount,
+                    bytes));
+        }
+    }
+
+    private static <K> long listBytes(SmartCache<K, List<RolapMember>> cache) {
+        long bytes = 0;
+        for (Map.Entry<K, List<RolapMember>> entry : cache) {
+            bytes += LIST_ELEMENT_BYTES * entry.getValue().size();
+        }
+        return bytes;
+    }
+}
+
+// End MemoryUsageCollector.java
@@ -0,0 +1,168 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.olap.*;
+import mondrian.server.Statement;
+
+import java.util.*;
+
+/**
+ * Cache of queries that have been parsed, validated and compiled, so that
+ * a statement that executes the same MDX text as an earlier statement can
+ * re-use the earlier statement's work.
+ *
+ * <p>A {@link Query} is not thread-safe and belongs to one statement at a
+ * time, so this cache is a pool of idle queries. A statement calls
+ * {@link #checkout} to take a query, and {@link #release} when it no longer
+ * needs the query, for instance because it has been closed. A query that is
+ * never released is garbage-collected as usual.
+ *
+ * <p>A query is keyed by its MDX text, the role and the locale of the
+ * connection that parsed it. Parameter values are not part of the key; they
+ * are reset when a query is checked out, and are assigned by the new
+ * statement.
+ *
+ * <p>Each schema has its own cache (see
+ * {@link RolapSchema#getQueryPlanCache()}), so when a schema is flushed or
+ * reloaded, its queries are discarded with it.
+ *
+ * <p>The number of idle queries is limited by
+ * {@link MondrianProperties#QueryPlanCacheMaxEntries}. If it is 0, the
+ * default, the cache is disabled.
+ *
+ * <p>This class is thread-safe.
+ */
+public class QueryPlanCache {
+    /** Idle queries, by key; least recently used key first. */
+    private final Map<List<Object>, List<Query>> idleQueries =
+        new LinkedHashMap<List<Object>, List<Query>>(16, 0.75f, true);
+
+    /** Keys of queries that have been handed out, and may be released. */
+    private final Map<Query, List<Object>> keys =
+        new WeakHashMap<Query, List<Object>>();
+
+    private int idleCount;
+
+    /**
+     * Creates a key for a query, or returns null if queries on this
+     * connection cannot be shared.
+     *
+     * @param connection Connection
+     * @param mdx MDX text
+     * @return Key, or null
+     */
+    public static List<Object> makeKey(RolapConnection connection, String mdx) {
+        if (MondrianProperties.instance().QueryPlanCacheMaxEntries.get() <= 0
+            || connection.getScenario() != null)
+        {
+            // A scenario's cell values are specific to the connection.
+            return null;
+        }
+        return Arrays.<Object>asList(
+            mdx, connection.getRole(), connection.getLocale());
+    }
+
+    /**
+     * Takes an idle query from the cache and binds it to a statement, or
+     * returns null if there is no idle query with the given key.
+     *
+     * <p>A statement that is being profiled never receives a cached query,
+     * because the query's expressions were compiled without its profiling
+     * handler.
+     *
+     * @param key Key
+     * @param statement Statement that will execute the query
+     * @return Query, or null
+     */
+    public Query checkout(List<Object> key, Statement statement) {
+        if (statement.getProfileHandler() != null) {
+            return null;
+        }
+        final Query query;
+        synchronized (this) {
+            final List<Query> queries = idleQueries.get(key);
+            if (queries == null) {
+                return null;
+            }
+            query = queries.remove(queries.size() - 1);
+            if (queries.isEmpty()) {
+                idleQueries.remove(key);
+            }
+            --idleCount;
+            keys.put(query, key);
+        }
+        query.setStatement(statement);
+        return query;
+    }
+
+    /**
+     * Registers a query that has just been parsed, so that it can be added
+     * to the cache when it is released.
+     *
+     * @param key Key
+     * @param query Query
+     */
+    public synchronized void register(List<Object> key, Query query) {
+        keys.put(query, key);
+    }
+
+    /**
+     * Returns a query to the cache, so that another statement can execute
+     * it. Does nothing if the query did not come from, and was not registered
+     * with, this cache, or if its statement was profiled, because the
+     * query's expressions may then report to that statement's profile.
+     *
+     * @param query Query that its statement no longer needs
+     */
+    public void release(Query query) {
+        final int maxEntries =
+            MondrianProperties.instance().QueryPlanCacheMaxEntries.get();
+        final boolean profiled =
+            query.getStatement().getProfileHandler() != null;
+        synchronized (this) {
+            final List<Object> key = keys.remove(query);
+            if (key == null || maxEntries <= 0 || profiled) {
+                return;
+            }
+            List<Query> queries = idleQueries.get(key);
+            if (queries == null) {
+                queries = new ArrayList<Query>(1);
+                idleQueries.put(key, queries);
+            }
+            queries.add(query);
+            ++idleCount;
+            final Iterator<List<Query>> iterator =
+                idleQueries.values().iterator();
+            while (idleCount > maxEntries) {
+                final List<Query> lruQueries = iterator.next();
+                idleCount -= lruQueries.size();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all idle queries.
+     */
+    public synchronized void clear() {
+        idleQueries.clear();
+        idleCount = 0;
+    }
+
+    /**
+     * Returns the number of idle queries.
+     */
+    public synchronized int size() {
+        return idleCount;
+    }
+}
+
+// End QueryPlanCache.java
@@ -14,6 +14,7 @@ package mondrian.rolap;
 
 import mondrian.calc.Calc;
 import mondrian.calc.ParameterSlot;
+import mondrian.calc.TupleList;
 import mondrian.olap.*;
 import mondrian.olap.fun.FunUtil;
 import mondrian.server.Statement;
@@ -442,6 +443,19 @@ public class RolapEvaluator implements Evaluator {
         return new RolapEvaluator(root, this, aggregationList);
     }
 
+    /**
+     * Creates an evaluator that has the same context as this evaluator but a
+     * different root. Used to evaluate cells in another thread.
+     *
+     * @param root Root context, typically a copy of this evaluator's root
+     * @return New evaluator
+     *
+     * @see RolapEvaluatorRoot#RolapEvaluatorRoot(RolapEvaluatorRoot)
+     */
+    final RolapEvaluator fork(RolapEvaluatorRoot root) {
+        return new RolapEvaluator(root, this, null);
+    }
+
     public final void restore(int savepoint) {
         while (commandCount > savepoint) {
             ((Command) commands[--commandCount]).execute(this);
@@ -681,7 +695,16 @@ public class RolapEvaluator implements Evaluator {
         final Calc calc = maxSolveMember.getCompiledExpression(root);
         final Object o;
         try {
-            o = calc.evaluate(this);
+            if (maxSolveMember instanceof RolapMemberCalculation
+                && ((RolapMemberCalculation) maxSolveMember)
+                    .isCachedAcrossQueries())
+            {
+                o = evaluateAcrossQueries(
+                    ((RolapMemberCalculation) maxSolveMember).getMember(),
+                    calc);
+            } else {
+                o = calc.evaluate(this);
+            }
         } finally {
             restore(savepoint);
         }
@@ -691,6 +714,140 @@ public class RolapEvaluator implements Evaluator {
         return o;
     }
 
+    /**
+     * Evaluates a calculated member defined in the schema, looking for its
+     * value in the cache shared between queries, and adding it to the cache
+     * if it was computed without missing cells.
+     *
+     * @param member Calculated member
+     * @param calc Compiled expression of calculated member
+     * @return Value of calculated member, or {@link Util#nullValue}
+     */
+    private Object evaluateAcrossQueries(RolapMember member, Calc calc) {
+        final ExpCacheDescriptor descriptor =
+            root.getSharedExpDescriptor(member.getExpression(), calc, this);
+        final List<Object> key =
+            getSharedCacheKey(member.getUniqueName(), descriptor);
+        if (key == null) {
+            return calc.evaluate(this);
+        }
+        Object o = root.sharedExpCache.get(key);
+        if (o != null) {
+            return o;
+        }
+        final boolean aggCacheDirty = cellReader.isDirty();
+        final int missCountBefore = cellReader.getMissCount();
+        o = calc.evaluate(this);
+        if (!aggCacheDirty
+            && missCountBefore == cellReader.getMissCount()
+            && !(o instanceof Throwable))
+        {
+            root.sharedExpCache.put(key, root.cube, o);
+        }
+        return o;
+    }
+
+    /**
+     * Returns the key under which the value of an expression in the current
+     * context is held in the cache shared between queries, or null if the
+     * value cannot be shared.
+     *
+     * <p>The value cannot be shared if the evaluator is in non-empty mode
+     * or has a compound slicer, because the key would have to contain state
+     * that is specific to the query.
+     *
+     * @param name Name of expression, unique within the schema
+     * @param descriptor Descriptor of expression
+     * @return Key, or null
+     */
+    final List<Object> getSharedCacheKey(
+        String name,
+        ExpCacheDescriptor descriptor)
+    {
+        if (nonEmpty || aggregationLists != null) {
+            return null;
+        }
+        final int[] hierarchyOrdinals =
+            descriptor.getDependentHierarchyOrdinals();
+        final List<Member> members =
+            new ArrayList<Member>(hierarchyOrdinals.length);
+        for (int hierarchyOrdinal : hierarchyOrdinals) {
+            members.add(currentMembers[hierarchyOrdinal]);
+        }
+        return SharedExpResultCache.makeKey(
+            root.cube, root.connection.getRole(), name, members);
+    }
+
+    /**
+     * Returns the tuples of a set expression that was evaluated natively in
+     * the current context, from the cache shared between queries, or null if
+     * they are not in the cache.
+     *
+     * @param expression Text of the set expression
+     * @return Tuples, or null
+     *
+     * @see #putSharedNativeSet(String, TupleList)
+     */
+    public TupleList getSharedNativeSet(String expression) {
+        final List<Object> key = getSharedNativeSetKey(expression);
+        if (key == null) {
+            return null;
+        }
+        return (TupleList) root.sharedExpCache.get(key);
+    }
+
+    /**
+     * Adds the tuples of a set expression that was evaluated natively in the
+     * current context to the cache shared between queries, so that later
+     * queries, from any connection with the same schema and role, can use
+     * them without executing SQL.
+     *
+     * @param expression Text of the set expression
+     * @param list Tuples; must not be modified afterwards
+     */
+    public void putSharedNativeSet(String expression, TupleList list) {
+        final List<Object> key = getSharedNativeSetKey(expression);
+        if (key != null) {
+            root.sharedExpCache.put(key, root.cube, list);
+        }
+    }
+
+    /**
+     * Returns the key of a natively evaluated set in the cache shared between
+     * queries, or null if the set cannot be shared.
+     *
+     * <p>The SQL that evaluates the set is constrained by every member of
+     * the context, so the key contains all of them. A compound slicer is
+     * specific to the query, so its sets cannot be shared. In a virtual cube,
+     * the SQL joins to the base cubes of the query's measures, so the key
+     * contains their names too (as does the key of
+     * {@link SqlContextConstraint}).
+     */
+    private List<Object> getSharedNativeSetKey(String expression) {
+        if (aggregationLists != null) {
+            return null;
+        }
+        final List<Object> key =
+            SharedExpResultCache.makeKey(
+                root.cube,
+                root.connection.getRole(),
+                "NativizeSet " + expression,
+                Arrays.<Member>asList(currentMembers));
+        if (key != null && root.cube.isVirtual()) {
+            final List<RolapCube> baseCubes = getQuery().getBaseCubes();
+            if (baseCubes == null) {
+                return null;
+            }
+            final List<String> baseCubeNames =
+                new ArrayList<String>(baseCubes.size());
+            for (RolapCube baseCube : baseCubes) {
+                baseCubeNames.add(baseCube.getName());
+            }
+            key.add(baseCubeNames);
+        }
+        return key;
+    }
+
     void setExpanding(Member member) {
         assert member != null;
         ensureCommandCapacity(commandCount + 3);
@@ -909,46 +1066,33 @@ public class RolapEvaluator implements Evaluator {
         return format.format(o);
     }
 
-    /**
-     * Creates a key which uniquely identifes an expression and its
-     * context. The context includes members of dimensions which the
-     * expression is dependent upon.
-     */
-    private Object getExpResultCacheKey(ExpCacheDescriptor descriptor) {
-        // in NON EMPTY mode the result depends on everything, e.g.
-        // "NON EMPTY [Customer].[Name].members" may return different results
-        // for 1997-01 and 1997-02
-        final List<Object> key;
-        if (nonEmpty) {
-            key = new ArrayList<Object>(currentMembers.length + 1);
-            key.add(descriptor.getExp());
-            //noinspection ManualArrayToCollectionCopy
-            for (RolapMember currentMember : currentMembers) {
-                key.add(currentMember);
-            }
-        } else {
-            final int[] hierarchyOrdinals =
-                descriptor.getDependentHierarchyOrdinals();
-            key = new ArrayList<Object>(hierarchyOrdinals.length + 1);
-            key.add(descriptor.getExp());
-            for (final int hierarchyOrdinal : hierarchyOrdinals) {
-                final Member member = currentMembers[hierarchyOrdinal];
-                assert member != null;
-                key.add(member);
-            }
-        }
-        return key;
-    }
-
     public final Object getCachedResult(ExpCacheDescriptor cacheDescriptor) {
         // Look up a cached result, and if not present, compute one and add to
         // cache. Use a dummy value to represent nulls.
-        final Object key = getExpResultCacheKey(cacheDescriptor);
-        Object result = root.getCacheResult(key);
+        //
+        // The key consists of the expression and the current members of the
+        // hierarchies it depends upon. In NON EMPTY mode the result depends
+        // on everything, e.g. "NON EMPTY [Customer].[Name].members" may
+        // return different results for 1997-01 and 1997-02. The cache
+        // compares keys against the current members in place, so a lookup
+        // allocates nothing.
+        final Exp exp = cacheDescriptor.getExp();
+        final int[] ordinals =
+            nonEmpty
+                ? root.allOrdinals
+                : cacheDescriptor.getDependentHierarchyOrdinals();
+        Object result = root.getCacheResult(exp, ordinals, currentMembers);
         if (result == null) {
             boolean aggCacheDirty = cellReader.isDirty();
             int aggregateCacheMissCountBefore = cellReader.getMissCount();
-            result = cacheDescriptor.evaluate(this);
+            final int savepoint = savepoint();
+            try {
+                result = cacheDescriptor.evaluate(this);
+            } finally {
+                // Restore the context, so that the result is stored under the
+                // same key that was looked up.
+                restore(savepoint);
+            }
             int aggregateCacheMissCountAfter = cellReader.getMissCount();
 
             boolean isValidResult;
@@ -968,7 +1112,9 @@ public class RolapEvaluator implements Evaluator {
                 isValidResult = false;
             }
             root.putCacheResult(
-                key,
+                exp,
+                ordinals,
+                currentMembers,
                 result == null ? nullResult : result,
                 isValidResult);
         } else if (result == nullResult) {
@@ -28,9 +28,8 @@ import java.util.*;
  * @since Nov 11, 2008
  */
 class RolapEvaluatorRoot {
-    final Map<Object, Object> expResultCache = new HashMap<Object, Object>();
-    final Map<Object, Object> tmpExpResultCache =
-        new HashMap<Object, Object>();
+    final ExpResultCache expResultCache = new ExpResultCache();
+    final ExpResultCache tmpExpResultCache = new ExpResultCache();
     final RolapCube cube;
     final RolapConnection connection;
     final SchemaReader schemaReader;
@@ -50,6 +49,13 @@ class RolapEvaluatorRoot {
     final int[] nonAllPositions;
     int nonAllPositionCount;
 
+    /**
+     * Ordinals of all hierarchies, 0 to the number of hierarchies minus 1.
+     * In non-empty mode, an expression result is cached using the current
+     * member of every hierarchy.
+     */
+    final int[] allOrdinals;
+
     final SolveOrderMode solveOrderMode =
         Util.lookup(
             SolveOrderMode.class,
@@ -58,6 +64,18 @@ class RolapEvaluatorRoot {
 
     final Set<Exp> activeNativeExpansions = new HashSet<Exp>();
 
+    /**
+     * Cache of expression results shared between queries.
+     */
+    final SharedExpResultCache sharedExpCache;
+
+    /**
+     * Descriptors of expressions whose values are held in
+     * {@link #sharedExpCache}.
+     */
+    final Map<Exp, ExpCacheDescriptor> sharedExpDescriptors =
+        new HashMap<Exp, ExpCacheDescriptor>();
+
     /**
      * The size of the command stack at which we will next check for recursion.
      */
@@ -119,10 +137,46 @@ class RolapEvaluatorRoot {
             }
         }
         this.defaultMembers = list.toArray(new RolapMember[list.size()]);
+        this.allOrdinals = new int[defaultMembers.length];
+        for (int i = 0; i < allOrdinals.length; i++) {
+            allOrdinals[i] = i;
+        }
         this.currentDialect =
             DialectManager.createDialect(schemaReader.getDataSource(), null);
 
         this.recursionCheckCommandCount = (defaultMembers.length << 4);
+        this.sharedExpCache =
+            connection.getServer().getAggregationManager().sharedExpCache;
+    }
+
+    /**
+     * Creates a RolapEvaluatorRoot that shares the immutable state of an
+     * existing root, and starts with copies of its valid expression results
+     * and compiled expressions, but otherwise has its own state. Evaluators
+     * using the new root can run in a different thread from evaluators using
+     * the existing root, provided that the existing root is not modified
+     * meanwhile.
+     *
+     * @param root Root to copy
+     */
+    protected RolapEvaluatorRoot(RolapEvaluatorRoot root) {
+        this.execution = root.execution;
+        this.statement = root.statement;
+        this.query = root.query;
+        this.cube = root.cube;
+        this.connection = root.connection;
+        this.schemaReader = root.schemaReader;
+        this.queryStartTime = root.queryStartTime;
+        this.defaultMembers = root.defaultMembers;
+        this.allOrdinals = root.allOrdinals;
+        this.nonAllPositions = root.nonAllPositions.clone();
+        this.nonAllPositionCount = root.nonAllPositionCount;
+        this.currentDialect = root.currentDialect;
+        this.recursionCheckCommandCount = root.recursionCheckCommandCount;
+        this.expResultCache.putAll(root.expResultCache);
+        this.compiledExps.putAll(root.compiledExps);
+        this.sharedExpCache = root.sharedExpCache;
+        this.sharedExpDescriptors.putAll(root.sharedExpDescriptors);
     }
 
     /**
@@ -153,6 +207,30 @@ class RolapEvaluatorRoot {
         return calc;
     }
 
+    /**
+     * Returns a descriptor for an expression whose value is held in the cache
+     * shared between queries. The descriptor records which hierarchies the
+     * expression depends upon, which is moderately expensive to compute, so
+     * it is computed once per query.
+     *
+     * @param exp Expression
+     * @param calc Compiled expression
+     * @param evaluator Evaluator
+     * @return Descriptor
+     */
+    final ExpCacheDescriptor getSharedExpDescriptor(
+        Exp exp,
+        Calc calc,
+        Evaluator evaluator)
+    {
+        ExpCacheDescriptor descriptor = sharedExpDescriptors.get(exp);
+        if (descriptor == null) {
+            descriptor = new ExpCacheDescriptor(exp, calc, evaluator);
+            sharedExpDescriptors.put(exp, descriptor);
+        }
+        return descriptor;
+    }
+
     /**
      * Just a simple key of Exp/scalar/resultStyle, used for keeping
      * compiled expressions.  Previous to the introduction of this
@@ -232,32 +310,42 @@ class RolapEvaluatorRoot {
     /**
      * Puts result in cache.
      *
-     * @param key key
+     * @param exp expression
+     * @param ordinals ordinals of hierarchies that the expression depends on
+     * @param members current member of each hierarchy
      * @param result value to be cached
      * @param isValidResult indicate if this result is valid
      */
     public final void putCacheResult(
-        Object key,
+        Exp exp,
+        int[] ordinals,
+        Member[] members,
         Object result,
         boolean isValidResult)
     {
         if (isValidResult) {
-            expResultCache.put(key, result);
+            expResultCache.put(exp, ordinals, members, result);
         } else {
-            tmpExpResultCache.put(key, result);
+            tmpExpResultCache.put(exp, ordinals, members, result);
         }
     }
 
     /**
      * Gets result from cache.
      *
-     * @param key cache key
+     * @param exp expression
+     * @param ordinals ordinals of hierarchies that the expression depends on
+     * @param members current member of each hierarchy
      * @return cached expression
      */
-    public final Object getCacheResult(Object key) {
-        Object result = expResultCache.get(key);
+    public final Object getCacheResult(
+        Exp exp,
+        int[] ordinals,
+        Member[] members)
+    {
+        Object result = expResultCache.get(exp, ordinals, members);
         if (result == null) {
-            result = tmpExpResultCache.get(key);
+            result = tmpExpResultCache.get(exp, ordinals, members);
         }
         return result;
     }
@@ -25,6 +25,7 @@ class RolapMemberCalculation implements RolapCalculation {
     private final RolapMember member;
     private final int solveOrder;
     private Boolean containsAggregateFunction;
+    private final boolean cachedAcrossQueries;
 
     /**
      * Creates a RolapMemberCalculation.
@@ -35,6 +36,9 @@ class RolapMemberCalculation implements RolapCalculation {
         this.member = member;
         // compute and solve order: it is used frequently
         solveOrder = this.member.getSolveOrder();
+        cachedAcrossQueries =
+            !member.isCalculatedInQuery()
+            && SharedExpResultCache.isEnabled(member);
         assert member.isEvaluated();
     }
 
@@ -74,6 +78,23 @@ class RolapMemberCalculation implements RolapCalculation {
         return member.isCalculatedInQuery();
     }
 
+    /**
+     * Returns whether the value of this calculated member is held in the cache
+     * shared between queries.
+     *
+     * @see SharedExpResultCache
+     */
+    boolean isCachedAcrossQueries() {
+        return cachedAcrossQueries;
+    }
+
+    /**
+     * Returns the calculated member.
+     */
+    RolapMember getMember() {
+        return member;
+    }
+
     public boolean containsAggregateFunction() {
         // searching for agg functions is expensive, so cache result
         if (containsAggregateFunction == null) {
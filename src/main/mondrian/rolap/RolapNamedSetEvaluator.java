@@ -29,6 +29,12 @@ class RolapNamedSetEvaluator
     /** Value of this named set; set on first use. */
     private TupleList list;
 
+    /**
+     * Value of this named set, without the callback that updates
+     * {@link #currentOrdinal}; set on first use.
+     */
+    private TupleList rawList;
+
     /**
      * Dummy list used as a marker to detect re-entrant calls to
      * {@link #ensureList}.
@@ -85,23 +91,51 @@ class RolapNamedSetEvaluator
             final Calc calc =
                 rrer.getCompiled(
                     namedSet.getExp(), false, ResultStyle.ITERABLE);
-            TupleIterable iterable =
-                (TupleIterable)
-                    rrer.result.evaluateExp(
-                        calc,
-                        rrer.result.slicerEvaluator);
-
-            // Axes can be in two forms: list or iterable. If iterable, we
-            // need to materialize it, to ensure that all cell values are in
-            // cache.
-            final TupleList rawList;
-            if (iterable instanceof TupleList) {
-                rawList = (TupleList) iterable;
-            } else {
-                rawList = TupleCollections.createList(iterable.getArity());
-                TupleCursor cursor = iterable.tupleCursor();
-                while (cursor.forward()) {
-                    rawList.addCurrent(cursor);
+            final RolapEvaluator slicerEvaluator = rrer.result.slicerEvaluator;
+
+            // If the set is defined in the schema and is to be cached across
+            // queries, look for its value in the shared cache.
+            List<Object> sharedKey = null;
+            TupleList rawList = null;
+            if (SharedExpResultCache.isEnabled(namedSet)) {
+                sharedKey =
+                    slicerEvaluator.getSharedCacheKey(
+                        namedSet.getUniqueName(),
+                        rrer.getSharedExpDescriptor(
+                            namedSet.getExp(), calc, slicerEvaluator));
+                if (sharedKey != null) {
+                    rawList = (TupleList) rrer.sharedExpCache.get(sharedKey);
+                }
+            }
+
+            if (rawList == null) {
+                TupleIterable iterable =
+                    (TupleIterable)
+                        rrer.result.evaluateExp(calc, slicerEvaluator);
+
+                // Axes can be in two forms: list or iterable. If iterable, we
+                // need to materialize it, to ensure that all cell values are
+                // in cache.
+                if (iterable instanceof TupleList) {
+                    rawList = (TupleList) iterable;
+                } else {
+                    rawList = TupleCollections.createList(iterable.getArity());
+                    TupleCursor cursor = iterable.tupleCursor();
+                    while (cursor.forward()) {
+                        rawList.addCurrent(cursor);
+                    }
+                }
+
+                // evaluateExp has loaded all cells, so the value is final.
+                // Other queries will see the cached list, so copy it if the
+                // calc returned a list it might still hold, and make it
+                // unmodifiable.
+                if (sharedKey != null) {
+                    if (rawList == iterable) {
+                        rawList = rawList.cloneList(-1);
+                    }
+                    rawList = TupleCollections.unmodifiableList(rawList);
+                    rrer.sharedExpCache.put(sharedKey, rrer.cube, rawList);
                 }
             }
             if (RolapResult.LOGGER.isDebugEnabled()) {
@@ -110,6 +144,7 @@ class RolapNamedSetEvaluator
             // Wrap list so that currentOrdinal is updated whenever the list
             // is accessed. The list is immutable, because we don't override
             // AbstractList.set(int, Object).
+            this.rawList = rawList;
             this.list = rawList.withPositionCallback(this);
         } finally {
             if (this.list == DUMMY_LIST) {
@@ -118,6 +153,26 @@ class RolapNamedSetEvaluator
         }
     }
 
+    /**
+     * Creates an evaluator for the same named set that shares this
+     * evaluator's value but has its own current ordinal, so that it can be
+     * used in a different thread. Returns null if the value of the named set
+     * has not been evaluated yet.
+     *
+     * @param rrer Evaluation root context of the new evaluator
+     * @return New evaluator, or null
+     */
+    RolapNamedSetEvaluator fork(RolapResult.RolapResultEvaluatorRoot rrer) {
+        if (rawList == null) {
+            return null;
+        }
+        final RolapNamedSetEvaluator evaluator =
+            new RolapNamedSetEvaluator(rrer, namedSet);
+        evaluator.rawList = rawList;
+        evaluator.list = rawList.withPositionCallback(evaluator);
+        return evaluator;
+    }
+
     private String generateDebugMessage(Calc calc, TupleList rawList) {
         final StringBuilder buf = new StringBuilder();
         buf.append(this);
@@ -0,0 +1,403 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.calc.ResultStyle;
+import mondrian.mdx.MemberExpr;
+import mondrian.mdx.ResolvedFunCall;
+import mondrian.olap.*;
+import mondrian.rolap.sql.*;
+import mondrian.server.Locus;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import javax.sql.DataSource;
+
+/**
+ * Computes a <code>Count</code> or <code>Sum</code> of a set in SQL.
+ *
+ * <p>Handles expressions such as
+ *
+ * <blockquote><pre>Count([Customers].[Name].Members, EXCLUDEEMPTY)
+ * Count(NonEmptyCrossJoin([Customers].[Name].Members,
+ *     [Product].[Product Name].Members))
+ * Sum(Descendants([Customers].[USA], [Customers].[Name]),
+ *     [Measures].[Unit Sales])</pre></blockquote>
+ *
+ * <p>Evaluated in Java, such an expression reads every member of the set,
+ * then evaluates a cell for each tuple. This class instead generates a single
+ * statement that joins the levels of the set to the fact table, constrained
+ * by the set and the current context, and returns the answer in one row:
+ *
+ * <blockquote><pre>SELECT count(*) FROM (
+ *   SELECT DISTINCT "customer"."customer_id"
+ *   FROM "customer", "sales_fact_1997", "time_by_day"
+ *   WHERE ... AND "time_by_day"."the_year" = 1997) AS "init"
+ *
+ * SELECT sum("sales_fact_1997"."unit_sales")
+ * FROM "customer", "sales_fact_1997", "time_by_day"
+ * WHERE "customer"."country" = 'USA' AND ...</pre></blockquote>
+ *
+ * <p>A <code>Count</code> is native only if it counts non-empty tuples: if
+ * it has the <code>EXCLUDEEMPTY</code> flag, or if its set is a
+ * <code>NonEmptyCrossJoin</code>. As for other native sets, a tuple is
+ * non-empty if it has rows in the fact table of the current measure, which
+ * must be a stored measure.
+ *
+ * <p>A <code>Sum</code> is native only if it sums a stored measure whose
+ * aggregator is <code>sum</code> or <code>count</code>, so that the sum of
+ * the tuples' cells equals the aggregate over all of their fact rows.
+ * Tuples without facts contribute nothing, so the context need not be
+ * non-empty.
+ *
+ * <p>A result is a cell value, so it is held in the
+ * {@link SharedExpResultCache cache shared between queries}, keyed by the
+ * constraint. It is removed when a region of cells of the measure's star is
+ * flushed using {@link mondrian.olap.CacheControl}.
+ */
+public class RolapNativeAggregate extends RolapNativeSet {
+    public RolapNativeAggregate() {
+        super.setEnabled(
+            MondrianProperties.instance().EnableNativeAggregate.get());
+    }
+
+    /**
+     * Constraint that restricts the fact rows to those of the tuples of a
+     * set, in the current context.
+     */
+    static class AggregateConstraint extends SetConstraint {
+        private final boolean count;
+
+        /**
+         * Creates an AggregateConstraint.
+         *
+         * @param args Arguments
+         * @param evaluator Evaluator
+         * @param count Whether to count tuples, as opposed to sum a measure
+         */
+        AggregateConstraint(
+            CrossJoinArg[] args,
+            RolapEvaluator evaluator,
+            boolean count)
+        {
+            super(args, evaluator, true);
+            this.count = count;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * <p>The aggregate is computed over the fact table, so it is always
+         * joined.
+         */
+        protected boolean isJoinRequired() {
+            return true;
+        }
+
+        public Object getCacheKey() {
+            List<Object> key = new ArrayList<Object>();
+            key.add(super.getCacheKey());
+            key.add(count);
+            return key;
+        }
+    }
+
+    protected boolean restrictMemberTypes() {
+        return true;
+    }
+
+    NativeEvaluator createEvaluator(
+        RolapEvaluator evaluator,
+        FunDef fun,
+        Exp[] args)
+    {
+        if (!isEnabled()) {
+            return null;
+        }
+        if (!AggregateConstraint.isValidContext(
+                evaluator, restrictMemberTypes()))
+        {
+            return null;
+        }
+
+        // is this "Count(<set>, EXCLUDEEMPTY)",
+        // "Count(NonEmptyCrossJoin(...))" or
+        // "Sum(<set>[, <stored measure>])"
+        final String funName = fun.getName();
+        final boolean count;
+        final Member member;
+        if ("Count".equalsIgnoreCase(funName)) {
+            count = true;
+            final boolean excludeEmpty =
+                args.length == 2
+                && args[1] instanceof Literal
+                && "EXCLUDEEMPTY".equalsIgnoreCase(
+                    String.valueOf(((Literal) args[1]).getValue()));
+            if (!excludeEmpty && !isNonEmptyCrossJoin(args[0])) {
+                return null;
+            }
+            member = evaluator.getMembers()[0];
+        } else if ("Sum".equalsIgnoreCase(funName)) {
+            count = false;
+            if (args.length == 1) {
+                member = evaluator.getMembers()[0];
+            } else if (args[1] instanceof MemberExpr) {
+                member = ((MemberExpr) args[1]).getMember();
+            } else {
+                return null;
+            }
+        } else {
+            return null;
+        }
+        if (!(member instanceof RolapStoredMeasure)) {
+            return null;
+        }
+        final RolapStoredMeasure measure = (RolapStoredMeasure) member;
+        if (!measure.getCube().equals(evaluator.getCube())) {
+            return null;
+        }
+        if (!count
+            && measure.getAggregator() != RolapAggregator.Sum
+            && measure.getAggregator() != RolapAggregator.Count)
+        {
+            return null;
+        }
+
+        // extract the set expression
+        List<CrossJoinArg[]> allArgs =
+            crossJoinArgFactory().checkCrossJoinArg(evaluator, args[0]);
+        if (allArgs == null || allArgs.isEmpty() || allArgs.get(0) == null) {
+            return null;
+        }
+        CrossJoinArg[] cjArgs = allArgs.get(0);
+        if (isPreferInterpreter(cjArgs, false)) {
+            return null;
+        }
+        for (CrossJoinArg arg : cjArgs) {
+            final RolapLevel level = arg.getLevel();
+            if (!(level instanceof RolapCubeLevel) || level.isParentChild()) {
+                return null;
+            }
+            if (arg instanceof MemberListCrossJoinArg) {
+                // a tuple that occurs twice is counted twice
+                final MemberListCrossJoinArg memberListArg =
+                    (MemberListCrossJoinArg) arg;
+                final List<RolapMember> members = memberListArg.getMembers();
+                if (memberListArg.hasCalcMembers()
+                    || memberListArg.hasAllMember()
+                    || new HashSet<RolapMember>(members).size()
+                    != members.size())
+                {
+                    return null;
+                }
+            }
+        }
+
+        final DataSource dataSource =
+            evaluator.getSchemaReader().getDataSource();
+        if (count
+            && !SqlQuery.newQuery(dataSource, "NativeAggregate")
+                .getDialect().allowsFromQuery())
+        {
+            return null;
+        }
+        LOGGER.debug("using native aggregate");
+
+        final int savepoint = evaluator.savepoint();
+        overrideContext(evaluator, cjArgs, measure);
+        CrossJoinArg[] combinedArgs = cjArgs;
+        if (allArgs.size() == 2 && allArgs.get(1) != null) {
+            combinedArgs = Util.appendArrays(cjArgs, allArgs.get(1));
+        }
+        AggregateConstraint constraint =
+            new AggregateConstraint(combinedArgs, evaluator, count);
+        evaluator.restore(savepoint);
+        final RolapEvaluatorRoot root = evaluator.root;
+        List<Object> key =
+            SharedExpResultCache.makeKey(
+                root.cube,
+                root.connection.getRole(),
+                "NativeAggregate",
+                Collections.<Member>emptyList());
+        if (key != null) {
+            key.add(constraint.getCacheKey());
+            key.addAll(Arrays.asList(cjArgs));
+        }
+        return new AggregateEvaluator(
+            cjArgs, dataSource, constraint, measure, count, root, key);
+    }
+
+    private static boolean isNonEmptyCrossJoin(Exp exp) {
+        return exp instanceof ResolvedFunCall
+            && "NonEmptyCrossJoin".equalsIgnoreCase(
+                ((ResolvedFunCall) exp).getFunDef().getName());
+    }
+
+    /**
+     * Evaluator that computes a count or sum in SQL. Returns an
+     * {@link Integer} for a count, and a {@link Double} for a sum,
+     * {@link Util#nullValue} if the sum is empty.
+     */
+    private class AggregateEvaluator implements NativeEvaluator {
+        private final CrossJoinArg[] args;
+        private final DataSource dataSource;
+        private final AggregateConstraint constraint;
+        private final RolapStoredMeasure measure;
+        private final boolean count;
+        private final RolapEvaluatorRoot root;
+        private final List<Object> key;
+
+        /**
+         * Creates an AggregateEvaluator.
+         *
+         * @param args Arguments
+         * @param dataSource Data source
+         * @param constraint Constraint
+         * @param measure Measure to sum, or whose fact table to count
+         * @param count Whether to count tuples, as opposed to sum a measure
+         * @param root Root evaluator, whose cube and shared cache hold the
+         *   result
+         * @param key Key of the result in the cache shared between queries,
+         *   or null if the result cannot be shared
+         */
+        AggregateEvaluator(
+            CrossJoinArg[] args,
+            DataSource dataSource,
+            AggregateConstraint constraint,
+            RolapStoredMeasure measure,
+            boolean count,
+            RolapEvaluatorRoot root,
+            List<Object> key)
+        {
+            this.args = args;
+            this.dataSource = dataSource;
+            this.constraint = constraint;
+            this.measure = measure;
+            this.count = count;
+            this.root = root;
+            this.key = key;
+        }
+
+        public Object execute(ResultStyle desiredResultStyle) {
+            Object value = key == null ? null : root.sharedExpCache.get(key);
+            if (value != null) {
+                if (listener != null) {
+                    listener.foundInCache(new TupleEvent(this, null));
+                }
+                return value;
+            }
+            if (listener != null) {
+                listener.executingSql(new TupleEvent(this, null));
+            }
+            value = executeSql();
+            if (key != null) {
+                root.sharedExpCache.put(key, root.cube, value);
+            }
+            return value;
+        }
+
+        private Object executeSql() {
+            final String sql = generateSql();
+            final SqlStatement stmt =
+                RolapUtil.executeQuery(
+                    dataSource,
+                    sql,
+                    new Locus(
+                        Locus.peek().execution,
+                        "RolapNativeAggregate.execute",
+                        "while computing " + (count ? "count" : "sum")
+                        + " of tuples of " + Arrays.toString(args)));
+            try {
+                ResultSet resultSet = stmt.getResultSet();
+                Util.assertTrue(resultSet.next());
+                ++stmt.rowCount;
+                if (count) {
+                    return resultSet.getInt(1);
+                }
+                final double d = resultSet.getDouble(1);
+                return resultSet.wasNull() ? Util.nullValue : d;
+            } catch (SQLException e) {
+                throw stmt.handle(e);
+            } finally {
+                stmt.close();
+            }
+        }
+
+        /**
+         * Generates the SQL statement. A sum aggregates the measure over the
+         * fact rows; a count counts the distinct keys of the tuples.
+         */
+        private String generateSql() {
+            final String description =
+                "while generating query to compute "
+                + (count ? "count" : "sum") + " of tuples of "
+                + Arrays.toString(args);
+            final SqlQuery sqlQuery =
+                SqlQuery.newQuery(dataSource, description);
+            final RolapCube baseCube = measure.getCube();
+            final RolapStar.Measure starMeasure =
+                (RolapStar.Measure) measure.getStarMeasure();
+            starMeasure.getTable().addToFrom(sqlQuery, false, true);
+            if (!count) {
+                sqlQuery.addSelect(
+                    starMeasure.getAggregator().getExpression(
+                        starMeasure.generateExprString(sqlQuery)),
+                    null);
+            }
+            for (CrossJoinArg arg : args) {
+                addLevel(sqlQuery, baseCube, (RolapCubeLevel) arg.getLevel());
+            }
+            constraint.addConstraint(sqlQuery, baseCube, null);
+            if (!count) {
+                return sqlQuery.toString();
+            }
+            sqlQuery.setDistinct(true);
+            final SqlQuery countQuery =
+                SqlQuery.newQuery(dataSource, description);
+            countQuery.addSelect("count(*)", null);
+            // Note: the "init" is for Postgres, which requires
+            // FROM-queries to have an alias
+            countQuery.addFrom(sqlQuery, "init", true);
+            return countQuery.toString();
+        }
+
+        /**
+         * Joins a level's table to the fact table, and, for a count, selects
+         * the keys that identify a member of the level.
+         */
+        private void addLevel(
+            SqlQuery sqlQuery,
+            RolapCube baseCube,
+            RolapCubeLevel level)
+        {
+            final RolapHierarchy hierarchy = level.getHierarchy();
+            final RolapLevel[] levels = (RolapLevel[]) hierarchy.getLevels();
+            for (int i = level.getDepth(); i >= 0; i--) {
+                final RolapLevel level2 = levels[i];
+                if (level2.isAll()) {
+                    continue;
+                }
+                final MondrianDef.Expression keyExp = level2.getKeyExp();
+                hierarchy.addToFrom(sqlQuery, keyExp);
+                if (count) {
+                    sqlQuery.addSelect(keyExp.getExpression(sqlQuery), null);
+                }
+                if (level2.isUnique()) {
+                    break; // no further qualification needed
+                }
+            }
+            SqlConstraintUtils.joinLevelTableToFactTable(
+                sqlQuery, baseCube, null, constraint.getEvaluator(), level);
+        }
+    }
+}
+
+// End RolapNativeAggregate.java
@@ -0,0 +1,176 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.mdx.*;
+import mondrian.olap.*;
+import mondrian.rolap.sql.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes an <code>Extract</code> of a non-empty crossjoin in SQL.
+ *
+ * <p>Handles expressions such as
+ *
+ * <blockquote><pre>Extract(
+ *     NonEmptyCrossJoin(
+ *         [Store].[Store City].Members,
+ *         [Customers].[Name].Members),
+ *     [Store])</pre></blockquote>
+ *
+ * <p>Evaluated in Java, the crossjoin reads every (city, customer) pair that
+ * has facts, then discards the customers. This class instead reads only the
+ * extracted levels, joined to the fact table and constrained by the other
+ * arguments of the crossjoin, so the database returns one row per city.
+ *
+ * <p>The extracted hierarchies must be the leading arguments of the
+ * crossjoin, in the same order, and must not be lists of members; then the
+ * extracted tuples are in the order in which they first occur in the
+ * crossjoin, as required.
+ *
+ * <p>Native evaluation is enabled or disabled together with native
+ * crossjoin, by {@link MondrianProperties#EnableNativeCrossJoin}.
+ */
+public class RolapNativeExtract extends RolapNativeSet {
+
+    public RolapNativeExtract() {
+        super.setEnabled(
+            MondrianProperties.instance().EnableNativeCrossJoin.get());
+    }
+
+    protected boolean restrictMemberTypes() {
+        return false;
+    }
+
+    NativeEvaluator createEvaluator(
+        RolapEvaluator evaluator,
+        FunDef fun,
+        Exp[] args)
+    {
+        if (!isEnabled()) {
+            return null;
+        }
+        // is this "Extract(<crossjoin>, <hierarchy>...)"
+        if (!"Extract".equalsIgnoreCase(fun.getName())
+            || args.length < 2
+            || !(args[0] instanceof ResolvedFunCall))
+        {
+            return null;
+        }
+        // join with fact table will always filter out those members
+        // that dont have a row in the fact table, so the crossjoin must be
+        // non-empty
+        final String funName =
+            ((ResolvedFunCall) args[0]).getFunDef().getName();
+        if (!"NonEmptyCrossJoin".equalsIgnoreCase(funName)
+            && !("CrossJoin".equalsIgnoreCase(funName)
+                 && evaluator.isNonEmpty()))
+        {
+            return null;
+        }
+        if (evaluator.getCube().isVirtual()) {
+            return null;
+        }
+
+        List<CrossJoinArg[]> allArgs =
+            crossJoinArgFactory().checkCrossJoinArg(evaluator, args[0]);
+        if (allArgs == null || allArgs.isEmpty() || allArgs.get(0) == null) {
+            return null;
+        }
+        CrossJoinArg[] cjArgs = allArgs.get(0);
+        final int extractedCount = args.length - 1;
+        if (cjArgs.length <= extractedCount) {
+            // Nothing is projected away; the crossjoin itself is native.
+            return null;
+        }
+        List<RolapLevel> levels = new ArrayList<RolapLevel>();
+        for (int i = 0; i < cjArgs.length; i++) {
+            final CrossJoinArg arg = cjArgs[i];
+            final RolapLevel level = arg.getLevel();
+            if (level == null) {
+                return null;
+            }
+            if (arg instanceof MemberListCrossJoinArg) {
+                final MemberListCrossJoinArg memberListArg =
+                    (MemberListCrossJoinArg) arg;
+                if (i < extractedCount
+                    || memberListArg.hasCalcMembers()
+                    || memberListArg.hasAllMember())
+                {
+                    return null;
+                }
+            }
+            if (i < extractedCount
+                && !level.getHierarchy().equals(getHierarchy(args[i + 1])))
+            {
+                return null;
+            }
+            levels.add(level);
+        }
+        if (isPreferInterpreter(cjArgs, true)) {
+            return null;
+        }
+        if (!RolapNativeCrossJoin.NonEmptyCrossJoinConstraint.isValidContext(
+                evaluator,
+                false,
+                levels.toArray(new RolapLevel[levels.size()]),
+                restrictMemberTypes()))
+        {
+            return null;
+        }
+
+        LOGGER.debug("using native extract");
+
+        // Eliminate any outer context for the dimensions referenced by the
+        // crossjoin, as native crossjoin does.
+        final int savepoint = evaluator.savepoint();
+        Member[] evalMembers = evaluator.getMembers().clone();
+        for (RolapLevel level : levels) {
+            RolapHierarchy hierarchy = level.getHierarchy();
+            for (int i = 0; i < evalMembers.length; ++i) {
+                Dimension evalMemberDimension =
+                    evalMembers[i].getHierarchy().getDimension();
+                if (evalMemberDimension == hierarchy.getDimension()) {
+                    evalMembers[i] = hierarchy.getAllMember();
+                }
+            }
+        }
+        evaluator.setContext(evalMembers);
+
+        CrossJoinArg[] combinedArgs = cjArgs;
+        if (allArgs.size() == 2 && allArgs.get(1) != null) {
+            combinedArgs = Util.appendArrays(cjArgs, allArgs.get(1));
+        }
+        TupleConstraint constraint =
+            new RolapNativeCrossJoin.NonEmptyCrossJoinConstraint(
+                combinedArgs, evaluator);
+        final SchemaReader schemaReader = evaluator.getSchemaReader();
+        evaluator.restore(savepoint);
+
+        // Read only the extracted levels.
+        final CrossJoinArg[] extractedArgs = new CrossJoinArg[extractedCount];
+        System.arraycopy(cjArgs, 0, extractedArgs, 0, extractedCount);
+        return new SetEvaluator(extractedArgs, schemaReader, constraint);
+    }
+
+    private static Hierarchy getHierarchy(Exp exp) {
+        if (exp instanceof HierarchyExpr) {
+            return ((HierarchyExpr) exp).getHierarchy();
+        } else if (exp instanceof DimensionExpr) {
+            return ((DimensionExpr) exp).getDimension().getHierarchy();
+        } else {
+            return null;
+        }
+    }
+}
+
+// End RolapNativeExtract.java
@@ -0,0 +1,352 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.calc.ResultStyle;
+import mondrian.calc.TupleList;
+import mondrian.calc.impl.TupleCollections;
+import mondrian.calc.impl.TupleHashSet;
+import mondrian.mdx.ResolvedFunCall;
+import mondrian.olap.*;
+import mondrian.rolap.aggmatcher.AggStar;
+import mondrian.rolap.sql.*;
+import mondrian.spi.Dialect;
+
+import java.util.*;
+import javax.sql.DataSource;
+
+/**
+ * Computes a <code>Generate</code> of a <code>TopCount</code> in SQL.
+ *
+ * <p>Handles expressions such as
+ *
+ * <blockquote><pre>Generate(
+ *     [Store].[Store City].Members,
+ *     TopCount([Customers].[Name].Members, 5, [Measures].[Unit Sales]))
+ * </pre></blockquote>
+ *
+ * <p>Evaluated in Java, such an expression computes a top-N for each member
+ * of the first set, and therefore either executes one SQL statement per
+ * member, or sorts every tuple of the second set once per member. This class
+ * instead reads the top tuples of every group in a single SQL statement,
+ * partitioning the rows by the members of the first set and numbering them
+ * with the <code>ROW_NUMBER</code> window function. It is used only if the
+ * dialect {@link Dialect#supportsWindowFunctions() supports window
+ * functions}.
+ *
+ * <p>As for a native TopCount, the fact table is always joined, so groups
+ * without facts return no tuples. Therefore native evaluation is used only in
+ * a non-empty context.
+ *
+ * <p>Native evaluation is enabled or disabled together with native TopCount,
+ * by {@link MondrianProperties#EnableNativeTopCount}.
+ */
+public class RolapNativeGenerate extends RolapNativeSet {
+
+    public RolapNativeGenerate() {
+        super.setEnabled(
+            MondrianProperties.instance().EnableNativeTopCount.get());
+    }
+
+    /**
+     * Constraint that returns, for each member of a level, the top tuples
+     * according to an expression.
+     */
+    static class GenerateConstraint extends SetConstraint {
+        private final RolapLevel outerLevel;
+        private final Exp orderByExpr;
+        private final boolean ascending;
+        private final int count;
+
+        /**
+         * Creates a GenerateConstraint.
+         *
+         * @param count Number of tuples for each member of the outer level
+         * @param args Arguments; the first is the outer level
+         * @param evaluator Evaluator
+         * @param orderByExpr Expression to order tuples
+         * @param ascending Whether to return the bottom, not the top, tuples
+         */
+        GenerateConstraint(
+            int count,
+            CrossJoinArg[] args,
+            RolapEvaluator evaluator,
+            Exp orderByExpr,
+            boolean ascending)
+        {
+            super(args, evaluator, true);
+            this.outerLevel = args[0].getLevel();
+            this.orderByExpr = orderByExpr;
+            this.ascending = ascending;
+            this.count = count;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * <p>Generate always needs to join the fact table because we want to
+         * evaluate the top count expression which involves a fact.
+         */
+        protected boolean isJoinRequired() {
+            return true;
+        }
+
+        public void addConstraint(
+            SqlQuery sqlQuery,
+            RolapCube baseCube,
+            AggStar aggStar)
+        {
+            super.addConstraint(sqlQuery, baseCube, aggStar);
+            RolapNativeSql sql =
+                new RolapNativeSql(sqlQuery, aggStar, getEvaluator(), null);
+            String orderBySql = sql.generateTopCountOrderBy(orderByExpr);
+            Dialect dialect = sqlQuery.getDialect();
+            sqlQuery.setPartitionLimit(
+                getPartitionExprs(sqlQuery, aggStar),
+                Collections.singletonList(
+                    dialect.generateOrderItem(
+                        orderBySql, true, ascending, true)),
+                count);
+        }
+
+        /**
+         * Returns the expressions that identify a member of the outer level:
+         * the ordinal and key of the level and each of its ancestors, in the
+         * order that sorts members in hierarchical order. They are the same
+         * expressions that {@link SqlTupleReader} adds to the select list.
+         */
+        private List<String> getPartitionExprs(
+            SqlQuery sqlQuery,
+            AggStar aggStar)
+        {
+            final List<String> exprs = new ArrayList<String>();
+            final RolapLevel[] levels =
+                (RolapLevel[]) outerLevel.getHierarchy().getLevels();
+            for (int i = 0; i <= outerLevel.getDepth(); i++) {
+                final RolapLevel level = levels[i];
+                if (level.isAll()) {
+                    continue;
+                }
+                if (aggStar != null
+                    && SqlMemberSource.isLevelCollapsed(
+                        aggStar, (RolapCubeLevel) level)
+                    && !SqlMemberSource.levelContainsMultipleColumns(level))
+                {
+                    RolapStar.Column starColumn =
+                        ((RolapCubeLevel) level).getStarKeyColumn();
+                    exprs.add(
+                        aggStar.lookupColumn(starColumn.getBitPosition())
+                            .generateExprString(sqlQuery));
+                    continue;
+                }
+                final String keySql = level.getKeyExp().getExpression(sqlQuery);
+                final String ordinalSql =
+                    level.getOrdinalExp().getExpression(sqlQuery);
+                exprs.add(ordinalSql);
+                if (!ordinalSql.equals(keySql)) {
+                    exprs.add(keySql);
+                }
+            }
+            return exprs;
+        }
+
+        public Object getCacheKey() {
+            List<Object> key = new ArrayList<Object>();
+            key.add(super.getCacheKey());
+            // Note: need to use string in order for caching to work
+            key.add(orderByExpr.toString());
+            key.add(ascending);
+            key.add(count);
+            key.add(outerLevel);
+            return key;
+        }
+    }
+
+    protected boolean restrictMemberTypes() {
+        return true;
+    }
+
+    NativeEvaluator createEvaluator(
+        RolapEvaluator evaluator,
+        FunDef fun,
+        Exp[] args)
+    {
+        if (!isEnabled()) {
+            return null;
+        }
+        if (!evaluator.isNonEmpty()
+            || evaluator.getCube().isVirtual()
+            || !GenerateConstraint.isValidContext(
+                evaluator, restrictMemberTypes()))
+        {
+            return null;
+        }
+
+        // is this "Generate(<set>, TopCount(<set>, <count>, <numeric expr>)
+        // [, ALL])"
+        if (!"Generate".equalsIgnoreCase(fun.getName())
+            || args.length < 2
+            || args.length > 3
+            || !(args[1] instanceof ResolvedFunCall))
+        {
+            return null;
+        }
+        boolean all = false;
+        if (args.length == 3) {
+            if (!(args[2] instanceof Literal)) {
+                return null;
+            }
+            all = "ALL".equalsIgnoreCase(
+                String.valueOf(((Literal) args[2]).getValue()));
+        }
+        final ResolvedFunCall call = (ResolvedFunCall) args[1];
+        final Exp[] countArgs = call.getArgs();
+        final boolean ascending;
+        String funName = call.getFunDef().getName();
+        if ("TopCount".equalsIgnoreCase(funName)) {
+            ascending = false;
+        } else if ("BottomCount".equalsIgnoreCase(funName)) {
+            ascending = true;
+        } else {
+            return null;
+        }
+        if (countArgs.length != 3 || !(countArgs[1] instanceof Literal)) {
+            return null;
+        }
+        int count = ((Literal) countArgs[1]).getIntValue();
+        if (count <= 0) {
+            return null;
+        }
+
+        // the outer set must be the members of a single level
+        List<CrossJoinArg[]> outerArgs =
+            crossJoinArgFactory().checkCrossJoinArg(evaluator, args[0]);
+        if (outerArgs == null
+            || outerArgs.size() != 1
+            || outerArgs.get(0) == null
+            || outerArgs.get(0).length != 1)
+        {
+            return null;
+        }
+        final CrossJoinArg outerArg = outerArgs.get(0)[0];
+        final RolapLevel outerLevel = outerArg.getLevel();
+        if (outerLevel == null
+            || outerLevel.isParentChild()
+            || isNotNative(outerArg))
+        {
+            return null;
+        }
+
+        // extract the inner set expression
+        List<CrossJoinArg[]> allArgs =
+            crossJoinArgFactory().checkCrossJoinArg(evaluator, countArgs[0]);
+        if (allArgs == null || allArgs.isEmpty() || allArgs.get(0) == null) {
+            return null;
+        }
+        CrossJoinArg[] cjArgs = allArgs.get(0);
+        if (isPreferInterpreter(cjArgs, false)) {
+            return null;
+        }
+        for (CrossJoinArg arg : cjArgs) {
+            if (arg.getLevel() == null
+                || arg.getLevel().getHierarchy().equals(
+                    outerLevel.getHierarchy())
+                || isNotNative(arg))
+            {
+                return null;
+            }
+        }
+
+        SchemaReader schemaReader = evaluator.getSchemaReader();
+        DataSource ds = schemaReader.getDataSource();
+        SqlQuery sqlQuery = SqlQuery.newQuery(ds, "NativeGenerate");
+        if (!sqlQuery.getDialect().supportsWindowFunctions()) {
+            return null;
+        }
+        RolapNativeSql sql =
+            new RolapNativeSql(sqlQuery, null, evaluator, null);
+        if (sql.generateTopCountOrderBy(countArgs[2]) == null) {
+            return null;
+        }
+        LOGGER.debug("using native generate");
+
+        // Each member of the outer level is in the context while the inner
+        // set is evaluated, so the outer level replaces any context on its
+        // hierarchy.
+        CrossJoinArg[] tupleArgs =
+            Util.appendArrays(new CrossJoinArg[] {outerArg}, cjArgs);
+        final int savepoint = evaluator.savepoint();
+        overrideContext(evaluator, tupleArgs, sql.getStoredMeasure());
+
+        CrossJoinArg[] combinedArgs = tupleArgs;
+        if (allArgs.size() == 2 && allArgs.get(1) != null) {
+            combinedArgs = Util.appendArrays(tupleArgs, allArgs.get(1));
+        }
+        TupleConstraint constraint =
+            new GenerateConstraint(
+                count, combinedArgs, evaluator, countArgs[2], ascending);
+        evaluator.restore(savepoint);
+        return new GenerateEvaluator(
+            new SetEvaluator(tupleArgs, schemaReader, constraint), all);
+    }
+
+    /**
+     * Returns whether an argument is a list of members that contains a
+     * calculated member or an 'all' member, and so cannot be read in SQL.
+     */
+    private static boolean isNotNative(CrossJoinArg arg) {
+        return arg instanceof MemberListCrossJoinArg
+            && (((MemberListCrossJoinArg) arg).hasCalcMembers()
+                || ((MemberListCrossJoinArg) arg).hasAllMember());
+    }
+
+    /**
+     * Evaluator that reads tuples (outer member, inner tuple) and returns the
+     * inner tuples, removing duplicates unless the ALL flag was specified.
+     */
+    private static class GenerateEvaluator implements NativeEvaluator {
+        private final SetEvaluator setEvaluator;
+        private final boolean all;
+
+        GenerateEvaluator(SetEvaluator setEvaluator, boolean all) {
+            this.setEvaluator = setEvaluator;
+            this.all = all;
+        }
+
+        public Object execute(ResultStyle desiredResultStyle) {
+            final TupleList tuples =
+                (TupleList) setEvaluator.execute(ResultStyle.LIST);
+            final int arity = tuples.getArity() - 1;
+            final TupleList projected =
+                TupleCollections.createList(arity, tuples.size());
+            final Member[] members = new Member[arity];
+            for (int i = 0, n = tuples.size(); i < n; i++) {
+                for (int column = 0; column < arity; column++) {
+                    members[column] = tuples.get(column + 1, i);
+                }
+                projected.addTuple(members);
+            }
+            if (all) {
+                return projected;
+            }
+            final TupleList result = TupleCollections.createList(arity);
+            final TupleHashSet emitted =
+                new TupleHashSet(arity, projected.size());
+            for (int i = 0, n = projected.size(); i < n; i++) {
+                if (emitted.add(projected, i)) {
+                    result.add(projected.get(i));
+                }
+            }
+            return result;
+        }
+    }
+}
+
+// End RolapNativeGenerate.java
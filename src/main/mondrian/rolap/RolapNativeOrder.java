@@ -0,0 +1,339 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.calc.ResultStyle;
+import mondrian.calc.TupleList;
+import mondrian.calc.impl.TupleCollections;
+import mondrian.mdx.ResolvedFunCall;
+import mondrian.olap.*;
+import mondrian.rolap.aggmatcher.AggStar;
+import mondrian.rolap.sql.*;
+import mondrian.spi.Dialect;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+
+/**
+ * Computes an <code>Order</code>, and a <code>Head</code> or
+ * <code>Subset</code> of an <code>Order</code>, in SQL.
+ *
+ * <p>Handles expressions such as
+ *
+ * <blockquote><pre>Subset(
+ *     Order([Customers].[Name].Members, [Measures].[Unit Sales], BDESC),
+ *     20, 10)</pre></blockquote>
+ *
+ * <p>Evaluated in Java, such an expression reads every member of the set and
+ * its cell value into memory to sort them. This class instead adds the
+ * expression to the ORDER BY clause of the member SQL, ahead of the level
+ * ordinals, and, if the dialect {@link Dialect#supportsLimitOffset() supports
+ * paging}, skips and limits rows in the SQL too. Otherwise it limits the
+ * number of rows that the statement fetches, and skips rows as it reads them.
+ *
+ * <p>Only breaking sorts (<code>BASC</code> and <code>BDESC</code>) are
+ * supported. The fact table is always joined, so members without facts are
+ * not returned; therefore native evaluation is used only in a non-empty
+ * context, and pages are supported only for descending sorts, where the
+ * interpreter sorts empty members last.
+ *
+ * <p>Also handles <code>Hierarchize</code> of a crossjoin. A native crossjoin
+ * already returns tuples in hierarchical order, so the crossjoin is simply
+ * evaluated natively.
+ */
+public class RolapNativeOrder extends RolapNativeSet {
+    private final RolapNativeCrossJoin crossJoin = new RolapNativeCrossJoin();
+
+    public RolapNativeOrder() {
+        super.setEnabled(
+            MondrianProperties.instance().EnableNativeOrder.get());
+    }
+
+    /**
+     * Constraint that sorts tuples by an expression, and optionally returns
+     * one page of them.
+     */
+    static class OrderConstraint extends SetConstraint {
+        private final Exp orderByExpr;
+        private final boolean ascending;
+        private final int offset;
+        private final int limit;
+
+        /**
+         * Creates an OrderConstraint.
+         *
+         * @param args Arguments
+         * @param evaluator Evaluator
+         * @param orderByExpr Expression to sort tuples
+         * @param ascending Whether to sort in ascending order
+         * @param offset Number of rows to skip
+         * @param limit Maximum number of rows to return, or -1
+         */
+        OrderConstraint(
+            CrossJoinArg[] args,
+            RolapEvaluator evaluator,
+            Exp orderByExpr,
+            boolean ascending,
+            int offset,
+            int limit)
+        {
+            super(args, evaluator, true);
+            this.orderByExpr = orderByExpr;
+            this.ascending = ascending;
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * <p>Order always needs to join the fact table because we want to
+         * evaluate the sort expression which involves a fact.
+         */
+        protected boolean isJoinRequired() {
+            return true;
+        }
+
+        public void addConstraint(
+            SqlQuery sqlQuery,
+            RolapCube baseCube,
+            AggStar aggStar)
+        {
+            RolapNativeSql sql =
+                new RolapNativeSql(sqlQuery, aggStar, getEvaluator(), null);
+            String orderBySql = sql.generateTopCountOrderBy(orderByExpr);
+            Dialect dialect = sqlQuery.getDialect();
+            // The interpreter treats null as less than any other value.
+            final boolean collateNullsLast = !ascending;
+            if (dialect.requiresOrderByAlias()) {
+                String alias = sqlQuery.nextColumnAlias();
+                alias = dialect.quoteIdentifier(alias);
+                sqlQuery.addSelect(orderBySql, null, alias);
+                sqlQuery.addOrderBy(
+                    alias, ascending, true, true, collateNullsLast);
+            } else {
+                sqlQuery.addOrderBy(
+                    orderBySql, ascending, true, true, collateNullsLast);
+            }
+            // If the dialect cannot page, the page is still part of the
+            // cache key, and OffsetEvaluator applies it to the rows.
+            if ((offset > 0 || limit >= 0) && dialect.supportsLimitOffset()) {
+                sqlQuery.setLimitOffset(offset, limit);
+            }
+            super.addConstraint(sqlQuery, baseCube, aggStar);
+        }
+
+        public Object getCacheKey() {
+            List<Object> key = new ArrayList<Object>();
+            key.add(super.getCacheKey());
+            // Note: need to use string in order for caching to work
+            key.add(orderByExpr.toString());
+            key.add(ascending);
+            key.add(offset);
+            key.add(limit);
+            return key;
+        }
+    }
+
+    protected boolean restrictMemberTypes() {
+        return true;
+    }
+
+    void setListener(Listener listener) {
+        super.setListener(listener);
+        crossJoin.setListener(listener);
+    }
+
+    void useHardCache(boolean hard) {
+        super.useHardCache(hard);
+        crossJoin.useHardCache(hard);
+    }
+
+    NativeEvaluator createEvaluator(
+        RolapEvaluator evaluator,
+        FunDef fun,
+        Exp[] args)
+    {
+        if (!isEnabled()) {
+            return null;
+        }
+        final String funName = fun.getName();
+        if ("Hierarchize".equalsIgnoreCase(funName)) {
+            // is this "Hierarchize(<crossjoin>)"
+            if (args.length != 1 || !(args[0] instanceof ResolvedFunCall)) {
+                return null;
+            }
+            final ResolvedFunCall call = (ResolvedFunCall) args[0];
+            return crossJoin.createEvaluator(
+                evaluator, call.getFunDef(), call.getArgs());
+        }
+
+        // is this "Order(<set>, <numeric expr>, BASC|BDESC)", or
+        // "Head(Order(...)[, <count>])", or
+        // "Subset(Order(...), <start>[, <count>])"
+        final Exp[] orderArgs;
+        int offset = 0;
+        int limit = -1;
+        if ("Order".equalsIgnoreCase(funName)) {
+            orderArgs = args;
+        } else if ("Head".equalsIgnoreCase(funName)
+            || "Subset".equalsIgnoreCase(funName))
+        {
+            if (!isOrderCall(args[0])) {
+                return null;
+            }
+            orderArgs = ((ResolvedFunCall) args[0]).getArgs();
+            final boolean head = "Head".equalsIgnoreCase(funName);
+            if (head && args.length == 1) {
+                limit = 1;
+            } else if (!(args[1] instanceof Literal)) {
+                return null;
+            } else if (head) {
+                limit = ((Literal) args[1]).getIntValue();
+            } else {
+                offset = ((Literal) args[1]).getIntValue();
+                if (args.length == 3) {
+                    if (!(args[2] instanceof Literal)) {
+                        return null;
+                    }
+                    limit = ((Literal) args[2]).getIntValue();
+                }
+            }
+            if (offset < 0 || limit == 0 || limit < -1) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+        final boolean paged = offset > 0 || limit > 0;
+
+        if (orderArgs.length != 3 || !(orderArgs[2] instanceof Literal)) {
+            return null;
+        }
+        final String direction =
+            String.valueOf(((Literal) orderArgs[2]).getValue());
+        final boolean ascending;
+        if ("BASC".equalsIgnoreCase(direction)) {
+            ascending = true;
+        } else if ("BDESC".equalsIgnoreCase(direction)) {
+            ascending = false;
+        } else {
+            return null;
+        }
+        if (paged && ascending) {
+            return null;
+        }
+
+        // join with fact table will always filter out those members
+        // that dont have a row in the fact table
+        if (!evaluator.isNonEmpty()
+            || evaluator.getCube().isVirtual()
+            || !OrderConstraint.isValidContext(
+                evaluator, restrictMemberTypes()))
+        {
+            return null;
+        }
+
+        // extract the set expression
+        List<CrossJoinArg[]> allArgs =
+            crossJoinArgFactory().checkCrossJoinArg(evaluator, orderArgs[0]);
+        if (allArgs == null || allArgs.isEmpty() || allArgs.get(0) == null) {
+            return null;
+        }
+        CrossJoinArg[] cjArgs = allArgs.get(0);
+        if (isPreferInterpreter(cjArgs, false)) {
+            return null;
+        }
+        for (CrossJoinArg arg : cjArgs) {
+            // enumerated members would not be sorted by the SQL
+            if (arg.getLevel() == null
+                || arg instanceof MemberListCrossJoinArg
+                && (((MemberListCrossJoinArg) arg).hasCalcMembers()
+                    || ((MemberListCrossJoinArg) arg).hasAllMember()))
+            {
+                return null;
+            }
+        }
+
+        SchemaReader schemaReader = evaluator.getSchemaReader();
+        DataSource ds = schemaReader.getDataSource();
+        SqlQuery sqlQuery = SqlQuery.newQuery(ds, "NativeOrder");
+        RolapNativeSql sql =
+            new RolapNativeSql(sqlQuery, null, evaluator, null);
+        if (sql.generateTopCountOrderBy(orderArgs[1]) == null) {
+            return null;
+        }
+        final boolean sqlPaging =
+            paged && sqlQuery.getDialect().supportsLimitOffset();
+        LOGGER.debug("using native order");
+
+        final int savepoint = evaluator.savepoint();
+        overrideContext(evaluator, cjArgs, sql.getStoredMeasure());
+        CrossJoinArg[] combinedArgs = cjArgs;
+        if (allArgs.size() == 2 && allArgs.get(1) != null) {
+            combinedArgs = Util.appendArrays(cjArgs, allArgs.get(1));
+        }
+        TupleConstraint constraint =
+            new OrderConstraint(
+                combinedArgs, evaluator, orderArgs[1], ascending,
+                offset, limit);
+        evaluator.restore(savepoint);
+        SetEvaluator sev = new SetEvaluator(cjArgs, schemaReader, constraint);
+        if (!paged || sqlPaging) {
+            return sev;
+        }
+        if (limit > 0) {
+            sev.setMaxRows(offset + limit);
+        }
+        return new OffsetEvaluator(sev, offset, limit);
+    }
+
+    private static boolean isOrderCall(Exp exp) {
+        return exp instanceof ResolvedFunCall
+            && "Order".equalsIgnoreCase(
+                ((ResolvedFunCall) exp).getFunDef().getName());
+    }
+
+    /**
+     * Evaluator that returns one page of the rows returned by a set
+     * evaluator, for dialects that cannot page in SQL.
+     */
+    private static class OffsetEvaluator implements NativeEvaluator {
+        private final SetEvaluator setEvaluator;
+        private final int offset;
+        private final int limit;
+
+        OffsetEvaluator(SetEvaluator setEvaluator, int offset, int limit) {
+            this.setEvaluator = setEvaluator;
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        public Object execute(ResultStyle desiredResultStyle) {
+            final TupleList list =
+                (TupleList) setEvaluator.execute(ResultStyle.LIST);
+            final int size = list.size();
+            final int end =
+                limit < 0
+                    ? size
+                    : (int) Math.min((long) size, (long) offset + limit);
+            if (offset == 0 && end == size) {
+                return list;
+            }
+            if (offset >= end) {
+                return TupleCollections.emptyList(list.getArity());
+            }
+            return list.subList(offset, end);
+        }
+    }
+}
+
+// End RolapNativeOrder.java
@@ -34,6 +34,14 @@ public class RolapNativeRegistry extends RolapNative {
         register("CrossJoin".toUpperCase(), new RolapNativeCrossJoin());
         register("TopCount".toUpperCase(), new RolapNativeTopCount());
         register("Filter".toUpperCase(), new RolapNativeFilter());
+        register("Generate".toUpperCase(), new RolapNativeGenerate());
+        register("Extract".toUpperCase(), new RolapNativeExtract());
+        register("Order".toUpperCase(), new RolapNativeOrder());
+        register("Head".toUpperCase(), new RolapNativeOrder());
+        register("Subset".toUpperCase(), new RolapNativeOrder());
+        register("Hierarchize".toUpperCase(), new RolapNativeOrder());
+        register("Count".toUpperCase(), new RolapNativeAggregate());
+        register("Sum".toUpperCase(), new RolapNativeAggregate());
     }
 
     /**
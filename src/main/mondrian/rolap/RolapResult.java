@@ -28,6 +28,7 @@ import mondrian.util.*;
 import org.apache.log4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * A <code>RolapResult</code> is the result of running a query.
@@ -39,6 +40,19 @@ public class RolapResult extends ResultBase {
 
     static final Logger LOGGER = Logger.getLogger(ResultBase.class);
 
+    /**
+     * Executor that evaluates chunks of cells when
+     * {@link MondrianProperties#EvaluateParallelism} is greater than 1. It
+     * has one thread per processor, shared by all queries.
+     */
+    private static final ExecutorService cellExecutor =
+        Util.getExecutorService(
+            Runtime.getRuntime().availableProcessors(),
+            Runtime.getRuntime().availableProcessors(),
+            1,
+            -1,
+            "mondrian.rolap.RolapResult$cellExecutor");
+
     private RolapEvaluator evaluator;
     RolapEvaluator slicerEvaluator;
     private final CellKey point;
@@ -96,7 +110,7 @@ public class RolapResult extends ResultBase {
 
         this.cellInfos =
             (query.axes.length > 4)
-                ? new CellInfoMap(point)
+                ? new CellInfoMap()
                 : new CellInfoPool(query.axes.length);
 
         if (!execute) {
@@ -822,11 +836,22 @@ public class RolapResult extends ResultBase {
         // Compute the cells several times. The first time, use a dummy
         // evaluator which collects requests.
         int count = 0;
+        boolean parallel = isParallel(evaluator);
         while (true) {
             evaluator.setCellReader(batchingReader);
             final int savepoint = evaluator.savepoint();
             try {
-                executeStripe(query.axes.length - 1, evaluator, pos);
+                if (parallel && !executeParallel(evaluator, pos)) {
+                    // A chunk needed state that only this thread can
+                    // compute, such as the value of a named set. Evaluate
+                    // serially from now on.
+                    parallel = false;
+                    cellInfos.clear();
+                }
+                if (!parallel) {
+                    executeStripe(
+                        query.axes.length - 1, evaluator, point, pos, false);
+                }
             } catch (CellRequestQuantumExceededException e) {
                 // Safe to ignore. Need to call 'phase' and loop again.
                 // Decrement count because it wasn't a recursive formula that
@@ -930,10 +955,25 @@ public class RolapResult extends ResultBase {
         return o;
     }
 
+    /**
+     * Evaluates the cells of the axes up to and including a given axis, and
+     * stores them in {@link #cellInfos}.
+     *
+     * @param axisOrdinal Ordinal of axis; -1 means slicer
+     * @param revaluator Evaluator
+     * @param point Cell position; positions of outer axes are set by caller
+     * @param pos Cell position requested by {@link #getCell(int[])}, used
+     *   for high-cardinality axes
+     * @param distinctPrepared Whether the distinct-count expressions of
+     *   visual total members have already been prepared, by
+     *   {@link #executeParallel}
+     */
     private void executeStripe(
         int axisOrdinal,
         RolapEvaluator revaluator,
-        final int[] pos)
+        CellKey point,
+        final int[] pos,
+        boolean distinctPrepared)
     {
         if (axisOrdinal < 0) {
             RolapAxis axis = (RolapAxis) slicerAxis;
@@ -961,7 +1001,9 @@ public class RolapResult extends ResultBase {
 
                     // Create a CellInfo object for the given position
                     // integer array.
-                    ci = cellInfos.create(point.getOrdinals());
+                    synchronized (cellInfos) {
+                        ci = cellInfos.create(point.getOrdinals());
+                    }
 
                     String cachedFormatString = null;
 
@@ -1056,26 +1098,14 @@ public class RolapResult extends ResultBase {
                     point.setAxis(axisOrdinal, pi);
                     revaluator.setContext(tuple);
                     execution.checkCancelOrTimeout();
-                    executeStripe(axisOrdinal - 1, revaluator, pos);
+                    executeStripe(
+                        axisOrdinal - 1, revaluator, point, pos,
+                        distinctPrepared);
                     pi++;
                 }
             } else {
-                for (List<Member> tuple : tupleList) {
-                    List<Member> measures =
-                        new ArrayList<Member>(
-                            statement.getQuery().getMeasuresMembers());
-                    for (Member measure : measures) {
-                        if (measure instanceof RolapBaseCubeMeasure) {
-                            RolapBaseCubeMeasure baseCubeMeasure =
-                                (RolapBaseCubeMeasure) measure;
-                            if (baseCubeMeasure.getAggregator()
-                                == RolapAggregator.DistinctCount)
-                            {
-                                processDistinctMeasureExpr(
-                                    tuple, baseCubeMeasure);
-                            }
-                        }
-                    }
+                if (!distinctPrepared) {
+                    processDistinctMeasures(tupleList);
                 }
 
                 int tupleIndex = 0;
@@ -1083,13 +1113,177 @@ public class RolapResult extends ResultBase {
                     point.setAxis(axisOrdinal, tupleIndex);
                     revaluator.setContext(tuple);
                     execution.checkCancelOrTimeout();
-                    executeStripe(axisOrdinal - 1, revaluator, pos);
+                    executeStripe(
+                        axisOrdinal - 1, revaluator, point, pos,
+                        distinctPrepared);
                     tupleIndex++;
                 }
             }
         }
     }
 
+    /**
+     * Prepares the distinct-count expressions of the visual total members in
+     * the tuples of an axis.
+     *
+     * @param tupleList Tuples of an axis
+     */
+    private void processDistinctMeasures(TupleList tupleList) {
+        for (List<Member> tuple : tupleList) {
+            List<Member> measures =
+                new ArrayList<Member>(
+                    statement.getQuery().getMeasuresMembers());
+            for (Member measure : measures) {
+                if (measure instanceof RolapBaseCubeMeasure) {
+                    RolapBaseCubeMeasure baseCubeMeasure =
+                        (RolapBaseCubeMeasure) measure;
+                    if (baseCubeMeasure.getAggregator()
+                        == RolapAggregator.DistinctCount)
+                    {
+                        processDistinctMeasureExpr(
+                            tuple, baseCubeMeasure);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether the cells of this result can be evaluated by several
+     * threads.
+     *
+     * <p>Requires that {@link MondrianProperties#EvaluateParallelism} is
+     * greater than 1, that the evaluator is a plain {@link RolapEvaluator}
+     * (not a profiling or dependency-testing evaluator), and that no axis
+     * is high-cardinality (high-cardinality axes are evaluated
+     * incrementally, as cells are requested).
+     *
+     * @param evaluator Evaluator whose context is the slicer
+     * @return Whether to evaluate cells in parallel
+     */
+    private boolean isParallel(RolapEvaluator evaluator) {
+        if (MondrianProperties.instance().EvaluateParallelism.get() <= 1
+            || axes.length == 0
+            || evaluator.getClass() != RolapEvaluator.class
+            || evaluator.root.getClass() != RolapResultEvaluatorRoot.class)
+        {
+            return false;
+        }
+        for (int i = 0; i < axes.length; i++) {
+            final TupleList tupleList = ((RolapAxis) axes[i]).getTupleList();
+            if (isAxisHighCardinality(i, tupleList)) {
+                return false;
+            }
+        }
+        return ((RolapAxis) axes[axes.length - 1]).getTupleList().size() > 1;
+    }
+
+    /**
+     * Evaluates the cells of this result using several threads.
+     *
+     * <p>Divides the positions of the outermost axis into chunks, and
+     * evaluates each chunk in {@link #cellExecutor}, using its own
+     * evaluator, evaluator root and {@link FastBatchingCellReader}. When all
+     * chunks have finished, merges the cell requests of each chunk into
+     * {@link #batchingReader}, so that the caller can load them all in one
+     * phase.
+     *
+     * <p>If a chunk needs the value of a named set or parameter that has not
+     * been evaluated yet, returns false; the caller should evaluate the
+     * cells serially. If a chunk requested so many cells that it stopped
+     * early, throws {@link CellRequestQuantumExceededException}, as serial
+     * evaluation would.
+     *
+     * @param evaluator Evaluator whose context is the slicer
+     * @param pos Cell position requested by {@link #getCell(int[])}
+     * @return Whether all chunks were evaluated
+     */
+    private boolean executeParallel(RolapEvaluator evaluator, int[] pos) {
+        final int axisOrdinal = axes.length - 1;
+
+        // Visual total members are shared between threads, so prepare their
+        // expressions now.
+        for (Axis axis : axes) {
+            processDistinctMeasures(((RolapAxis) axis).getTupleList());
+        }
+
+        final TupleList tupleList =
+            ((RolapAxis) axes[axisOrdinal]).getTupleList();
+        final int positionCount = tupleList.size();
+        final int chunkCount =
+            Math.min(
+                MondrianProperties.instance().EvaluateParallelism.get(),
+                positionCount);
+        final Collection<RolapStar> stars = getCube().getSchema().getStars();
+        final List<CellChunk> chunks = new ArrayList<CellChunk>();
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int i = 0; i < chunkCount; i++) {
+            // Each chunk starts with a copy of this thread's local segment
+            // cache, which contains the cells loaded by previous phases.
+            final Map<RolapStar, RolapStar.Bar> bars =
+                new HashMap<RolapStar, RolapStar.Bar>();
+            for (RolapStar star : stars) {
+                bars.put(star, star.copyLocalBar());
+            }
+            final CellChunk chunk =
+                new CellChunk(
+                    evaluator,
+                    tupleList,
+                    positionCount * i / chunkCount,
+                    positionCount * (i + 1) / chunkCount,
+                    pos,
+                    bars,
+                    Locus.peek());
+            chunks.add(chunk);
+            futures.add(cellExecutor.submit(chunk));
+        }
+
+        // Wait for every chunk, even if one fails, so that no chunk is still
+        // writing cells when we return. If this thread is interrupted, the
+        // query is abandoned: cancel the chunks that have not started,
+        // restore the interrupt status and throw.
+        Throwable throwable = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                for (Future<Void> future2 : futures) {
+                    future2.cancel(false);
+                }
+                Thread.currentThread().interrupt();
+                throw Util.newError(e, "Interrupted while evaluating cells");
+            } catch (ExecutionException e) {
+                if (throwable == null) {
+                    throwable = e.getCause();
+                }
+            }
+        }
+        if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        } else if (throwable instanceof Error) {
+            throw (Error) throwable;
+        } else if (throwable != null) {
+            throw Util.newError(throwable, "Error while evaluating cells");
+        }
+
+        boolean serialRequired = false;
+        boolean quantumExceeded = false;
+        for (CellChunk chunk : chunks) {
+            batchingReader.merge(chunk.reader);
+            evaluator.root.expResultCache.putAll(
+                chunk.root.expResultCache);
+            serialRequired |= chunk.root.serialRequired;
+            quantumExceeded |= chunk.quantumExceeded;
+        }
+        if (serialRequired) {
+            return false;
+        }
+        if (quantumExceeded) {
+            throw CellRequestQuantumExceededException.INSTANCE;
+        }
+        return true;
+    }
+
     private boolean isAxisHighCardinality(
         int axisOrdinal,
         TupleList tupleList)
@@ -1415,18 +1609,28 @@ public class RolapResult extends ResultBase {
         /**
          * Maps the names of sets to their values. Populated on demand.
          */
-        private final Map<String, RolapNamedSetEvaluator> namedSetEvaluators =
+        final Map<String, RolapNamedSetEvaluator> namedSetEvaluators =
             new HashMap<String, RolapNamedSetEvaluator>();
 
         final RolapResult result;
-        private static final Object CycleSentinel = new Object();
-        private static final Object NullSentinel = new Object();
+        static final Object CycleSentinel = new Object();
+        static final Object NullSentinel = new Object();
 
         public RolapResultEvaluatorRoot(RolapResult result) {
             super(result.execution);
             this.result = result;
         }
 
+        /**
+         * Creates a copy of a RolapResultEvaluatorRoot.
+         *
+         * @param root Root to copy
+         */
+        protected RolapResultEvaluatorRoot(RolapResultEvaluatorRoot root) {
+            super(root);
+            this.result = root.result;
+        }
+
         protected Evaluator.NamedSetEvaluator evaluateNamedSet(
             final NamedSet namedSet,
             boolean create)
@@ -1505,6 +1709,182 @@ public class RolapResult extends ResultBase {
         }
     }
 
+    /**
+     * Evaluator root for a chunk of cells evaluated in a thread other than
+     * the one executing the query.
+     *
+     * <p>Named sets and parameters are evaluated by
+     * {@link RolapResult#evaluateExp}, which loads cells and therefore must
+     * run in the thread executing the query. This root uses the values
+     * that have already been computed by the query's root, and if a value
+     * has not been computed yet, sets {@link #serialRequired} and throws.
+     */
+    private static class ParallelEvaluatorRoot
+        extends RolapResultEvaluatorRoot
+    {
+        private final RolapResultEvaluatorRoot parent;
+
+        /**
+         * Whether evaluation needed a value that only the thread executing
+         * the query can compute. Set even if the exception thrown is caught
+         * and ignored by the calculation.
+         */
+        boolean serialRequired;
+
+        ParallelEvaluatorRoot(RolapResultEvaluatorRoot parent) {
+            super(parent);
+            this.parent = parent;
+        }
+
+        protected Evaluator.NamedSetEvaluator evaluateNamedSet(
+            NamedSet namedSet,
+            boolean create)
+        {
+            final String name = namedSet.getNameUniqueWithinQuery();
+            RolapNamedSetEvaluator value = null;
+            if (!namedSet.isDynamic()) {
+                value = namedSetEvaluators.get(name);
+                if (value == null) {
+                    final RolapNamedSetEvaluator parentValue =
+                        parent.namedSetEvaluators.get(name);
+                    if (parentValue != null) {
+                        value = parentValue.fork(this);
+                    }
+                    if (value != null) {
+                        namedSetEvaluators.put(name, value);
+                    }
+                }
+            }
+            if (value == null) {
+                throw serialRequired();
+            }
+            return value;
+        }
+
+        public Object getParameterValue(ParameterSlot slot) {
+            if (slot.isParameterSet()) {
+                return slot.getParameterValue();
+            }
+            final Object liftedValue = slot.getCachedDefaultValue();
+            if (liftedValue == null || liftedValue == CycleSentinel) {
+                throw serialRequired();
+            }
+            return liftedValue == NullSentinel ? null : liftedValue;
+        }
+
+        private SerialEvaluationRequiredException serialRequired() {
+            serialRequired = true;
+            return SerialEvaluationRequiredException.INSTANCE;
+        }
+    }
+
+    /**
+     * Signals that a chunk of cells cannot be evaluated in parallel, and
+     * that the query must be evaluated serially. Not really an exception,
+     * just a way of aborting the evaluation of the chunk.
+     */
+    private static final class SerialEvaluationRequiredException
+        extends RuntimeException
+    {
+        static final SerialEvaluationRequiredException INSTANCE =
+            new SerialEvaluationRequiredException();
+
+        private SerialEvaluationRequiredException() {
+        }
+    }
+
+    /**
+     * Task that evaluates the cells of a range of positions of the outermost
+     * axis. Created and run by {@link RolapResult#executeParallel}.
+     */
+    private class CellChunk implements Callable<Void> {
+        final ParallelEvaluatorRoot root;
+        final RolapEvaluator evaluator;
+        final FastBatchingCellReader reader;
+        private final TupleList tupleList;
+        private final int start;
+        private final int end;
+        private final int[] pos;
+        private final Map<RolapStar, RolapStar.Bar> bars;
+        private final Locus locus;
+
+        /**
+         * Whether the reader requested so many cells that evaluation stopped
+         * before the end of the chunk.
+         */
+        boolean quantumExceeded;
+
+        /**
+         * Creates a CellChunk.
+         *
+         * @param evaluator Evaluator whose context is the slicer
+         * @param tupleList Tuples of the outermost axis
+         * @param start Ordinal of first position of the chunk
+         * @param end Ordinal of position after the last position of the chunk
+         * @param pos Cell position requested by
+         *   {@link RolapResult#getCell(int[])}
+         * @param bars Local segment cache for each star
+         * @param locus Locus of the thread executing the query
+         */
+        CellChunk(
+            RolapEvaluator evaluator,
+            TupleList tupleList,
+            int start,
+            int end,
+            int[] pos,
+            Map<RolapStar, RolapStar.Bar> bars,
+            Locus locus)
+        {
+            this.root =
+                new ParallelEvaluatorRoot(
+                    (RolapResultEvaluatorRoot) evaluator.root);
+            this.evaluator = evaluator.fork(root);
+            this.reader =
+                new FastBatchingCellReader(
+                    execution,
+                    getCube(),
+                    execution.getMondrianStatement().getMondrianConnection()
+                        .getServer().getAggregationManager());
+            this.evaluator.setCellReader(reader);
+            this.tupleList = tupleList;
+            this.start = start;
+            this.end = end;
+            this.pos = pos;
+            this.bars = bars;
+            this.locus = locus;
+        }
+
+        public Void call() {
+            Locus.push(locus);
+            for (Map.Entry<RolapStar, RolapStar.Bar> entry : bars.entrySet()) {
+                entry.getKey().setLocalBar(entry.getValue());
+            }
+            try {
+                final int axisOrdinal = axes.length - 1;
+                final CellKey point = CellKey.Generator.newCellKey(axes.length);
+                for (int i = start; i < end; i++) {
+                    point.setAxis(axisOrdinal, i);
+                    evaluator.setContext(tupleList.get(i));
+                    execution.checkCancelOrTimeout();
+                    executeStripe(axisOrdinal - 1, evaluator, point, pos, true);
+                }
+            } catch (CellRequestQuantumExceededException e) {
+                // Stop. The caller will load the requested cells and
+                // evaluate again.
+                quantumExceeded = true;
+            } catch (SerialEvaluationRequiredException e) {
+                // Stop. The caller will evaluate serially.
+                assert root.serialRequired;
+            } finally {
+                for (RolapStar star : bars.keySet()) {
+                    star.setLocalBar(null);
+                }
+                Locus.pop(locus);
+            }
+            return null;
+        }
+    }
+
     /**
      * Formatter to convert values into formatted strings.
      *
@@ -1756,23 +2136,14 @@ public class RolapResult extends ResultBase {
     /**
      * Implementation of {@link CellInfoContainer} which uses a {@link Map} to
      * store CellInfo Objects.
-     *
-     * <p>Note that the CellKey point instance variable is the same
-     * Object (NOT a copy) that is used and modified during
-     * the recursive calls to executeStripe - the
-     * <code>create</code> method relies on this fact.
      */
     static class CellInfoMap implements CellInfoContainer {
         private final Map<CellKey, CellInfo> cellInfoMap;
-        private final CellKey point;
 
         /**
          * Creates a CellInfoMap
-         *
-         * @param point Cell position
          */
-        CellInfoMap(CellKey point) {
-            this.point = point;
+        CellInfoMap() {
             this.cellInfoMap = new HashMap<CellKey, CellInfo>();
         }
         public int size() {
@@ -1785,7 +2156,7 @@ public class RolapResult extends ResultBase {
             this.cellInfoMap.clear();
         }
         public CellInfo create(int[] pos) {
-            CellKey key = this.point.copy();
+            CellKey key = CellKey.Generator.newCellKey(pos);
             CellInfo ci = this.cellInfoMap.get(key);
             if (ci == null) {
                 ci = new CellInfo(0);
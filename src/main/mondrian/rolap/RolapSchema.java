@@ -14,12 +14,14 @@ import mondrian.olap.*;
 import mondrian.olap.fun.*;
 import mondrian.olap.type.*;
 import mondrian.resource.MondrianResource;
+import mondrian.rolap.agg.SegmentCacheManager;
 import mondrian.rolap.aggmatcher.AggTableManager;
 import mondrian.rolap.aggmatcher.JdbcSchema;
 import mondrian.spi.CellFormatter;
 import mondrian.spi.*;
 import mondrian.spi.MemberFormatter;
 import mondrian.spi.PropertyFormatter;
+import mondrian.server.Locus;
 import mondrian.spi.impl.Scripts;
 import mondrian.util.ByteString;
 
@@ -37,6 +39,7 @@ import java.lang.ref.SoftReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 import javax.sql.DataSource;
 
@@ -108,6 +111,12 @@ public class RolapSchema implements Schema {
 
     private final boolean useContentChecksum;
 
+    /**
+     * Queries against this schema that have been parsed, validated and
+     * compiled, and are available for re-use.
+     */
+    private final QueryPlanCache queryPlanCache = new QueryPlanCache();
+
     /**
      * A schema's aggregation information
      */
@@ -161,6 +170,28 @@ public class RolapSchema implements Schema {
      */
     private final String id;
 
+    /**
+     * Elapsed time, in milliseconds, of each phase of loading this schema,
+     * in the order that the phases ran.
+     */
+    private final Map<String, Long> loadTimings =
+        new LinkedHashMap<String, Long>();
+
+    /**
+     * URL of the catalog this schema was loaded from; together with
+     * {@link #connectInfo} and {@link #dataSource}, allows the schema to be
+     * reloaded. See {@link Pool#refresh(String)}.
+     */
+    private String catalogUrl;
+
+    private Util.PropertyList connectInfo;
+
+    /**
+     * Data source supplied by the caller, or null if the data source is
+     * described by the connect string.
+     */
+    private DataSource dataSource;
+
     /**
      * This is ONLY called by other constructors (and MUST be called
      * by them) and NEVER by the Pool.
@@ -216,6 +247,9 @@ public class RolapSchema implements Schema {
         DataSource dataSource)
     {
         this(key, connectInfo, dataSource, md5Bytes, md5Bytes != null);
+        this.catalogUrl = catalogUrl;
+        this.connectInfo = connectInfo;
+        this.dataSource = dataSource;
         load(catalogUrl, catalogStr);
         assert this.md5Bytes != null;
     }
@@ -318,6 +352,85 @@ public class RolapSchema implements Schema {
         }
     }
 
+    /**
+     * Loads a new instance of this schema from the same catalog URL, connect
+     * properties and data source. The catalog is read again, so the new
+     * instance reflects changes made to it since this schema was loaded.
+     * JDBC metadata of aggregate tables is shared with this schema, and is
+     * not read again. This schema is not modified.
+     *
+     * @return New schema
+     */
+    private RolapSchema reload() {
+        String catalogStr = Pool.getCatalogContent(catalogUrl, connectInfo);
+        ByteString newMd5Bytes = null;
+        if (useContentChecksum) {
+            try {
+                if (catalogStr == null) {
+                    catalogStr = Util.readVirtualFileAsString(catalogUrl);
+                }
+            } catch (IOException e) {
+                throw Util.newError(e, "while reloading schema " + catalogUrl);
+            }
+            newMd5Bytes = new ByteString(Util.digestMd5(catalogStr));
+        }
+        return new RolapSchema(
+            key,
+            newMd5Bytes,
+            catalogUrl,
+            catalogStr,
+            connectInfo,
+            dataSource);
+    }
+
+    /**
+     * Makes the segments in the cache that belong to this schema available
+     * to a new instance of this schema, so that the new instance does not
+     * need to re-read them. The schemas must have the same checksum.
+     *
+     * @param newSchema New instance of this schema
+     */
+    private void carryOverSegments(final RolapSchema newSchema) {
+        final SegmentCacheManager cacheMgr =
+            MondrianServer.forConnection(internalConnection)
+                .getAggregationManager().cacheMgr;
+        final int count =
+            Locus.execute(
+                internalConnection,
+                "RolapSchema.carryOverSegments",
+                new Locus.Action<Integer>() {
+                    public Integer execute() {
+                        return cacheMgr.carryOver(
+                            RolapSchema.this, newSchema, Locus.peek());
+                    }
+                });
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(
+                "Carried " + count + " segments over to reloaded schema \""
+                + name + "\"");
+        }
+    }
+
+    /**
+     * Discards the index of segments of each star of this schema. Called
+     * after this schema's segments have been carried over to a new instance,
+     * once the new instance has replaced this schema in the pool.
+     */
+    private void discardSegmentIndexes() {
+        final SegmentCacheManager cacheMgr =
+            MondrianServer.forConnection(internalConnection)
+                .getAggregationManager().cacheMgr;
+        Locus.execute(
+            internalConnection,
+            "RolapSchema.discardSegmentIndexes",
+            new Locus.Action<Void>() {
+                public Void execute() {
+                    cacheMgr.discardIndexes(RolapSchema.this, Locus.peek());
+                    return null;
+                }
+            });
+    }
+
     protected void finalCleanUp() {
         if (aggTableManager != null) {
             aggTableManager.finalCleanUp();
@@ -361,6 +474,8 @@ public class RolapSchema implements Schema {
      * @param catalogStr Text of catalog, or null
      */
     protected void load(String catalogUrl, String catalogStr) {
+        final long loadStart = System.currentTimeMillis();
+        long phaseStart = loadStart;
         try {
             final Parser xmlParser = XOMUtil.createDefaultParser();
 
@@ -417,8 +532,10 @@ public class RolapSchema implements Schema {
                 pw.flush();
                 getLogger().debug(sw.toString());
             }
+            phaseStart = recordLoadPhase("parse", phaseStart);
 
             load(xmlSchema);
+            phaseStart = System.currentTimeMillis();
         } catch (XOMException e) {
             throw Util.newError(e, "while parsing catalog " + catalogUrl);
         } catch (FileSystemException e) {
@@ -428,7 +545,72 @@ public class RolapSchema implements Schema {
         }
 
         aggTableManager.initialize();
+        recordLoadPhase("aggregate tables", phaseStart);
         setSchemaLoadDate();
+        loadHierarchySnapshots();
+        if (getLogger().isDebugEnabled()) {
+            getLogger().debug(
+                "RolapSchema.load: loaded schema \"" + name + "\" in "
+                + (System.currentTimeMillis() - loadStart) + " ms; phases "
+                + loadTimings);
+        }
+    }
+
+    /**
+     * Records the elapsed time of a phase of loading this schema.
+     *
+     * @param phase Name of phase
+     * @param phaseStart Time at which the phase started, in milliseconds
+     * @return Current time, which is the start of the next phase
+     */
+    private long recordLoadPhase(String phase, long phaseStart) {
+        final long now = System.currentTimeMillis();
+        loadTimings.put(phase, now - phaseStart);
+        return now;
+    }
+
+    /**
+     * Returns the elapsed time, in milliseconds, of each phase of loading
+     * this schema, in the order that the phases ran. Phases include "parse",
+     * "cubes", "virtual cubes", "named sets", "roles" and "aggregate tables".
+     *
+     * @return Map from phase name to elapsed milliseconds
+     */
+    public Map<String, Long> getLoadTimings() {
+        return Collections.unmodifiableMap(loadTimings);
+    }
+
+    /**
+     * Schedules the members of small hierarchies to be loaded in the
+     * background, so that queries do not need to wait for member SQL.
+     *
+     * <p>Only hierarchies read by a plain {@link SmartMemberReader} and whose
+     * cardinality is no greater than
+     * {@link MondrianProperties#HierarchySnapshotMaxMembers} are loaded.
+     */
+    private void loadHierarchySnapshots() {
+        if (MondrianProperties.instance().HierarchySnapshotMaxMembers.get()
+            <= 0)
+        {
+            return;
+        }
+        final Map<MemberReader, Boolean> readers =
+            new IdentityHashMap<MemberReader, Boolean>();
+        for (RolapCube cube : mapNameToCube.values()) {
+            for (RolapHierarchy hierarchy : cube.getHierarchies()) {
+                if (hierarchy instanceof RolapCubeHierarchy) {
+                    hierarchy =
+                        ((RolapCubeHierarchy) hierarchy).getRolapHierarchy();
+                }
+                final MemberReader reader = hierarchy.getMemberReader();
+                if (reader != null
+                    && reader.getClass() == SmartMemberReader.class
+                    && readers.put(reader, Boolean.TRUE) == null)
+                {
+                    MemberSnapshot.loadAsync((SmartMemberReader) reader);
+                }
+            }
+        }
     }
 
     private void setSchemaLoadDate() {
@@ -540,6 +722,8 @@ public class RolapSchema implements Schema {
             Util.discard(param);
         }
 
+        long phaseStart = System.currentTimeMillis();
+
         // Create cubes.
         for (MondrianDef.Cube xmlCube : xmlSchema.cubes) {
             if (xmlCube.isEnabled()) {
@@ -547,6 +731,7 @@ public class RolapSchema implements Schema {
                 Util.discard(cube);
             }
         }
+        phaseStart = recordLoadPhase("cubes", phaseStart);
 
         // Create virtual cubes.
         for (MondrianDef.VirtualCube xmlVirtualCube : xmlSchema.virtualCubes) {
@@ -556,17 +741,20 @@ public class RolapSchema implements Schema {
                 Util.discard(cube);
             }
         }
+        phaseStart = recordLoadPhase("virtual cubes", phaseStart);
 
         // Create named sets.
         for (MondrianDef.NamedSet xmlNamedSet : xmlSchema.namedSets) {
             mapNameToSet.put(xmlNamedSet.name, createNamedSet(xmlNamedSet));
         }
+        phaseStart = recordLoadPhase("named sets", phaseStart);
 
         // Create roles.
         for (MondrianDef.Role xmlRole : xmlSchema.roles) {
             Role role = createRole(xmlRole);
             mapNameToRole.put(xmlRole.name, role);
         }
+        recordLoadPhase("roles", phaseStart);
 
         // Set default role.
         if (xmlSchema.defaultRole != null) {
@@ -861,6 +1049,15 @@ public class RolapSchema implements Schema {
 
         private static Pool pool = new Pool();
 
+        /**
+         * Executor that reloads schemas in the background. It has one
+         * thread, so that refreshing several schemas at once does not swamp
+         * the database.
+         */
+        private static final ExecutorService refreshExecutor =
+            Util.getExecutorService(
+                1, "mondrian.rolap.RolapSchema$Pool$refreshExecutor");
+
         private final Map<String, SoftReference<RolapSchema>> mapUrlToSchema =
             new HashMap<String, SoftReference<RolapSchema>>();
 
@@ -868,6 +1065,14 @@ public class RolapSchema implements Schema {
             mapMd5ToSchema =
             new HashMap<ByteString, SoftReference<RolapSchema>>();
 
+        /**
+         * Keys of schemas that are being reloaded in the background. The
+         * value is true if the schema was flushed again while the reload was
+         * in progress, and therefore needs to be reloaded once more.
+         */
+        private final Map<String, Boolean> refreshMap =
+            new HashMap<String, Boolean>();
+
         private Pool() {
         }
 
@@ -920,25 +1125,23 @@ public class RolapSchema implements Schema {
 
             RolapSchema schema = null;
 
-            String dynProcName = connectInfo.get(
-                RolapConnectionProperties.DynamicSchemaProcessor.name());
-
-            String catalogStr = connectInfo.get(
-                RolapConnectionProperties.CatalogContent.name());
-            if (catalogUrl == null && catalogStr == null) {
+            if (catalogUrl == null
+                && connectInfo.get(
+                    RolapConnectionProperties.CatalogContent.name()) == null)
+            {
                 throw MondrianResource.instance()
                     .ConnectStringMandatoryProperties.ex(
                         RolapConnectionProperties.Catalog.name(),
                         RolapConnectionProperties.CatalogContent.name());
             }
 
-            // If CatalogContent is specified in the connect string, ignore
-            // everything else. In particular, ignore the dynamic schema
-            // processor.
+            // If the catalog is given in the connect string or generated by a
+            // dynamic processor, use the content of the catalog to find the
+            // schema. Previously we'd use the key, but we didn't include
+            // DynamicSchemaProcessor, and that would give false hits.
+            // REVIEW: Are we including enough in the key to make it unique?
+            String catalogStr = getCatalogContent(catalogUrl, connectInfo);
             if (catalogStr != null) {
-                dynProcName = null;
-                // REVIEW: Are we including enough in the key to make it
-                // unique?
                 key = catalogStr;
             }
 
@@ -954,40 +1157,6 @@ public class RolapSchema implements Schema {
                         RolapConnectionProperties.UseSchemaPool.name(),
                         "true"));
 
-            // If there is a dynamic processor registered, use it. This
-            // implies there is not MD5 based caching, but, as with the previous
-            // implementation, if the catalog string is in the connectInfo
-            // object as catalog content then it is used.
-            if (! Util.isEmpty(dynProcName)) {
-                assert catalogStr == null;
-
-                try {
-                    @SuppressWarnings("unchecked")
-                    final Class<DynamicSchemaProcessor> clazz =
-                        (Class<DynamicSchemaProcessor>)
-                            Class.forName(dynProcName);
-                    final Constructor<DynamicSchemaProcessor> ctor =
-                        clazz.getConstructor();
-                    final DynamicSchemaProcessor dynProc = ctor.newInstance();
-                    catalogStr = dynProc.processSchema(catalogUrl, connectInfo);
-
-                    // Use the content of the catalog to find the schema.
-                    // Previously we'd use the key, but we didn't include
-                    // DynamicSchemaProcessor, and that would give false hits.
-                    key = catalogStr;
-                } catch (Exception e) {
-                    throw Util.newError(
-                        e,
-                        "loading DynamicSchemaProcessor " + dynProcName);
-                }
-
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug(
-                        "Pool.get: create schema \"" + catalogUrl
-                        + "\" using dynamic processor");
-                }
-            }
-
             if (!useSchemaPool) {
                 schema = new RolapSchema(
                     key,
@@ -1102,6 +1271,54 @@ public class RolapSchema implements Schema {
             return schema;
         }
 
+        /**
+         * Returns the content of a catalog if it is specified in the connect
+         * string or generated by a dynamic schema processor; otherwise
+         * returns null, and the catalog is read from its URL.
+         *
+         * <p>If CatalogContent is specified in the connect string, ignores
+         * everything else. In particular, ignores the dynamic schema
+         * processor.
+         *
+         * @param catalogUrl URL of catalog
+         * @param connectInfo Connect properties
+         * @return Content of catalog, or null
+         */
+        static String getCatalogContent(
+            String catalogUrl,
+            Util.PropertyList connectInfo)
+        {
+            final String catalogStr = connectInfo.get(
+                RolapConnectionProperties.CatalogContent.name());
+            if (catalogStr != null) {
+                return catalogStr;
+            }
+            final String dynProcName = connectInfo.get(
+                RolapConnectionProperties.DynamicSchemaProcessor.name());
+            if (Util.isEmpty(dynProcName)) {
+                return null;
+            }
+            try {
+                @SuppressWarnings("unchecked")
+                final Class<DynamicSchemaProcessor> clazz =
+                    (Class<DynamicSchemaProcessor>)
+                        Class.forName(dynProcName);
+                final Constructor<DynamicSchemaProcessor> ctor =
+                    clazz.getConstructor();
+                final DynamicSchemaProcessor dynProc = ctor.newInstance();
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug(
+                        "Pool: process schema \"" + catalogUrl
+                        + "\" using dynamic processor");
+                }
+                return dynProc.processSchema(catalogUrl, connectInfo);
+            } catch (Exception e) {
+                throw Util.newError(
+                    e,
+                    "loading DynamicSchemaProcessor " + dynProcName);
+            }
+        }
+
         synchronized void remove(
             final String catalogUrl,
             final String connectionKey,
@@ -1157,6 +1374,155 @@ public class RolapSchema implements Schema {
             mapUrlToSchema.remove(key);
         }
 
+        synchronized void refresh(
+            final String catalogUrl,
+            final String connectionKey,
+            final String jdbcUser,
+            final String dataSourceStr)
+        {
+            refresh(
+                makeKey(
+                    catalogUrl,
+                    connectionKey,
+                    jdbcUser,
+                    dataSourceStr));
+        }
+
+        synchronized void refresh(
+            final String catalogUrl,
+            final DataSource dataSource)
+        {
+            refresh(makeKey(catalogUrl, dataSource));
+        }
+
+        synchronized void refresh(RolapSchema schema) {
+            if (schema != null) {
+                refresh(schema.key);
+            }
+        }
+
+        /**
+         * Reloads the schema with a given key in the background.
+         *
+         * <p>Unlike {@link #remove(String)}, the existing schema remains in
+         * the pool, and continues to serve new connections, until its
+         * replacement has loaded. Then the replacement is swapped into the
+         * pool, and the existing schema is cleaned up. If the replacement has
+         * the same checksum as the existing schema, segments in the cache are
+         * carried over to the replacement.
+         *
+         * <p>If the schema is already being reloaded, schedules another
+         * reload after that one finishes. If the schema is not in the pool,
+         * does nothing.
+         *
+         * @param key Key of schema
+         */
+        private void refresh(final String key) {
+            if (refreshMap.containsKey(key)) {
+                refreshMap.put(key, true);
+                return;
+            }
+            final SoftReference<RolapSchema> ref = mapUrlToSchema.get(key);
+            final RolapSchema schema = ref == null ? null : ref.get();
+            if (schema == null) {
+                mapUrlToSchema.remove(key);
+                return;
+            }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(
+                    "Pool.refresh: schema \"" + schema.name
+                    + "\" will be reloaded in background");
+            }
+            refreshMap.put(key, false);
+            Util.discard(
+                refreshExecutor.submit(
+                    new Runnable() {
+                        public void run() {
+                            RolapSchema newSchema = null;
+                            boolean carriedOver = false;
+                            try {
+                                newSchema = schema.reload();
+                                if (Util.equals(
+                                        schema.getChecksum(),
+                                        newSchema.getChecksum()))
+                                {
+                                    schema.carryOverSegments(newSchema);
+                                    carriedOver = true;
+                                }
+                            } catch (Throwable e) {
+                                LOGGER.error(
+                                    "Failed to reload schema \""
+                                    + schema.name
+                                    + "\"; existing schema remains in use",
+                                    e);
+                            }
+                            final boolean swapped =
+                                swap(key, schema, newSchema);
+                            // Only now that the new schema has replaced the
+                            // old one in the pool is it safe to drop the old
+                            // schema's segment indexes. Not done inside
+                            // swap(), which holds the pool's lock.
+                            if (swapped && carriedOver) {
+                                try {
+                                    schema.discardSegmentIndexes();
+                                } catch (Throwable e) {
+                                    LOGGER.warn(
+                                        "Failed to discard segment indexes"
+                                        + " of schema \"" + schema.name
+                                        + "\"",
+                                        e);
+                                }
+                            }
+                        }
+                    }));
+        }
+
+        /**
+         * Replaces a schema in the pool with the schema that was loaded to
+         * refresh it. Called when a background reload completes.
+         *
+         * <p>If the old schema has been removed from the pool while its
+         * replacement was loading, discards the replacement.
+         *
+         * @param key Key of schema
+         * @param oldSchema Schema that was being refreshed
+         * @param newSchema Replacement schema, or null if reload failed
+         * @return Whether the replacement schema is now in the pool
+         */
+        private synchronized boolean swap(
+            String key,
+            RolapSchema oldSchema,
+            RolapSchema newSchema)
+        {
+            final Boolean again = refreshMap.remove(key);
+            final SoftReference<RolapSchema> ref = mapUrlToSchema.get(key);
+            if (ref == null || ref.get() != oldSchema) {
+                if (newSchema != null) {
+                    newSchema.finalCleanUp();
+                }
+                return false;
+            }
+            if (newSchema != null) {
+                final SoftReference<RolapSchema> newRef =
+                    new SoftReference<RolapSchema>(newSchema);
+                mapUrlToSchema.put(key, newRef);
+                mapMd5ToSchema.remove(oldSchema.md5Bytes);
+                if (newSchema.useContentChecksum) {
+                    mapMd5ToSchema.put(newSchema.md5Bytes, newRef);
+                }
+                oldSchema.finalCleanUp();
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug(
+                        "Pool.swap: schema \"" + newSchema.name
+                        + "\" replaced by reloaded schema");
+                }
+            }
+            if (again != null && again) {
+                refresh(key);
+            }
+            return newSchema != null;
+        }
+
         synchronized void clear() {
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Pool.clear: clearing all RolapSchemas");
@@ -1377,6 +1743,15 @@ public class RolapSchema implements Schema {
         return mapNameToRole.keySet();
     }
 
+    /**
+     * Returns the cache of compiled queries against this schema.
+     *
+     * @return Query plan cache
+     */
+    public QueryPlanCache getQueryPlanCache() {
+        return queryPlanCache;
+    }
+
     public FunTable getFunTable() {
         return funTable;
     }
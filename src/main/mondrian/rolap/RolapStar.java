@@ -143,22 +143,37 @@ public class RolapStar {
         AggregationKey aggregationKey = new AggregationKey(request);
 
         final Bar bar = localBars.get();
-        for (SegmentWithData segment : Util.GcIterator.over(bar.segmentRefs)) {
-            if (!segment.getConstrainedColumnsBitKey().equals(
-                    request.getConstrainedColumnsBitKey()))
-            {
-                continue;
+
+        // Consecutive requests, such as those made when an expression is
+        // evaluated for each member of a set, usually hit the same segment,
+        // so try the segment that answered the previous request first.
+        if (bar.lastSegmentRef != null) {
+            final SegmentWithData segment = bar.lastSegmentRef.get();
+            if (segment != null) {
+                final Object o =
+                    getCellFromSegment(
+                        segment, request, aggregationKey, pinSet);
+                if (o != null) {
+                    return o;
+                }
             }
+        }
 
-            if (!segment.matches(aggregationKey, request.getMeasure())) {
+        for (Iterator<SoftReference<SegmentWithData>> iterator =
+                 bar.segmentRefs.iterator();
+             iterator.hasNext();)
+        {
+            final SoftReference<SegmentWithData> segmentRef = iterator.next();
+            final SegmentWithData segment = segmentRef.get();
+            if (segment == null) {
+                // Segment has been garbage-collected.
+                iterator.remove();
                 continue;
             }
-
-            Object o = segment.getCellValue(request.getSingleValues());
+            final Object o =
+                getCellFromSegment(segment, request, aggregationKey, pinSet);
             if (o != null) {
-                if (pinSet != null) {
-                    ((AggregationManager.PinSetImpl) pinSet).add(segment);
-                }
+                bar.lastSegmentRef = segmentRef;
                 return o;
             }
         }
@@ -166,6 +181,38 @@ public class RolapStar {
         return null;
     }
 
+    /**
+     * Returns the value of a cell if a given segment contains it, otherwise
+     * null.
+     *
+     * @param segment Segment
+     * @param request Cell request
+     * @param aggregationKey Aggregation key of request
+     * @param pinSet Set into which to pin the segment; or null
+     * @return Cell value, or {@link Util#nullValue} if the cell value is null,
+     * or null if the segment does not contain the cell
+     */
+    private static Object getCellFromSegment(
+        SegmentWithData segment,
+        CellRequest request,
+        AggregationKey aggregationKey,
+        RolapAggregationManager.PinSet pinSet)
+    {
+        if (!segment.getConstrainedColumnsBitKey().equals(
+                request.getConstrainedColumnsBitKey()))
+        {
+            return null;
+        }
+        if (!segment.matches(aggregationKey, request.getMeasure())) {
+            return null;
+        }
+        final Object o = segment.getCellValue(request.getSingleValues());
+        if (o != null && pinSet != null) {
+            ((AggregationManager.PinSetImpl) pinSet).add(segment);
+        }
+        return o;
+    }
+
     public Object getCellFromAllCaches(final CellRequest request) {
         // First, try the local/thread cache.
         Object result = getCellFromCache(request, null);
@@ -186,11 +233,90 @@ public class RolapStar {
         return segment.getCellValue(request.getSingleValues());
     }
 
+    /**
+     * Returns a segment that answers a cell request and that contains every
+     * cell of a region, or null if there is no such segment. Looks first in
+     * the calling thread's local cache, then in the segment cache manager.
+     *
+     * @param request Cell request
+     * @param valueSets Values of each constrained column of the request that
+     *   define the region
+     * @return Segment, or null
+     */
+    SegmentWithData findSegment(
+        CellRequest request,
+        List<? extends Collection<?>> valueSets)
+    {
+        final AggregationKey aggregationKey = new AggregationKey(request);
+        for (SoftReference<SegmentWithData> segmentRef
+            : localBars.get().segmentRefs)
+        {
+            final SegmentWithData segment = segmentRef.get();
+            if (segment != null
+                && matches(segment, request, aggregationKey, valueSets))
+            {
+                return segment;
+            }
+        }
+        final SegmentWithData segment =
+            Locus.peek().getServer().getAggregationManager()
+                .cacheMgr.peek(request);
+        if (segment != null
+            && matches(segment, request, aggregationKey, valueSets))
+        {
+            return segment;
+        }
+        return null;
+    }
+
+    private static boolean matches(
+        SegmentWithData segment,
+        CellRequest request,
+        AggregationKey aggregationKey,
+        List<? extends Collection<?>> valueSets)
+    {
+        return segment.getConstrainedColumnsBitKey().equals(
+                request.getConstrainedColumnsBitKey())
+            && segment.matches(aggregationKey, request.getMeasure())
+            && segment.wouldContainAll(valueSets);
+    }
+
     public void register(SegmentWithData segment) {
         localBars.get().segmentRefs.add(
             new SoftReference<SegmentWithData>(segment));
     }
 
+    /**
+     * Returns a copy of the calling thread's local cache of this star.
+     *
+     * <p>The copy can be installed in another thread using
+     * {@link #setLocalBar(Bar)}, so that the other thread can read the cells
+     * that the calling thread has already loaded.
+     *
+     * @return Copy of calling thread's local cache
+     */
+    Bar copyLocalBar() {
+        final Bar bar = localBars.get();
+        final Bar copy = new Bar();
+        copy.aggregations.putAll(bar.aggregations);
+        copy.segmentRefs.addAll(bar.segmentRefs);
+        return copy;
+    }
+
+    /**
+     * Sets the calling thread's local cache of this star.
+     *
+     * @param bar Local cache, or null to discard the calling thread's local
+     *   cache
+     */
+    void setLocalBar(Bar bar) {
+        if (bar == null) {
+            localBars.remove();
+        } else {
+            localBars.set(bar);
+        }
+    }
+
     public RolapStatisticsCache getStatisticsCache() {
         return statisticsCache;
     }
@@ -209,6 +335,11 @@ public class RolapStar {
 
         private final List<SoftReference<SegmentWithData>> segmentRefs =
             new ArrayList<SoftReference<SegmentWithData>>();
+
+        /** Reference to the segment that most recently answered a cell
+         * request in this thread, or null. It is also an element of
+         * {@link #segmentRefs}. */
+        private SoftReference<SegmentWithData> lastSegmentRef;
     }
 
     private final ThreadLocal<Bar> localBars =
@@ -551,6 +682,7 @@ public class RolapStar {
             // Clear aggregation cache for the current thread context.
             localBars.get().aggregations.clear();
             localBars.get().segmentRefs.clear();
+            localBars.get().lastSegmentRef = null;
         }
     }
 
@@ -0,0 +1,647 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.calc.TupleCollections;
+import mondrian.calc.TupleList;
+import mondrian.olap.Member;
+import mondrian.olap.Util;
+import mondrian.rolap.agg.CellRequest;
+import mondrian.rolap.agg.SegmentWithData;
+
+import java.util.*;
+
+/**
+ * Computes the non-empty tuples of the cartesian product of two lists by
+ * reading cell segments, rather than by evaluating a cell for each tuple of
+ * the product.
+ *
+ * <p>A segment whose columns are the key columns of the members of both
+ * lists, plus the columns constrained by the rest of the context, holds every
+ * cell of the product. Its non-null cells are the non-empty tuples. The key
+ * values of each cell are looked up, in a hash map for each list, to find the
+ * tuples of the lists that they belong to. The cost is proportional to the
+ * sizes of the lists plus the number of non-empty cells, not to the size of
+ * the product.
+ *
+ * <p>This is the in-memory counterpart of native crossjoin, for cases
+ * where native crossjoin is not possible, for example if the slicer contains
+ * a calculated member on an unrelated dimension.
+ *
+ * <p>Similarly, {@link #nonEmptyTuples} finds which tuples of a list are not
+ * empty by testing their cells against a segment's bitmap of non-null cells,
+ * rather than evaluating each cell.
+ */
+public class SegmentCrossJoin {
+    private SegmentCrossJoin() {
+    }
+
+    /**
+     * Returns the tuples of the cartesian product of two lists that have a
+     * non-null value for at least one of a collection of measures, in the
+     * order of the product.
+     *
+     * <p>Returns null if the product cannot be computed from segments; the
+     * caller must then evaluate each tuple. This happens if a measure, or a
+     * member of the context, is calculated; if the measures belong to
+     * different stars; if the context has a compound slicer; or if the
+     * members in a column of a list are not all at the same level.
+     *
+     * <p>If the required segments are not in the cache, requests the cells of
+     * the product so that they are loaded in the next batch, and returns an
+     * empty list. The evaluator's miss count will have increased, so the
+     * caller's result is discarded and evaluated again once the segments
+     * have been loaded. If the cells are requested but no segment contains
+     * the whole product (because it was loaded in pieces, for instance),
+     * returns null.
+     *
+     * @param evaluator Evaluator; its context determines the members of the
+     *   hierarchies that are not in either list
+     * @param list1 First list
+     * @param list2 Second list
+     * @param measures Measures; a tuple is non-empty if any of them is not
+     *   null
+     * @return Non-empty tuples, or null
+     */
+    public static TupleList nonEmptyCrossJoin(
+        RolapEvaluator evaluator,
+        TupleList list1,
+        TupleList list2,
+        Collection<Member> measures)
+    {
+        final int arity = list1.getArity() + list2.getArity();
+        if (list1.isEmpty() || list2.isEmpty()) {
+            return TupleCollections.createList(arity);
+        }
+        if (measures.isEmpty() || evaluator.getAggregationLists() != null) {
+            return null;
+        }
+        RolapStar star = null;
+        for (Member measure : measures) {
+            if (!(measure instanceof RolapStoredMeasure)) {
+                return null;
+            }
+            final RolapStar.Measure starMeasure =
+                (RolapStar.Measure)
+                    ((RolapStoredMeasure) measure).getStarMeasure();
+            if (star == null) {
+                star = starMeasure.getStar();
+            } else if (star != starMeasure.getStar()) {
+                return null;
+            }
+        }
+
+        final int[] ordinals1 = ordinals(list1);
+        final int[] ordinals2 = ordinals(list2);
+        final Member[] members = evaluator.getMembers().clone();
+        members[0] = measures.iterator().next();
+        setTuple(members, ordinals1, list1, 0);
+        setTuple(members, ordinals2, list2, 0);
+        for (int i = 1; i < members.length; i++) {
+            if (members[i].isCalculated()) {
+                return null;
+            }
+        }
+        final CellRequest request =
+            RolapAggregationManager.makeRequest(members);
+        if (request == null || request.isUnsatisfiable()) {
+            return null;
+        }
+        final int columnCount = request.getConstrainedColumns().length;
+
+        // Which columns of the request belong to each list.
+        final int[] positions1 = positions(members, ordinals1, request);
+        final int[] positions2 = positions(members, ordinals2, request);
+        if (positions1 == null || positions2 == null) {
+            return null;
+        }
+
+        // Map the key of each tuple of each list to its position. 'next'
+        // chains the positions of tuples that have the same key.
+        final int n1 = list1.size();
+        final int n2 = list2.size();
+        final int[] next1 = new int[n1];
+        final int[] next2 = new int[n2];
+        final Map<List<Object>, Integer> map1 =
+            keyMap(members, list1, ordinals1, positions1, request, next1);
+        setTuple(members, ordinals1, list1, 0);
+        final Map<List<Object>, Integer> map2 =
+            keyMap(members, list2, ordinals2, positions2, request, next2);
+        setTuple(members, ordinals2, list2, 0);
+        if (map1 == null || map2 == null) {
+            return null;
+        }
+
+        // The region of cells that a segment must contain: every key of
+        // each list, and the context's value of every other column.
+        final Object[] contextValues = request.getSingleValues();
+        final List<Set<Object>> valueSets = new ArrayList<Set<Object>>();
+        for (int i = 0; i < columnCount; i++) {
+            valueSets.add(Collections.singleton(contextValues[i]));
+        }
+        addValues(valueSets, positions1, map1.keySet());
+        addValues(valueSets, positions2, map2.keySet());
+        final boolean[] isContext = new boolean[columnCount];
+        Arrays.fill(isContext, true);
+        for (int position : positions1) {
+            isContext[position] = false;
+        }
+        for (int position : positions2) {
+            isContext[position] = false;
+        }
+
+        long[] pairs = new long[16];
+        int pairCount = 0;
+        for (Member measure : measures) {
+            members[0] = measure;
+            final CellRequest measureRequest =
+                RolapAggregationManager.makeRequest(members);
+            final SegmentWithData segment =
+                star.findSegment(measureRequest, valueSets);
+            if (segment == null) {
+                return requestCells(evaluator, list1, list2, measures)
+                    ? TupleCollections.createList(arity)
+                    : null;
+            }
+            for (Object[] keys : segment.getNonNullKeys()) {
+                if (!matchesContext(keys, isContext, contextValues)) {
+                    continue;
+                }
+                final Integer i1 = map1.get(project(keys, positions1));
+                if (i1 == null) {
+                    continue;
+                }
+                final Integer i2 = map2.get(project(keys, positions2));
+                if (i2 == null) {
+                    continue;
+                }
+                for (int a = i1; a >= 0; a = next1[a]) {
+                    for (int b = i2; b >= 0; b = next2[b]) {
+                        if (pairCount == pairs.length) {
+                            final long[] newPairs = new long[pairCount * 2];
+                            System.arraycopy(
+                                pairs, 0, newPairs, 0, pairCount);
+                            pairs = newPairs;
+                        }
+                        pairs[pairCount++] = (long) a * n2 + b;
+                    }
+                }
+            }
+        }
+
+        // Sort into the order of the product, and remove tuples that are
+        // non-empty for more than one measure.
+        Arrays.sort(pairs, 0, pairCount);
+        final TupleList result =
+            TupleCollections.createList(arity, pairCount);
+        final Member[] tuple = new Member[arity];
+        final int arity1 = list1.getArity();
+        for (int i = 0; i < pairCount; i++) {
+            if (i > 0 && pairs[i] == pairs[i - 1]) {
+                continue;
+            }
+            final int i1 = (int) (pairs[i] / n2);
+            final int i2 = (int) (pairs[i] % n2);
+            for (int c = 0; c < arity1; c++) {
+                tuple[c] = list1.get(c, i1);
+            }
+            for (int c = arity1; c < arity; c++) {
+                tuple[c] = list2.get(c - arity1, i2);
+            }
+            result.addTuple(tuple);
+        }
+        return result;
+    }
+
+    /**
+     * Returns which tuples of a list have a non-null value for at least one
+     * of a collection of measures, testing all of the tuples' cells in one
+     * call to {@link SegmentWithData#getNonEmpty(List)} per measure.
+     *
+     * <p>Returns null if the tuples' cells cannot be read from segments: if
+     * a measure, or a member of a tuple or of the context, is calculated; if
+     * the measures belong to different stars; if the context has a compound
+     * slicer; if the tuples do not all constrain the same columns; or if no
+     * segment in the cache contains all of the cells. The caller must then
+     * evaluate each tuple, which will request the cells, so that the segment
+     * is usually there the next time.
+     *
+     * @param evaluator Evaluator; its context determines the members of the
+     *   hierarchies that are not in the list
+     * @param list List of tuples
+     * @param measures Measures; a tuple is non-empty if any of them is not
+     *   null
+     * @return Bitmap with bit {@code i} set if the {@code i}th tuple is not
+     *   empty, or null
+     */
+    public static BitSet nonEmptyTuples(
+        RolapEvaluator evaluator,
+        TupleList list,
+        Collection<Member> measures)
+    {
+        if (list.isEmpty()) {
+            return new BitSet();
+        }
+        if (measures.isEmpty()) {
+            return null;
+        }
+        RolapStar star = null;
+        for (Member measure : measures) {
+            if (!(measure instanceof RolapStoredMeasure)) {
+                return null;
+            }
+            final RolapStar.Measure starMeasure =
+                (RolapStar.Measure)
+                    ((RolapStoredMeasure) measure).getStarMeasure();
+            if (star == null) {
+                star = starMeasure.getStar();
+            } else if (star != starMeasure.getStar()) {
+                return null;
+            }
+        }
+        final Member[] members = evaluator.getMembers().clone();
+        members[0] = measures.iterator().next();
+        final CellKeys cellKeys = CellKeys.create(evaluator, list, members);
+        if (cellKeys == null) {
+            return null;
+        }
+
+        final BitSet nonEmpty = new BitSet(list.size());
+        for (Member measure : measures) {
+            final SegmentWithData segment = cellKeys.findSegment(measure);
+            if (segment == null) {
+                return null;
+            }
+            final BitSet measureNonEmpty =
+                segment.getNonEmpty(cellKeys.keyList);
+            if (measureNonEmpty == null) {
+                return null;
+            }
+            nonEmpty.or(measureNonEmpty);
+        }
+        return nonEmpty;
+    }
+
+    /**
+     * Returns the value of the cell of each tuple of a list, reading all of
+     * the cells from one segment rather than evaluating each cell.
+     *
+     * <p>The measure, and the members of hierarchies that are not in the
+     * list, come from the evaluator's context, overridden by
+     * {@code overrides}. An override applies to every tuple, even if its
+     * hierarchy is in the list, as it would if the context were set to the
+     * tuple and then to the override.
+     *
+     * <p>Returns null under the same conditions as {@link #nonEmptyTuples};
+     * the caller must then evaluate each tuple.
+     *
+     * @param evaluator Evaluator
+     * @param list List of tuples
+     * @param overrides Members that override the context of every tuple
+     * @return Value of each tuple's cell, {@link Util#nullValue} if the cell
+     *   is empty, or null if the cells cannot be read from a segment
+     */
+    public static Object[] cellValues(
+        RolapEvaluator evaluator,
+        TupleList list,
+        Member... overrides)
+    {
+        final Member[] members = evaluator.getMembers().clone();
+        for (Member override : overrides) {
+            members[((RolapMember) override).getHierarchy().getOrdinalInCube()]
+                = override;
+        }
+        if (!(members[0] instanceof RolapStoredMeasure)) {
+            return null;
+        }
+        final Object[] values = new Object[list.size()];
+        if (list.isEmpty()) {
+            return values;
+        }
+        final CellKeys cellKeys =
+            CellKeys.create(evaluator, list, members, overrides);
+        if (cellKeys == null) {
+            return null;
+        }
+        final SegmentWithData segment = cellKeys.findSegment(members[0]);
+        if (segment == null
+            || !segment.getCellValues(cellKeys.keyList, values))
+        {
+            return null;
+        }
+        return values;
+    }
+
+    /**
+     * Keys of the cells of the tuples of a list, and the region of cells
+     * that a segment must contain to hold all of them.
+     */
+    private static class CellKeys {
+        final RolapStar star;
+        final List<Object[]> keyList;
+        final List<Set<Object>> valueSets;
+
+        /** Context of the first tuple, including its measure. */
+        final Member[] firstMembers;
+
+        private CellKeys(
+            RolapStar star,
+            List<Object[]> keyList,
+            List<Set<Object>> valueSets,
+            Member[] firstMembers)
+        {
+            this.star = star;
+            this.keyList = keyList;
+            this.valueSets = valueSets;
+            this.firstMembers = firstMembers;
+        }
+
+        /**
+         * Computes the key of the cell of each tuple of a list.
+         *
+         * <p>Returns null if the context has a compound slicer; if the
+         * tuples contain measures; if a member of a tuple or of the context
+         * is calculated; or if the tuples do not all constrain the same
+         * columns.
+         *
+         * @param evaluator Evaluator
+         * @param list List of tuples; not empty
+         * @param members Context, including the measure; modified during
+         *   the call, and the same on return as on entry
+         * @param overrides Members that override the tuples' members of
+         *   their hierarchies
+         * @return Cell keys, or null
+         */
+        static CellKeys create(
+            RolapEvaluator evaluator,
+            TupleList list,
+            Member[] members,
+            Member... overrides)
+        {
+            if (evaluator.getAggregationLists() != null) {
+                return null;
+            }
+            final int[] ordinals = ordinals(list);
+            for (int ordinal : ordinals) {
+                if (ordinal == 0) {
+                    // The tuples contain measures.
+                    return null;
+                }
+            }
+            for (int i = 1; i < members.length; i++) {
+                if (members[i].isCalculated()) {
+                    return null;
+                }
+            }
+            final Member[] saved = members.clone();
+            try {
+                final List<Object[]> keyList =
+                    new ArrayList<Object[]>(list.size());
+                List<Set<Object>> valueSets = null;
+                BitKey bitKey = null;
+                Member[] firstMembers = null;
+                for (int i = 0, n = list.size(); i < n; i++) {
+                    setTuple(members, ordinals, list, i);
+                    for (Member override : overrides) {
+                        members[((RolapMember) override).getHierarchy()
+                            .getOrdinalInCube()] = override;
+                    }
+                    for (int ordinal : ordinals) {
+                        if (members[ordinal].isCalculated()) {
+                            return null;
+                        }
+                    }
+                    final CellRequest request =
+                        RolapAggregationManager.makeRequest(members);
+                    if (request == null || request.isUnsatisfiable()) {
+                        return null;
+                    }
+                    final Object[] keys = request.getSingleValues();
+                    if (bitKey == null) {
+                        bitKey = request.getConstrainedColumnsBitKey();
+                        firstMembers = members.clone();
+                        valueSets = new ArrayList<Set<Object>>();
+                        for (int j = 0; j < keys.length; j++) {
+                            valueSets.add(new HashSet<Object>());
+                        }
+                    } else if (!bitKey.equals(
+                            request.getConstrainedColumnsBitKey()))
+                    {
+                        return null;
+                    }
+                    for (int j = 0; j < keys.length; j++) {
+                        valueSets.get(j).add(keys[j]);
+                    }
+                    keyList.add(keys);
+                }
+                final RolapStar star =
+                    ((RolapStar.Measure)
+                        ((RolapStoredMeasure) members[0]).getStarMeasure())
+                        .getStar();
+                return new CellKeys(star, keyList, valueSets, firstMembers);
+            } finally {
+                System.arraycopy(saved, 0, members, 0, members.length);
+            }
+        }
+
+        /**
+         * Returns a segment that contains the cells of all of the tuples for
+         * a given measure, or null.
+         *
+         * @param measure Measure; must belong to the same star as the
+         *   measure for which the keys were computed
+         * @return Segment, or null
+         */
+        SegmentWithData findSegment(Member measure) {
+            final Member[] members = firstMembers.clone();
+            members[0] = measure;
+            final CellRequest request =
+                RolapAggregationManager.makeRequest(members);
+            if (request == null) {
+                return null;
+            }
+            return star.findSegment(request, valueSets);
+        }
+    }
+
+    /**
+     * Returns the ordinal in the cube of the hierarchy of each column of a
+     * list.
+     */
+    private static int[] ordinals(TupleList list) {
+        final int[] ordinals = new int[list.getArity()];
+        for (int i = 0; i < ordinals.length; i++) {
+            ordinals[i] =
+                ((RolapMember) list.get(i, 0)).getHierarchy()
+                    .getOrdinalInCube();
+        }
+        return ordinals;
+    }
+
+    private static void setTuple(
+        Member[] members,
+        int[] ordinals,
+        TupleList list,
+        int index)
+    {
+        for (int i = 0; i < ordinals.length; i++) {
+            members[ordinals[i]] = list.get(i, index);
+        }
+    }
+
+    /**
+     * Returns the positions of the columns of a request that are constrained
+     * by the members of some hierarchies; that is, the columns that are no
+     * longer constrained if those hierarchies are set to their 'all'
+     * member. Returns null if one of the hierarchies has no 'all' member.
+     */
+    private static int[] positions(
+        Member[] members,
+        int[] ordinals,
+        CellRequest request)
+    {
+        final Member[] allMembers = members.clone();
+        for (int ordinal : ordinals) {
+            final Member allMember =
+                allMembers[ordinal].getHierarchy().getAllMember();
+            if (allMember == null
+                || !allMembers[ordinal].getHierarchy().hasAll())
+            {
+                return null;
+            }
+            allMembers[ordinal] = allMember;
+        }
+        final CellRequest allRequest =
+            RolapAggregationManager.makeRequest(allMembers);
+        if (allRequest == null) {
+            return null;
+        }
+        final RolapStar.Column[] columns = request.getConstrainedColumns();
+        final int[] positions = new int[columns.length];
+        int count = 0;
+        for (int i = 0; i < columns.length; i++) {
+            if (!allRequest.getConstrainedColumnsBitKey().get(
+                    columns[i].getBitPosition()))
+            {
+                positions[count++] = i;
+            }
+        }
+        return count == 0 ? null : Util.copyOf(positions, count);
+    }
+
+    /**
+     * Maps the key of each tuple of a list, that is, the values of the
+     * columns that it constrains, to the position of the tuple. If several
+     * tuples have the same key, chains their positions in {@code next}.
+     * Returns null if a tuple constrains a different set of columns than the
+     * first tuple.
+     */
+    private static Map<List<Object>, Integer> keyMap(
+        Member[] members,
+        TupleList list,
+        int[] ordinals,
+        int[] positions,
+        CellRequest request,
+        int[] next)
+    {
+        final Map<List<Object>, Integer> map =
+            new HashMap<List<Object>, Integer>();
+        for (int i = 0, n = list.size(); i < n; i++) {
+            setTuple(members, ordinals, list, i);
+            for (int ordinal : ordinals) {
+                if (members[ordinal].isCalculated()) {
+                    return null;
+                }
+            }
+            final CellRequest tupleRequest =
+                RolapAggregationManager.makeRequest(members);
+            if (tupleRequest == null
+                || tupleRequest.isUnsatisfiable()
+                || !tupleRequest.getConstrainedColumnsBitKey().equals(
+                    request.getConstrainedColumnsBitKey()))
+            {
+                return null;
+            }
+            final Integer previous =
+                map.put(project(tupleRequest.getSingleValues(), positions), i);
+            next[i] = previous == null ? -1 : previous;
+        }
+        return map;
+    }
+
+    private static List<Object> project(Object[] values, int[] positions) {
+        final Object[] projected = new Object[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            projected[i] = values[positions[i]];
+        }
+        return Arrays.asList(projected);
+    }
+
+    private static void addValues(
+        List<Set<Object>> valueSets,
+        int[] positions,
+        Set<List<Object>> keys)
+    {
+        for (int i = 0; i < positions.length; i++) {
+            final Set<Object> values = new HashSet<Object>();
+            for (List<Object> key : keys) {
+                values.add(key.get(i));
+            }
+            valueSets.set(positions[i], values);
+        }
+    }
+
+    private static boolean matchesContext(
+        Object[] keys,
+        boolean[] isContext,
+        Object[] contextValues)
+    {
+        for (int i = 0; i < keys.length; i++) {
+            if (isContext[i] && !keys[i].equals(contextValues[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evaluates enough cells of the product that, when the requests are
+     * batched, the segments loaded contain the whole product: each key of
+     * each list is requested at least once, for each measure.
+     *
+     * @return Whether any cell was not in the cache
+     */
+    private static boolean requestCells(
+        RolapEvaluator evaluator,
+        TupleList list1,
+        TupleList list2,
+        Collection<Member> measures)
+    {
+        final int missCount = evaluator.getMissCount();
+        final int n1 = list1.size();
+        final int n2 = list2.size();
+        final int savepoint = evaluator.savepoint();
+        try {
+            for (int i = 0, n = Math.max(n1, n2); i < n; i++) {
+                evaluator.setContext(list1.get(i % n1));
+                evaluator.setContext(list2.get(i % n2));
+                for (Member measure : measures) {
+                    evaluator.setContext(measure);
+                    evaluator.evaluateCurrent();
+                }
+            }
+        } finally {
+            evaluator.restore(savepoint);
+        }
+        return evaluator.getMissCount() > missCount;
+    }
+}
+
+// End SegmentCrossJoin.java
@@ -0,0 +1,293 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.calc.TupleList;
+import mondrian.olap.*;
+import mondrian.util.ByteString;
+
+import org.apache.log4j.Logger;
+
+import java.util.*;
+
+/**
+ * Cache of the values of expressions, shared between queries.
+ *
+ * <p>The expression result cache of an evaluator
+ * ({@link RolapEvaluatorRoot#expResultCache}) lives only as long as a query.
+ * This cache lives as long as the server, and holds the values of named sets
+ * and calculated members that are defined in a schema and whose
+ * {@link #ANNOTATION} annotation is "true", for example
+ *
+ * <blockquote><pre>&lt;NamedSet name="Top Customers"&gt;
+ *   &lt;Annotations&gt;
+ *     &lt;Annotation name="CacheAcrossQueries"&gt;true&lt;/Annotation&gt;
+ *   &lt;/Annotations&gt;
+ *   &lt;Formula&gt;TopCount([Customers].[Name].Members, 100,
+ *     [Measures].[Unit Sales])&lt;/Formula&gt;
+ * &lt;/NamedSet&gt;</pre></blockquote>
+ *
+ * <p>It also holds the tuples of the crossjoins that the
+ * <code>NativizeSet</code> function evaluates natively; see
+ * {@link RolapEvaluator#getSharedNativeSet(String)}; and the values of
+ * <code>Count</code> and <code>Sum</code> that {@link RolapNativeAggregate}
+ * computes in SQL.
+ *
+ * <p>A value is keyed by the checksum of the schema, the cube, the role, the
+ * name of the expression, and the members of the evaluation context that the
+ * expression depends upon. It is removed when a region of cells in any of the
+ * stars that it was computed from is flushed using
+ * {@link mondrian.olap.CacheControl}, or when the least recently used values
+ * exceed the limits set by
+ * {@link MondrianProperties#SharedExpCacheMaxEntries} and
+ * {@link MondrianProperties#SharedExpCacheMaxTuples}.
+ *
+ * <p>This class is thread-safe.
+ */
+public class SharedExpResultCache {
+    private static final Logger LOGGER =
+        Logger.getLogger(SharedExpResultCache.class);
+
+    /**
+     * Name of the annotation that, if its value is "true", enables caching
+     * of a named set or calculated member across queries.
+     */
+    public static final String ANNOTATION = "CacheAcrossQueries";
+
+    private final Map<List<Object>, Entry> map =
+        new LinkedHashMap<List<Object>, Entry>(16, 0.75f, true);
+
+    /** Total number of tuples in the values of the entries in the cache. */
+    private int tupleCount;
+
+    private int hitCount;
+    private int missCount;
+
+    /**
+     * Returns whether a named set or calculated member is to be cached
+     * across queries.
+     *
+     * @param annotated Named set or calculated member
+     * @return Whether to cache its value across queries
+     */
+    public static boolean isEnabled(Annotated annotated) {
+        final Map<String, Annotation> annotationMap =
+            annotated.getAnnotationMap();
+        if (annotationMap == null) {
+            return false;
+        }
+        final Annotation annotation = annotationMap.get(ANNOTATION);
+        return annotation != null
+            && "true".equalsIgnoreCase(String.valueOf(annotation.getValue()));
+    }
+
+    /**
+     * Creates a key.
+     *
+     * <p>Returns null if the value cannot be shared between queries, for
+     * example if the cube belongs to a schema that has no checksum, or if the
+     * context contains a member that is calculated in the query, because two
+     * such members may have the same unique name but different values.
+     *
+     * @param cube Cube
+     * @param role Role
+     * @param name Name of the expression, unique within the schema
+     * @param members Members of the evaluation context that the expression
+     *   depends upon
+     * @return Key, or null
+     */
+    static List<Object> makeKey(
+        RolapCube cube,
+        Role role,
+        String name,
+        List<Member> members)
+    {
+        final ByteString checksum = cube.getSchema().getChecksum();
+        if (checksum == null) {
+            return null;
+        }
+        for (Member member : members) {
+            if (member.isCalculatedInQuery()) {
+                return null;
+            }
+        }
+        final List<Object> key = new ArrayList<Object>(members.size() + 4);
+        key.add(checksum);
+        key.add(cube.getName());
+        // Roles have no value semantics, but the default role of a schema is
+        // determined by its checksum, so the default roles of two copies of
+        // the same schema can share values.
+        key.add(role == cube.getSchema().getDefaultRole() ? null : role);
+        key.add(name);
+        key.addAll(members);
+        return key;
+    }
+
+    /**
+     * Returns the value of an expression, or null if it is not in the cache.
+     * If the value of the expression is null, returns {@link Util#nullValue}.
+     *
+     * @param key Key
+     * @return Value, or null
+     */
+    public synchronized Object get(List<Object> key) {
+        final Entry entry = map.get(key);
+        if (entry == null) {
+            ++missCount;
+            return null;
+        }
+        ++hitCount;
+        return entry.value;
+    }
+
+    /**
+     * Adds the value of an expression to the cache, then removes the least
+     * recently used values until the cache is within its limits.
+     *
+     * @param key Key
+     * @param cube Cube in which the expression was evaluated
+     * @param value Value; if a list, it must be immutable
+     */
+    public void put(List<Object> key, RolapCube cube, Object value) {
+        final MondrianProperties properties = MondrianProperties.instance();
+        final int maxEntries = properties.SharedExpCacheMaxEntries.get();
+        final int maxTuples = properties.SharedExpCacheMaxTuples.get();
+        final Entry entry =
+            new Entry(
+                value == null ? Util.nullValue : value,
+                value instanceof TupleList ? ((TupleList) value).size() : 1,
+                cube.getSchema().getChecksum(),
+                getStarNames(cube));
+        if (maxEntries <= 0 || entry.tupleCount > maxTuples) {
+            return;
+        }
+        synchronized (this) {
+            final Entry previous = map.put(key, entry);
+            if (previous != null) {
+                tupleCount -= previous.tupleCount;
+            }
+            tupleCount += entry.tupleCount;
+            final Iterator<Entry> iterator = map.values().iterator();
+            while (map.size() > maxEntries || tupleCount > maxTuples) {
+                tupleCount -= iterator.next().tupleCount;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes the values computed from any of a list of stars.
+     *
+     * @param starList List of stars whose cells have been flushed
+     */
+    public void flush(List<RolapStar> starList) {
+        if (starList.isEmpty()) {
+            return;
+        }
+        int removeCount = 0;
+        synchronized (this) {
+            for (Iterator<Entry> iterator = map.values().iterator();
+                 iterator.hasNext();)
+            {
+                final Entry entry = iterator.next();
+                if (entry.dependsOn(starList)) {
+                    tupleCount -= entry.tupleCount;
+                    iterator.remove();
+                    ++removeCount;
+                }
+            }
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(
+                "Flushed " + removeCount
+                + " shared expression results computed from " + starList);
+        }
+    }
+
+    /**
+     * Removes all values.
+     */
+    public synchronized void clear() {
+        map.clear();
+        tupleCount = 0;
+    }
+
+    /**
+     * Returns the number of values in the cache.
+     */
+    public synchronized int size() {
+        return map.size();
+    }
+
+    /**
+     * Returns the number of requests that found a value in the cache.
+     */
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of requests that did not find a value in the cache.
+     */
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the names of the fact tables of the stars that a cube reads
+     * from, or null if the cube is virtual.
+     *
+     * <p>A virtual cube does not know its base cubes, so a value computed in
+     * a virtual cube is removed when any star of its schema is flushed.
+     */
+    private static Set<String> getStarNames(RolapCube cube) {
+        if (cube.isVirtual()) {
+            return null;
+        }
+        return Collections.singleton(cube.getStar().getFactTable().getAlias());
+    }
+
+    /**
+     * Value in the cache, and information required to remove it.
+     */
+    private static class Entry {
+        final Object value;
+        final int tupleCount;
+        final ByteString checksum;
+        final Set<String> starNames;
+
+        Entry(
+            Object value,
+            int tupleCount,
+            ByteString checksum,
+            Set<String> starNames)
+        {
+            this.value = value;
+            this.tupleCount = tupleCount;
+            this.checksum = checksum;
+            this.starNames = starNames;
+        }
+
+        boolean dependsOn(List<RolapStar> starList) {
+            for (RolapStar star : starList) {
+                if (checksum.equals(star.getSchema().getChecksum())
+                    && (starNames == null
+                        || starNames.contains(
+                            star.getFactTable().getAlias())))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
+
+// End SharedExpResultCache.java
@@ -12,6 +12,7 @@
 package mondrian.rolap;
 
 import mondrian.olap.Id;
+import mondrian.olap.Level;
 import mondrian.olap.Util;
 import mondrian.rolap.TupleReader.MemberBuilder;
 import mondrian.rolap.sql.MemberChildrenConstraint;
@@ -51,6 +52,12 @@ public class SmartMemberReader implements MemberReader {
 
     protected List<RolapMember> rootMembers;
 
+    /**
+     * Snapshot of all members of the hierarchy, or null if the hierarchy has
+     * not been (or cannot be) loaded in one go. See {@link #loadSnapshot}.
+     */
+    private volatile MemberSnapshot snapshot;
+
     SmartMemberReader(MemberReader source) {
         this.source = source;
         this.cacheHelper = new MemberCacheHelper(source.getHierarchy());
@@ -88,6 +95,14 @@ public class SmartMemberReader implements MemberReader {
     public RolapMember getMemberByKey(
         RolapLevel level, List<Comparable> keyValues)
     {
+        final MemberSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            final RolapMember member =
+                snapshot.getMemberByKey(level, keyValues);
+            if (member != null) {
+                return member;
+            }
+        }
         // Caching by key is not supported.
         return source.getMemberByKey(level, keyValues);
     }
@@ -121,6 +136,103 @@ public class SmartMemberReader implements MemberReader {
 
     protected void checkCacheStatus() {
         cacheHelper.checkCacheStatus();
+        getSnapshot();
+    }
+
+    /**
+     * Returns the snapshot of this hierarchy's members, or null if there is
+     * no snapshot.
+     *
+     * <p>If the member cache has been flushed or modified since the snapshot
+     * was loaded, discards the snapshot and schedules a new one to be loaded
+     * in the background.
+     *
+     * @return Member snapshot, or null
+     */
+    MemberSnapshot getSnapshot() {
+        final MemberSnapshot snapshot = this.snapshot;
+        if (snapshot != null
+            && snapshot.modCount != cacheHelper.getModCount())
+        {
+            this.snapshot = null;
+            MemberSnapshot.loadAsync(this);
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Reads all members of this hierarchy using a single SQL statement,
+     * provided that there are no more than a given number of them, and
+     * populates the member cache.
+     *
+     * <p>Afterwards, requests for members or children that are not
+     * constrained can be answered from cache without executing SQL, and
+     * members can be looked up by unique name and key in constant time.
+     *
+     * <p>Members that were already in the cache are replaced by the members
+     * in the snapshot. The replaced members remain valid, and compare equal
+     * to their replacements.
+     *
+     * @param maxMembers Maximum number of members
+     * @return Whether the snapshot was loaded
+     */
+    boolean loadSnapshot(int maxMembers) {
+        final RolapHierarchy hierarchy = getHierarchy();
+        if (!MemberSnapshot.canSnapshot(hierarchy)) {
+            return false;
+        }
+        int memberCount = 0;
+        for (Level level : hierarchy.getLevels()) {
+            final RolapLevel rolapLevel = (RolapLevel) level;
+            int levelCount = rolapLevel.getApproxRowCount();
+            if (levelCount < 0) {
+                levelCount = source.getLevelMemberCount(rolapLevel);
+            }
+            memberCount += levelCount;
+            if (memberCount > maxMembers) {
+                return false;
+            }
+        }
+        final int modCount = cacheHelper.getModCount();
+        final List<RolapMember> members = source.getMembers();
+        final MemberSnapshot snapshot =
+            new MemberSnapshot(hierarchy, members, modCount);
+        final MemberChildrenConstraint childrenConstraint =
+            sqlConstraintFactory.getMemberChildrenConstraint(null);
+        final TupleConstraint levelConstraint =
+            sqlConstraintFactory.getLevelMembersConstraint(null);
+        synchronized (cacheHelper) {
+            if (cacheHelper.getModCount() != modCount) {
+                // Cache was flushed while we were reading. The members we
+                // read may already be out of date.
+                return false;
+            }
+            for (int i = 0; i < snapshot.size(); i++) {
+                final RolapMember member = snapshot.getMember(i);
+                final int parentOrdinal = snapshot.getParentOrdinal(i);
+                cacheHelper.putMember(
+                    cacheHelper.makeKey(
+                        parentOrdinal < 0
+                            ? null
+                            : snapshot.getMember(parentOrdinal),
+                        member.getKey()),
+                    member);
+                cacheHelper.putChildren(
+                    member, childrenConstraint, snapshot.getChildren(i));
+            }
+            for (Level level : hierarchy.getLevels()) {
+                cacheHelper.putChildren(
+                    (RolapLevel) level,
+                    levelConstraint,
+                    snapshot.getLevelMembers((RolapLevel) level));
+            }
+            rootMembers =
+                snapshot.getLevelMembers(
+                    (RolapLevel) hierarchy.getLevels()[0]);
+            this.snapshot = snapshot;
+        }
+        return true;
     }
 
     public List<RolapMember> getMembersInLevel(
@@ -208,6 +320,14 @@ public class SmartMemberReader implements MemberReader {
         List<Id.Segment> uniqueNameParts,
         boolean failIfNotFound)
     {
+        final MemberSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            final RolapMember member =
+                snapshot.lookupMember(Util.implode(uniqueNameParts));
+            if (member != null) {
+                return member;
+            }
+        }
         return RolapUtil.lookupMember(this, uniqueNameParts, failIfNotFound);
     }
 
@@ -371,6 +491,10 @@ public class SmartMemberReader implements MemberReader {
     }
 
     public int getMemberCount() {
+        final MemberSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.size();
+        }
         return source.getMemberCount();
     }
 
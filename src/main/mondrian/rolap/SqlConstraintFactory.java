@@ -54,8 +54,11 @@ public class SqlConstraintFactory {
     public MemberChildrenConstraint getMemberChildrenConstraint(
         Evaluator context)
     {
+        // Virtual cubes are allowed; SqlMemberSource reads their children
+        // as level members, with one sub-select per base cube.
         if (!enabled(context)
-            || !SqlContextConstraint.isValidContext(context, false))
+            || !SqlContextConstraint.isValidContext(
+                context, false, new Level[0], false))
         {
             return DefaultMemberChildrenConstraint.instance();
         }
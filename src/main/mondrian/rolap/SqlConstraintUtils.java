@@ -282,6 +282,97 @@ public class SqlConstraintUtils {
         }
     }
 
+    /**
+     * Restricts the members of a level to those that have rows in the fact
+     * table in the current context, using a semi-join rather than joining the
+     * level's table to the fact table. For example,
+     *
+     * <blockquote><pre>WHERE ("customer"."customer_id") IN (
+     *   SELECT "sales_fact_1997"."customer_id"
+     *   FROM "sales_fact_1997", "time_by_day"
+     *   WHERE "sales_fact_1997"."time_id" = "time_by_day"."time_id"
+     *   AND "time_by_day"."the_year" = 1997)</pre></blockquote>
+     *
+     * <p>If the level's key is the column by which its table joins to the
+     * fact table, as above, the sub-query reads the fact table's foreign key
+     * and does not join to the level's table. Otherwise, for example for a
+     * level of a snowflaked table or a level above the leaf of a hierarchy,
+     * the sub-query must join the fact table to the level's table to find
+     * its keys.
+     *
+     * <p>A member whose key is null satisfies the predicate, even if it is
+     * empty, so the query may return more members than the context allows.
+     *
+     * @param sqlQuery sql query under construction; must already contain the
+     *   tables of the levels' key columns
+     * @param evaluator evaluator corresponding to query
+     * @param restrictMemberTypes defines the behavior if the current context
+     *   contains calculated members. If true, thows an exception.
+     * @param levels the level and those of its ancestors whose keys are
+     *   needed to identify its members
+     */
+    public static void addSemiJoinConstraint(
+        SqlQuery sqlQuery,
+        Evaluator evaluator,
+        boolean restrictMemberTypes,
+        List<RolapCubeLevel> levels)
+    {
+        final SqlQuery subQuery = sqlQuery.cloneEmpty();
+        addContextConstraint(subQuery, null, evaluator, restrictMemberTypes);
+        final StringBuilder columns = new StringBuilder();
+        final StringBuilder nullConditions = new StringBuilder();
+        for (RolapCubeLevel level : levels) {
+            final RolapStar.Column starColumn = level.getStarKeyColumn();
+            final RolapStar.Condition joinCondition =
+                getFactJoinCondition(starColumn);
+            if (levels.size() == 1 && joinCondition != null) {
+                starColumn.getTable().getParentTable().addToFrom(
+                    subQuery, false, false);
+                subQuery.addSelect(joinCondition.getLeft(subQuery), null);
+            } else {
+                starColumn.getTable().addToFrom(subQuery, false, true);
+                subQuery.addSelect(
+                    starColumn.generateExprString(subQuery), null);
+            }
+            final String expr = level.getKeyExp().getExpression(sqlQuery);
+            if (columns.length() > 0) {
+                columns.append(", ");
+            }
+            columns.append(expr);
+            nullConditions.append(" or ").append(expr).append(" is null");
+        }
+        sqlQuery.addWhere(
+            "(" + (levels.size() == 1 ? columns : "(" + columns + ")")
+            + " in (" + subQuery.toString() + ")"
+            + nullConditions + ")");
+    }
+
+    /**
+     * Returns the condition by which the table of a column joins to the fact
+     * table, if the column is the table's join key; otherwise null. If not
+     * null, the condition's left side is the fact table's foreign key, which
+     * has the same values as the column for every fact row.
+     *
+     * @param starColumn Column
+     * @return Join condition, or null
+     */
+    private static RolapStar.Condition getFactJoinCondition(
+        RolapStar.Column starColumn)
+    {
+        final RolapStar.Table table = starColumn.getTable();
+        final RolapStar.Table parentTable = table.getParentTable();
+        if (parentTable == null
+            || parentTable != starColumn.getStar().getFactTable())
+        {
+            return null;
+        }
+        final RolapStar.Condition joinCondition = table.getJoinCondition();
+        if (!starColumn.getExpression().equals(joinCondition.getRight())) {
+            return null;
+        }
+        return joinCondition;
+    }
+
     /**
      * Creates a "WHERE parent = value" constraint.
      *
@@ -15,6 +15,7 @@ import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.*;
 import mondrian.rolap.aggmatcher.AggStar;
 import mondrian.rolap.sql.*;
+import mondrian.spi.Dialect;
 
 import java.util.*;
 
@@ -322,6 +323,98 @@ public class SqlContextConstraint
             sqlQuery, baseCube, aggStar, evaluator, (RolapCubeLevel)level);
     }
 
+    /**
+     * Returns whether the members of a level should be restricted to the
+     * current context by a semi-join with the fact table (see
+     * {@link SqlConstraintUtils#addSemiJoinConstraint}), rather than by
+     * joining the level's table to the fact table and grouping the result.
+     * If so, returns the level and those of its ancestors whose keys identify
+     * its members; otherwise returns null.
+     *
+     * <p>The semi-join finds the distinct keys in the fact table without
+     * joining each fact row to the dimension table, so it is preferred if the
+     * fact table has many rows for each member of the level: at least
+     * {@link MondrianProperties#NativeSemiJoinMinRowsPerMember}, according
+     * to the star's statistics. It is never used with an aggregate table,
+     * or if the dialect does not {@link Dialect#allowsInSubQuery() allow}
+     * it.
+     *
+     * @param sqlQuery sql query under construction
+     * @param level level whose members are to be read
+     * @param aggStar aggregate table, or null
+     * @return levels whose keys to use in the semi-join, or null
+     */
+    List<RolapCubeLevel> getSemiJoinLevels(
+        SqlQuery sqlQuery,
+        RolapLevel level,
+        AggStar aggStar)
+    {
+        final int minRowsPerMember =
+            MondrianProperties.instance().NativeSemiJoinMinRowsPerMember.get();
+        final Dialect dialect = sqlQuery.getDialect();
+        // Subclasses add constraints that need the join to the fact table.
+        if (minRowsPerMember <= 0
+            || getClass() != SqlContextConstraint.class
+            || strict
+            || aggStar != null
+            || !dialect.allowsInSubQuery()
+            || !(level instanceof RolapCubeLevel)
+            || level.isParentChild()
+            || evaluator.getCube().isVirtual()
+            || !isJoinRequired())
+        {
+            return null;
+        }
+        final List<RolapCubeLevel> levels = new ArrayList<RolapCubeLevel>();
+        for (RolapCubeLevel cubeLevel = (RolapCubeLevel) level;
+             cubeLevel != null && !cubeLevel.isAll();
+             cubeLevel = cubeLevel.getParentLevel())
+        {
+            if (cubeLevel.getStarKeyColumn() == null) {
+                return null;
+            }
+            levels.add(cubeLevel);
+            if (cubeLevel.isUnique()) {
+                break;
+            }
+        }
+        if (levels.isEmpty()
+            || levels.size() > 1 && !dialect.supportsMultiValueInExpr())
+        {
+            return null;
+        }
+
+        // Estimate the number of fact rows per member.
+        final RolapStar star = ((RolapCube) evaluator.getCube()).getStar();
+        final RolapStar.Table factTable = star.getFactTable();
+        final int factRowCount =
+            star.getStatisticsCache().getRelationCardinality(
+                factTable.getRelation(), factTable.getAlias(), -1);
+        final int memberCount =
+            Math.max(levels.get(0).getStarKeyColumn().getCardinality(), 1);
+        if (factRowCount < (long) minRowsPerMember * memberCount) {
+            return null;
+        }
+        return levels;
+    }
+
+    /**
+     * Restricts the members of a level to the current context by a
+     * semi-join with the fact table. Called instead of
+     * {@link #addLevelConstraint} and {@link #addConstraint} if
+     * {@link #getSemiJoinLevels} returns a list of levels.
+     *
+     * @param sqlQuery sql query under construction
+     * @param levels levels returned by {@link #getSemiJoinLevels}
+     */
+    void addSemiJoinConstraint(
+        SqlQuery sqlQuery,
+        List<RolapCubeLevel> levels)
+    {
+        SqlConstraintUtils.addSemiJoinConstraint(
+            sqlQuery, evaluator, strict, levels);
+    }
+
     public MemberChildrenConstraint getMemberChildrenConstraint(
         RolapMember parent)
     {
@@ -382,7 +382,14 @@ RME is this right
                     }
                     column++;
 
-                    // REVIEW jvs 20-Feb-2007:  What about caption?
+                    if (level.hasCaptionColumn()) {
+                        Object captionValue = accessors.get(column).get();
+                        if (captionValue != null) {
+                            ((RolapMemberBase) member).setCaption(
+                                captionValue.toString());
+                        }
+                        column++;
+                    }
 
                     if (!level.getOrdinalExp().equals(level.getKeyExp())) {
                         if (assignOrderKeys) {
@@ -457,6 +464,12 @@ RME is this right
             hierarchy.addToFrom(sqlQuery, exp);
             String expString = exp.getExpression(sqlQuery);
             sqlQuery.addSelectGroupBy(expString, null);
+            if (level.hasCaptionColumn()) {
+                exp = level.getCaptionExp();
+                hierarchy.addToFrom(sqlQuery, exp);
+                expString = exp.getExpression(sqlQuery);
+                sqlQuery.addSelectGroupBy(expString, null);
+            }
             exp = level.getOrdinalExp();
             hierarchy.addToFrom(sqlQuery, exp);
             expString = exp.getExpression(sqlQuery);
@@ -889,6 +902,18 @@ RME is this right
         return childLevel;
     }
 
+    /**
+     * Returns whether a constraint restricts members to those that are
+     * non-empty in the context of a virtual cube.
+     */
+    private static boolean isVirtualCubeConstraint(
+        MemberChildrenConstraint constraint)
+    {
+        return constraint instanceof SqlContextConstraint
+            && ((SqlContextConstraint) constraint).getEvaluator().getCube()
+                .isVirtual();
+    }
+
     private void getMemberChildren2(
         RolapMember parentMember,
         List<RolapMember> children,
@@ -911,6 +936,18 @@ RME is this right
             if (childLevel.isParentChild()) {
                 pair = makeChildMemberSql_PCRoot(parentMember);
                 parentChild = true;
+            } else if (isVirtualCubeConstraint(constraint)) {
+                // The members of a virtual cube may be non-empty in any of
+                // several fact tables. Read the members of the child level
+                // that belong to this parent, so that SqlTupleReader
+                // generates a UNION of one sub-select per base cube.
+                children.addAll(
+                    getMembersInLevel(
+                        childLevel,
+                        sqlConstraintFactory.getDescendantsConstraint(
+                            Collections.singletonList(parentMember),
+                            constraint)));
+                return;
             } else {
                 pair = makeChildMemberSql(parentMember, dataSource, constraint);
                 parentChild = false;
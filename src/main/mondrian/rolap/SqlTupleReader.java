@@ -680,12 +680,16 @@ public class SqlTupleReader implements TupleReader {
         // through the list of measures referenced in the query.  And then
         // we generate one sub-select per fact table, joining against each
         // underlying fact table, unioning the sub-selects.
+        //
+        // The constraint may also restrict the members to the children of
+        // some parents, by wrapping a context constraint in a
+        // DescendantsConstraint.
         RolapCube cube = null;
         boolean virtualCube = false;
-        if (constraint instanceof SqlContextConstraint) {
-            SqlContextConstraint sqlConstraint =
-                (SqlContextConstraint) constraint;
-            Query query = constraint.getEvaluator().getQuery();
+        final SqlContextConstraint sqlConstraint =
+            getContextConstraint(constraint);
+        if (sqlConstraint != null) {
+            Query query = sqlConstraint.getEvaluator().getQuery();
             cube = (RolapCube) query.getCube();
             if (sqlConstraint.isJoinRequired()) {
                 virtualCube = cube.isVirtual();
@@ -693,7 +697,8 @@ public class SqlTupleReader implements TupleReader {
         }
 
         if (virtualCube) {
-            Query query = constraint.getEvaluator().getQuery();
+            final Evaluator evaluator = sqlConstraint.getEvaluator();
+            Query query = evaluator.getQuery();
 
             // Make fact table appear in fixed sequence
 
@@ -708,7 +713,7 @@ public class SqlTupleReader implements TupleReader {
             // the fact table referenced
             int k = -1;
             // Save the original measure in the context
-            Member originalMeasure = constraint.getEvaluator().getMembers()[0];
+            Member originalMeasure = evaluator.getMembers()[0];
             String prependString = "";
             final StringBuilder selectString = new StringBuilder();
             List<SqlStatement.Type> types = null;
@@ -720,7 +725,7 @@ public class SqlTupleReader implements TupleReader {
                 // Any measure is fine since the constraint logic only uses it
                 // to find the correct fact table to join to.
                 Member measureInCurrentbaseCube = baseCube.getMeasures().get(0);
-                constraint.getEvaluator().setContext(measureInCurrentbaseCube);
+                evaluator.setContext(measureInCurrentbaseCube);
 
                 WhichSelect whichSelect =
                     (++k == fullyJoiningBaseCubes.size() - 1)
@@ -735,7 +740,7 @@ public class SqlTupleReader implements TupleReader {
             }
 
             // Restore the original measure member
-            constraint.getEvaluator().setContext(originalMeasure);
+            evaluator.setContext(originalMeasure);
             return Pair.of(selectString.toString(), types);
         } else {
             return generateSelectForLevels(
@@ -808,6 +813,11 @@ public class SqlTupleReader implements TupleReader {
         Evaluator evaluator = getEvaluator(constraint);
         AggStar aggStar = chooseAggStar(constraint, evaluator);
 
+        // If the members can be restricted to the context by a semi-join,
+        // do not join the levels' tables to the fact table.
+        final List<RolapCubeLevel> semiJoinLevels =
+            getSemiJoinLevels(sqlQuery, aggStar);
+
         // add the selects for all levels to fetch
         for (TargetBase target : targets) {
             // if we're going to be enumerating the values for this target,
@@ -818,15 +828,44 @@ public class SqlTupleReader implements TupleReader {
                     target.getLevel(),
                     baseCube,
                     whichSelect,
-                    aggStar);
+                    aggStar,
+                    semiJoinLevels == null);
             }
         }
 
-        constraint.addConstraint(sqlQuery, baseCube, aggStar);
+        if (semiJoinLevels != null) {
+            ((SqlContextConstraint) constraint).addSemiJoinConstraint(
+                sqlQuery, semiJoinLevels);
+        } else {
+            constraint.addConstraint(sqlQuery, baseCube, aggStar);
+        }
 
         return sqlQuery.toSqlAndTypes();
     }
 
+    /**
+     * Returns the levels whose keys restrict the members of the only target
+     * to the context by a semi-join, or null if the target's tables are to be
+     * joined to the fact table.
+     *
+     * @param sqlQuery sql query under construction
+     * @param aggStar aggregate table, or null
+     * @return levels for semi-join, or null
+     */
+    private List<RolapCubeLevel> getSemiJoinLevels(
+        SqlQuery sqlQuery,
+        AggStar aggStar)
+    {
+        if (!(constraint instanceof SqlContextConstraint)
+            || targets.size() != 1
+            || targets.get(0).getSrcMembers() != null)
+        {
+            return null;
+        }
+        return ((SqlContextConstraint) constraint).getSemiJoinLevels(
+            sqlQuery, targets.get(0).getLevel(), aggStar);
+    }
+
     boolean targetIsOnBaseCube(TargetBase target, RolapCube baseCube) {
         return baseCube == null || baseCube.findBaseCubeHierarchy(
             target.getLevel().getHierarchy()) != null;
@@ -922,13 +961,17 @@ public class SqlTupleReader implements TupleReader {
      *   underlying base cube for virtual cubes
      * @param whichSelect describes whether this select belongs to a larger
      * @param aggStar aggregate star if available
+     * @param joinToFact whether to join the level's tables to the fact table
+     *   (if the constraint requires it); false if the constraint is applied
+     *   by a semi-join
      */
     protected void addLevelMemberSql(
         SqlQuery sqlQuery,
         RolapLevel level,
         RolapCube baseCube,
         WhichSelect whichSelect,
-        AggStar aggStar)
+        AggStar aggStar,
+        boolean joinToFact)
     {
         RolapHierarchy hierarchy = level.getHierarchy();
 
@@ -1035,8 +1078,10 @@ public class SqlTupleReader implements TupleReader {
                 }
             }
 
-            constraint.addLevelConstraint(
-                sqlQuery, baseCube, aggStar, currLevel);
+            if (joinToFact) {
+                constraint.addLevelConstraint(
+                    sqlQuery, baseCube, aggStar, currLevel);
+            }
 
             if (levelCollapsed) {
                 // add join between key and aggstar
@@ -1123,8 +1168,22 @@ public class SqlTupleReader implements TupleReader {
      * @return evaluator for constraint
      */
     protected Evaluator getEvaluator(TupleConstraint constraint) {
+        final SqlContextConstraint scc = getContextConstraint(constraint);
+        return scc == null ? null : scc.getEvaluator();
+    }
+
+    /**
+     * Returns the context constraint that a tuple constraint is or wraps, or
+     * null.
+     *
+     * @param constraint Constraint
+     * @return Context constraint, or null
+     */
+    private static SqlContextConstraint getContextConstraint(
+        TupleConstraint constraint)
+    {
         if (constraint instanceof SqlContextConstraint) {
-            return constraint.getEvaluator();
+            return (SqlContextConstraint) constraint;
         }
         if (constraint instanceof DescendantsConstraint) {
             DescendantsConstraint descConstraint =
@@ -1132,8 +1191,7 @@ public class SqlTupleReader implements TupleReader {
             MemberChildrenConstraint mcc =
                 descConstraint.getMemberChildrenConstraint(null);
             if (mcc instanceof SqlContextConstraint) {
-                SqlContextConstraint scc = (SqlContextConstraint) mcc;
-                return scc.getEvaluator();
+                return (SqlContextConstraint) mcc;
             }
         }
         return null;
@@ -11,6 +11,7 @@
 package mondrian.rolap.agg;
 
 import mondrian.olap.Exp;
+import mondrian.olap.MondrianProperties;
 import mondrian.olap.Util;
 import mondrian.rolap.*;
 import mondrian.rolap.sql.SqlQuery;
@@ -350,6 +351,7 @@ public abstract class AbstractQuerySpec implements QuerySpec {
      */
     protected void extraPredicates(SqlQuery sqlQuery) {
         List<StarPredicate> predicateList = getPredicateList();
+        int inlineTableCount = 0;
         for (StarPredicate predicate : predicateList) {
             for (RolapStar.Column column
                 : predicate.getConstrainedColumnList())
@@ -357,6 +359,15 @@ public abstract class AbstractQuerySpec implements QuerySpec {
                 final RolapStar.Table table = column.getTable();
                 table.addToFrom(sqlQuery, false, true);
             }
+            final List<List<Object>> rows = getInlineTableRows(predicate);
+            if (rows != null && sqlQuery.getDialect().allowsFromQuery()) {
+                joinInlineTable(
+                    sqlQuery,
+                    predicate.getConstrainedColumnList(),
+                    rows,
+                    "slicer" + inlineTableCount++);
+                continue;
+            }
             StringBuilder buf = new StringBuilder();
             predicate.toSql(sqlQuery, buf);
             final String where = buf.toString();
@@ -366,6 +377,94 @@ public abstract class AbstractQuerySpec implements QuerySpec {
         }
     }
 
+    /**
+     * Joins a list of tuples to a query as an inline table, and constrains
+     * each column to equal the corresponding column of the inline table.
+     *
+     * @param sqlQuery Query
+     * @param columns Constrained columns
+     * @param rows Tuples; each has one value per column, or null if the
+     *   tuple does not constrain that column
+     * @param alias Alias of the inline table
+     */
+    private static void joinInlineTable(
+        SqlQuery sqlQuery,
+        List<RolapStar.Column> columns,
+        List<List<Object>> rows,
+        String alias)
+    {
+        final Dialect dialect = sqlQuery.getDialect();
+        final List<String> columnNames = new ArrayList<String>();
+        final List<String> columnTypes = new ArrayList<String>();
+        for (int i = 0; i < columns.size(); i++) {
+            columnNames.add("c" + i);
+            columnTypes.add(columns.get(i).getDatatype().name());
+        }
+        final boolean[] nullable = new boolean[columns.size()];
+        final List<String[]> valueList = new ArrayList<String[]>();
+        for (List<Object> row : rows) {
+            final String[] values = new String[row.size()];
+            for (int i = 0; i < values.length; i++) {
+                final Object value = row.get(i);
+                if (value == null) {
+                    nullable[i] = true;
+                } else {
+                    values[i] = String.valueOf(value);
+                }
+            }
+            valueList.add(values);
+        }
+        sqlQuery.addFromQuery(
+            dialect.generateInline(columnNames, columnTypes, valueList),
+            alias,
+            true);
+        for (int i = 0; i < columns.size(); i++) {
+            final String inlineColumn =
+                dialect.quoteIdentifier(alias, columnNames.get(i));
+            final String condition =
+                columns.get(i).generateExprString(sqlQuery)
+                + " = "
+                + inlineColumn;
+            if (nullable[i]) {
+                // Tuples of members at a higher level do not constrain
+                // this column.
+                sqlQuery.addWhere(
+                    "(" + inlineColumn + " is null or " + condition + ")");
+            } else {
+                sqlQuery.addWhere(condition);
+            }
+        }
+    }
+
+    /**
+     * Returns the tuples of a compound predicate, if the predicate is a list
+     * of tuples (see {@link StarPredicates#getValueRows(StarPredicate)}) at
+     * least as long as
+     * {@link MondrianProperties#CompoundSlicerInlineTableThreshold}, and
+     * should therefore be joined to the query as an inline table; otherwise
+     * returns null.
+     *
+     * @param predicate Compound predicate
+     * @return List of tuples, or null
+     */
+    static List<List<Object>> getInlineTableRows(StarPredicate predicate) {
+        final int threshold =
+            MondrianProperties.instance().CompoundSlicerInlineTableThreshold
+                .get();
+        if (threshold <= 0
+            || !(predicate instanceof OrPredicate
+                 || predicate instanceof ListColumnPredicate))
+        {
+            return null;
+        }
+        final List<List<Object>> rows =
+            StarPredicates.getValueRows(predicate);
+        if (rows == null || rows.size() < threshold) {
+            return null;
+        }
+        return rows;
+    }
+
     /**
      * Returns a list of predicates not associated with a particular column.
      *
@@ -13,6 +13,7 @@ package mondrian.rolap.agg;
 import mondrian.olap.Util;
 import mondrian.rolap.*;
 import mondrian.rolap.sql.SqlQuery;
+import mondrian.util.ByteString;
 
 import java.util.*;
 
@@ -193,6 +194,11 @@ public class AggregationKey
     /**
      * Returns a list of compound predicates, expressed as SQL strings.
      *
+     * <p>A predicate that is joined to the query as an inline table (see
+     * {@link AbstractQuerySpec#getInlineTableRows(StarPredicate)}) is
+     * expressed as its columns and a digest of its tuples, so that the
+     * string stays short however many members are in the slicer.
+     *
      * @param star Star
      * @param compoundPredicateList Predicate list
      * @return list of predicate strings
@@ -211,11 +217,48 @@ public class AggregationKey
             SqlQuery query =
                 new SqlQuery(
                     star.getSqlQueryDialect());
-            compoundPredicate.toSql(query, buf);
+            final List<List<Object>> rows =
+                AbstractQuerySpec.getInlineTableRows(compoundPredicate);
+            if (rows != null) {
+                toDigestString(query, compoundPredicate, rows, buf);
+            } else {
+                compoundPredicate.toSql(query, buf);
+            }
             cp.add(buf.toString());
         }
         return cp;
     }
+
+    /**
+     * Writes a compound predicate as its list of columns and a digest of its
+     * tuples; for example, "(store.store_state, store.store_city) in (3000
+     * tuples, SHA-256 4f0a...)".
+     *
+     * @param query Query
+     * @param predicate Compound predicate
+     * @param rows Tuples of the predicate
+     * @param buf Buffer to write to
+     */
+    private static void toDigestString(
+        SqlQuery query,
+        StarPredicate predicate,
+        List<List<Object>> rows,
+        StringBuilder buf)
+    {
+        buf.append("(");
+        int k = 0;
+        for (RolapStar.Column column : predicate.getConstrainedColumnList()) {
+            if (k++ > 0) {
+                buf.append(", ");
+            }
+            buf.append(column.generateExprString(query));
+        }
+        buf.append(") in (")
+            .append(rows.size())
+            .append(" tuples, SHA-256 ")
+            .append(new ByteString(Util.digestSha256(rows.toString())))
+            .append(")");
+    }
 }
 
 // End AggregationKey.java
@@ -46,6 +46,13 @@ public class AggregationManager extends RolapAggregationManager {
 
     public final SegmentCacheManager cacheMgr;
 
+    /**
+     * Cache of the values of expressions, shared between queries. Values are
+     * removed when cells in the stars they were computed from are flushed.
+     */
+    public final SharedExpResultCache sharedExpCache =
+        new SharedExpResultCache();
+
     /**
      * Creates the AggregationManager.
      */
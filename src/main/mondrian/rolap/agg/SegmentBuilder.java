@@ -629,6 +629,37 @@ public class SegmentBuilder {
             Collections.<SegmentColumn>emptyList());
     }
 
+    /**
+     * Returns an estimate of the number of bytes of heap retained by a
+     * segment body.
+     *
+     * <p>Follows the convention of {@link SegmentDataset#getBytes()}, and
+     * allows 12 bytes for each cell and for each axis value. A dense body is
+     * charged for every slot in its value array, including empty slots.
+     *
+     * @param body Segment body
+     * @return Estimated size of body, in bytes
+     */
+    public static long estimateBytes(SegmentBody body) {
+        final long cellCount;
+        if (body instanceof DenseDoubleSegmentBody
+            || body instanceof DenseIntSegmentBody
+            || body instanceof DenseObjectSegmentBody)
+        {
+            cellCount =
+                java.lang.reflect.Array.getLength(body.getValueArray());
+        } else if (body instanceof AbstractSegmentBody) {
+            cellCount = ((AbstractSegmentBody) body).getSize();
+        } else {
+            cellCount = body.getValueMap().size();
+        }
+        long bytes = cellCount * 12;
+        for (SortedSet<Comparable> axisValueSet : body.getAxisValueSets()) {
+            bytes += axisValueSet.size() * 12;
+        }
+        return bytes;
+    }
+
     private static RolapStar.Column[] getConstrainedColumns(
         RolapStar star,
         BitKey bitKey)
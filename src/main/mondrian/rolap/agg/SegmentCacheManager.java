@@ -427,6 +427,59 @@ public class SegmentCacheManager {
             new PrintCacheStateCommand(region, pw, locus));
     }
 
+    /**
+     * Makes the segments of one schema available to another schema that has
+     * the same checksum. Called when a schema has been reloaded, so that the
+     * new instance of the schema can use segments loaded by the old one.
+     *
+     * <p>Headers of loaded segments are copied from the index of each star
+     * in the old schema to the index of the star in the new schema that has
+     * the same fact table. Segment bodies are not touched; they remain in the
+     * cache, whose keys depend only on the header.
+     *
+     * <p>The indexes of the old schema's stars are kept, because the old
+     * schema continues to serve queries until the new schema replaces it in
+     * the pool; call {@link #discardIndexes} after that.
+     *
+     * @param oldSchema Old schema
+     * @param newSchema New schema
+     * @param locus Locus
+     * @return Number of segment headers carried over
+     */
+    public int carryOver(
+        RolapSchema oldSchema,
+        RolapSchema newSchema,
+        Locus locus)
+    {
+        return execute(new CarryOverCommand(oldSchema, newSchema, locus));
+    }
+
+    /**
+     * Discards the indexes of the stars of a schema. Called when a schema
+     * whose segments were {@link #carryOver carried over} to a reloaded
+     * instance has been replaced by that instance, so that segment headers
+     * are no longer registered against both.
+     *
+     * @param schema Schema that has been replaced
+     * @param locus Locus
+     */
+    public void discardIndexes(RolapSchema schema, Locus locus) {
+        execute(new DiscardIndexesCommand(schema, locus));
+    }
+
+    /**
+     * Returns an estimate of the memory retained by the segments of each
+     * star known to this cache manager.
+     *
+     * <p>Only segment bodies held in memory by the index are counted; bodies
+     * that live only in an external cache are not.</p>
+     *
+     * @return Memory usage of each star
+     */
+    public Map<RolapStar, MemoryUsageInfo> getMemoryUsage() {
+        return execute(new MemoryUsageCommand());
+    }
+
     /**
      * Shuts down this cache manager and all active threads and indexes.
      */
@@ -811,6 +864,135 @@ public class SegmentCacheManager {
         }
     }
 
+    private class MemoryUsageCommand
+        implements SegmentCacheManager.Command<Map<RolapStar, MemoryUsageInfo>>
+    {
+        public Map<RolapStar, MemoryUsageInfo> call() throws Exception {
+            // Stars are compared by identity. After a schema is reloaded,
+            // the cache can briefly hold stars of the old and new schema
+            // with the same names.
+            final Map<RolapStar, MemoryUsageInfo> map =
+                new IdentityHashMap<RolapStar, MemoryUsageInfo>();
+            for (Entry<RolapStar, SegmentCacheIndex> entry
+                : indexRegistry.indexes.entrySet())
+            {
+                final RolapStar star = entry.getKey();
+                final SegmentCacheIndex index = entry.getValue();
+                if (star == null || index == null) {
+                    // Reference has been garbage-collected.
+                    continue;
+                }
+                final List<SegmentHeader> headers = index.getLoadedHeaders();
+                long bytes = 0;
+                for (SegmentHeader header : headers) {
+                    final Future<SegmentBody> future = index.getFuture(header);
+                    if (future == null) {
+                        continue;
+                    }
+                    try {
+                        final SegmentBody body = future.get();
+                        if (body != null) {
+                            bytes += SegmentBuilder.estimateBytes(body);
+                        }
+                    } catch (ExecutionException e) {
+                        // Segment failed to load; it retains no memory.
+                    }
+                }
+                map.put(
+                    star,
+                    new MemoryUsageInfo(
+                        MemoryUsageInfo.Type.STAR,
+                        star.getSchema().getName(),
+                        star.getFactTable().getAlias(),
+                        headers.size(),
+                        bytes));
+            }
+            return map;
+        }
+
+        public Locus getLocus() {
+            return null;
+        }
+    }
+
+    private class CarryOverCommand
+        implements SegmentCacheManager.Command<Integer>
+    {
+        private final RolapSchema oldSchema;
+        private final RolapSchema newSchema;
+        private final Locus locus;
+
+        public CarryOverCommand(
+            RolapSchema oldSchema,
+            RolapSchema newSchema,
+            Locus locus)
+        {
+            this.oldSchema = oldSchema;
+            this.newSchema = newSchema;
+            this.locus = locus;
+        }
+
+        public Integer call() {
+            if (!Util.equals(oldSchema.getChecksum(), newSchema.getChecksum()))
+            {
+                return 0;
+            }
+            final Map<String, RolapStar> newStarMap =
+                new HashMap<String, RolapStar>();
+            for (RolapStar star
+                : new ArrayList<RolapStar>(newSchema.getStars()))
+            {
+                newStarMap.put(star.getFactTable().getAlias(), star);
+            }
+            int count = 0;
+            for (RolapStar oldStar
+                : new ArrayList<RolapStar>(oldSchema.getStars()))
+            {
+                final SegmentCacheIndex oldIndex =
+                    indexRegistry.indexes.get(oldStar);
+                final RolapStar newStar =
+                    newStarMap.get(oldStar.getFactTable().getAlias());
+                if (oldIndex == null || newStar == null) {
+                    continue;
+                }
+                final SegmentCacheIndex newIndex =
+                    indexRegistry.getIndex(newStar);
+                for (SegmentHeader header : oldIndex.getLoadedHeaders()) {
+                    newIndex.add(header, false, null);
+                    ++count;
+                }
+            }
+            return count;
+        }
+
+        public Locus getLocus() {
+            return locus;
+        }
+    }
+
+    private class DiscardIndexesCommand
+        implements SegmentCacheManager.Command<Void>
+    {
+        private final RolapSchema schema;
+        private final Locus locus;
+
+        public DiscardIndexesCommand(RolapSchema schema, Locus locus) {
+            this.schema = schema;
+            this.locus = locus;
+        }
+
+        public Void call() {
+            for (RolapStar star : new ArrayList<RolapStar>(schema.getStars())) {
+                indexRegistry.indexes.remove(star);
+            }
+            return null;
+        }
+
+        public Locus getLocus() {
+            return locus;
+        }
+    }
+
     /**
      * Result of a {@link FlushCommand}. Contains a list of tasks that must
      * be executed by the caller (or by an executor) to flush segments from the
@@ -52,6 +52,13 @@ public class SegmentWithData extends Segment {
      */
     private final SegmentDataset data;
 
+    /**
+     * Bitmap of the cells whose value is not null; computed on first use.
+     *
+     * @see #getNonNullBitmap()
+     */
+    private volatile BitSet nonNullBitmap;
+
     /**
      * Creates a SegmentWithData from an existing Segment.
      *
@@ -199,6 +206,198 @@ public class SegmentWithData extends Segment {
         return !isExcluded(keys);
     }
 
+    /**
+     * Returns whether this segment would contain, when it finishes loading,
+     * every cell whose key is, for each column, one of a given collection of
+     * values.
+     *
+     * <p>Returns false if the segment has excluded regions, even if they do
+     * not overlap the given cells.
+     *
+     * @param valueSets Values of each column, in the order of the columns of
+     *   this segment
+     * @return Whether this segment would contain all such cells
+     */
+    public boolean wouldContainAll(List<? extends Collection<?>> valueSets) {
+        assert valueSets.size() == axes.length;
+        if (!excludedRegions.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < axes.length; i++) {
+            for (Object value : valueSets.get(i)) {
+                if (!axes[i].wouldContain(value)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the key of each cell of this segment whose value is not null.
+     * Each key is an array of column values, in the order of the columns of
+     * this segment.
+     *
+     * @return Keys of non-null cells
+     */
+    public List<Object[]> getNonNullKeys() {
+        final List<Object[]> keyList = new ArrayList<Object[]>();
+        for (Map.Entry<CellKey, Object> entry : data) {
+            final Object value = entry.getValue();
+            if (value == null || value == Util.nullValue) {
+                continue;
+            }
+            final CellKey cellKey = entry.getKey();
+            final Object[] keys = new Object[axes.length];
+            for (int i = 0; i < axes.length; i++) {
+                keys[i] = axes[i].getKeys()[cellKey.getAxis(i)];
+            }
+            if (!isExcluded(keys)) {
+                keyList.add(keys);
+            }
+        }
+        return keyList;
+    }
+
+    /**
+     * Returns a bitmap with a bit set for each cell of this segment whose
+     * value is not null. The bit of a cell is its ordinal when cells are
+     * numbered with the last axis varying fastest.
+     *
+     * <p>The bitmap is computed on first use. It is derived from the null
+     * indicators of a dense dataset, or the keys of a sparse one, and is much
+     * smaller than either, so that testing whether many cells are empty does
+     * not require looking up each cell. Returns null if the segment has too
+     * many cells to number them with an {@code int}.
+     *
+     * @return Bitmap of non-null cells, or null
+     */
+    public BitSet getNonNullBitmap() {
+        BitSet bitmap = nonNullBitmap;
+        if (bitmap == null) {
+            long cellCount = 1;
+            for (SegmentAxis axis : axes) {
+                cellCount *= axis.getKeys().length;
+            }
+            if (cellCount > Integer.MAX_VALUE) {
+                return null;
+            }
+            bitmap = new BitSet();
+            for (Map.Entry<CellKey, Object> entry : data) {
+                final Object value = entry.getValue();
+                if (value != null && value != Util.nullValue) {
+                    bitmap.set(getOrdinal(entry.getKey()));
+                }
+            }
+            // Benign race: two threads may compute the same bitmap.
+            nonNullBitmap = bitmap;
+        }
+        return bitmap;
+    }
+
+    private int getOrdinal(CellKey cellKey) {
+        int ordinal = 0;
+        for (int i = 0; i < axes.length; i++) {
+            ordinal = ordinal * axes[i].getKeys().length + cellKey.getAxis(i);
+        }
+        return ordinal;
+    }
+
+    /**
+     * Returns which of a list of cells have a value that is not null. Each
+     * cell is identified by an array of column values, in the order of the
+     * columns of this segment.
+     *
+     * <p>Returns null if any of the cells is not in this segment, because a
+     * column value does not pass the axis criteria, or the cell is in an
+     * excluded region.
+     *
+     * @param keyList Keys of cells
+     * @return Bitmap with bit {@code i} set if the {@code i}th cell is not
+     *   empty, or null
+     */
+    public BitSet getNonEmpty(List<Object[]> keyList) {
+        final BitSet bitmap = getNonNullBitmap();
+        final BitSet nonEmpty = new BitSet(keyList.size());
+        final CellKey cellKey = CellKey.Generator.newCellKey(axes.length);
+        int i = -1;
+        keys:
+        for (Object[] keys : keyList) {
+            ++i;
+            assert keys.length == axes.length;
+            if (isExcluded(keys)) {
+                return null;
+            }
+            for (int j = 0; j < axes.length; j++) {
+                final int offset = axes[j].getOffset((Comparable) keys[j]);
+                if (offset < 0) {
+                    if (axes[j].wouldContain(keys[j])) {
+                        // The segment would contain the cell, but the value
+                        // has no facts, so the cell is empty.
+                        continue keys;
+                    }
+                    return null;
+                }
+                cellKey.setAxis(j, offset);
+            }
+            if (bitmap != null) {
+                if (bitmap.get(getOrdinal(cellKey))) {
+                    nonEmpty.set(i);
+                }
+            } else {
+                final Object value = data.getObject(cellKey);
+                if (value != null && value != Util.nullValue) {
+                    nonEmpty.set(i);
+                }
+            }
+        }
+        return nonEmpty;
+    }
+
+    /**
+     * Reads the values of a list of cells. Each cell is identified by an
+     * array of column values, in the order of the columns of this segment,
+     * as for {@link #getCellValue(Object[])}.
+     *
+     * <p>Returns false if any of the cells is not in this segment, because a
+     * column value does not pass the axis criteria, or the cell is in an
+     * excluded region; the contents of {@code values} are then undefined.
+     *
+     * @param keyList Keys of cells
+     * @param values Array into which to write the value of each cell, or
+     *   {@link Util#nullValue} if the cell is empty; must have at least as
+     *   many elements as the list of keys
+     * @return Whether all of the cells are in this segment
+     */
+    public boolean getCellValues(List<Object[]> keyList, Object[] values) {
+        final CellKey cellKey = CellKey.Generator.newCellKey(axes.length);
+        int i = -1;
+        keys:
+        for (Object[] keys : keyList) {
+            ++i;
+            assert keys.length == axes.length;
+            if (isExcluded(keys)) {
+                return false;
+            }
+            for (int j = 0; j < axes.length; j++) {
+                final int offset = axes[j].getOffset((Comparable) keys[j]);
+                if (offset < 0) {
+                    if (axes[j].wouldContain(keys[j])) {
+                        // The segment would contain the cell, but the value
+                        // has no facts, so the cell is empty.
+                        values[i] = Util.nullValue;
+                        continue keys;
+                    }
+                    return false;
+                }
+                cellKey.setAxis(j, offset);
+            }
+            final Object value = data.getObject(cellKey);
+            values[i] = value == null ? Util.nullValue : value;
+        }
+        return true;
+    }
+
     /**
      * Returns the number of cells in this Segment, deducting cells in
      * excluded regions.
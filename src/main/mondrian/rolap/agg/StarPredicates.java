@@ -4,12 +4,14 @@
 // http://www.eclipse.org/legal/epl-v10.html.
 // You must accept the terms of that agreement to use this software.
 //
-// Copyright (C) 2011-2011 Pentaho
+// Copyright (C) 2011-2012 Pentaho
 // All Rights Reserved.
 */
 package mondrian.rolap.agg;
 
-import mondrian.rolap.StarColumnPredicate;
+import mondrian.rolap.*;
+
+import java.util.*;
 
 /**
  * Utilities for {@link mondrian.rolap.StarPredicate}s and
@@ -41,6 +43,167 @@ public class StarPredicates {
         }
         return predicate;
     }
+
+    /**
+     * Returns the distinct tuples of values that a predicate accepts, if it
+     * is a disjunction of tuples of values; otherwise returns null.
+     *
+     * <p>Values in each tuple are in the same order as
+     * {@link StarPredicate#getConstrainedColumnList()}. A compound slicer
+     * whose members are at different depths gives a disjunction of groups
+     * of tuples, each group constraining a different set of columns; a
+     * column that a tuple does not constrain has value null. For example,
+     * <code>(country = 'USA' and state = 'CA') or (country = 'USA' and
+     * state = 'OR') or country = 'Mexico'</code> returns <code>[[USA, CA],
+     * [USA, OR], [Mexico, null]]</code>, and <code>state in ('CA',
+     * 'OR')</code> returns <code>[[CA], [OR]]</code>.
+     *
+     * <p>Returns null if any value is null, or if two tuples might both
+     * match the same row, for instance <code>[USA, null]</code> and
+     * <code>[USA, CA]</code>.
+     *
+     * @param predicate Predicate
+     * @return List of tuples, or null
+     */
+    public static List<List<Object>> getValueRows(StarPredicate predicate) {
+        final List<RolapStar.Column> columns =
+            predicate.getConstrainedColumnList();
+        final Map<Integer, Integer> ordinalMap =
+            new HashMap<Integer, Integer>();
+        for (int i = 0; i < columns.size(); i++) {
+            ordinalMap.put(columns.get(i).getBitPosition(), i);
+        }
+        final Set<List<Object>> rows = new LinkedHashSet<List<Object>>();
+        if (!addValueRows(predicate, ordinalMap, rows)
+            || overlap(rows, columns.size()))
+        {
+            return null;
+        }
+        return new ArrayList<List<Object>>(rows);
+    }
+
+    /**
+     * Adds the tuples of values that a predicate accepts to a set; returns
+     * false if the predicate is not a disjunction of tuples of values.
+     */
+    private static boolean addValueRows(
+        StarPredicate predicate,
+        Map<Integer, Integer> ordinalMap,
+        Set<List<Object>> rows)
+    {
+        if (predicate instanceof OrPredicate) {
+            for (StarPredicate child : ((OrPredicate) predicate).getChildren())
+            {
+                if (!addValueRows(child, ordinalMap, rows)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (predicate instanceof ListColumnPredicate) {
+            for (StarColumnPredicate child
+                : ((ListColumnPredicate) predicate).getPredicates())
+            {
+                if (!addValueRows(child, ordinalMap, rows)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        final List<StarPredicate> valuePredicates;
+        if (predicate instanceof ValueColumnPredicate) {
+            valuePredicates = Collections.singletonList(predicate);
+        } else if (predicate instanceof AndPredicate) {
+            valuePredicates = ((AndPredicate) predicate).getChildren();
+        } else {
+            return false;
+        }
+        final Object[] row = new Object[ordinalMap.size()];
+        for (StarPredicate valuePredicate : valuePredicates) {
+            if (!(valuePredicate instanceof ValueColumnPredicate)) {
+                return false;
+            }
+            final ValueColumnPredicate columnPredicate =
+                (ValueColumnPredicate) valuePredicate;
+            final Integer ordinal =
+                ordinalMap.get(
+                    columnPredicate.getConstrainedColumn().getBitPosition());
+            final Object value = columnPredicate.getValue();
+            if (ordinal == null
+                || row[ordinal] != null
+                || value == null
+                || value == RolapUtil.sqlNullValue)
+            {
+                return false;
+            }
+            row[ordinal] = value;
+        }
+        rows.add(Arrays.asList(row));
+        return true;
+    }
+
+    /**
+     * Returns whether two distinct tuples in a list might both match the
+     * same row.
+     *
+     * <p>Tuples that constrain the same columns cannot. Two tuples that
+     * constrain different sets of columns can if they have the same values
+     * in the columns that both constrain.
+     */
+    private static boolean overlap(
+        Collection<List<Object>> rows,
+        int columnCount)
+    {
+        // Group the tuples by the columns they constrain.
+        final Map<List<Integer>, List<List<Object>>> groups =
+            new LinkedHashMap<List<Integer>, List<List<Object>>>();
+        for (List<Object> row : rows) {
+            final List<Integer> ordinals = new ArrayList<Integer>();
+            for (int i = 0; i < columnCount; i++) {
+                if (row.get(i) != null) {
+                    ordinals.add(i);
+                }
+            }
+            List<List<Object>> group = groups.get(ordinals);
+            if (group == null) {
+                group = new ArrayList<List<Object>>();
+                groups.put(ordinals, group);
+            }
+            group.add(row);
+        }
+        final List<Map.Entry<List<Integer>, List<List<Object>>>> entries =
+            new ArrayList<Map.Entry<List<Integer>, List<List<Object>>>>(
+                groups.entrySet());
+        for (int i = 0; i < entries.size(); i++) {
+            for (int j = i + 1; j < entries.size(); j++) {
+                final List<Integer> common =
+                    new ArrayList<Integer>(entries.get(i).getKey());
+                common.retainAll(entries.get(j).getKey());
+                final Set<List<Object>> projections =
+                    new HashSet<List<Object>>();
+                for (List<Object> row : entries.get(i).getValue()) {
+                    projections.add(project(row, common));
+                }
+                for (List<Object> row : entries.get(j).getValue()) {
+                    if (projections.contains(project(row, common))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static List<Object> project(
+        List<Object> row,
+        List<Integer> ordinals)
+    {
+        final List<Object> values = new ArrayList<Object>(ordinals.size());
+        for (Integer ordinal : ordinals) {
+            values.add(row.get(ordinal));
+        }
+        return values;
+    }
 }
 
 // End StarPredicates.java
@@ -65,7 +65,8 @@ public class AggTableManager {
      * associated RolapSchema object.
      */
     public void finalCleanUp() {
-        removeJdbcSchema();
+        // The JdbcSchema is shared with other schemas and with the schema
+        // that replaces this one, so it is kept.
         deregisterTriggers(MondrianProperties.instance());
 
         if (getLogger().isDebugEnabled()) {
@@ -139,7 +140,7 @@ public class AggTableManager {
     private void reLoadRolapStarAggregates() {
         if (MondrianProperties.instance().ReadAggregates.get()) {
             try {
-                clearJdbcSchema();
+                markJdbcSchemaStale();
                 loadRolapStarAggregates();
                 printResults();
             } catch (SQLException ex) {
@@ -157,19 +158,17 @@ public class AggTableManager {
     }
 
     /**
-     * Clear the possibly already loaded snapshot of what is in the database.
-     */
-    private void clearJdbcSchema() {
-        DataSource dataSource = schema.getInternalConnection().getDataSource();
-        JdbcSchema.clearDB(dataSource);
-    }
-
-    /**
-     * Remove the possibly already loaded snapshot of what is in the database.
+     * Marks the possibly already loaded snapshot of what is in the database
+     * as stale.
+     *
+     * <p>The snapshot is shared by all schemas that use the same DataSource,
+     * so we do not discard it. Instead, the next schema to load aggregates
+     * from it will re-read the list of tables, and the columns of the tables
+     * it needs.
      */
-    private void removeJdbcSchema() {
+    private void markJdbcSchemaStale() {
         DataSource dataSource = schema.getInternalConnection().getDataSource();
-        JdbcSchema.removeDB(dataSource);
+        JdbcSchema.markDBStale(dataSource);
     }
 
 
@@ -200,6 +199,13 @@ public class AggTableManager {
                 // loads tables, not their columns
                 db.load();
 
+                // Load the columns of the fact tables and candidate aggregate
+                // tables in parallel. The matching below runs in a single
+                // thread, so the outcome does not depend on thread timing.
+                db.loadColumns(
+                    getCandidateTables(db, rules),
+                    MondrianProperties.instance().SchemaLoadThreads.get());
+
                 loop:
                 for (RolapStar star : getStars()) {
                     // This removes any AggStars from any previous invocation of
@@ -319,6 +325,45 @@ public class AggTableManager {
         }
     }
 
+    /**
+     * Returns the tables whose columns will be needed to recognize aggregate
+     * tables: the fact table of each star, and each table that matches an
+     * explicit or default aggregate rule for that star. The list is in a
+     * deterministic order and contains no duplicates.
+     *
+     * @param db Database
+     * @param rules Default rules
+     * @return Tables whose columns are needed
+     */
+    private List<JdbcSchema.Table> getCandidateTables(
+        JdbcSchema db,
+        DefaultRules rules)
+    {
+        final Set<JdbcSchema.Table> tableSet =
+            new LinkedHashSet<JdbcSchema.Table>();
+        for (RolapStar star : getStars()) {
+            String factTableName = star.getFactTable().getAlias();
+            JdbcSchema.Table dbFactTable = db.getTable(factTableName);
+            if (dbFactTable == null) {
+                continue;
+            }
+            tableSet.add(dbFactTable);
+            List<ExplicitRules.Group> aggGroups = getAggGroups(star);
+            for (JdbcSchema.Table dbTable : db.getTables()) {
+                String name = dbTable.getName();
+                if (ExplicitRules.excludeTable(name, aggGroups)) {
+                    continue;
+                }
+                if (ExplicitRules.getIncludeByTableDef(name, aggGroups) != null
+                    || rules.matchesTableName(factTableName, name))
+                {
+                    tableSet.add(dbTable);
+                }
+            }
+        }
+        return new ArrayList<JdbcSchema.Table>(tableSet);
+    }
+
     private boolean runTrigger() {
         if (RolapSchema.cacheContains(schema)) {
             return true;
@@ -12,6 +12,7 @@ package mondrian.rolap.aggmatcher;
 
 import mondrian.olap.MondrianDef;
 import mondrian.olap.MondrianProperties;
+import mondrian.olap.Util;
 import mondrian.resource.MondrianResource;
 import mondrian.rolap.RolapAggregator;
 import mondrian.rolap.RolapLevel;
@@ -27,6 +28,7 @@ import java.io.StringWriter;
 import java.lang.ref.SoftReference;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
 import javax.sql.DataSource;
 
 /**
@@ -68,8 +70,12 @@ public class JdbcSchema {
         void removeDB(JdbcSchema db);
     }
 
-    private static final Map<DataSource, SoftReference<JdbcSchema>> dbMap =
-        new HashMap<DataSource, SoftReference<JdbcSchema>>();
+    /**
+     * Cached metadata, keyed by DataSource, catalog name and schema name;
+     * see {@link #makeKey(javax.sql.DataSource, String, String)}.
+     */
+    private static final Map<List<Object>, SoftReference<JdbcSchema>> dbMap =
+        new HashMap<List<Object>, SoftReference<JdbcSchema>>();
 
     /**
      * How often between sweeping through the dbMap looking for nulls.
@@ -116,22 +122,46 @@ public class JdbcSchema {
 
     /**
      * Creates or retrieves an instance of the JdbcSchema for the given
-     * DataSource.
+     * DataSource, covering all of its catalogs and schemas.
      *
      * @param dataSource DataSource
      * @return instance of the JdbcSchema for the given DataSource
      */
-    public static synchronized JdbcSchema makeDB(DataSource dataSource) {
+    public static JdbcSchema makeDB(DataSource dataSource) {
+        return makeDB(dataSource, null, null);
+    }
+
+    /**
+     * Creates or retrieves an instance of the JdbcSchema for the given
+     * DataSource, catalog and schema.
+     *
+     * <p>The instance, and the metadata that it has loaded, is shared by
+     * every RolapSchema that uses the same DataSource, catalog and schema,
+     * and is kept when those schemas are reloaded.
+     *
+     * @param dataSource DataSource
+     * @param catalog Catalog name, or null for all catalogs
+     * @param schema Schema name, or null for all schemas
+     * @return instance of the JdbcSchema
+     */
+    public static synchronized JdbcSchema makeDB(
+        DataSource dataSource,
+        String catalog,
+        String schema)
+    {
         makeFactory();
 
+        final List<Object> key = makeKey(dataSource, catalog, schema);
         JdbcSchema db = null;
-        SoftReference<JdbcSchema> ref = dbMap.get(dataSource);
+        SoftReference<JdbcSchema> ref = dbMap.get(key);
         if (ref != null) {
             db = ref.get();
         }
         if (db == null) {
             db = factory.makeDB(dataSource);
-            dbMap.put(dataSource, new SoftReference<JdbcSchema>(db));
+            db.setCatalogName(catalog);
+            db.setSchemaName(schema);
+            dbMap.put(key, new SoftReference<JdbcSchema>(db));
         }
 
         sweepDB();
@@ -139,42 +169,83 @@ public class JdbcSchema {
         return db;
     }
 
+    private static List<Object> makeKey(
+        DataSource dataSource,
+        String catalog,
+        String schema)
+    {
+        return Arrays.<Object>asList(dataSource, catalog, schema);
+    }
+
+    /**
+     * Returns the JdbcSchema instances of every catalog and schema of a
+     * DataSource, and removes the entries whose instances have been garbage
+     * collected.
+     */
+    private static List<JdbcSchema> getDBs(DataSource dataSource) {
+        final List<JdbcSchema> dbs = new ArrayList<JdbcSchema>();
+        final Iterator<Map.Entry<List<Object>, SoftReference<JdbcSchema>>>
+            iterator = dbMap.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<List<Object>, SoftReference<JdbcSchema>> entry =
+                iterator.next();
+            if (!dataSource.equals(entry.getKey().get(0))) {
+                continue;
+            }
+            final JdbcSchema db = entry.getValue().get();
+            if (db == null) {
+                iterator.remove();
+            } else {
+                dbs.add(db);
+            }
+        }
+        return dbs;
+    }
+
     /**
-     * Clears information in a JdbcSchema associated with a DataSource.
+     * Clears information in the JdbcSchema instances associated with a
+     * DataSource.
      *
      * @param dataSource DataSource
      */
     public static synchronized void clearDB(DataSource dataSource) {
         makeFactory();
 
-        SoftReference<JdbcSchema> ref = dbMap.get(dataSource);
-        if (ref != null) {
-            JdbcSchema db = ref.get();
-            if (db != null) {
-                factory.clearDB(db);
-                db.clear();
-            } else {
-                dbMap.remove(dataSource);
-            }
+        for (JdbcSchema db : getDBs(dataSource)) {
+            factory.clearDB(db);
+            db.clear();
         }
         sweepDB();
     }
 
     /**
-     * Removes a JdbcSchema associated with a DataSource.
+     * Marks the JdbcSchema instances associated with a DataSource as stale.
+     * The next call to {@link #load()} will re-read the list of tables; see
+     * {@link #refresh()}.
+     *
+     * @param dataSource DataSource
+     */
+    public static synchronized void markDBStale(DataSource dataSource) {
+        for (JdbcSchema db : getDBs(dataSource)) {
+            db.markStale();
+        }
+        sweepDB();
+    }
+
+    /**
+     * Removes the JdbcSchema instances associated with a DataSource.
      *
      * @param dataSource DataSource
      */
     public static synchronized void removeDB(DataSource dataSource) {
         makeFactory();
 
-        SoftReference<JdbcSchema> ref = dbMap.remove(dataSource);
-        if (ref != null) {
-            JdbcSchema db = ref.get();
-            if (db != null) {
-                factory.removeDB(db);
-                db.remove();
-            }
+        final List<JdbcSchema> dbs = getDBs(dataSource);
+        for (JdbcSchema db : dbs) {
+            dbMap.remove(
+                makeKey(dataSource, db.getCatalogName(), db.getSchemaName()));
+            factory.removeDB(db);
+            db.remove();
         }
         sweepDB();
     }
@@ -828,7 +899,17 @@ public class JdbcSchema {
             this.tableType = tableType;
         }
 
-        public void load() throws SQLException {
+        /**
+         * Loads the columns of this table, if they have not been loaded
+         * already.
+         *
+         * <p>Synchronized, so that several threads can load the columns of
+         * different tables concurrently; see
+         * {@link JdbcSchema#loadColumns(java.util.Collection, int)}.
+         *
+         * @throws SQLException on error
+         */
+        public synchronized void load() throws SQLException {
             loadColumns();
         }
 
@@ -1069,6 +1150,7 @@ public class JdbcSchema {
             }
             return columnMap;
         }
+
     }
 
     private DataSource dataSource;
@@ -1076,6 +1158,12 @@ public class JdbcSchema {
     private String catalog;
     private boolean allTablesLoaded;
 
+    /**
+     * Whether the list of tables may be out of date. If set, the next call to
+     * {@link #load()} re-reads the list of tables.
+     */
+    private boolean stale;
+
     /**
      * Tables by name. We use a sorted map so {@link #getTables()}'s output
      * is in deterministic order.
@@ -1090,17 +1178,54 @@ public class JdbcSchema {
     /**
      * This forces the tables to be loaded.
      *
+     * <p>If the tables have already been loaded, does nothing, unless this
+     * schema has been marked stale, in which case it re-reads the list of
+     * tables incrementally.
+     *
      * @throws SQLException
      */
-    public void load() throws SQLException {
+    public synchronized void load() throws SQLException {
+        if (stale) {
+            refresh();
+        } else {
+            loadTables();
+        }
+    }
+
+    /**
+     * Marks this schema as stale. The next call to {@link #load()} will
+     * re-read the list of tables.
+     */
+    public synchronized void markStale() {
+        stale = true;
+    }
+
+    /**
+     * Re-reads the list of tables from the database.
+     *
+     * <p>Column metadata is discarded too, because it cannot be checked
+     * without reading it again. As usual, the columns of a table are read
+     * only when they are needed, that is, for the fact tables and candidate
+     * aggregate tables of the schemas that load aggregates next.
+     *
+     * @throws SQLException on error
+     */
+    public synchronized void refresh() throws SQLException {
+        tables.clear();
+        allTablesLoaded = false;
+        stale = false;
         loadTables();
+        if (getLogger().isDebugEnabled()) {
+            getLogger().debug(
+                "JdbcSchema.refresh: " + tables.size() + " tables");
+        }
     }
 
     protected synchronized void clear() {
-        // keep the DataSource, clear/reset everything else
+        // keep the DataSource, catalog and schema, which identify this
+        // instance; clear/reset everything else
         allTablesLoaded = false;
-        schema = null;
-        catalog = null;
+        stale = false;
         tables.clear();
     }
 
@@ -1286,7 +1411,76 @@ public class JdbcSchema {
         return tables;
     }
 
+    /**
+     * Loads the columns of a collection of tables, using up to a given
+     * number of threads. Each thread reads JDBC metadata using its own
+     * connection. Returns when the columns of all tables have been loaded.
+     *
+     * <p>The result is the same as calling {@link Table#load()} on each table
+     * in turn; only the elapsed time differs.
+     *
+     * @param tableList Tables whose columns to load
+     * @param threadCount Maximum number of threads
+     * @throws SQLException if any table's columns could not be loaded
+     */
+    public void loadColumns(
+        Collection<Table> tableList,
+        int threadCount)
+        throws SQLException
+    {
+        if (threadCount <= 1 || tableList.size() <= 1) {
+            for (Table table : tableList) {
+                table.load();
+            }
+            return;
+        }
+        final ExecutorService executor =
+            Util.getExecutorService(
+                Math.min(threadCount, tableList.size()),
+                "mondrian.rolap.aggmatcher.JdbcSchema$columnLoader");
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (final Table table : tableList) {
+                futures.add(
+                    executor.submit(
+                        new Callable<Void>() {
+                            public Void call() throws SQLException {
+                                table.load();
+                                return null;
+                            }
+                        }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    for (Future<Void> future2 : futures) {
+                        future2.cancel(false);
+                    }
+                    Thread.currentThread().interrupt();
+                    throw Util.newError(
+                        e, "while loading JDBC metadata of tables");
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof SQLException) {
+                        throw (SQLException) e.getCause();
+                    }
+                    throw Util.newError(
+                        e.getCause(), "while loading JDBC metadata of tables");
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     public static synchronized void clearAllDBs() {
+        for (SoftReference<JdbcSchema> ref : dbMap.values()) {
+            JdbcSchema db = ref.get();
+            if (db != null) {
+                db.clear();
+            }
+        }
+        dbMap.clear();
         factory = null;
         makeFactory();
     }
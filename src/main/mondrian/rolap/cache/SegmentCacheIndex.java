@@ -174,6 +174,14 @@ public interface SegmentCacheIndex {
      */
     Future<SegmentBody> getFuture(SegmentHeader header);
 
+    /**
+     * Returns the headers of all segments in this index that have finished
+     * loading. Headers of segments that are still loading are not included.
+     *
+     * @return List of headers of loaded segments
+     */
+    List<SegmentHeader> getLoadedHeaders();
+
     /**
      * Returns a converter that can convert the given header to internal
      * format.
@@ -405,6 +405,19 @@ public class SegmentCacheIndexImpl implements SegmentCacheIndex {
         return headerMap.get(header).slot;
     }
 
+    public List<SegmentHeader> getLoadedHeaders() {
+        checkThread();
+
+        final List<SegmentHeader> list = new ArrayList<SegmentHeader>();
+        for (Entry<SegmentHeader, HeaderInfo> entry : headerMap.entrySet()) {
+            final SlotFuture<SegmentBody> slot = entry.getValue().slot;
+            if (slot == null || slot.isDone()) {
+                list.add(entry.getKey());
+            }
+        }
+        return list;
+    }
+
     public SegmentBuilder.SegmentConverter getConverter(
         String schemaName,
         ByteString schemaChecksum,
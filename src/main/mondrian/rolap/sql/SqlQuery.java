@@ -119,6 +119,22 @@ public class SqlQuery {
     private final Map<String, String> columnAliases =
         new HashMap<String, String>();
 
+    /** Alias of each item in the select list, in order. */
+    private final List<String> selectAliases = new ArrayList<String>();
+
+    /**
+     * Expressions that partition the rows, if the number of rows in each
+     * partition is limited; see {@link #setPartitionLimit}.
+     */
+    private List<String> partitionExprs;
+    private List<String> partitionOrderItems;
+    private int partitionLimit;
+
+    /** Number of rows to skip, and maximum number of rows to return (or
+     * -1); see {@link #setLimitOffset}. */
+    private int offset;
+    private int limit = -1;
+
     private static final String INDENT = "    ";
 
     /**
@@ -526,6 +542,7 @@ public class SqlQuery {
         select.add(buf.toString());
         addType(type);
         columnAliases.put(expression, alias);
+        selectAliases.add(alias);
         return alias;
     }
 
@@ -643,8 +660,38 @@ public class SqlQuery {
      * @param prefix Prefix for each line
      */
     public void toBuffer(StringBuilder buf, String prefix) {
+        if (partitionExprs != null) {
+            partitionLimitToBuffer(buf, prefix);
+            return;
+        }
+        selectToBuffer(buf, prefix, null);
+        orderBy.toBuffer(
+            buf, generateFormattedSql, prefix, " order by ", ", ", "", "");
+        if (offset > 0 || limit >= 0) {
+            buf.append(" ")
+                .append(dialect.generateLimitOffset(offset, limit));
+        }
+    }
+
+    /**
+     * Writes the SELECT, FROM, WHERE, GROUP BY and HAVING clauses of this
+     * SqlQuery to a StringBuilder.
+     *
+     * @param buf String builder
+     * @param prefix Prefix for each line
+     * @param extraItem Item to add to the end of the select list, or null
+     */
+    private void selectToBuffer(
+        StringBuilder buf,
+        String prefix,
+        String extraItem)
+    {
         final String first = distinct ? "select distinct " : "select ";
         select.toBuffer(buf, generateFormattedSql, prefix, first, ", ", "", "");
+        if (extraItem != null) {
+            buf.append(ClauseList.foo(generateFormattedSql, prefix, ", "))
+                .append(extraItem);
+        }
         groupingFunctionsToBuffer(buf, prefix);
         from.toBuffer(
             buf, generateFormattedSql, prefix, " from ", ", ", "", "");
@@ -665,10 +712,115 @@ public class SqlQuery {
         }
         having.toBuffer(
             buf, generateFormattedSql, prefix, " having ", " and ", "", "");
-        orderBy.toBuffer(
+    }
+
+    /**
+     * Writes this SqlQuery, wrapped in a query that returns the first rows of
+     * each partition, to a StringBuilder. For example,
+     *
+     * <blockquote><pre>select "c0", "c1", "c2"
+     * from (select ..., row_number() over (
+     *         partition by "state", "city" order by sum("sales") desc)
+     *       as "rn" from ... group by ...) as "w"
+     * where "rn" &lt;= 5
+     * order by "c0", "c1", "rn"</pre></blockquote>
+     *
+     * @param buf String builder
+     * @param prefix Prefix for each line
+     */
+    private void partitionLimitToBuffer(StringBuilder buf, String prefix) {
+        final String rowNumberAlias = dialect.quoteIdentifier("rn");
+        final List<String> orderItems =
+            new ArrayList<String>(partitionOrderItems);
+        orderItems.addAll(orderBy);
+        final StringBuilder rowNumber =
+            new StringBuilder(
+                dialect.generateRowNumber(partitionExprs, orderItems));
+        rowNumber.append(" as ").append(rowNumberAlias);
+
+        final ClauseList columns = new ClauseList(true);
+        for (String alias : selectAliases) {
+            columns.add(dialect.quoteIdentifier(alias));
+        }
+        columns.toBuffer(
+            buf, generateFormattedSql, prefix, "select ", ", ", "", "");
+        buf.append(" from (");
+        selectToBuffer(buf, prefix + INDENT, rowNumber.toString());
+        buf.append(") ");
+        if (dialect.allowsAs()) {
+            buf.append("as ");
+        }
+        dialect.quoteIdentifier("w", buf);
+        buf.append(ClauseList.foo(generateFormattedSql, prefix, " where "))
+            .append(rowNumberAlias)
+            .append(" <= ")
+            .append(partitionLimit);
+
+        final ClauseList outerOrderBy = new ClauseList(false);
+        for (String expr : partitionExprs) {
+            outerOrderBy.add(
+                dialect.generateOrderItem(
+                    dialect.quoteIdentifier(columnAliases.get(expr)),
+                    true, true, true));
+        }
+        outerOrderBy.add(rowNumberAlias);
+        outerOrderBy.toBuffer(
             buf, generateFormattedSql, prefix, " order by ", ", ", "", "");
     }
 
+    /**
+     * Skips a number of rows and limits the number of rows that this query
+     * returns, using the paging syntax of the dialect.
+     *
+     * <p>Requires a dialect that
+     * {@link Dialect#supportsLimitOffset() supports paging}. The query should
+     * have an ORDER BY clause, otherwise which rows are returned is not
+     * defined.
+     *
+     * @param offset Number of rows to skip
+     * @param limit Maximum number of rows to return, or -1 for no limit
+     */
+    public void setLimitOffset(int offset, int limit) {
+        assert dialect.supportsLimitOffset();
+        assert offset >= 0 && limit >= -1;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    /**
+     * Restricts this query to the first few rows of each partition, using
+     * the <code>ROW_NUMBER</code> window function.
+     *
+     * <p>The rows are partitioned by the values of some expressions, each of
+     * which must be in the select list, and numbered within each partition in
+     * a given order, then in the order of the ORDER BY clause of this query.
+     * The query returns the first {@code limit} rows of each partition,
+     * sorted by the partition expressions then by row number.
+     *
+     * <p>Requires a dialect that
+     * {@link Dialect#supportsWindowFunctions() supports window functions},
+     * and a column alias for every item in the select list.
+     *
+     * @param partitionExprs Expressions that partition the rows
+     * @param orderItems Items that order the rows within each partition, as
+     *   generated by {@link Dialect#generateOrderItem}
+     * @param limit Maximum number of rows in each partition
+     */
+    public void setPartitionLimit(
+        List<String> partitionExprs,
+        List<String> orderItems,
+        int limit)
+    {
+        assert dialect.supportsWindowFunctions();
+        assert !selectAliases.contains(null);
+        for (String expr : partitionExprs) {
+            assert columnAliases.get(expr) != null : expr;
+        }
+        this.partitionExprs = partitionExprs;
+        this.partitionOrderItems = orderItems;
+        this.partitionLimit = limit;
+    }
+
     private void groupingFunctionsToBuffer(StringBuilder buf, String prefix) {
         if (groupingSets.isEmpty()) {
             return;
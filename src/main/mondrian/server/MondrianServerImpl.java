@@ -29,6 +29,7 @@ import org.olap4j.OlapConnection;
 import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.ObjectName;
 
 /**
  * Implementation of {@link mondrian.olap.MondrianServer}.
@@ -74,10 +75,16 @@ class MondrianServerImpl
     private final Map<Long, Statement> statementMap =
         new WeakHashMap<Long, Statement>();
 
-    private final MonitorImpl monitor = new MonitorImpl();
+    private final MonitorImpl monitor;
 
     private final AggregationManager aggMgr;
 
+    /**
+     * Name under which this server's {@link ServerMemory} bean is registered
+     * with JMX, or null if it could not be registered.
+     */
+    private final ObjectName serverMemoryName;
+
     private boolean shutdown = false;
 
     private static final Logger LOGGER =
@@ -169,9 +176,13 @@ class MondrianServerImpl
         // entry.
         this.lockBox = registry.lockBox;
 
+        this.monitor = new MonitorImpl(this);
+
         this.aggMgr = new AggregationManager(this);
 
         this.shepherd = new RolapResultShepherd();
+
+        this.serverMemoryName = ServerMemory.register(this);
     }
 
     @Override
@@ -292,6 +303,7 @@ class MondrianServerImpl
             throw new MondrianException("Server already shutdown.");
         }
         this.shutdown  = true;
+        ServerMemory.unregister(serverMemoryName);
         aggMgr.shutdown();
         monitor.shutdown();
         repository.shutdown();
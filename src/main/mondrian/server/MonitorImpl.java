@@ -9,7 +9,9 @@
 */
 package mondrian.server;
 
+import mondrian.olap.MondrianServer;
 import mondrian.olap.Util;
+import mondrian.rolap.MemoryUsageCollector;
 import mondrian.rolap.RolapUtil;
 import mondrian.server.monitor.*;
 import mondrian.util.Pair;
@@ -82,10 +84,18 @@ class MonitorImpl
         thread.start();
     }
 
+    /**
+     * Server whose cell cache is examined when computing memory usage.
+     */
+    private final MondrianServer server;
+
     /**
      * Creates a Monitor.
+     *
+     * @param server Server
      */
-    public MonitorImpl() {
+    public MonitorImpl(MondrianServer server) {
+        this.server = server;
     }
 
     // Commands
@@ -105,7 +115,13 @@ class MonitorImpl
     }
 
     public ServerInfo getServer() {
-        return (ServerInfo) execute(new ServerCommand());
+        return (ServerInfo) execute(new ServerCommand(this));
+    }
+
+    public List<MemoryUsageInfo> getMemoryUsage() {
+        // Compute memory usage in the caller's thread. It needs to read the
+        // segment cache, and we don't want the actor to wait for that.
+        return MemoryUsageCollector.collect(server);
     }
 
     public List<ConnectionInfo> getConnections() {
@@ -155,6 +171,12 @@ class MonitorImpl
     }
 
     static class ServerCommand extends Command {
+        private final Monitor monitor;
+
+        ServerCommand(Monitor monitor) {
+            this.monitor = monitor;
+        }
+
         public <T> T accept(Visitor<T> visitor) {
             return ((CommandVisitor<T>) visitor).visit(this);
         }
@@ -192,7 +214,7 @@ class MonitorImpl
         private final MutableConnectionInfo aggConn =
             new MutableConnectionInfo();
 
-        public ServerInfo fix() {
+        public ServerInfo fix(Monitor monitor) {
             Util.MemoryInfo.Usage memoryUsage = MEMORY_INFO.get();
             return new ServerInfo(
                 aggConn.startCount,
@@ -222,7 +244,8 @@ class MonitorImpl
                 aggExec.cellCacheSegmentCreateViaRollupCount,
                 aggExec.cellCacheSegmentCreateViaSqlCount,
                 aggExec.cellCacheSegmentCellCount,
-                aggExec.cellCacheSegmentCoordinateSum);
+                aggExec.cellCacheSegmentCoordinateSum,
+                monitor);
         }
     }
 
@@ -736,7 +759,7 @@ class MonitorImpl
         }
 
         public Object visit(ServerCommand serverCommand) {
-            return server.fix();
+            return server.fix(serverCommand.monitor);
         }
 
         public Object visit(SqlStatementsCommand command) {
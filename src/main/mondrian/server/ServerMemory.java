@@ -0,0 +1,102 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.server;
+
+import mondrian.olap.MondrianServer;
+import mondrian.server.monitor.MemoryUsageInfo;
+
+import org.apache.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import javax.management.ObjectName;
+
+/**
+ * Publishes the memory usage of a Mondrian server via JMX.
+ *
+ * <p>Each server registers an instance under the name
+ * {@code mondrian.server:type=ServerMemory,id=<server id>} when it is
+ * created, and unregisters it when it is shut down.</p>
+ */
+public class ServerMemory implements ServerMemoryMBean {
+    private static final Logger LOGGER = Logger.getLogger(ServerMemory.class);
+
+    private final MondrianServer server;
+
+    /**
+     * Creates a ServerMemory.
+     *
+     * @param server Server
+     */
+    ServerMemory(MondrianServer server) {
+        this.server = server;
+    }
+
+    public long getTotalBytes() {
+        long bytes = 0;
+        for (MemoryUsageInfo info : server.getMonitor().getMemoryUsage()) {
+            if (info.type == MemoryUsageInfo.Type.SCHEMA) {
+                bytes += info.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    public String[] getMemoryUsage() {
+        final List<MemoryUsageInfo> list =
+            server.getMonitor().getMemoryUsage();
+        final String[] strings = new String[list.size()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = list.get(i).toString();
+        }
+        return strings;
+    }
+
+    /**
+     * Registers a server's memory usage bean with the platform MBean server.
+     * Logs and ignores any error.
+     *
+     * @param server Server
+     * @return Name under which the bean was registered, or null if it could
+     *   not be registered
+     */
+    static ObjectName register(MondrianServer server) {
+        try {
+            final ObjectName name =
+                new ObjectName(
+                    "mondrian.server:type=ServerMemory,id=" + server.getId());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                new ServerMemory(server), name);
+            return name;
+        } catch (Exception e) {
+            LOGGER.warn("Could not register memory usage MBean", e);
+            return null;
+        }
+    }
+
+    /**
+     * Unregisters a bean that was registered using {@link #register}. Logs
+     * and ignores any error.
+     *
+     * @param name Name of bean, or null
+     */
+    static void unregister(ObjectName name) {
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (Exception e) {
+            LOGGER.warn("Could not unregister memory usage MBean", e);
+        }
+    }
+}
+
+// End ServerMemory.java
@@ -0,0 +1,36 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.server;
+
+/**
+ * JMX management interface for the memory usage of a Mondrian server.
+ *
+ * @see ServerMemory
+ * @see mondrian.server.monitor.MemoryUsageInfo
+ */
+public interface ServerMemoryMBean {
+    /**
+     * Returns the estimated number of bytes retained by all schemas,
+     * including their member caches and segments.
+     *
+     * @return Estimated bytes
+     */
+    long getTotalBytes();
+
+    /**
+     * Returns a description of the estimated memory retained by each schema,
+     * member cache and star, one entry per object.
+     *
+     * @return Memory usage of each object
+     */
+    String[] getMemoryUsage();
+}
+
+// End ServerMemoryMBean.java
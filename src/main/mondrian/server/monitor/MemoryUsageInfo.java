@@ -0,0 +1,84 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.server.monitor;
+
+/**
+ * Approximate amount of heap retained by a schema, by the member cache of a
+ * hierarchy, or by the segments of a star.
+ *
+ * <p>Sizes are estimates, computed from the number of objects and the
+ * lengths of their arrays and strings; they do not account for objects
+ * shared with other structures. They are intended for finding which parts
+ * of a server are consuming memory, not for precise measurement.</p>
+ */
+public class MemoryUsageInfo extends Info {
+    /**
+     * Kind of object whose memory is accounted.
+     */
+    public enum Type {
+        /**
+         * Schema. Its size is the sum of the sizes of the member caches of
+         * its hierarchies and of the segments of its stars.
+         */
+        SCHEMA,
+
+        /**
+         * Member cache of a hierarchy. The count is the number of cached
+         * members.
+         */
+        HIERARCHY,
+
+        /**
+         * Segments of a star. The count is the number of loaded segments
+         * in the server's cache index; the size includes only segments whose
+         * bodies are held in the server's memory.
+         */
+        STAR
+    }
+
+    public final Type type;
+
+    /**
+     * Name of the schema that the object belongs to.
+     */
+    public final String schemaName;
+
+    /**
+     * Name of the object: the schema name, the unique name of a hierarchy,
+     * or the alias of the fact table of a star.
+     */
+    public final String name;
+
+    /**
+     * Number of members or segments.
+     */
+    public final int objectCount;
+
+    /**
+     * Estimated number of bytes retained.
+     */
+    public final long bytes;
+
+    public MemoryUsageInfo(
+        Type type,
+        String schemaName,
+        String name,
+        int objectCount,
+        long bytes)
+    {
+        this.type = type;
+        this.schemaName = schemaName;
+        this.name = name;
+        this.objectCount = objectCount;
+        this.bytes = bytes;
+    }
+}
+
+// End MemoryUsageInfo.java
@@ -4,7 +4,7 @@
 // http://www.eclipse.org/legal/epl-v10.html.
 // You must accept the terms of that agreement to use this software.
 //
-// Copyright (C) 2011-2011 Pentaho
+// Copyright (C) 2011-2012 Pentaho
 // All Rights Reserved.
 */
 package mondrian.server.monitor;
@@ -31,6 +31,18 @@ public interface Monitor {
 
     List<SqlStatementInfo> getSqlStatements();
 
+    /**
+     * Returns the estimated memory retained by each schema, by the member
+     * cache of each hierarchy, and by the segments of each star.
+     *
+     * <p>Unlike the other methods, this scans the member caches and the
+     * segment cache, so it is expensive; call it only when the figures are
+     * needed.</p>
+     *
+     * @return List of memory usage entries
+     */
+    List<MemoryUsageInfo> getMemoryUsage();
+
     /**
      * Sends an event to the monitor.
      *
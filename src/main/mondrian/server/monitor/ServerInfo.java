@@ -9,6 +9,8 @@
 */
 package mondrian.server.monitor;
 
+import java.util.List;
+
 /**
  * Information about a Mondrian server.
  */
@@ -102,6 +104,12 @@ public class ServerInfo extends Info {
      */
     public final int cellCoordinateCount;
 
+    /**
+     * Monitor that computes memory usage on demand. It is not a public field,
+     * so {@link #toString()} does not compute memory usage.
+     */
+    private final Monitor monitor;
+
     public ServerInfo(
         int connectionStartCount,
         int connectionEndCount,
@@ -129,7 +137,8 @@ public class ServerInfo extends Info {
         int segmentCreateViaRollupCount,
         int segmentCreateViaSqlCount,
         int cellCount,
-        int cellCoordinateCount)
+        int cellCoordinateCount,
+        Monitor monitor)
     {
         this.connectionStartCount = connectionStartCount;
         this.connectionEndCount = connectionEndCount;
@@ -158,6 +167,7 @@ public class ServerInfo extends Info {
         this.segmentCreateViaSqlCount = segmentCreateViaSqlCount;
         this.cellCount = cellCount;
         this.cellCoordinateCount = cellCoordinateCount;
+        this.monitor = monitor;
     }
 
     public int cellCacheMissCount() {
@@ -191,6 +201,34 @@ public class ServerInfo extends Info {
     public int connectionCurrentlyOpenCount() {
         return connectionStartCount - connectionEndCount;
     }
+
+    /**
+     * Returns the estimated memory retained by each schema, by the member
+     * cache of each hierarchy, and by the segments of each star.
+     *
+     * <p>The figures are computed when this method is called, by
+     * {@link Monitor#getMemoryUsage()}, so they may be more recent than the
+     * other fields of this object.</p>
+     *
+     * @return List of memory usage entries
+     */
+    public List<MemoryUsageInfo> getMemoryUsageList() {
+        return monitor.getMemoryUsage();
+    }
+
+    /**
+     * @return estimated number of bytes retained by all schemas, including
+     * their member caches and segments
+     */
+    public long memoryUsageBytes() {
+        long bytes = 0;
+        for (MemoryUsageInfo info : getMemoryUsageList()) {
+            if (info.type == MemoryUsageInfo.Type.SCHEMA) {
+                bytes += info.bytes;
+            }
+        }
+        return bytes;
+    }
 }
 
 // End ServerInfo.java
@@ -611,6 +611,95 @@ public interface Dialect {
      */
     boolean supportsMultiValueInExpr();
 
+    /**
+     * Returns whether this dialect allows a sub-query as the right-hand side
+     * of an IN predicate in the WHERE clause. E.g.,
+     *
+     * <code>WHERE col1 IN (SELECT col2 FROM t)</code>
+     *
+     * <p>If the dialect also {@link #supportsMultiValueInExpr() supports
+     * multi-value IN expressions}, it must allow a multi-column sub-query,
+     * e.g. <code>WHERE (col1, col2) IN (SELECT col3, col4 FROM t)</code>.
+     *
+     * <p>Mondrian uses such a predicate, a semi-join, to find the members
+     * of a level that have rows in the fact table without joining the
+     * dimension table to the fact table.
+     *
+     * @return whether this dialect allows a sub-query in an IN predicate
+     */
+    boolean allowsInSubQuery();
+
+    /**
+     * Returns whether this dialect supports window functions, in particular
+     * <code>ROW_NUMBER()</code> with an <code>OVER</code> clause that has
+     * <code>PARTITION BY</code> and <code>ORDER BY</code> sub-clauses, in
+     * the select list of a query that has a GROUP BY clause. E.g.,
+     *
+     * <code>SELECT state, city, ROW_NUMBER() OVER (PARTITION BY state
+     * ORDER BY SUM(sales) DESC) FROM t GROUP BY state, city</code>
+     *
+     * <p>Mondrian uses window functions to compute a top-N for several
+     * groups, as in <code>Generate(&lt;Set&gt;, TopCount(&lt;Set&gt;,
+     * &lt;Count&gt;, &lt;Numeric Expression&gt;))</code>, in one SQL
+     * statement.
+     *
+     * @return whether this dialect supports window functions
+     */
+    boolean supportsWindowFunctions();
+
+    /**
+     * Generates a call to the <code>ROW_NUMBER</code> window function.
+     *
+     * <p>For example, <code>generateRowNumber(["state"],
+     * ["sum(sales) DESC"])</code> returns <code>row_number() over (partition
+     * by state order by sum(sales) DESC)</code>.
+     *
+     * <p>Only called if the dialect
+     * {@link #supportsWindowFunctions() supports window functions}.
+     *
+     * @param partitionExprs Expressions in the PARTITION BY sub-clause;
+     *   may be empty
+     * @param orderItems Items in the ORDER BY sub-clause, as generated by
+     *   {@link #generateOrderItem}
+     * @return Expression that numbers rows within each partition
+     */
+    String generateRowNumber(
+        List<String> partitionExprs,
+        List<String> orderItems);
+
+    /**
+     * Returns whether this dialect supports a clause, after the ORDER BY
+     * clause of a query, that skips a number of rows and limits the number of
+     * rows returned. E.g.,
+     *
+     * <code>SELECT name, SUM(sales) FROM t GROUP BY name ORDER BY 2 DESC
+     * LIMIT 10 OFFSET 20</code>
+     *
+     * <p>Mondrian uses such a clause to read one page of members sorted by
+     * a measure, as in <code>Subset(Order(&lt;Set&gt;, &lt;Numeric
+     * Expression&gt;, BDESC), 20, 10)</code>.
+     *
+     * @return whether this dialect supports paging
+     */
+    boolean supportsLimitOffset();
+
+    /**
+     * Generates a clause that skips a number of rows and limits the number
+     * of rows that a query returns.
+     *
+     * <p>For example, <code>generateLimitOffset(20, 10)</code> might return
+     * <code>LIMIT 10 OFFSET 20</code> or, in SQL:2008 syntax, <code>OFFSET 20
+     * ROWS FETCH NEXT 10 ROWS ONLY</code>.
+     *
+     * <p>Only called if the dialect
+     * {@link #supportsLimitOffset() supports paging}.
+     *
+     * @param offset Number of rows to skip; zero or more
+     * @param limit Maximum number of rows to return, or -1 for no limit
+     * @return Clause to append to a query
+     */
+    String generateLimitOffset(int offset, int limit);
+
     /**
      * Returns whether this Dialect supports the given concurrency type
      * in combination with the given result set type.
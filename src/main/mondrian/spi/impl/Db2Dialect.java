@@ -4,13 +4,15 @@
 // http://www.eclipse.org/legal/epl-v10.html.
 // You must accept the terms of that agreement to use this software.
 //
-// Copyright (C) 2008-2009 Pentaho
+// Copyright (C) 2008-2012 Pentaho
 // All Rights Reserved.
 */
 package mondrian.spi.impl;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Implementation of {@link mondrian.spi.Dialect} for the IBM DB2 database.
@@ -27,6 +29,9 @@ public class Db2Dialect extends JdbcDialectImpl {
             Db2Dialect.class,
             DatabaseProduct.DB2);
 
+    private static final Pattern DB2_VERSION_PATTERN =
+        Pattern.compile("SQL([0-9]{2})([0-9]{2})[0-9]");
+
     /**
      * Creates a Db2Dialect.
      *
@@ -47,6 +52,29 @@ public class Db2Dialect extends JdbcDialectImpl {
     public boolean requiresOrderByAlias() {
         return true;
     }
+
+    @Override
+    public boolean supportsWindowFunctions() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsLimitOffset() {
+        // DB2 for Linux, UNIX and Windows allows OFFSET from version 11.1.
+        // Its product version has the form "SQLvvrrm"; for example,
+        // "SQL11010" is version 11.1. Other platforms, such as AS/400, are
+        // not supported.
+        if (getDatabaseProduct() != DatabaseProduct.DB2) {
+            return false;
+        }
+        final Matcher matcher = DB2_VERSION_PATTERN.matcher(productVersion);
+        if (!matcher.matches()) {
+            return false;
+        }
+        final int major = Integer.parseInt(matcher.group(1));
+        final int minor = Integer.parseInt(matcher.group(2));
+        return major > 11 || major == 11 && minor >= 1;
+    }
 }
 
 // End Db2Dialect.java
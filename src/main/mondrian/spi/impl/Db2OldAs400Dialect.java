@@ -43,6 +43,11 @@ public class Db2OldAs400Dialect extends Db2Dialect {
         // subqueries in the FROM clause.
         return false;
     }
+
+    @Override
+    public boolean supportsWindowFunctions() {
+        return false;
+    }
 }
 
 // End Db2OldAs400Dialect.java
@@ -4,7 +4,7 @@
 // http://www.eclipse.org/legal/epl-v10.html.
 // You must accept the terms of that agreement to use this software.
 //
-// Copyright (C) 2008-2009 Pentaho
+// Copyright (C) 2008-2012 Pentaho
 // All Rights Reserved.
 */
 package mondrian.spi.impl;
@@ -68,6 +68,12 @@ public class DerbyDialect extends JdbcDialectImpl {
     public boolean supportsGroupByExpressions() {
         return false;
     }
+
+    @Override
+    public boolean supportsLimitOffset() {
+        // OFFSET and FETCH were introduced in Derby 10.5.
+        return isProductVersionAtLeast(10, 5);
+    }
 }
 
 // End DerbyDialect.java
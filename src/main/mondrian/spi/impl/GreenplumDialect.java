@@ -87,6 +87,11 @@ public class GreenplumDialect extends PostgreSqlDialect {
             return false;
         }
     }
+
+    @Override
+    public boolean supportsWindowFunctions() {
+        return true;
+    }
 }
 
 // End GreenplumDialect.java
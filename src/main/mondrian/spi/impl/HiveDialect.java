@@ -102,6 +102,10 @@ public class HiveDialect extends JdbcDialectImpl {
         return false;
     }
 
+    public boolean allowsInSubQuery() {
+        return false;
+    }
+
     public String generateInline(
         List<String> columnNames,
         List<String> columnTypes,
@@ -20,6 +20,8 @@ import org.apache.commons.logging.LogFactory;
 import java.sql.*;
 import java.sql.Date;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Implementation of {@link Dialect} based on a JDBC connection and metadata.
@@ -40,6 +42,9 @@ import java.util.*;
 public class JdbcDialectImpl implements Dialect {
     private static final Log LOGGER = LogFactory.getLog(JdbcDialectImpl.class);
 
+    private static final Pattern VERSION_PATTERN =
+        Pattern.compile("([0-9]+)(?:\\.([0-9]+))?");
+
     /**
      * String used to quote identifiers.
      */
@@ -205,6 +210,47 @@ public class JdbcDialectImpl implements Dialect {
         return productVersion;
     }
 
+    /**
+     * Returns whether the database's version is at least a given version.
+     *
+     * <p>Compares the numbers in {@link #productVersion} numerically.
+     * Comparing the strings would say that "10.1" is earlier than
+     * "8.4".</p>
+     *
+     * @param major Major version
+     * @param minor Minor version
+     * @return Whether the database's version is at least major.minor
+     */
+    protected boolean isProductVersionAtLeast(int major, int minor) {
+        final int[] version = parseVersion(productVersion);
+        return version[0] > major
+            || version[0] == major && version[1] >= minor;
+    }
+
+    /**
+     * Parses the major and minor version from a version string. Reads the
+     * first number in the string, and the number after it if they are
+     * separated by a period; missing numbers are 0. For example, "9.1.2"
+     * gives [9, 1], "8.4beta1" gives [8, 4], and "Oracle Database 12c
+     * Release 12.1.0.1.0" gives [12, 0].
+     *
+     * @param version Version string, or null
+     * @return Two-element array holding the major and minor version
+     */
+    static int[] parseVersion(String version) {
+        final int[] numbers = {0, 0};
+        if (version != null) {
+            final Matcher matcher = VERSION_PATTERN.matcher(version);
+            if (matcher.find()) {
+                numbers[0] = Integer.parseInt(matcher.group(1));
+                if (matcher.group(2) != null) {
+                    numbers[1] = Integer.parseInt(matcher.group(2));
+                }
+            }
+        }
+        return numbers;
+    }
+
     protected Set<List<Integer>> deduceSupportedResultSetStyles(
         DatabaseMetaData databaseMetaData)
     {
@@ -854,6 +900,59 @@ public class JdbcDialectImpl implements Dialect {
         return false;
     }
 
+    public boolean allowsInSubQuery() {
+        return true;
+    }
+
+    public boolean supportsWindowFunctions() {
+        return false;
+    }
+
+    public String generateRowNumber(
+        List<String> partitionExprs,
+        List<String> orderItems)
+    {
+        final StringBuilder buf = new StringBuilder("row_number() over (");
+        String sep = "partition by ";
+        for (String expr : partitionExprs) {
+            buf.append(sep).append(expr);
+            sep = ", ";
+        }
+        sep = partitionExprs.isEmpty() ? "order by " : " order by ";
+        for (String item : orderItems) {
+            buf.append(sep).append(item);
+            sep = ", ";
+        }
+        return buf.append(")").toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Returns false, because not every database supports paging.
+     * Dialects whose database supports the SQL:2008 syntax generated by
+     * {@link #generateLimitOffset(int, int)} (for example, Derby, Oracle,
+     * SQL Server and DB2) override this method.
+     */
+    public boolean supportsLimitOffset() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Generates the SQL:2008 syntax, <code>OFFSET n ROWS FETCH NEXT m
+     * ROWS ONLY</code>.
+     */
+    public String generateLimitOffset(int offset, int limit) {
+        final StringBuilder buf = new StringBuilder();
+        buf.append("offset ").append(offset).append(" rows");
+        if (limit >= 0) {
+            buf.append(" fetch next ").append(limit).append(" rows only");
+        }
+        return buf.toString();
+    }
+
     public boolean supportsResultSetConcurrency(
         int type,
         int concurrency)
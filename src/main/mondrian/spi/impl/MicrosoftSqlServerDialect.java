@@ -4,7 +4,7 @@
 // http://www.eclipse.org/legal/epl-v10.html.
 // You must accept the terms of that agreement to use this software.
 //
-// Copyright (C) 2008-2009 Pentaho
+// Copyright (C) 2008-2012 Pentaho
 // All Rights Reserved.
 */
 package mondrian.spi.impl;
@@ -45,6 +45,18 @@ public class MicrosoftSqlServerDialect extends JdbcDialectImpl {
         return generateInlineGeneric(
             columnNames, columnTypes, valueList, null, false);
     }
+
+    @Override
+    public boolean supportsWindowFunctions() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsLimitOffset() {
+        // OFFSET and FETCH were introduced in SQL Server 2012, which is
+        // version 11.
+        return isProductVersionAtLeast(11, 0);
+    }
 }
 
 // End MicrosoftSqlServerDialect.java
@@ -297,6 +297,23 @@ public class MySqlDialect extends JdbcDialectImpl {
         quoteStringLiteral(sb, javaRegex);
         return sb.toString();
     }
+
+    @Override
+    public boolean supportsLimitOffset() {
+        return true;
+    }
+
+    @Override
+    public String generateLimitOffset(int offset, int limit) {
+        // MySQL does not allow OFFSET without LIMIT; the manual recommends
+        // a very large limit.
+        final StringBuilder buf = new StringBuilder("limit ");
+        buf.append(limit >= 0 ? Long.toString(limit) : "18446744073709551615");
+        if (offset > 0) {
+            buf.append(" offset ").append(offset);
+        }
+        return buf.toString();
+    }
 }
 
 // End MySqlDialect.java
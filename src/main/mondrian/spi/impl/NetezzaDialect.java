@@ -34,5 +34,10 @@ public class NetezzaDialect extends PostgreSqlDialect {
         super(connection);
     }
 
+
+    @Override
+    public boolean supportsWindowFunctions() {
+        return true;
+    }
 }
 // End NetezzaDialect.java
\ No newline at end of file
@@ -4,7 +4,7 @@
 // http://www.eclipse.org/legal/epl-v10.html.
 // You must accept the terms of that agreement to use this software.
 //
-// Copyright (C) 2008-2011 Pentaho
+// Copyright (C) 2008-2012 Pentaho
 // All Rights Reserved.
 */
 package mondrian.spi.impl;
@@ -150,6 +150,19 @@ public class OracleDialect extends JdbcDialectImpl {
         }
         quoteDateLiteral(buf, value, date);
     }
+
+    @Override
+    public boolean supportsWindowFunctions() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsLimitOffset() {
+        // OFFSET and FETCH were introduced in Oracle 12c. The product
+        // version is of the form "Oracle Database 12c Enterprise Edition
+        // Release 12.1.0.1.0 - ...".
+        return isProductVersionAtLeast(12, 0);
+    }
 }
 
 // End OracleDialect.java
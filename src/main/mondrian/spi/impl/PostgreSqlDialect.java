@@ -4,7 +4,7 @@
 // http://www.eclipse.org/legal/epl-v10.html.
 // You must accept the terms of that agreement to use this software.
 //
-// Copyright (C) 2008-2011 Pentaho
+// Copyright (C) 2008-2012 Pentaho
 // All Rights Reserved.
 */
 package mondrian.spi.impl;
@@ -65,7 +65,7 @@ public class PostgreSqlDialect extends JdbcDialectImpl {
         boolean collateNullsLast)
     {
         // Support for "ORDER BY ... NULLS LAST" was introduced in Postgres 8.3.
-        if (productVersion.compareTo("8.3") >= 0) {
+        if (isProductVersionAtLeast(8, 3)) {
             return
                 generateOrderByNullsAnsi(
                     expr,
@@ -157,6 +157,29 @@ public class PostgreSqlDialect extends JdbcDialectImpl {
         quoteStringLiteral(sb, javaRegex);
         return sb.toString();
     }
+
+    @Override
+    public boolean supportsWindowFunctions() {
+        // Window functions were introduced in Postgres 8.4.
+        return isProductVersionAtLeast(8, 4);
+    }
+
+    @Override
+    public boolean supportsLimitOffset() {
+        return true;
+    }
+
+    @Override
+    public String generateLimitOffset(int offset, int limit) {
+        final StringBuilder buf = new StringBuilder();
+        if (limit >= 0) {
+            buf.append("limit ").append(limit);
+        }
+        if (offset > 0) {
+            buf.append(limit >= 0 ? " offset " : "offset ").append(offset);
+        }
+        return buf.toString();
+    }
 }
 
 // End PostgreSqlDialect.java
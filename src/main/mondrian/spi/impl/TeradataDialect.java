@@ -62,6 +62,11 @@ public class TeradataDialect extends JdbcDialectImpl {
     public boolean requiresUnionOrderByOrdinal() {
         return true;
     }
+
+    @Override
+    public boolean supportsWindowFunctions() {
+        return true;
+    }
 }
 
 // End TeradataDialect.java
@@ -66,6 +66,28 @@ public class VerticaDialect extends JdbcDialectImpl {
         return generateInlineGeneric(
             columnNames, columnTypes, valueList, null, false);
     }
+
+    @Override
+    public boolean supportsWindowFunctions() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsLimitOffset() {
+        return true;
+    }
+
+    @Override
+    public String generateLimitOffset(int offset, int limit) {
+        final StringBuilder buf = new StringBuilder();
+        if (limit >= 0) {
+            buf.append("limit ").append(limit);
+        }
+        if (offset > 0) {
+            buf.append(limit >= 0 ? " offset " : "offset ").append(offset);
+        }
+        return buf.toString();
+    }
 }
 
 // End VerticaDialect.java
@@ -290,6 +290,32 @@ public enum RowsetDefinition {
         }
     },
 
+    /**
+     * Mondrian-specific rowset that returns the estimated memory retained by
+     * each schema, member cache and star in the server. See
+     * {@link mondrian.server.monitor.MemoryUsageInfo}.
+     *
+     * restrictions
+     *    SchemaName Optional
+     */
+    DISCOVER_MEMORY_USAGE(
+        21,
+        "Returns the estimated memory retained by each schema, hierarchy "
+        + "member cache and star segment cache in the server.",
+        new Column[] {
+            DiscoverMemoryUsageRowset.SchemaName,
+            DiscoverMemoryUsageRowset.ObjectType,
+            DiscoverMemoryUsageRowset.ObjectName,
+            DiscoverMemoryUsageRowset.ObjectCount,
+            DiscoverMemoryUsageRowset.Bytes,
+        },
+        null /* not sorted */)
+    {
+        public Rowset getRowset(XmlaRequest request, XmlaHandler handler) {
+            return new DiscoverMemoryUsageRowset(request, handler);
+        }
+    },
+
     /**
      *
      *
@@ -2026,6 +2052,94 @@ public enum RowsetDefinition {
         }
     }
 
+    static class DiscoverMemoryUsageRowset extends Rowset {
+        private final Util.Functor1<Boolean, String> schemaNameCond;
+
+        DiscoverMemoryUsageRowset(XmlaRequest request, XmlaHandler handler) {
+            super(DISCOVER_MEMORY_USAGE, request, handler);
+            schemaNameCond = makeCondition(SchemaName);
+        }
+
+        private static final Column SchemaName =
+            new Column(
+                "SchemaName",
+                Type.String,
+                null,
+                Column.RESTRICTION,
+                Column.REQUIRED,
+                "The name of the schema that the object belongs to.");
+        private static final Column ObjectType =
+            new Column(
+                "ObjectType",
+                Type.String,
+                null,
+                Column.NOT_RESTRICTION,
+                Column.REQUIRED,
+                "The kind of object: SCHEMA, HIERARCHY or STAR.");
+        private static final Column ObjectName =
+            new Column(
+                "ObjectName",
+                Type.String,
+                null,
+                Column.NOT_RESTRICTION,
+                Column.REQUIRED,
+                "The name of the object: the schema name, the unique name of "
+                + "a hierarchy, or the alias of the fact table of a star.");
+        private static final Column ObjectCount =
+            new Column(
+                "ObjectCount",
+                Type.Integer,
+                null,
+                Column.NOT_RESTRICTION,
+                Column.REQUIRED,
+                "The number of cached members or segments.");
+        private static final Column Bytes =
+            new Column(
+                "Bytes",
+                Type.Long,
+                null,
+                Column.NOT_RESTRICTION,
+                Column.REQUIRED,
+                "The estimated number of bytes retained by the object.");
+
+        private static final Column[] columns = {
+            SchemaName,
+            ObjectType,
+            ObjectName,
+            ObjectCount,
+            Bytes,
+        };
+
+        public void populateImpl(
+            XmlaResponse response, OlapConnection connection, List<Row> rows)
+            throws XmlaException, SQLException
+        {
+            final XmlaHandler.XmlaExtra extra = getExtra(connection);
+            for (Map<String, Object> map : extra.getMemoryUsage(connection)) {
+                if (!schemaNameCond.apply((String) map.get(SchemaName.name))) {
+                    continue;
+                }
+                Row row = new Row();
+                for (Column column : columns) {
+                    row.set(column.name, map.get(column.name));
+                }
+                addRow(row, rows);
+            }
+        }
+
+        protected void setProperty(
+            PropertyDefinition propertyDef,
+            String value)
+        {
+            switch (propertyDef) {
+            case Content:
+                break;
+            default:
+                super.setProperty(propertyDef, value);
+            }
+        }
+    }
+
     static class DiscoverLiteralsRowset extends Rowset {
         DiscoverLiteralsRowset(XmlaRequest request, XmlaHandler handler) {
             super(DISCOVER_LITERALS, request, handler);
@@ -3038,6 +3038,19 @@ public class XmlaHandler {
         List<Map<String, Object>> getDataSources(OlapConnection connection)
             throws OlapException;
 
+        /**
+         * Returns the estimated memory usage of the server. One element per
+         * schema, member cache or star, each element a map whose keys are
+         * the fields of the DISCOVER_MEMORY_USAGE rowset: "SchemaName",
+         * "ObjectType", "ObjectName", "ObjectCount" and "Bytes".
+         *
+         * @param connection Connection
+         * @return List of memory usage entries
+         * @throws OlapException on error
+         */
+        List<Map<String, Object>> getMemoryUsage(OlapConnection connection)
+            throws OlapException;
+
         /**
          * Returns a map containing annotations on this element.
          *
@@ -3183,6 +3196,12 @@ public class XmlaHandler {
                     "AuthenticationMode", modes));
         }
 
+        public List<Map<String, Object>> getMemoryUsage(
+            OlapConnection connection)
+        {
+            return Collections.emptyList();
+        }
+
         public Map<String, Object> getAnnotationMap(MetadataElement element) {
             return Collections.emptyMap();
         }
@@ -0,0 +1,92 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.calc.impl;
+
+import mondrian.calc.TupleList;
+import mondrian.olap.Member;
+import mondrian.olap.fun.TestMember;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link TupleHashSet}.
+ */
+public class TupleHashSetTest extends TestCase {
+    private final Member[] members = new Member[100];
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        for (int i = 0; i < members.length; i++) {
+            members[i] = new TestMember("m" + i);
+        }
+    }
+
+    /**
+     * Creates a list of every pair of members, in order, followed by the
+     * same pairs again.
+     */
+    private TupleList pairs(int n) {
+        final TupleList list = new ArrayTupleList(2);
+        for (int k = 0; k < 2; k++) {
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    list.addTuple(members[i], members[j]);
+                }
+            }
+        }
+        return list;
+    }
+
+    private void checkPairs(TupleHashSet set, int n) {
+        final TupleList list = pairs(n);
+        final int distinct = n * n;
+        for (int i = 0; i < list.size(); i++) {
+            assertEquals(i < distinct, set.add(list, i));
+        }
+        assertEquals(distinct, set.size());
+        for (int i = 0; i < list.size(); i++) {
+            final int ordinal = i % distinct;
+            assertTrue(set.contains(list, i));
+            assertEquals(ordinal, set.indexOf(list, i));
+            assertSame(list.get(0, i), set.get(ordinal, 0));
+            assertSame(list.get(1, i), set.get(ordinal, 1));
+        }
+        final TupleList other = new ArrayTupleList(2);
+        other.addTuple(members[n], members[0]);
+        assertFalse(set.contains(other, 0));
+        assertEquals(-1, set.indexOf(other, 0));
+    }
+
+    /**
+     * Tests that the set grows beyond its initial capacity.
+     */
+    public void testGrow() {
+        checkPairs(new TupleHashSet(2, 4), 90);
+    }
+
+    /**
+     * Tests that a huge expected size does not allocate huge arrays.
+     */
+    public void testHugeExpectedSize() {
+        checkPairs(new TupleHashSet(2, Integer.MAX_VALUE), 10);
+        checkPairs(new TupleHashSet(2, -5), 10);
+    }
+
+    /**
+     * Tests that tuples that do not fit into the arrays are held in the
+     * overflow map.
+     */
+    public void testOverflow() {
+        checkPairs(new TupleHashSet(2, 4, 6), 10);
+        checkPairs(new TupleHashSet(2, 100, 20), 10);
+    }
+}
+
+// End TupleHashSetTest.java
@@ -26,6 +26,7 @@ import org.eigenbase.xom.StringEscaper;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * <code>FunctionTest</code> tests the functions defined in
@@ -3307,6 +3308,52 @@ public class FunctionTest extends FoodMartTestCase {
             "SUM({[Promotion Media].[Media Type].members})", "266,773");
     }
 
+    /**
+     * Tests aggregate functions whose expression is arithmetic on measures,
+     * which are evaluated for the whole set in one call (see
+     * {@link mondrian.calc.VectorCalc}).
+     */
+    public void testSumArithmetic() {
+        assertExprReturns(
+            "SUM({[Store].[USA].children}, [Measures].[Unit Sales] * 2)",
+            "533,546");
+        // Null plus 1 is 1, so Mexico contributes 1.
+        assertExprReturns(
+            "SUM({[Store].[USA].children, [Store].[Mexico]},"
+            + " [Measures].[Unit Sales] + 1)",
+            "266,777");
+        // Null times 2 is null, so Mexico is ignored by Avg.
+        assertExprReturns(
+            "AVG({[Store].[USA].[CA], [Store].[Mexico]},"
+            + " 2 * [Measures].[Unit Sales] - [Measures].[Unit Sales])",
+            "74,748");
+        assertExprReturns(
+            "SUM({[Store].[USA].children},"
+            + " [Measures].[Unit Sales] / [Measures].[Unit Sales])",
+            "3");
+    }
+
+    /**
+     * Tests aggregate functions over a set whose cells are all in one
+     * segment. The first query loads the segment; the second reads all of
+     * the cells from it in one pass.
+     */
+    public void testSumFromSegment() {
+        for (int i = 0; i < 2; i++) {
+            assertExprReturns(
+                "SUM({[Store].[USA].children}, [Measures].[Unit Sales])",
+                "266,773");
+            assertExprReturns(
+                "SUM({[Store].[USA].children},"
+                + " ([Measures].[Store Sales], [Gender].[M]))",
+                "280,226.21");
+            assertExprReturns(
+                "AVG({[Store].[USA].children},"
+                + " ([Measures].[Unit Sales], [Time].[1997].[Q1]))",
+                "22,097");
+        }
+    }
+
     public void testValue() {
         // VALUE is usually a cell property, not a member property.
         // We allow it because MS documents it as a function, <Member>.VALUE.
@@ -3356,6 +3403,42 @@ public class FunctionTest extends FoodMartTestCase {
             "2,888,660,329.13");
     }
 
+    /**
+     * Tests that the statistical functions, which accumulate their values in
+     * one pass, agree with each other on a set that contains empty cells.
+     * (Stores in Canada and Mexico have no sales in 1997.)
+     */
+    public void testStatisticsWithEmptyCells() {
+        final String set = "[Store].[Store City].Members";
+        final String count =
+            "Count(Filter(" + set
+            + ", Not IsEmpty([Measures].[Unit Sales])))";
+        final String unitSales = ", [Measures].[Unit Sales])";
+        // Compare ratios with 1, because the variance is of the order of
+        // 10^8 and the two sides of each equation are computed differently.
+        assertExprReturns(
+            "IIf(Abs(1 - Stdev(" + set + unitSales
+            + " * Stdev(" + set + unitSales
+            + " / Var(" + set + unitSales + ") < 0.000001, 1, 0)",
+            "1");
+        assertExprReturns(
+            "IIf(Abs(1 - Var(" + set + unitSales
+            + " * (" + count + " - 1) / " + count
+            + " / VarP(" + set + unitSales + ") < 0.000001, 1, 0)",
+            "1");
+        assertExprReturns(
+            "IIf(Abs(1 - Sum(" + set + unitSales
+            + " / " + count
+            + " / Avg(" + set + unitSales + ") < 0.000001, 1, 0)",
+            "1");
+        assertExprReturns(
+            "Min(" + set + unitSales
+            + " <= Avg(" + set + unitSales
+            + " AND Avg(" + set + unitSales
+            + " <= Max(" + set + unitSales,
+            "true");
+    }
+
     /**
      * Tests the AS operator, that gives an expression an alias.
      */
@@ -4307,6 +4390,82 @@ public class FunctionTest extends FoodMartTestCase {
             + "Row #0: 131,558\n");
     }
 
+    /**
+     * Tests that non-empty crossjoins computed from cell segments return
+     * the same tuples, in the same order, as crossjoins that evaluate each
+     * tuple.
+     */
+    public void testNonEmptyCrossJoinFromSegments() {
+        propSaver.set(
+            MondrianProperties.instance().EnableNativeCrossJoin, false);
+        propSaver.set(
+            MondrianProperties.instance().EnableNativeNonEmpty, false);
+        final String[] queries = {
+            "select {[Measures].[Unit Sales]} on columns,\n"
+            + " NonEmptyCrossJoin([Store].[Store City].Members,\n"
+            + "   [Product].[Product Category].Members) on rows\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997].[Q2]",
+            "select {[Measures].[Unit Sales], [Measures].[Store Cost]}"
+            + " on columns,\n"
+            + " non empty CrossJoin([Customers].[City].Members,\n"
+            + "   [Promotions].[Promotion Name].Members) on rows\n"
+            + "from [Sales]\n"
+            + "where [Gender].[F]",
+        };
+        for (String query : queries) {
+            propSaver.set(
+                MondrianProperties.instance().CrossJoinSegmentMinSize, 0);
+            final String expected =
+                TestContext.toString(executeQuery(query));
+            propSaver.set(
+                MondrianProperties.instance().CrossJoinSegmentMinSize, 1);
+            assertQueryReturns(query, expected);
+        }
+    }
+
+    /**
+     * Tests that removing the empty tuples of a list by looking up their
+     * cells in a segment's bitmap of non-null cells returns the same tuples
+     * as evaluating each tuple.
+     */
+    public void testNonEmptyTuplesFromSegments() {
+        propSaver.set(
+            MondrianProperties.instance().EnableNativeCrossJoin, false);
+        propSaver.set(
+            MondrianProperties.instance().EnableNativeNonEmpty, false);
+        propSaver.set(
+            MondrianProperties.instance().EnableNativeFilter, false);
+        propSaver.set(
+            MondrianProperties.instance().CrossJoinSegmentMinSize, 0);
+        final String[] queries = {
+            "select {[Measures].[Unit Sales]} on columns,\n"
+            + " NonEmptyCrossJoin([Store].[Store City].Members,\n"
+            + "   [Product].[Product Category].Members) on rows\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997].[Q2]",
+            "select {[Measures].[Unit Sales]} on columns,\n"
+            + " Filter([Customers].[Name].Members,\n"
+            + "   NOT IsEmpty([Measures].[Unit Sales])) on rows\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997].[Q1].[3]",
+            "select {[Measures].[Store Sales]} on columns,\n"
+            + " Filter([Product].[Product Name].Members,\n"
+            + "   NOT ([Measures].[Store Sales] IS EMPTY)) on rows\n"
+            + "from [Sales]\n"
+            + "where [Store].[USA].[OR].[Salem]",
+        };
+        for (String query : queries) {
+            propSaver.set(
+                MondrianProperties.instance().NonEmptySegmentMinSize, 0);
+            final String expected =
+                TestContext.toString(executeQuery(query));
+            propSaver.set(
+                MondrianProperties.instance().NonEmptySegmentMinSize, 1);
+            assertQueryReturns(query, expected);
+        }
+    }
+
     public void testCrossjoinDupHierarchyFails() {
         assertQueryThrows(
             "select [Measures].[Unit Sales] ON COLUMNS,\n"
@@ -6603,6 +6762,36 @@ public class FunctionTest extends FoodMartTestCase {
             + "{[Time].[1997], [Store].[USA]}");
     }
 
+    /**
+     * Tests Distinct, Except, Intersect and Union on sets of tuples large
+     * enough that the set that detects duplicates has to grow.
+     */
+    public void testSetFunctionsLargeTuples() {
+        final String x =
+            "CrossJoin([Store].[Store City].Members, [Gender].Members)";
+        final String y =
+            "CrossJoin([Store].[Store City].Members, {[Gender].[F]})";
+        assertExprReturns(
+            "Count(Distinct(Union(" + x + ", " + x + ", ALL)))"
+            + " - Count(" + x + ")",
+            "0");
+        assertExprReturns(
+            "Count(Union(" + x + ", " + y + ")) - Count(" + x + ")",
+            "0");
+        assertExprReturns(
+            "Count(Except(" + x + ", " + y + "))"
+            + " + Count(Intersect(" + x + ", " + y + "))"
+            + " - Count(" + x + ")",
+            "0");
+        assertExprReturns(
+            "Count(Intersect(" + x + ", " + y + ")) - Count(" + y + ")",
+            "0");
+        assertExprReturns(
+            "Count(Intersect(Union(" + y + ", " + y + ", ALL), " + x
+            + ", ALL)) - 2 * Count(" + y + ")",
+            "0");
+    }
+
     /**
      * Make sure that slicer is in force when expression is applied
      * on axis, E.g. select filter([Customers].members, [Unit Sales] > 100)
@@ -6781,6 +6970,48 @@ public class FunctionTest extends FoodMartTestCase {
             "");
     }
 
+    /**
+     * Tests Head, Tail, Subset, Item and Count applied to crossjoins. The
+     * last crossjoin has hundreds of millions of tuples, so would fail if
+     * it were materialized.
+     */
+    public void testHeadTailCrossJoin() {
+        final String x =
+            "CrossJoin(CrossJoin([Gender].Children, [Marital Status].Children),"
+            + " [Store].Children)";
+        assertAxisReturns(
+            "Head(" + x + ", 2)",
+            "{[Gender].[F], [Marital Status].[M], [Store].[Canada]}\n"
+            + "{[Gender].[F], [Marital Status].[M], [Store].[Mexico]}");
+        assertAxisReturns(
+            "Tail(" + x + ", 2)",
+            "{[Gender].[M], [Marital Status].[S], [Store].[Mexico]}\n"
+            + "{[Gender].[M], [Marital Status].[S], [Store].[USA]}");
+        assertAxisReturns(
+            "Subset(" + x + ", 4, 2)",
+            "{[Gender].[F], [Marital Status].[S], [Store].[Mexico]}\n"
+            + "{[Gender].[F], [Marital Status].[S], [Store].[USA]}");
+        assertAxisReturns(
+            "Head(Tail(" + x + ", 8), 1)",
+            "{[Gender].[F], [Marital Status].[S], [Store].[USA]}");
+        assertExprReturns("Count(" + x + ")", "12");
+
+        final String y =
+            "CrossJoin(CrossJoin([Customers].[Name].Members,"
+            + " [Product].[Product Name].Members), [Time].[Month].Members)";
+        assertExprReturns(
+            "Count(" + y + ") - Count([Customers].[Name].Members)"
+            + " * Count([Product].[Product Name].Members)"
+            + " * Count([Time].[Month].Members)",
+            "0");
+        assertExprReturns(
+            "Tail(" + y + ", 1).Item(0).Item(2).UniqueName",
+            "[Time].[1998].[Q4].[12]");
+        assertExprReturns(
+            "Count(Head(" + y + ", 1000))",
+            "1,000");
+    }
+
     /**
      * Test case for bug 2488492, "Union between calc mem and head function
      * throws exception"
@@ -8406,6 +8637,104 @@ public class FunctionTest extends FoodMartTestCase {
             + "[Customers].[USA].[WA].[Spokane].[Matt Bellah]");
     }
 
+    /**
+     * Tests that TopCount and BottomCount over a crossjoin with many empty
+     * cells and ties return the same tuples, in the same order, as a stable
+     * sort followed by Head.
+     */
+    public void testTopCountSameAsOrderHead() {
+        final String set =
+            "CrossJoin([Store].[Store State].Members,"
+            + " [Product].[Product Family].Members)";
+        final String key = "([Measures].[Unit Sales], [Time].[1997].[Q1])";
+        for (int n : new int[] {1, 5, 12, 100}) {
+            assertEquals(
+                axisString(
+                    "Head(Order(" + set + ", " + key + ", BDESC), " + n + ")"),
+                axisString(
+                    "TopCount(" + set + ", " + n + ", " + key + ")"));
+            assertEquals(
+                axisString(
+                    "Head(Order(" + set + ", " + key + ", BASC), " + n + ")"),
+                axisString(
+                    "BottomCount(" + set + ", " + n + ", " + key + ")"));
+        }
+    }
+
+    private String axisString(String expression) {
+        return TestContext.toString(
+            getTestContext().executeAxis(expression).getPositions());
+    }
+
+    /**
+     * Tests that Order and Hierarchize return the same tuples, in the same
+     * order, whether they sort in one thread or in parallel.
+     */
+    public void testParallelSort() {
+        final String set =
+            "CrossJoin([Store].[Store City].Members,"
+            + " [Product].[Product Department].Members)";
+        final String[] expressions = {
+            "Order(" + set + ", [Measures].[Unit Sales], BDESC)",
+            "Order(" + set + ", [Measures].[Store Sales], BASC)",
+            "Order([Customers].[Name].Members, [Measures].[Unit Sales],"
+            + " BDESC)",
+            "Order(" + set + ", [Measures].[Customer Count], BASC,"
+            + " [Product].CurrentMember.Name, BDESC)",
+            "Hierarchize(Order(Union(" + set + ", CrossJoin("
+            + "[Store].[Store State].Members,"
+            + " [Product].[Product Family].Members)),"
+            + " [Measures].[Unit Sales], BASC))",
+            "Hierarchize(Order(Union(" + set + ", CrossJoin("
+            + "[Store].[Store State].Members,"
+            + " [Product].[Product Family].Members)),"
+            + " [Measures].[Unit Sales], BASC), POST)",
+            "Hierarchize(Order([Customers].Members, [Measures].[Unit Sales],"
+            + " BDESC))",
+        };
+        for (String expression : expressions) {
+            propSaver.set(
+                MondrianProperties.instance().ParallelSortThreshold, 0);
+            final String serial = axisString(expression);
+            propSaver.set(
+                MondrianProperties.instance().ParallelSortThreshold, 2);
+            assertEquals(expression, serial, axisString(expression));
+        }
+    }
+
+    /**
+     * Tests that a parallel sort whose thread is interrupted throws, and
+     * leaves the thread's interrupt status set.
+     */
+    public void testParallelSortInterrupted() {
+        propSaver.set(
+            MondrianProperties.instance().ParallelSortThreshold, 2);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final IndexSorter.IndexComparator comparator =
+            new IndexSorter.IndexComparator() {
+                public int compare(int i, int j) {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                    return i - j;
+                }
+            };
+        Thread.currentThread().interrupt();
+        try {
+            IndexSorter.sort(10, comparator);
+            fail("expected error");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("Interrupted while sorting"));
+        } finally {
+            latch.countDown();
+            // Clears the interrupt status, so that later tests are not
+            // interrupted.
+            assertTrue(Thread.interrupted());
+        }
+    }
+
     public void testTopCountEmpty() {
         assertAxisReturns(
             "TopCount(Filter({[Promotion Media].[Media Type].members}, 1=0), 2, [Measures].[Unit Sales])",
@@ -12,6 +12,7 @@ package mondrian.olap.fun;
 import mondrian.olap.*;
 import mondrian.rolap.BatchTestCase;
 import mondrian.rolap.RolapConnection;
+import mondrian.rolap.SharedExpResultCache;
 import mondrian.server.Locus;
 import mondrian.spi.Dialect;
 import mondrian.test.SqlPattern;
@@ -136,6 +137,80 @@ public class NativizeSetFunDefTest extends BatchTestCase {
             + "from sales");
     }
 
+    /**
+     * Tests that the tuples of a nativized set are held in the cache shared
+     * between queries, and removed when cells are flushed.
+     */
+    public void testNativizedSetIsCachedAcrossQueries() {
+        final String mdx =
+            "select NativizeSet("
+            + "CrossJoin( "
+            + "gender.gender.members, "
+            + "[marital status].[marital status].members"
+            + ")) on 0 "
+            + "from sales";
+        final RolapConnection connection =
+            (RolapConnection) getTestContext().getConnection();
+        final SharedExpResultCache cache =
+            connection.getServer().getAggregationManager().sharedExpCache;
+        cache.clear();
+        final String expected =
+            TestContext.toString(getTestContext().executeQuery(mdx));
+        assertEquals(1, cache.size());
+        final int hitCount = cache.getHitCount();
+        assertEquals(
+            expected,
+            TestContext.toString(getTestContext().executeQuery(mdx)));
+        assertEquals(hitCount + 1, cache.getHitCount());
+
+        // A different slicer is a different context, so it misses.
+        getTestContext().executeQuery(mdx + " where [Time].[1997].[Q1]");
+        assertEquals(2, cache.size());
+
+        // Flushing the cells of the cube removes the cached tuples.
+        final CacheControl cacheControl = connection.getCacheControl(null);
+        final Cube salesCube = connection.getSchema().lookupCube("Sales", true);
+        cacheControl.flush(cacheControl.createMeasuresRegion(salesCube));
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Tests that, in a virtual cube, queries with measures from different
+     * base cubes do not share the tuples of a nativized set, because the
+     * SQL that computes the tuples joins to the base cubes of the measures.
+     */
+    public void testNativizedSetIsCachedPerBaseCube() {
+        final String mdx =
+            "select NativizeSet("
+            + "CrossJoin("
+            + "[Product].[Product Family].members, "
+            + "[Store].[Store Country].members"
+            + ")) on 0 "
+            + "from [Warehouse and Sales] where ";
+        final RolapConnection connection =
+            (RolapConnection) getTestContext().getConnection();
+        final SharedExpResultCache cache =
+            connection.getServer().getAggregationManager().sharedExpCache;
+        cache.clear();
+        final String expected =
+            TestContext.toString(
+                getTestContext().executeQuery(
+                    mdx + "[Measures].[Unit Sales]"));
+        assertEquals(1, cache.size());
+        final int hitCount = cache.getHitCount();
+        assertEquals(
+            expected,
+            TestContext.toString(
+                getTestContext().executeQuery(
+                    mdx + "[Measures].[Unit Sales]")));
+        assertEquals(hitCount + 1, cache.getHitCount());
+
+        // A measure of the Warehouse cube misses.
+        getTestContext().executeQuery(mdx + "[Measures].[Units Shipped]");
+        assertEquals(hitCount + 1, cache.getHitCount());
+        assertEquals(2, cache.size());
+    }
+
     public void testNativeResultLimitAtZero() {
         // This query will return exactly 6 rows:
         // {Female,Male,Agg}x{Married,Single}
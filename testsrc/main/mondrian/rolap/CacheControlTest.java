@@ -1283,6 +1283,51 @@ public class CacheControlTest extends FoodMartTestCase {
         assertCacheStateEquals(tag, expected, actual);
     }
 
+    /**
+     * Tests that when {@link MondrianProperties#SchemaRefreshInBackground} is
+     * set, flushing a schema keeps the existing schema in service until a
+     * new copy has loaded, and that the new copy answers queries.
+     */
+    public void testFlushSchemaInBackground() throws Exception {
+        propSaver.set(
+            MondrianProperties.instance().SchemaRefreshInBackground, true);
+        final String query =
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + "[Store].[USA].Children on 1\n"
+            + "from [Sales]";
+        final TestContext testContext = getTestContext().withFreshConnection();
+        final Result result = testContext.executeQuery(query);
+        final String expected = TestContext.toString(result);
+        final RolapSchema schema =
+            (RolapSchema) testContext.getConnection().getSchema();
+
+        testContext.getConnection().getCacheControl(null).flushSchema(schema);
+
+        // The old schema remains in the pool until its replacement is ready.
+        final long deadline = System.currentTimeMillis() + 60000;
+        RolapSchema newSchema = schema;
+        while (newSchema == schema) {
+            assertTrue(
+                "schema was not reloaded in time",
+                System.currentTimeMillis() < deadline);
+            for (RolapSchema s : RolapSchema.getRolapSchemas()) {
+                if (s != schema && s.equals(schema)) {
+                    newSchema = s;
+                }
+            }
+            Thread.sleep(10);
+        }
+        assertEquals(schema.getChecksum(), newSchema.getChecksum());
+
+        final TestContext testContext2 = getTestContext().withFreshConnection();
+        assertSame(newSchema, testContext2.getConnection().getSchema());
+        assertEquals(
+            expected,
+            TestContext.toString(testContext2.executeQuery(query)));
+        testContext2.close();
+        testContext.close();
+    }
+
     // todo: Test flushing a segment which is unconstrained
 
     // todo: Test flushing a segment where 2 or more axes are reduced. E.g.
@@ -0,0 +1,184 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.olap.Exp;
+import mondrian.olap.Literal;
+import mondrian.olap.Member;
+import mondrian.olap.fun.TestMember;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link ExpResultCache}.
+ */
+public class ExpResultCacheTest extends TestCase {
+    private static final int[] ORDINALS_0 = {0};
+    private static final int[] ORDINALS_0_1 = {0, 1};
+
+    /**
+     * Member that is equal to any member of the same name, and whose hash
+     * code is the same as every other member of its class, so that keys
+     * collide.
+     */
+    private static class CollidingMember extends TestMember {
+        private final String name;
+
+        CollidingMember(String name) {
+            super(name);
+            this.name = name;
+        }
+
+        public boolean equals(Object obj) {
+            return obj instanceof CollidingMember
+                && ((CollidingMember) obj).name.equals(name);
+        }
+
+        public int hashCode() {
+            return 7;
+        }
+    }
+
+    /**
+     * Tests that keys whose hashes are equal are kept apart, and that a
+     * member that is equal to, but not the same as, a key member matches.
+     */
+    public void testCollisions() {
+        final ExpResultCache cache = new ExpResultCache();
+        final Exp exp = Literal.createSymbol("e");
+        for (int i = 0; i < 100; i++) {
+            cache.put(
+                exp, ORDINALS_0, members(new CollidingMember("m" + i)),
+                "v" + i);
+        }
+        assertEquals(100, cache.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(
+                "v" + i,
+                cache.get(
+                    exp, ORDINALS_0, members(new CollidingMember("m" + i))));
+        }
+        assertNull(
+            cache.get(exp, ORDINALS_0, members(new CollidingMember("m100"))));
+        assertNull(
+            cache.get(
+                Literal.createSymbol("e"), ORDINALS_0,
+                members(new CollidingMember("m0"))));
+    }
+
+    /**
+     * Tests that keys with the same expression but different numbers of
+     * hierarchies are different, and that putting an existing key replaces
+     * its value.
+     */
+    public void testReplace() {
+        final ExpResultCache cache = new ExpResultCache();
+        final Exp exp = Literal.createSymbol("e");
+        final Member[] members =
+            members(new TestMember("a"), new TestMember("b"));
+        cache.put(exp, ORDINALS_0, members, "one");
+        cache.put(exp, ORDINALS_0_1, members, "two");
+        assertEquals(2, cache.size());
+        assertEquals("one", cache.get(exp, ORDINALS_0, members));
+        assertEquals("two", cache.get(exp, ORDINALS_0_1, members));
+        cache.put(exp, ORDINALS_0, members, "three");
+        assertEquals(2, cache.size());
+        assertEquals("three", cache.get(exp, ORDINALS_0, members));
+
+        // The cache copies the key members, so a later change to the
+        // evaluator's array does not change the key.
+        final Member a = members[0];
+        members[0] = new TestMember("c");
+        assertNull(cache.get(exp, ORDINALS_0, members));
+        members[0] = a;
+        assertEquals("three", cache.get(exp, ORDINALS_0, members));
+    }
+
+    /**
+     * Tests that every entry can still be found after the table has grown
+     * many times.
+     */
+    public void testResize() {
+        final ExpResultCache cache = new ExpResultCache();
+        final Exp[] exps = new Exp[1000];
+        final Member[][] memberArrays = new Member[exps.length][];
+        for (int i = 0; i < exps.length; i++) {
+            exps[i] = Literal.createSymbol("e" + i);
+            memberArrays[i] = members(new TestMember("m" + i));
+            cache.put(exps[i], ORDINALS_0, memberArrays[i], i);
+            assertEquals(i + 1, cache.size());
+        }
+        for (int i = 0; i < exps.length; i++) {
+            assertEquals(i, cache.get(exps[i], ORDINALS_0, memberArrays[i]));
+            assertNull(
+                cache.get(
+                    exps[i], ORDINALS_0,
+                    memberArrays[(i + 1) % exps.length]));
+        }
+    }
+
+    /**
+     * Tests that {@link ExpResultCache#clear()} removes every entry, and that
+     * the cache can be used again afterwards.
+     */
+    public void testClear() {
+        final ExpResultCache cache = new ExpResultCache();
+        final Member[] members = members(new TestMember("a"));
+        final Exp[] exps = new Exp[50];
+        for (int i = 0; i < exps.length; i++) {
+            exps[i] = Literal.createSymbol("e" + i);
+            cache.put(exps[i], ORDINALS_0, members, i);
+        }
+        assertEquals(50, cache.size());
+        cache.clear();
+        assertEquals(0, cache.size());
+        for (Exp exp : exps) {
+            assertNull(cache.get(exp, ORDINALS_0, members));
+        }
+        cache.put(exps[3], ORDINALS_0, members, "x");
+        assertEquals(1, cache.size());
+        assertEquals("x", cache.get(exps[3], ORDINALS_0, members));
+        assertNull(cache.get(exps[4], ORDINALS_0, members));
+    }
+
+    /**
+     * Tests that {@link ExpResultCache#putAll(ExpResultCache)} adds new
+     * entries and replaces the values of existing keys, including keys that
+     * collide.
+     */
+    public void testPutAll() {
+        final Exp exp = Literal.createSymbol("e");
+        final ExpResultCache cache1 = new ExpResultCache();
+        final ExpResultCache cache2 = new ExpResultCache();
+        for (int i = 0; i < 40; i++) {
+            cache1.put(
+                exp, ORDINALS_0, members(new CollidingMember("m" + i)), i);
+        }
+        for (int i = 20; i < 60; i++) {
+            cache2.put(
+                exp, ORDINALS_0, members(new CollidingMember("m" + i)), -i);
+        }
+        cache1.putAll(cache2);
+        assertEquals(60, cache1.size());
+        assertEquals(40, cache2.size());
+        for (int i = 0; i < 60; i++) {
+            assertEquals(
+                i < 20 ? i : -i,
+                cache1.get(
+                    exp, ORDINALS_0, members(new CollidingMember("m" + i))));
+        }
+    }
+
+    private static Member[] members(Member... members) {
+        return members;
+    }
+}
+
+// End ExpResultCacheTest.java
@@ -732,9 +732,9 @@ public class NonEmptyTest extends BatchTestCase {
     }
 
     /**
-     * Must not use native sql optimization because it chooses the wrong
-     * RolapStar in SqlContextConstraint/SqlConstraintUtils.  Test ensures that
-     * no exception is thrown.
+     * Native evaluation of the children of a member in a virtual cube must
+     * join to the fact table of each base cube, not to the star of whichever
+     * measure is current. Test ensures that no exception is thrown.
      */
     public void testVirtualCube() {
         if (MondrianProperties.instance().TestExpDependencies.get() > 0) {
@@ -763,6 +763,374 @@ public class NonEmptyTest extends BatchTestCase {
         c.run();
     }
 
+    /**
+     * Tests that the children of a member in a virtual cube, read natively
+     * with one sub-select for each base cube, are the same as when they are
+     * filtered in memory. Members must be kept if they are non-empty in any
+     * of the base cubes.
+     */
+    public void testVirtualCubeMemberChildren() {
+        if (MondrianProperties.instance().TestExpDependencies.get() > 0) {
+            return;
+        }
+        final String[] queries = {
+            "select NON EMPTY {[Measures].[Unit Sales],"
+            + " [Measures].[Warehouse Sales]} ON COLUMNS,\n"
+            + "NON EMPTY [Product].[Drink].Children ON ROWS\n"
+            + "from [Warehouse and Sales]\n"
+            + "where [Store].[USA].[CA]",
+            "select NON EMPTY {[Measures].[Units Ordered],"
+            + " [Measures].[Store Sales]} ON COLUMNS,\n"
+            + "NON EMPTY [Store].[USA].Children ON ROWS\n"
+            + "from [Warehouse and Sales]\n"
+            + "where [Product].[Food].[Baked Goods]",
+        };
+        for (String query : queries) {
+            getConnection().getCacheControl(null).flushSchemaCache();
+            propSaver.set(
+                MondrianProperties.instance().EnableNativeNonEmpty, false);
+            final String expected =
+                TestContext.toString(executeQuery(query));
+            getConnection().getCacheControl(null).flushSchemaCache();
+            propSaver.set(
+                MondrianProperties.instance().EnableNativeNonEmpty, true);
+            assertQueryReturns(query, expected);
+        }
+    }
+
+    /**
+     * Tests that native level members restricted to the context by a
+     * semi-join with the fact table are the same as those restricted by a
+     * join, and that if the level's key is the fact table's foreign key, the
+     * semi-join reads the foreign key from the fact table alone.
+     */
+    public void testLevelMembersSemiJoin() {
+        if (!getTestContext().getDialect().allowsInSubQuery()) {
+            return;
+        }
+        final String[] queries = {
+            "select {[Measures].[Unit Sales]} ON COLUMNS,\n"
+            + "NON EMPTY [Product].[Product Name].Members ON ROWS\n"
+            + "from [Sales]\n"
+            + "where [Store].[USA].[CA].[San Francisco]",
+            "select {[Measures].[Unit Sales]} ON COLUMNS,\n"
+            + "NON EMPTY [Customers].[City].Members ON ROWS\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997].[Q1].[2]",
+            "select {[Measures].[Unit Sales]} ON COLUMNS,\n"
+            + "NON EMPTY [Customers].[Name].Members ON ROWS\n"
+            + "from [Sales]\n"
+            + "where ([Time].[1997].[Q1].[2],"
+            + " [Store].[USA].[CA].[San Francisco])",
+        };
+        final List<String> expectedList = new ArrayList<String>();
+        for (String query : queries) {
+            getConnection().getCacheControl(null).flushSchemaCache();
+            expectedList.add(TestContext.toString(executeQuery(query)));
+        }
+        propSaver.set(
+            MondrianProperties.instance().NativeSemiJoinMinRowsPerMember, 1);
+        for (int i = 0; i < queries.length; i++) {
+            getConnection().getCacheControl(null).flushSchemaCache();
+            assertQueryReturns(queries[i], expectedList.get(i));
+        }
+
+        final String mdx =
+            "select {[Measures].[Unit Sales]} ON COLUMNS,\n"
+            + "NON EMPTY [Customers].[Name].Members ON ROWS\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997]";
+        final String mysqlSql =
+            "select `customer`.`country` as `c0`,"
+            + " `customer`.`state_province` as `c1`,"
+            + " `customer`.`city` as `c2`,"
+            + " `customer`.`customer_id` as `c3`,"
+            + " CONCAT(`customer`.`fname`, ' ', `customer`.`lname`) as `c4`,"
+            + " CONCAT(`customer`.`fname`, ' ', `customer`.`lname`) as `c5`,"
+            + " `customer`.`gender` as `c6`,"
+            + " `customer`.`marital_status` as `c7`,"
+            + " `customer`.`education` as `c8`,"
+            + " `customer`.`yearly_income` as `c9` "
+            + "from `customer` as `customer` "
+            + "where (`customer`.`customer_id` in ("
+            + "select `sales_fact_1997`.`customer_id` as `c0` "
+            + "from `sales_fact_1997` as `sales_fact_1997`,"
+            + " `time_by_day` as `time_by_day` "
+            + "where `sales_fact_1997`.`time_id` = `time_by_day`.`time_id`"
+            + " and `time_by_day`.`the_year` = 1997)"
+            + " or `customer`.`customer_id` is null) "
+            + "group by `customer`.`country`, `customer`.`state_province`,"
+            + " `customer`.`city`, `customer`.`customer_id`,"
+            + " CONCAT(`customer`.`fname`, ' ', `customer`.`lname`),"
+            + " `customer`.`gender`, `customer`.`marital_status`,"
+            + " `customer`.`education`, `customer`.`yearly_income` "
+            + "order by ISNULL(`customer`.`country`) ASC,"
+            + " `customer`.`country` ASC,"
+            + " ISNULL(`customer`.`state_province`) ASC,"
+            + " `customer`.`state_province` ASC,"
+            + " ISNULL(`customer`.`city`) ASC, `customer`.`city` ASC,"
+            + " ISNULL(CONCAT(`customer`.`fname`, ' ', `customer`.`lname`))"
+            + " ASC,"
+            + " CONCAT(`customer`.`fname`, ' ', `customer`.`lname`) ASC";
+        final SqlPattern[] patterns = {
+            new SqlPattern(
+                Dialect.DatabaseProduct.MYSQL,
+                mysqlSql,
+                "select `customer`.`country` as `c0`,"
+                + " `customer`.`state_province` as `c1`,"
+                + " `customer`.`city` as `c2`,"
+                + " `customer`.`customer_id` as `c3`")
+        };
+        getConnection().getCacheControl(null).flushSchemaCache();
+        assertQuerySql(mdx, patterns);
+    }
+
+    /**
+     * Tests that a top-N for each member of a level, using Generate and
+     * TopCount, returns the same result natively as in the interpreter.
+     */
+    public void testNativeGenerateTopCount() {
+        propSaver.set(MondrianProperties.instance().EnableNativeTopCount, true);
+        checkNative(
+            0,
+            8,
+            "select {[Measures].[Unit Sales]} on columns,\n"
+            + "NON EMPTY Generate(\n"
+            + "  Descendants([Store].[USA].[CA], [Store].[Store City]),\n"
+            + "  TopCount([Customers].[Name].Members, 2,"
+            + " [Measures].[Unit Sales])) on rows\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997].[Q1]",
+            null,
+            true);
+    }
+
+    /**
+     * Tests that Extract of a non-empty crossjoin returns the same result
+     * natively as in the interpreter.
+     */
+    public void testNativeExtract() {
+        propSaver.set(
+            MondrianProperties.instance().EnableNativeCrossJoin, true);
+        checkNative(
+            0,
+            4,
+            "select {[Measures].[Unit Sales]} on columns,\n"
+            + "NON EMPTY Extract(\n"
+            + "  NonEmptyCrossJoin(\n"
+            + "    Descendants([Store].[USA].[CA], [Store].[Store City]),\n"
+            + "    [Customers].[Name].Members),\n"
+            + "  [Store]) on rows\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997].[Q1]",
+            null,
+            true);
+    }
+
+    /**
+     * Tests that Order, and Head and Subset of an Order, return the same
+     * result natively as in the interpreter.
+     */
+    public void testNativeOrder() {
+        propSaver.set(MondrianProperties.instance().EnableNativeOrder, true);
+        checkNative(
+            0,
+            4,
+            "select {[Measures].[Unit Sales]} on columns,\n"
+            + "NON EMPTY Order(\n"
+            + "  Descendants([Store].[USA].[CA], [Store].[Store City]),\n"
+            + "  [Measures].[Unit Sales], BDESC) on rows\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997].[Q1]",
+            null,
+            true);
+        checkNative(
+            0,
+            10,
+            "select {[Measures].[Unit Sales]} on columns,\n"
+            + "NON EMPTY Head(\n"
+            + "  Order([Customers].[Name].Members,"
+            + " [Measures].[Unit Sales], BDESC),\n"
+            + "  10) on rows\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997].[Q1]",
+            null,
+            true);
+        checkNative(
+            0,
+            10,
+            "select {[Measures].[Unit Sales]} on columns,\n"
+            + "NON EMPTY Subset(\n"
+            + "  Order([Customers].[Name].Members,"
+            + " [Measures].[Unit Sales], BDESC),\n"
+            + "  5, 10) on rows\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997].[Q1]",
+            null,
+            true);
+    }
+
+    /**
+     * Tests that a page of a native Order and the whole Order are cached
+     * separately. If the dialect does not support paging in SQL, the page is
+     * not part of the SQL, but it must still be part of the cache key;
+     * otherwise the whole Order would return the page, and a later page
+     * would return the whole Order.
+     */
+    public void testNativeOrderPageIsCachedSeparately() {
+        propSaver.set(MondrianProperties.instance().EnableNativeOrder, true);
+        final String order =
+            "Order([Customers].[Name].Members, [Measures].[Unit Sales], BDESC)";
+        final String head = "Head(" + order + ", 10)";
+        final String subset = "Subset(" + order + ", 5, 10)";
+        getConnection().getCacheControl(null).flushSchemaCache();
+        final Connection con =
+            getTestContext().withSchemaPool(true).getConnection();
+        final RolapNativeRegistry reg = getRegistry(con);
+        reg.useHardCache(true);
+        try {
+            final List<Position> headRows =
+                executeQuery(orderQuery(head), con).getAxes()[1]
+                    .getPositions();
+            final List<Position> orderRows =
+                executeQuery(orderQuery(order), con).getAxes()[1]
+                    .getPositions();
+            final List<Position> headRows2 =
+                executeQuery(orderQuery(head), con).getAxes()[1]
+                    .getPositions();
+            final List<Position> subsetRows =
+                executeQuery(orderQuery(subset), con).getAxes()[1]
+                    .getPositions();
+            assertEquals(10, headRows.size());
+            assertTrue(orderRows.size() > 15);
+            assertEquals(10, headRows2.size());
+            assertEquals(10, subsetRows.size());
+            for (int i = 0; i < 10; i++) {
+                final String name = uniqueName(orderRows.get(i));
+                assertEquals(name, uniqueName(headRows.get(i)));
+                assertEquals(name, uniqueName(headRows2.get(i)));
+                assertEquals(
+                    uniqueName(orderRows.get(i + 5)),
+                    uniqueName(subsetRows.get(i)));
+            }
+        } finally {
+            reg.useHardCache(false);
+        }
+    }
+
+    private static String orderQuery(String set) {
+        return "select {[Measures].[Unit Sales]} on columns,\n"
+            + "NON EMPTY " + set + " on rows\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997].[Q1]";
+    }
+
+    private static String uniqueName(Position position) {
+        return position.get(0).getUniqueName();
+    }
+
+    /**
+     * Tests that Hierarchize of a crossjoin is evaluated natively.
+     */
+    public void testNativeHierarchize() {
+        propSaver.set(MondrianProperties.instance().EnableNativeOrder, true);
+        propSaver.set(
+            MondrianProperties.instance().EnableNativeCrossJoin, true);
+        checkNative(
+            0,
+            20,
+            "select non empty Hierarchize("
+            + "CrossJoin([Store].[Store Name].members, "
+            + STORE_TYPE_LEVEL + ".members)) on rows, "
+            + "{[Measures].[Store Sqft]} on columns "
+            + "from [Store]",
+            null,
+            true);
+    }
+
+    /**
+     * Tests that Count of the non-empty tuples of a set, and Sum of a stored
+     * measure over a set, are computed in SQL.
+     */
+    public void testNativeCountAndSum() {
+        propSaver.set(
+            MondrianProperties.instance().EnableNativeAggregate, true);
+        checkNative(
+            0,
+            4,
+            "select {[Measures].[Unit Sales]} on columns,\n"
+            + "Filter(\n"
+            + "  Descendants([Store].[USA].[CA], [Store].[Store City]),\n"
+            + "  Count([Customers].[Name].Members, EXCLUDEEMPTY) > 0)"
+            + " on rows\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997].[Q1]",
+            null,
+            true);
+        checkNative(
+            0,
+            4,
+            "with member [Measures].[CA Sales] as\n"
+            + "  'Sum(Descendants([Store].[USA].[CA], [Store].[Store City]),"
+            + " [Measures].[Unit Sales])'\n"
+            + "select {[Measures].[CA Sales]} on columns,\n"
+            + "{[Time].[1997].Children} on rows\n"
+            + "from [Sales]",
+            null,
+            true);
+    }
+
+    /**
+     * Tests that a Sum computed in SQL is cached across queries, and that
+     * flushing the cells of the cube removes it from the cache, so that the
+     * next query executes the SQL again.
+     */
+    public void testNativeSumFlushedByCacheControl() {
+        propSaver.set(
+            MondrianProperties.instance().EnableNativeAggregate, true);
+        final String mdx =
+            "with member [Measures].[CA Sales] as\n"
+            + "  'Sum(Descendants([Store].[USA].[CA], [Store].[Store City]),"
+            + " [Measures].[Unit Sales])'\n"
+            + "select {[Measures].[CA Sales]} on columns,\n"
+            + "{[Time].[1997].Children} on rows\n"
+            + "from [Sales]";
+        final RolapConnection connection =
+            (RolapConnection) getTestContext().getConnection();
+        connection.getServer().getAggregationManager().sharedExpCache
+            .clear();
+        final int[] sqlCount = {0};
+        RolapUtil.setHook(
+            new RolapUtil.ExecuteQueryHook() {
+                public void onExecuteQuery(String sql) {
+                    if (sql.startsWith("select sum(")) {
+                        ++sqlCount[0];
+                    }
+                }
+            });
+        try {
+            final String expected =
+                TestContext.toString(getTestContext().executeQuery(mdx));
+            final int firstCount = sqlCount[0];
+            assertTrue(firstCount > 0);
+
+            // Second time, the sums come from the cache.
+            assertQueryReturns(mdx, expected);
+            assertEquals(firstCount, sqlCount[0]);
+
+            // After the measures region is flushed, the SQL runs again.
+            final CacheControl cacheControl =
+                connection.getCacheControl(null);
+            final Cube salesCube =
+                connection.getSchema().lookupCube("Sales", true);
+            cacheControl.flush(cacheControl.createMeasuresRegion(salesCube));
+            assertQueryReturns(mdx, expected);
+            assertEquals(2 * firstCount, sqlCount[0]);
+        } finally {
+            RolapUtil.setHook(null);
+        }
+    }
+
     /**
      *  verifies that redundant set braces do not prevent native evaluation
      *  for example, {[Store].[Store Name].members} and
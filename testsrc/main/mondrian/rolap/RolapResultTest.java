@@ -9,7 +9,7 @@
 */
 package mondrian.rolap;
 
-import mondrian.olap.Result;
+import mondrian.olap.*;
 import mondrian.rolap.aggmatcher.AggTableTestCase;
 import mondrian.test.TestContext;
 
@@ -322,6 +322,92 @@ Axis #2:
             + "Row #2: \n"
             + "Row #2: \n");
     }
+
+    /**
+     * Tests that evaluating cells in several threads
+     * ({@link MondrianProperties#EvaluateParallelism}) gives the same result
+     * as evaluating them in one thread. The first query uses a named set
+     * that is evaluated before the cells, so can be evaluated in parallel;
+     * the second uses a named set that is only evaluated while evaluating
+     * cells, so must fall back to serial evaluation.
+     */
+    public void testParallelEvaluation() {
+        final TestContext testContext = TestContext.instance();
+        checkParallelEvaluation(
+            testContext,
+            "with set [Top Stores] as\n"
+            + "  'TopCount([Store].[Store Name].Members, 5,"
+            + " [Measures].[Unit Sales])'\n"
+            + "member [Measures].[Profit Ratio] as\n"
+            + "  '[Measures].[Store Sales] / [Measures].[Store Cost]',"
+            + " format_string = '0.000'\n"
+            + "member [Measures].[Rank] as\n"
+            + "  'Rank([Store].CurrentMember, [Top Stores])'\n"
+            + "select {[Measures].[Unit Sales], [Measures].[Profit Ratio],\n"
+            + "  [Measures].[Rank]} on columns,\n"
+            + "  Crossjoin([Top Stores], [Time].[Quarter].Members) on rows\n"
+            + "from [Sales]");
+        checkParallelEvaluation(
+            testContext,
+            "with set [Top Stores] as\n"
+            + "  'TopCount([Store].[Store Name].Members, 5,"
+            + " [Measures].[Unit Sales])'\n"
+            + "member [Measures].[Top Count] as\n"
+            + "  'Count(Filter([Top Stores],"
+            + " [Measures].[Unit Sales] > 10000))'\n"
+            + "select {[Measures].[Unit Sales], [Measures].[Top Count]}"
+            + " on columns,\n"
+            + "  Crossjoin([Store].[Store State].Members,\n"
+            + "    [Gender].[Gender].Members) on rows\n"
+            + "from [Sales]");
+    }
+
+    /**
+     * Tests parallel evaluation of a calculated member that evaluates a
+     * NON EMPTY crossjoin and a tuple. The chunks share the query's calcs and
+     * the query's evaluation cache, which the crossjoin writes to.
+     */
+    public void testParallelNonEmptyCrossJoin() {
+        final TestContext testContext = TestContext.instance();
+        checkParallelEvaluation(
+            testContext,
+            "with member [Measures].[Customer Count] as\n"
+            + "  'Count(NonEmptyCrossJoin([Customers].[Name].Members,\n"
+            + "    [Product].[Product Family].Members))'\n"
+            + "member [Measures].[Female Sales] as\n"
+            + "  '([Measures].[Unit Sales], [Gender].[F])'\n"
+            + "select {[Measures].[Unit Sales], [Measures].[Customer Count],\n"
+            + "  [Measures].[Female Sales]} on columns,\n"
+            + "  non empty Crossjoin([Store].[Store City].Members,\n"
+            + "    [Time].[Quarter].Members) on rows\n"
+            + "from [Sales]");
+    }
+
+    private void checkParallelEvaluation(TestContext testContext, String mdx) {
+        propSaver.set(MondrianProperties.instance().EvaluateParallelism, 1);
+        flushSales(testContext);
+        final String serial =
+            TestContext.toString(testContext.executeQuery(mdx));
+
+        propSaver.set(MondrianProperties.instance().EvaluateParallelism, 4);
+        flushSales(testContext);
+        final String parallel =
+            TestContext.toString(testContext.executeQuery(mdx));
+        assertEquals(serial, parallel);
+
+        // Again, with the cells in cache.
+        assertEquals(
+            serial,
+            TestContext.toString(testContext.executeQuery(mdx)));
+    }
+
+    private void flushSales(TestContext testContext) {
+        final Connection connection = testContext.getConnection();
+        final CacheControl cacheControl = connection.getCacheControl(null);
+        final Cube salesCube =
+            connection.getSchema().lookupCube("Sales", true);
+        cacheControl.flush(cacheControl.createMeasuresRegion(salesCube));
+    }
 }
 
 // End RolapResultTest.java
@@ -11,6 +11,7 @@
 package mondrian.rolap;
 
 import mondrian.olap.*;
+import mondrian.server.Locus;
 import mondrian.test.FoodMartTestCase;
 import mondrian.test.TestContext;
 
@@ -182,6 +183,153 @@ public class RolapSchemaReaderTest extends FoodMartTestCase {
             connection.close();
         }
     }
+
+    /**
+     * Tests that a hierarchy whose members have been loaded into a
+     * {@link MemberSnapshot} returns the same members as it did when members
+     * were read on demand, and that members can be looked up by unique name
+     * and by key.
+     */
+    public void testHierarchySnapshot() {
+        final RolapConnection connection =
+            (RolapConnection) getTestContext().withFreshConnection()
+                .getConnection();
+        try {
+            final RolapCube cube =
+                (RolapCube) connection.getSchema().lookupCube("Sales", true);
+            RolapHierarchy hierarchy = null;
+            for (RolapHierarchy h : cube.getHierarchies()) {
+                if (h.getName().equals("Store")) {
+                    hierarchy = ((RolapCubeHierarchy) h).getRolapHierarchy();
+                }
+            }
+            assertNotNull(hierarchy);
+            final RolapHierarchy storeHierarchy = hierarchy;
+            final SmartMemberReader reader =
+                (SmartMemberReader) storeHierarchy.getMemberReader();
+            Locus.execute(
+                connection,
+                "RolapSchemaReaderTest.testHierarchySnapshot",
+                new Locus.Action<Void>() {
+                    public Void execute() {
+                        final RolapLevel stateLevel =
+                            (RolapLevel) storeHierarchy.getLevels()[2];
+                        final List<RolapMember> states =
+                            new ArrayList<RolapMember>(
+                                reader.getMembersInLevel(stateLevel));
+
+                        // Too many members for a snapshot.
+                        assertFalse(reader.loadSnapshot(5));
+                        assertNull(reader.getSnapshot());
+
+                        assertTrue(reader.loadSnapshot(10000));
+                        final MemberSnapshot snapshot = reader.getSnapshot();
+                        assertNotNull(snapshot);
+                        assertEquals(
+                            snapshot.size(), reader.getMembers().size());
+                        assertEquals(
+                            states, reader.getMembersInLevel(stateLevel));
+
+                        final RolapMember california =
+                            snapshot.lookupMember("[Store].[USA].[CA]");
+                        assertNotNull(california);
+                        assertEquals("CA", california.getName());
+                        assertSame(
+                            california,
+                            reader.getMemberByKey(
+                                stateLevel,
+                                Collections.<Comparable>singletonList(
+                                    "CA")));
+
+                        // Flushing the cache discards the snapshot.
+                        ((MemberCacheHelper) reader.getMemberCache())
+                            .flushCache();
+                        assertNull(reader.getSnapshot());
+                        return null;
+                    }
+                });
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Tests that members loaded into a {@link MemberSnapshot} have the names
+     * and captions of a level's name and caption columns, the same as
+     * members read on demand.
+     */
+    public void testHierarchySnapshotNamesAndCaptions() {
+        final TestContext testContext =
+            TestContext.instance().createSubstitutingCube(
+                "Sales",
+                "<Dimension name=\"Store Name\" foreignKey=\"store_id\">\n"
+                + "  <Hierarchy hasAll=\"true\" primaryKey=\"store_id\">\n"
+                + "    <Table name=\"store\"/>\n"
+                + "    <Level name=\"Store\" column=\"store_id\"\n"
+                + "        nameColumn=\"store_name\"\n"
+                + "        captionColumn=\"store_city\"\n"
+                + "        uniqueMembers=\"true\"/>\n"
+                + "  </Hierarchy>\n"
+                + "</Dimension>");
+        final RolapConnection connection =
+            (RolapConnection) testContext.withFreshConnection()
+                .getConnection();
+        try {
+            final RolapCube cube =
+                (RolapCube) connection.getSchema().lookupCube("Sales", true);
+            RolapHierarchy hierarchy = null;
+            for (RolapHierarchy h : cube.getHierarchies()) {
+                if (h.getName().equals("Store Name")) {
+                    hierarchy = ((RolapCubeHierarchy) h).getRolapHierarchy();
+                }
+            }
+            assertNotNull(hierarchy);
+            final RolapHierarchy storeNameHierarchy = hierarchy;
+            final SmartMemberReader reader =
+                (SmartMemberReader) storeNameHierarchy.getMemberReader();
+            Locus.execute(
+                connection,
+                "RolapSchemaReaderTest.testHierarchySnapshotNamesAndCaptions",
+                new Locus.Action<Void>() {
+                    public Void execute() {
+                        final RolapLevel storeLevel =
+                            (RolapLevel) storeNameHierarchy.getLevels()[1];
+                        final List<String> expected = new ArrayList<String>();
+                        for (RolapMember member
+                            : reader.getMembersInLevel(storeLevel))
+                        {
+                            expected.add(
+                                member.getUniqueName() + ":"
+                                + member.getName() + ":"
+                                + member.getCaption());
+                        }
+                        assertTrue(
+                            expected.contains(
+                                "[Store Name].[Store 1]:Store 1:Acapulco"));
+
+                        assertTrue(reader.loadSnapshot(10000));
+                        final MemberSnapshot snapshot = reader.getSnapshot();
+                        assertNotNull(snapshot);
+                        final List<String> actual = new ArrayList<String>();
+                        for (RolapMember member
+                            : reader.getMembersInLevel(storeLevel))
+                        {
+                            assertSame(
+                                member,
+                                snapshot.lookupMember(member.getUniqueName()));
+                            actual.add(
+                                member.getUniqueName() + ":"
+                                + member.getName() + ":"
+                                + member.getCaption());
+                        }
+                        assertEquals(expected, actual);
+                        return null;
+                    }
+                });
+        } finally {
+            connection.close();
+        }
+    }
 }
 
 // End RolapSchemaReaderTest.java
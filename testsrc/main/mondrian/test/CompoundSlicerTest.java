@@ -4,13 +4,22 @@
 // http://www.eclipse.org/legal/epl-v10.html.
 // You must accept the terms of that agreement to use this software.
 //
-// Copyright (C) 2009-2011 Pentaho and others
+// Copyright (C) 2009-2012 Pentaho and others
 // All Rights Reserved.
 */
 package mondrian.test;
 
+import mondrian.rolap.BatchTestCase;
+import mondrian.rolap.RolapCube;
+import mondrian.rolap.RolapStar;
+import mondrian.rolap.StarPredicate;
+import mondrian.rolap.agg.AggregationKey;
+import mondrian.rolap.agg.ValueColumnPredicate;
+import mondrian.spi.Dialect;
 import mondrian.util.Bug;
 
+import java.util.Collections;
+
 /**
  * Tests the expressions used for calculated members. Please keep in sync
  * with the actual code used by the wizard.
@@ -18,7 +27,7 @@ import mondrian.util.Bug;
  * @author jhyde
  * @since 15 May, 2009
  */
-public class CompoundSlicerTest extends FoodMartTestCase {
+public class CompoundSlicerTest extends BatchTestCase {
     /**
      * Creates a CompoundSlicerTest.
      */
@@ -642,6 +651,153 @@ public class CompoundSlicerTest extends FoodMartTestCase {
             + "Row #1: 352\n");
     }
 
+    /**
+     * Tests that a compound slicer that is joined to the query as an inline
+     * table gives the same results as one generated as an IN list.
+     */
+    public void testCompoundSlicerInlineTable() {
+        propSaver.set(
+            propSaver.properties.CompoundSlicerInlineTableThreshold, 2);
+
+        // Members of one level, so the predicate constrains one column.
+        final String query =
+            "select [Measures].[Customer Count] on 0,\n"
+            + "{[Store].[USA].[CA], [Store].[USA].[OR]} on 1\n"
+            + "from [Sales]\n"
+            + "where {[Product].[Drink], [Product].[Food]}";
+        assertQueryReturns(
+            query,
+            "Axis #0:\n"
+            + "{[Product].[Drink]}\n"
+            + "{[Product].[Food]}\n"
+            + "Axis #1:\n"
+            + "{[Measures].[Customer Count]}\n"
+            + "Axis #2:\n"
+            + "{[Store].[USA].[CA]}\n"
+            + "{[Store].[USA].[OR]}\n"
+            + "Row #0: 2,692\n"
+            + "Row #1: 1,036\n");
+        final String mysqlSql =
+            "select `store`.`store_state` as `c0`,"
+            + " `time_by_day`.`the_year` as `c1`,"
+            + " count(distinct `sales_fact_1997`.`customer_id`) as `m0` "
+            + "from `store` as `store`,"
+            + " `sales_fact_1997` as `sales_fact_1997`,"
+            + " `time_by_day` as `time_by_day`,"
+            + " `product_class` as `product_class`,"
+            + " `product` as `product`,"
+            + " (select 'Drink' as `c0` union all"
+            + " select 'Food' as `c0`) as `slicer0` "
+            + "where `sales_fact_1997`.`store_id` = `store`.`store_id`"
+            + " and `store`.`store_state` in ('CA', 'OR')"
+            + " and `sales_fact_1997`.`time_id` = `time_by_day`.`time_id`"
+            + " and `time_by_day`.`the_year` = 1997"
+            + " and `sales_fact_1997`.`product_id` = `product`.`product_id`"
+            + " and `product`.`product_class_id`"
+            + " = `product_class`.`product_class_id`"
+            + " and `product_class`.`product_family` = `slicer0`.`c0` "
+            + "group by `store`.`store_state`, `time_by_day`.`the_year`";
+        assertQuerySql(
+            query,
+            new SqlPattern[] {
+                new SqlPattern(
+                    Dialect.DatabaseProduct.MYSQL, mysqlSql, mysqlSql)
+            });
+
+        // Members at different depths. The quarter does not constrain the
+        // month column.
+        final String mysqlSql2 =
+            "select `store`.`store_state` as `c0`,"
+            + " count(distinct `sales_fact_1997`.`customer_id`) as `m0` "
+            + "from `store` as `store`,"
+            + " `sales_fact_1997` as `sales_fact_1997`,"
+            + " `time_by_day` as `time_by_day`,"
+            + " (select 1997 as `c0`, 'Q1' as `c1`, null as `c2` union all"
+            + " select 1997 as `c0`, 'Q2' as `c1`, 4 as `c2`) as `slicer0` "
+            + "where `sales_fact_1997`.`store_id` = `store`.`store_id`"
+            + " and `store`.`store_state` in ('CA', 'OR')"
+            + " and `sales_fact_1997`.`time_id` = `time_by_day`.`time_id`"
+            + " and `time_by_day`.`the_year` = `slicer0`.`c0`"
+            + " and `time_by_day`.`quarter` = `slicer0`.`c1`"
+            + " and (`slicer0`.`c2` is null"
+            + " or `time_by_day`.`month_of_year` = `slicer0`.`c2`) "
+            + "group by `store`.`store_state`";
+        assertQuerySql(
+            "select [Measures].[Customer Count] on 0,\n"
+            + "{[Store].[USA].[CA], [Store].[USA].[OR]} on 1\n"
+            + "from [Sales]\n"
+            + "where {[Time].[1997].[Q1], [Time].[1997].[Q2].[4]}",
+            new SqlPattern[] {
+                new SqlPattern(
+                    Dialect.DatabaseProduct.MYSQL, mysqlSql2, mysqlSql2)
+            });
+
+        // Tuples over several columns and at different depths.
+        assertQueryReturns(
+            "select [Measures].[Customer Count] on 0,\n"
+            + "{[Store].[USA].[CA], [Store].[USA].[OR].[Portland]} on 1\n"
+            + "from [Sales]\n"
+            + "where {\n"
+            + "  ([Product].[Food], [Time].[1997].[Q1]),\n"
+            + "  ([Product].[Drink], [Time].[1997].[Q2].[4])}",
+            "Axis #0:\n"
+            + "{[Product].[Food], [Time].[1997].[Q1]}\n"
+            + "{[Product].[Drink], [Time].[1997].[Q2].[4]}\n"
+            + "Axis #1:\n"
+            + "{[Measures].[Customer Count]}\n"
+            + "Axis #2:\n"
+            + "{[Store].[USA].[CA]}\n"
+            + "{[Store].[USA].[OR].[Portland]}\n"
+            + "Row #0: 1,175\n"
+            + "Row #1: 352\n");
+    }
+
+    /**
+     * Tests that a compound predicate that is joined to the query as an
+     * inline table is identified in the segment key by a digest of its
+     * tuples, not by its SQL.
+     */
+    public void testCompoundSlicerInlineTableKey() {
+        propSaver.set(
+            propSaver.properties.CompoundSlicerInlineTableThreshold, 2);
+        final RolapStar star =
+            ((RolapCube) getConnection().getSchema().lookupCube(
+                "Sales", true)).getStar();
+        final RolapStar.Column column =
+            star.lookupColumn("product_class", "product_family");
+        final StarPredicate drinkFood =
+            new ValueColumnPredicate(column, "Drink").or(
+                new ValueColumnPredicate(column, "Food"));
+        final StarPredicate drinkFood2 =
+            new ValueColumnPredicate(column, "Drink").or(
+                new ValueColumnPredicate(column, "Food"));
+        final StarPredicate drinkNonConsumable =
+            new ValueColumnPredicate(column, "Drink").or(
+                new ValueColumnPredicate(column, "Non-Consumable"));
+        final String key =
+            AggregationKey.getCompoundPredicateStringList(
+                star, Collections.singletonList(drinkFood)).get(0);
+        assertTrue(key, key.contains(") in (2 tuples, SHA-256 "));
+        assertFalse(key, key.contains("Drink"));
+        assertEquals(
+            key,
+            AggregationKey.getCompoundPredicateStringList(
+                star, Collections.singletonList(drinkFood2)).get(0));
+        assertFalse(
+            key.equals(
+                AggregationKey.getCompoundPredicateStringList(
+                    star,
+                    Collections.singletonList(drinkNonConsumable)).get(0)));
+
+        // Below the threshold, the predicate is identified by its SQL.
+        propSaver.set(
+            propSaver.properties.CompoundSlicerInlineTableThreshold, 3);
+        final String sqlKey =
+            AggregationKey.getCompoundPredicateStringList(
+                star, Collections.singletonList(drinkFood)).get(0);
+        assertTrue(sqlKey, sqlKey.contains("Drink"));
+    }
+
     /**
      * Tests compound slicer, and other rollups, with AVG function.
      *
@@ -13,10 +13,12 @@ import mondrian.olap.Util;
 import mondrian.spi.Dialect;
 import mondrian.spi.DialectManager;
 import mondrian.spi.impl.*;
+import mondrian.util.DelegatingInvocationHandler;
 
 import junit.framework.AssertionFailedError;
 import junit.framework.TestCase;
 
+import java.lang.reflect.Proxy;
 import java.sql.*;
 import java.util.*;
 import javax.sql.DataSource;
@@ -509,6 +511,145 @@ public class DialectTest extends TestCase {
         }
     }
 
+    public void testAllowsInSubQuery() {
+        String sql =
+            dialectize(
+                "SELECT [product_id]\n"
+                + "FROM [product]\n"
+                + "WHERE [product_id] IN (\n"
+                + "  SELECT [product_id] FROM [sales_fact_1997]\n"
+                + "  WHERE [time_id] = 371)");
+        if (getDialect().allowsInSubQuery()) {
+            assertQuerySucceeds(sql);
+        } else {
+            // hive
+            assertQueryFails(sql, new String[] {"(?s).*"});
+        }
+        if (getDialect().allowsInSubQuery()
+            && getDialect().supportsMultiValueInExpr())
+        {
+            assertQuerySucceeds(
+                dialectize(
+                    "SELECT [product_id]\n"
+                    + "FROM [product]\n"
+                    + "WHERE ([product_id], [product_class_id]) IN (\n"
+                    + "  SELECT [product_id], 1 FROM [sales_fact_1997])"));
+        }
+    }
+
+    public void testSupportsWindowFunctions() {
+        final Dialect dialect = getDialect();
+        if (!dialect.supportsWindowFunctions()) {
+            return;
+        }
+        String rowNumber =
+            dialect.generateRowNumber(
+                Collections.singletonList("[store_id]"),
+                Collections.singletonList(
+                    dialect.generateOrderItem(
+                        "SUM([unit_sales])", true, false, true)));
+        assertQuerySucceeds(
+            dialectize(
+                "SELECT * FROM (\n"
+                + "  SELECT [store_id], [product_id], " + rowNumber
+                + " AS [rn]\n"
+                + "  FROM [sales_fact_1997]\n"
+                + "  GROUP BY [store_id], [product_id]) "
+                + (dialect.allowsAs() ? "AS " : "")
+                + "[w]\n"
+                + "WHERE [rn] <= 3"));
+    }
+
+    public void testSupportsLimitOffset() throws SQLException {
+        // Dialects that support paging in recent versions only.
+        assertTrue(
+            new DerbyDialect(
+                connectionWithVersion("Apache Derby", "10.5.3.0 - (802917)"))
+                .supportsLimitOffset());
+        assertFalse(
+            new DerbyDialect(
+                connectionWithVersion("Apache Derby", "10.4.2.0 - (689064)"))
+                .supportsLimitOffset());
+        final Dialect oracle =
+            new OracleDialect(
+                connectionWithVersion(
+                    "Oracle",
+                    "Oracle Database 12c Enterprise Edition"
+                    + " Release 12.1.0.1.0 - 64bit Production"));
+        assertTrue(oracle.supportsLimitOffset());
+        assertEquals(
+            "offset 20 rows fetch next 10 rows only",
+            oracle.generateLimitOffset(20, 10));
+        assertEquals(
+            "offset 3 rows",
+            oracle.generateLimitOffset(3, -1));
+        assertFalse(
+            new OracleDialect(
+                connectionWithVersion(
+                    "Oracle",
+                    "Oracle Database 11g Enterprise Edition"
+                    + " Release 11.2.0.1.0 - 64bit Production"))
+                .supportsLimitOffset());
+        assertTrue(
+            new MicrosoftSqlServerDialect(
+                connectionWithVersion("Microsoft SQL Server", "11.00.2100"))
+                .supportsLimitOffset());
+        assertFalse(
+            new MicrosoftSqlServerDialect(
+                connectionWithVersion("Microsoft SQL Server", "10.50.1600"))
+                .supportsLimitOffset());
+        assertTrue(
+            new Db2Dialect(connectionWithVersion("DB2/LINUXX8664", "SQL11010"))
+                .supportsLimitOffset());
+        assertFalse(
+            new Db2Dialect(connectionWithVersion("DB2/LINUXX8664", "SQL09070"))
+                .supportsLimitOffset());
+
+        // Dialects that always support paging.
+        final Dialect dialect = getDialect();
+        switch (dialect.getDatabaseProduct()) {
+        case MYSQL:
+        case POSTGRESQL:
+        case VERTICA:
+            assertTrue(dialect.supportsLimitOffset());
+            break;
+        }
+        if (!dialect.supportsLimitOffset()) {
+            return;
+        }
+
+        // Run paged queries on the test database.
+        assertQuerySucceeds(
+            dialectize(
+                "SELECT [store_id], [unit_sales] FROM [sales_fact_1997]\n"
+                + "ORDER BY [unit_sales] DESC, [store_id] "
+                + dialect.generateLimitOffset(5, 10)));
+        assertQuerySucceeds(
+            dialectize(
+                "SELECT [store_id] FROM [store] ORDER BY [store_id] "
+                + dialect.generateLimitOffset(3, -1)));
+    }
+
+    /**
+     * Tests that dialects compare database versions numerically. PostgreSQL
+     * introduced window functions in 8.4, so 10.4 supports them, although
+     * the string "10.4" sorts before "8.4".
+     */
+    public void testProductVersion() throws SQLException {
+        assertTrue(
+            new PostgreSqlDialect(
+                connectionWithVersion("PostgreSQL", "10.4"))
+                .supportsWindowFunctions());
+        assertTrue(
+            new PostgreSqlDialect(
+                connectionWithVersion("PostgreSQL", "8.4.2"))
+                .supportsWindowFunctions());
+        assertFalse(
+            new PostgreSqlDialect(
+                connectionWithVersion("PostgreSQL", "8.3.7"))
+                .supportsWindowFunctions());
+    }
+
     public void testResultSetConcurrency() {
         int[] Types = {
             ResultSet.TYPE_FORWARD_ONLY,
@@ -1074,6 +1215,92 @@ public class DialectTest extends TestCase {
             return false;
         }
     }
+
+    /**
+     * Returns a connection to the test database whose metadata reports a
+     * given product name and version. Use it to create a dialect for a
+     * database other than the test database.
+     *
+     * @param productName Product name
+     * @param productVersion Product version
+     * @return Connection
+     * @throws SQLException on error
+     */
+    private Connection connectionWithVersion(
+        String productName,
+        String productVersion)
+        throws SQLException
+    {
+        final DatabaseMetaData metaData =
+            (DatabaseMetaData) Proxy.newProxyInstance(
+                null,
+                new Class<?>[] {DatabaseMetaData.class},
+                new MetaDataHandler(
+                    getConnection().getMetaData(),
+                    productName,
+                    productVersion));
+        return (Connection) Proxy.newProxyInstance(
+            null,
+            new Class<?>[] {Connection.class},
+            new ConnectionHandler(getConnection(), metaData));
+    }
+
+    /**
+     * Handler for a connection whose metadata is replaced.
+     */
+    public static class ConnectionHandler
+        extends DelegatingInvocationHandler
+    {
+        private final Connection connection;
+        private final DatabaseMetaData metaData;
+
+        ConnectionHandler(Connection connection, DatabaseMetaData metaData) {
+            this.connection = connection;
+            this.metaData = metaData;
+        }
+
+        protected Object getTarget() {
+            return connection;
+        }
+
+        public DatabaseMetaData getMetaData() {
+            return metaData;
+        }
+    }
+
+    /**
+     * Handler for database metadata that reports a given product name and
+     * version.
+     */
+    public static class MetaDataHandler
+        extends DelegatingInvocationHandler
+    {
+        private final DatabaseMetaData metaData;
+        private final String productName;
+        private final String productVersion;
+
+        MetaDataHandler(
+            DatabaseMetaData metaData,
+            String productName,
+            String productVersion)
+        {
+            this.metaData = metaData;
+            this.productName = productName;
+            this.productVersion = productVersion;
+        }
+
+        protected Object getTarget() {
+            return metaData;
+        }
+
+        public String getDatabaseProductName() {
+            return productName;
+        }
+
+        public String getDatabaseProductVersion() {
+            return productVersion;
+        }
+    }
 }
 
 // End DialectTest.java
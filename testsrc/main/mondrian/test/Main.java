@@ -13,6 +13,7 @@
 package mondrian.test;
 
 import mondrian.calc.impl.ConstantCalcTest;
+import mondrian.calc.impl.TupleHashSetTest;
 import mondrian.olap.*;
 import mondrian.olap.fun.*;
 import mondrian.olap.fun.vba.ExcelTest;
@@ -293,12 +294,14 @@ public class Main extends TestSuite {
             addTest(suite, ModulosTest.class);
             addTest(suite, PrimeFinderTest.class);
             addTest(suite, CellKeyTest.class);
+            addTest(suite, ExpResultCacheTest.class);
             addTest(suite, RolapAxisTest.class);
             addTest(suite, CrossJoinTest.class);
             if (Bug.BugMondrian503Fixed) {
                 addTest(suite, RolapResultTest.class);
             }
             addTest(suite, ConstantCalcTest.class);
+            addTest(suite, TupleHashSetTest.class);
             addTest(suite, SharedDimensionTest.class);
             addTest(suite, CellPropertyTest.class);
             addTest(suite, QueryTest.class);
@@ -153,6 +153,68 @@ public class MonitorTest extends FoodMartTestCase {
         // sort
         // (other expensive operations similar to sort?)
     }
+
+    /**
+     * Tests that {@link Monitor#getMemoryUsage()} accounts for the member
+     * caches and segments populated by a query.
+     */
+    public void testMemoryUsage() {
+        assertQueryReturns(
+            "select [Measures].[Unit Sales] on 0,\n"
+            + "[Store].[USA].Children on 1\n"
+            + "from [Sales]",
+            "Axis #0:\n"
+            + "{}\n"
+            + "Axis #1:\n"
+            + "{[Measures].[Unit Sales]}\n"
+            + "Axis #2:\n"
+            + "{[Store].[USA].[CA]}\n"
+            + "{[Store].[USA].[OR]}\n"
+            + "{[Store].[USA].[WA]}\n"
+            + "Row #0: 74,748\n"
+            + "Row #1: 67,659\n"
+            + "Row #2: 124,366\n");
+        final List<MemoryUsageInfo> memoryUsageList =
+            MondrianServer.forConnection(getConnection()).getMonitor()
+                .getMemoryUsage();
+        MemoryUsageInfo schemaInfo = null;
+        MemoryUsageInfo starInfo = null;
+        MemoryUsageInfo hierarchyInfo = null;
+        for (MemoryUsageInfo info : memoryUsageList) {
+            println(info);
+            if (!info.schemaName.equals("FoodMart")) {
+                continue;
+            }
+            switch (info.type) {
+            case SCHEMA:
+                schemaInfo = info;
+                break;
+            case STAR:
+                if (info.name.equals("sales_fact_1997")) {
+                    starInfo = info;
+                }
+                break;
+            case HIERARCHY:
+                if (info.name.endsWith("[Store]") && info.objectCount > 0) {
+                    hierarchyInfo = info;
+                }
+                break;
+            }
+        }
+        assertNotNull(schemaInfo);
+        assertNotNull(starInfo);
+        assertNotNull(hierarchyInfo);
+        assertTrue(starInfo.objectCount > 0);
+        assertTrue(starInfo.bytes > 0);
+        assertTrue(hierarchyInfo.bytes > 0);
+        assertTrue(schemaInfo.bytes >= starInfo.bytes + hierarchyInfo.bytes);
+
+        // ServerInfo computes the same figures on demand.
+        final ServerInfo serverInfo =
+            MondrianServer.forConnection(getConnection()).getMonitor()
+                .getServer();
+        assertTrue(serverInfo.memoryUsageBytes() >= schemaInfo.bytes);
+    }
 }
 
 // End MonitorTest.java
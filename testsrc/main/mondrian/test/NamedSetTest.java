@@ -12,8 +12,9 @@
 */
 package mondrian.test;
 
-import mondrian.olap.Result;
-import mondrian.olap.Util;
+import mondrian.olap.*;
+import mondrian.rolap.RolapConnection;
+import mondrian.rolap.SharedExpResultCache;
 import mondrian.spi.impl.FilterDynamicSchemaProcessor;
 
 import java.io.InputStream;
@@ -815,6 +816,63 @@ public class NamedSetTest extends FoodMartTestCase {
             + "FROM [Sales]", "Named set 'Bad' has bad formula");
     }
 
+    /**
+     * Tests that a schema-level named set with the "CacheAcrossQueries"
+     * annotation is evaluated once and re-used by later queries, until the
+     * cells of its cube are flushed.
+     */
+    public void testNamedSetCachedAcrossQueries() {
+        final TestContext tc = TestContext.instance().create(
+            null,
+            null,
+            null,
+            "<NamedSet name=\"Top CA Cities\">\n"
+            + "  <Annotations>\n"
+            + "    <Annotation name=\"CacheAcrossQueries\">true</Annotation>\n"
+            + "  </Annotations>\n"
+            + "  <Formula>TopCount([Store].[USA].[CA].Children, 2,"
+            + " [Measures].[Unit Sales])</Formula>\n"
+            + "</NamedSet>",
+            null,
+            null);
+        final RolapConnection connection =
+            (RolapConnection) tc.getConnection();
+        final SharedExpResultCache cache =
+            connection.getServer().getAggregationManager().sharedExpCache;
+        cache.clear();
+        final String query =
+            "SELECT {[Measures].[Unit Sales]} ON COLUMNS,\n"
+            + " {[Top CA Cities]} ON ROWS\n"
+            + "FROM [Sales]";
+        final String expected =
+            "Axis #0:\n"
+            + "{}\n"
+            + "Axis #1:\n"
+            + "{[Measures].[Unit Sales]}\n"
+            + "Axis #2:\n"
+            + "{[Store].[USA].[CA].[Los Angeles]}\n"
+            + "{[Store].[USA].[CA].[San Diego]}\n"
+            + "Row #0: 25,663\n"
+            + "Row #1: 25,635\n";
+        tc.assertQueryReturns(query, expected);
+        assertEquals(1, cache.size());
+        final int hitCount = cache.getHitCount();
+        tc.assertQueryReturns(query, expected);
+        assertEquals(hitCount + 1, cache.getHitCount());
+
+        // The set depends on the slicer, so a different slicer misses.
+        tc.executeQuery(query + "\nWHERE [Time].[1997].[Q1]");
+        assertEquals(2, cache.size());
+
+        // Flushing the cells of the cube removes the cached values.
+        final CacheControl cacheControl = connection.getCacheControl(null);
+        final Cube salesCube = connection.getSchema().lookupCube("Sales", true);
+        cacheControl.flush(cacheControl.createMeasuresRegion(salesCube));
+        assertEquals(0, cache.size());
+        tc.assertQueryReturns(query, expected);
+        assertEquals(1, cache.size());
+    }
+
     public void testNamedSetMustBeSet() {
         Result result;
         String queryString;
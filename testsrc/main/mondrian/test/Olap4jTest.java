@@ -10,6 +10,8 @@
 package mondrian.test;
 
 import mondrian.olap.*;
+import mondrian.rolap.QueryPlanCache;
+import mondrian.rolap.RolapConnection;
 import mondrian.xmla.XmlaHandler;
 
 import org.olap4j.*;
@@ -296,6 +298,43 @@ public class Olap4jTest extends FoodMartTestCase {
         }
     }
 
+    /**
+     * Tests that a statement re-uses the compiled query of a statement that
+     * executed the same MDX and has been closed.
+     *
+     * @throws SQLException on error
+     */
+    public void testQueryPlanCache() throws SQLException {
+        propSaver.set(
+            MondrianProperties.instance().QueryPlanCacheMaxEntries, 10);
+        final OlapConnection connection =
+            getTestContext().getOlap4jConnection();
+        final QueryPlanCache cache =
+            connection.unwrap(RolapConnection.class).getSchema()
+                .getQueryPlanCache();
+        cache.clear();
+        final String mdx =
+            "with member [Measures].[Foo] as\n"
+            + " '[Measures].[Unit Sales] * 2'\n"
+            + "select {[Measures].[Unit Sales], [Measures].[Foo]} on 0,\n"
+            + " [Gender].Members on 1\n"
+            + "from [Sales]";
+        final OlapStatement statement1 = connection.createStatement();
+        final String expected =
+            TestContext.toString(statement1.executeOlapQuery(mdx));
+        assertEquals(0, cache.size());
+        statement1.close();
+        assertEquals(1, cache.size());
+
+        final OlapStatement statement2 = connection.createStatement();
+        assertEquals(
+            expected,
+            TestContext.toString(statement2.executeOlapQuery(mdx)));
+        assertEquals(0, cache.size());
+        statement2.close();
+        assertEquals(1, cache.size());
+    }
+
     /**
      * Calls {@link java.sql.Statement#isClosed()} or
      * {@link java.sql.ResultSet#isClosed()} via reflection.
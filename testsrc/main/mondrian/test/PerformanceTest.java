@@ -548,6 +548,54 @@ public class PerformanceTest extends FoodMartTestCase {
             + "1,184,028");
     }
 
+    /**
+     * Tests that {@link mondrian.calc.impl.FusingExpCompiler} gives the same
+     * results as the default expression compiler for calculated members that
+     * use arithmetic, comparisons, IIf and CoalesceEmpty, and, if debug
+     * logging is enabled, compares the time that the two compilers take.
+     */
+    public void testFusingExpCompiler() {
+        final String mdx =
+            "with member [Measures].[Margin] as\n"
+            + "  ([Measures].[Store Sales] - [Measures].[Store Cost])\n"
+            + "  / [Measures].[Store Sales] * 100\n"
+            + "member [Measures].[Score] as\n"
+            + "  IIf([Measures].[Unit Sales] > 100 + 2 * 50,\n"
+            + "    CoalesceEmpty([Measures].[Profit], 0) / 2 - 1,\n"
+            + "    -[Measures].[Margin] * ([Measures].[Customer Count] + 1))\n"
+            + "select {[Measures].[Margin], [Measures].[Score]} on 0,\n"
+            + "  Filter(\n"
+            + "    [Product].[Brand Name].Members,\n"
+            + "    [Measures].[Margin] * 2 >= [Measures].[Score] - 100) on 1\n"
+            + "from [Sales]";
+        final String expected =
+            TestContext.toString(getTestContext().executeQuery(mdx));
+        propSaver.set(
+            MondrianProperties.instance().ExpCompilerClass,
+            "mondrian.calc.impl.FusingExpCompiler");
+        assertQueryReturns(mdx, expected);
+
+        if (!LOGGER.isDebugEnabled()) {
+            return;
+        }
+        final String[] classNames = {
+            "mondrian.calc.impl.BetterExpCompiler",
+            "mondrian.calc.impl.FusingExpCompiler"
+        };
+        for (String className : classNames) {
+            propSaver.set(
+                MondrianProperties.instance().ExpCompilerClass, className);
+            final Statistician statistician =
+                new Statistician("testFusingExpCompiler: " + className);
+            for (int i = 0; i < 10; i++) {
+                final long start = System.currentTimeMillis();
+                getTestContext().executeQuery(mdx);
+                statistician.record(start);
+            }
+            statistician.printDurations();
+        }
+    }
+
     private static long printDuration(String desc, long t0) {
         final long t1 = System.currentTimeMillis();
         final long duration = t1 - t0;